@@ -4,10 +4,14 @@ import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Scanner;
 
+import com.benspowell.core_interpreter.ast.Program;
 import com.benspowell.core_interpreter.error.*;
 import com.benspowell.core_interpreter.executor.*;
+import com.benspowell.core_interpreter.jvm.*;
+import com.benspowell.core_interpreter.optimizer.*;
 import com.benspowell.core_interpreter.printer.*;
 import com.benspowell.core_interpreter.tokenizer.*;
+import com.benspowell.core_interpreter.vm.*;
 import com.benspowell.core_interpreter.parser.*;
 
 /**
@@ -21,37 +25,295 @@ public class Interpreter {
 
 	public static void main(String [] args) {
 		
+		boolean iShouldPrettyPrint = false;
+		boolean iShouldMapTheProgram = false;
+		boolean iShouldReportStatistics = false;
+		boolean iShouldUseAFlatTree = false;
+		boolean iShouldParseIteratively = false;
+		boolean iShouldUseNaryExpressions = false;
+		boolean iShouldOptimizeTheBytecode = true;
+		boolean iShouldFoldConstants = false;
+		boolean iShouldOptimizeGlobally = false;
+		boolean iShouldOptimizeLoops = false;
+		boolean iShouldEliminateCommonSubexpressions = false;
+		boolean iShouldReorderConditions = false;
+		boolean iShouldUseExactArithmetic = false;
+		String engineName = "tree";
 		
-		boolean iShouldPrettyPrint = args[args.length-1].equals("print");
+		// Everything after the program and input files is an option.
+		for (int i = 2; i < args.length; i++) {
+			switch (args[i]) {
+			case "print":
+				iShouldPrettyPrint = true;
+				break;
+			case "--mmap":
+				iShouldMapTheProgram = true;
+				break;
+			case "--stats":
+				iShouldReportStatistics = true;
+				break;
+			case "--flat-tree":
+				iShouldUseAFlatTree = true;
+				break;
+			case "--iterative":
+				iShouldParseIteratively = true;
+				break;
+			case "--nary":
+				iShouldUseNaryExpressions = true;
+				break;
+			case "--no-peephole":
+				iShouldOptimizeTheBytecode = false;
+				break;
+			case "--fold":
+				iShouldFoldConstants = true;
+				break;
+			case "--ssa":
+				iShouldOptimizeGlobally = true;
+				break;
+			case "--loops":
+				iShouldOptimizeLoops = true;
+				break;
+			case "--cse":
+				iShouldEliminateCommonSubexpressions = true;
+				break;
+			case "--adaptive-conditions":
+				iShouldReorderConditions = true;
+				break;
+			case "--exact":
+				iShouldUseExactArithmetic = true;
+				break;
+			case "doNotPrint":
+				break;
+			default:
+				if (args[i].startsWith("--engine=")) {
+					engineName = args[i].substring("--engine=".length());
+				}
+				else if (i > 2 || args[i].startsWith("--")) {
+					// Anything else where the print flag goes means
+					// doNotPrint; anywhere else, it's a mistake.
+					usage("unknown option: " + args[i]);
+					return;
+				}
+				break;
+			}
+		}
+		switch (engineName) {
+		case "tree":
+		case "tiered":
+		case "ast":
+		case "spec":
+		case "closure":
+		case "vm":
+		case "jvm":
+		case "mh":
+			break;
+		default:
+			usage("unknown engine: " + engineName + " (choose tree, tiered, ast, spec, closure, vm, jvm or mh)");
+			return;
+		}
+		
+		// Refuse options that can't be used together, rather than ignore
+		// one of them.
+		if ( iShouldUseExactArithmetic && !engineName.equals("tree") && !engineName.equals("tiered") ) {
+			System.err.println("--exact only works with --engine=tree and --engine=tiered: the other engines compute in int arithmetic.");
+			return;
+		}
+		if ( iShouldReorderConditions && !engineName.equals("tree") && !engineName.equals("tiered") ) {
+			System.err.println("--adaptive-conditions only works with --engine=tree and --engine=tiered: the other engines don't profile conditions.");
+			return;
+		}
+		if ( iShouldUseExactArithmetic && iShouldFoldConstants ) {
+			System.err.println("--fold can't be used with --exact: constants are folded in int arithmetic, which wraps.");
+			return;
+		}
+		if ( iShouldUseExactArithmetic && iShouldOptimizeGlobally ) {
+			System.err.println("--ssa can't be used with --exact: constants are propagated in int arithmetic, which wraps.");
+			return;
+		}
+		if ( iShouldUseExactArithmetic && iShouldOptimizeLoops ) {
+			System.err.println("--loops can't be used with --exact: closed forms are computed in int arithmetic, which wraps.");
+			return;
+		}
+		if ( iShouldUseExactArithmetic && iShouldEliminateCommonSubexpressions ) {
+			System.err.println("--cse can't be used with --exact: it folds constants in int arithmetic, which wraps.");
+			return;
+		}
 		
 		try {
 			
-			// Open the program file.
-	    	Scanner programInput = new Scanner ( Paths.get(args[0]) );
-	        
 			// Open the input file.
 	    	Scanner fileInput = new Scanner ( Paths.get(args[1]) );
 	    	
-	    	// Create the Tokenizer.
-	        Tokenizer tokenizer = new Tokenizer ( programInput );
+	    	// Create the Tokenizer, over a memory mapping of the program file
+	    	// or over its contents.
+	        Tokenizer tokenizer = iShouldMapTheProgram
+	        		? Tokenizer.map ( Paths.get(args[0]) )
+	        		: new Tokenizer ( new Scanner ( Paths.get(args[0]) ) );
 			
-	        // Create the Parser.
-	        Parser parser = new Parser ( tokenizer );
+	        // Create the Parser, building the kind of tree the user wants.
+	        Parser parser = new Parser ( TokenStream.lex(tokenizer),
+	        		iShouldUseAFlatTree ? new FlatParseTree() : new LinkedParseTree() );
+	        parser.setIterativeSequences(iShouldParseIteratively);
+	        parser.setNaryExpressions(iShouldUseNaryExpressions);
+	        
+	        // Only exact arithmetic can use constants too large for an int.
+	        parser.setBigConstants(iShouldUseExactArithmetic);
 	        
 	        // Parse the program.
 	        ParseTree parseTree = parser.coreProgram();
 	        
-	        // Create the Printer
-	        Printer printer = new Printer ( System.out, parseTree );
+	        // Report on the program, if the user wants to.
+	        if ( iShouldReportStatistics ) {
+	        	System.err.println("distinct identifiers: " + parseTree.getSymbolTable().size());
+	        }
+	        
+	        // Build the AST, for the engines that run it, and for the
+	        // optimizers.
+	        boolean iShouldRunTheAst = engineName.equals("ast") || engineName.equals("vm") || engineName.equals("jvm") || engineName.equals("mh") || engineName.equals("spec");
+	        boolean iShouldOptimize = iShouldFoldConstants || iShouldOptimizeGlobally || iShouldOptimizeLoops
+	        		|| iShouldEliminateCommonSubexpressions;
+	        Program program = null;
+	        if ( iShouldRunTheAst || iShouldOptimize ) program = AstBuilder.build(parseTree);
+	        
+	        // Fold the program's constants, if the user wants to.
+	        if ( iShouldFoldConstants ) {
+	        	ConstantFolder folder = new ConstantFolder();
+	        	program = folder.fold(program);
+	        	if ( iShouldReportStatistics ) {
+	        		System.err.println("nodes removed by folding: " + folder.getRemoved());
+	        	}
+	        }
+	        
+	        // Optimize the whole program, if the user wants to.
+	        if ( iShouldOptimizeGlobally ) {
+	        	SsaOptimizer optimizer = new SsaOptimizer();
+	        	program = optimizer.optimize(program);
+	        	if ( iShouldReportStatistics ) {
+	        		System.err.println("uses propagated: " + optimizer.getPropagated());
+	        		System.err.println("stores removed: " + optimizer.getRemovedStores());
+	        		System.err.println("branches pruned: " + optimizer.getPrunedBranches());
+	        	}
+	        }
+	        
+	        // Optimize the program's loops, if the user wants to.
+	        if ( iShouldOptimizeLoops ) {
+	        	LoopOptimizer optimizer = new LoopOptimizer();
+	        	program = optimizer.optimize(program);
+	        	if ( iShouldReportStatistics ) {
+	        		System.err.println("invariants hoisted: " + optimizer.getHoisted());
+	        		System.err.println("multiplications reduced: " + optimizer.getReduced());
+	        		System.err.println("loops replaced: " + optimizer.getReplaced());
+	        	}
+	        }
+	        
+	        // Eliminate the program's common subexpressions, and share its
+	        // expressions' nodes, if the user wants to. Only the engines that
+	        // run the AST keep the sharing.
+	        if ( iShouldEliminateCommonSubexpressions ) {
+	        	CseOptimizer optimizer = new CseOptimizer();
+	        	program = optimizer.optimize(program);
+	        	if ( iShouldReportStatistics ) {
+	        		System.err.println("subexpressions reused: " + optimizer.getReused());
+	        		System.err.println("operations avoided: " + optimizer.getAvoided());
+	        	}
+	        	if ( iShouldRunTheAst ) {
+	        		ExpressionInterner interner = new ExpressionInterner();
+	        		program = interner.intern(program);
+	        		if ( iShouldReportStatistics ) {
+	        			System.err.println("expression nodes: " + interner.getNodes() + ", distinct: " + interner.getDistinctNodes());
+	        			System.err.println("bytes saved by sharing: " + interner.getBytesSaved());
+	        		}
+	        	}
+	        }
+	        
+	        // The engines that run the parse tree run the optimized program
+	        // lowered back into the same kind of tree.
+	        if ( iShouldOptimize && !iShouldRunTheAst ) {
+	        	parseTree = ParseTreeBuilder.build(program, iShouldUseAFlatTree ? new FlatParseTree() : new LinkedParseTree(),
+	        			iShouldParseIteratively, iShouldUseNaryExpressions);
+	        }
+	        
+	        // Warn about the uses of variables that are sure to fail, before
+	        // running the program. They still only fail if they're reached.
+	        // The engines that run the parse tree use the same analysis.
+	        // Undeclared variables are left for the engine to report.
+	        Resolution slots = null;
+	        Definedness definedness = null;
+	        try {
+	        	slots = Resolver.resolve(parseTree);
+	        	definedness = DefinednessAnalysis.analyze(parseTree, slots);
+	        	if ( iShouldReportStatistics ) {
+	        		System.err.println("uses proven defined: " + definedness.getProvenUses() + " of " + definedness.getUses());
+	        	}
+	        	for (String error : definedness.getErrors()) System.err.println("warning: " + error);
+	        }
+	        catch (ExecutorException e) {
+	        	// The Resolver stops where the error is, so start over at the root.
+	        	parseTree.goAllTheWayBackUp();
+	        }
 	        
 	        // Print, if the user wants to.
-	        if ( iShouldPrettyPrint ) printer.printCoreProgram();
+	        if ( iShouldPrettyPrint ) {
+	        	if ( program != null ) new AstPrinter ( System.out ).printCoreProgram(program);
+	        	else new Printer ( System.out, parseTree ).printCoreProgram();
+	        }
 	        
-	        // Create the Executor.
-	        Executor executor = new Executor (System.out, parseTree, fileInput );
+	        // Create the engine the user wants.
+	        ExecutionEngine engine;
+	        VirtualMachine vm = null;
+	        Executor executor = null;
+	        switch ( engineName ) {
+	        case "ast":
+	        	engine = new AstExecutor ( System.out, program, fileInput );
+	        	break;
+	        case "spec":
+	        	engine = new SpecializingExecutor ( System.out, program, fileInput );
+	        	break;
+	        case "closure":
+	        	ClosureCompiler compiler = new ClosureCompiler ( System.out, parseTree, fileInput );
+	        	if ( definedness != null ) compiler.setAnalysis(slots, definedness);
+	        	engine = compiler;
+	        	break;
+	        case "vm":
+	        	Bytecode bytecode = BytecodeCompiler.compile(program);
+	        	if ( iShouldOptimizeTheBytecode ) bytecode = Peephole.optimize(bytecode);
+	        	vm = new VirtualMachine ( System.out, bytecode, fileInput );
+	        	vm.setProfiling(iShouldReportStatistics);
+	        	engine = vm;
+	        	break;
+	        case "jvm":
+	        	engine = new JvmEngine ( System.out, program, fileInput );
+	        	break;
+	        case "mh":
+	        	engine = new MethodHandleCompiler ( System.out, program, fileInput );
+	        	break;
+	        case "tiered":
+	        	executor = new Executor ( System.out, parseTree, fileInput );
+	        	executor.setTiering ( new JvmLoopTier ( System.out, fileInput ), Executor.DEFAULT_TIERING_THRESHOLD );
+	        	engine = executor;
+	        	break;
+	        default:
+	        	executor = new Executor ( System.out, parseTree, fileInput );
+	        	engine = executor;
+	        	break;
+	        }
+	        if ( executor != null ) {
+	        	if ( definedness != null ) executor.setAnalysis(slots, definedness);
+	        	executor.setAdaptiveConditions(iShouldReorderConditions);
+	        	executor.setConditionProfiling(iShouldReportStatistics);
+	        	executor.setExactArithmetic(iShouldUseExactArithmetic);
+	        }
 	        
 	        // Execute the program.
-	        executor.executeCoreProgram();
+	        engine.executeCoreProgram();
+	        
+	        // Report on the run, if the user wants to.
+	        if ( iShouldReportStatistics && vm != null ) {
+	        	System.err.print(vm.getProfile());
+	        }
+	        if ( iShouldReportStatistics && executor != null ) {
+	        	System.err.print(executor.getConditionProfile());
+	        }
 	        
 		}
 		catch(IOException e) {
@@ -71,4 +333,12 @@ public class Interpreter {
 			
 		}
 	}
+	
+	/*
+	 * Report a mistake on the command line, and how to use it.
+	 */
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: Interpreter program input [print|doNotPrint] [options]");
+	}
 }
@@ -0,0 +1,29 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A conjunction: [<cond> && <cond>]
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class And extends Cond {
+	
+	private final Cond left;
+	private final Cond right;
+	
+	public And(Cond left, Cond right) {
+		this.left = left;
+		this.right = right;
+	}
+	
+	public Cond getLeft() {
+		return left;
+	}
+	
+	public Cond getRight() {
+		return right;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitAnd(this);
+	}
+}
@@ -0,0 +1,40 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * Arithmetic operators.
+ * 
+ * @author Benjamin S. Powell
+ */
+public enum ArithmeticOperator {
+	
+	PLUS("+"),
+	MINUS("-"),
+	TIMES("*");
+	
+	private final String symbol;
+	
+	private ArithmeticOperator(String symbol) {
+		this.symbol = symbol;
+	}
+	
+	/*
+	 * The operator as it's written in CORE.
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+	
+	/*
+	 * Apply the operator to a and b.
+	 */
+	public int apply(int a, int b) {
+		switch (this) {
+		case PLUS:
+			return a + b;
+		case MINUS:
+			return a - b;
+		default:
+			return a * b;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * An assignment: <id> = <exp>;
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Assign extends Stmt {
+	
+	private final Var target;
+	private final Exp value;
+	
+	public Assign(Var target, Exp value) {
+		this.target = target;
+		this.value = value;
+	}
+	
+	public Var getTarget() {
+		return target;
+	}
+	
+	public Exp getValue() {
+		return value;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitAssign(this);
+	}
+}
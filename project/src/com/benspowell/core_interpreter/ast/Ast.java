@@ -0,0 +1,23 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers shared by the AST node classes.
+ * 
+ * @author Benjamin S. Powell
+ */
+final class Ast {
+	
+	private Ast() {}
+	
+	/*
+	 * An unmodifiable copy of list, so that no node can change after it
+	 * has been built.
+	 */
+	static <T> List<T> freeze(List<T> list) {
+		return Collections.unmodifiableList(new ArrayList<T>(list));
+	}
+}
@@ -0,0 +1,36 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A binary operation: <exp> + <exp>, <exp> - <exp> or <exp> * <exp>. The
+ * left operand is evaluated first.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class BinOp extends Exp {
+	
+	private final ArithmeticOperator operator;
+	private final Exp left;
+	private final Exp right;
+	
+	public BinOp(ArithmeticOperator operator, Exp left, Exp right) {
+		this.operator = operator;
+		this.left = left;
+		this.right = right;
+	}
+	
+	public ArithmeticOperator getOperator() {
+		return operator;
+	}
+	
+	public Exp getLeft() {
+		return left;
+	}
+	
+	public Exp getRight() {
+		return right;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitBinOp(this);
+	}
+}
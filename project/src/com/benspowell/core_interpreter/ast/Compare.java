@@ -0,0 +1,35 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A comparison: (<op> <comp op> <op>)
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Compare extends Cond {
+	
+	private final Exp left;
+	private final RelationalOperator operator;
+	private final Exp right;
+	
+	public Compare(Exp left, RelationalOperator operator, Exp right) {
+		this.left = left;
+		this.operator = operator;
+		this.right = right;
+	}
+	
+	public Exp getLeft() {
+		return left;
+	}
+	
+	public RelationalOperator getOperator() {
+		return operator;
+	}
+	
+	public Exp getRight() {
+		return right;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitCompare(this);
+	}
+}
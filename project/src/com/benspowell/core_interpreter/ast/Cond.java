@@ -0,0 +1,28 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A CORE condition: a Compare, Not, And or Or.
+ * 
+ * @author Benjamin S. Powell
+ */
+public abstract class Cond {
+	
+	/**
+	 * Operations on conditions, one method per kind of condition. Methods
+	 * may throw X.
+	 */
+	public interface Visitor<R, X extends Exception> {
+		R visitCompare(Compare c) throws X;
+		R visitNot(Not c) throws X;
+		R visitAnd(And c) throws X;
+		R visitOr(Or c) throws X;
+	}
+	
+	// Only the conditions in this package.
+	Cond() {}
+	
+	/*
+	 * Call the visitor's method for this kind of condition.
+	 */
+	public abstract <R, X extends Exception> R accept(Visitor<R, X> v) throws X;
+}
@@ -0,0 +1,21 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.List;
+
+/**
+ * A declaration: int <id list>;
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Decl {
+	
+	private final List<Var> ids;
+	
+	public Decl(List<Var> ids) {
+		this.ids = Ast.freeze(ids);
+	}
+	
+	public List<Var> getIds() {
+		return ids;
+	}
+}
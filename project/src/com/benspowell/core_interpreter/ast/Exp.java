@@ -0,0 +1,28 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A CORE expression: a Num, Var, BinOp or Group.
+ * 
+ * @author Benjamin S. Powell
+ */
+public abstract class Exp {
+	
+	/**
+	 * Operations on expressions, one method per kind of expression.
+	 * Methods may throw X.
+	 */
+	public interface Visitor<R, X extends Exception> {
+		R visitNum(Num e) throws X;
+		R visitVar(Var e) throws X;
+		R visitBinOp(BinOp e) throws X;
+		R visitGroup(Group e) throws X;
+	}
+	
+	// Only the expressions in this package.
+	Exp() {}
+	
+	/*
+	 * Call the visitor's method for this kind of expression.
+	 */
+	public abstract <R, X extends Exception> R accept(Visitor<R, X> v) throws X;
+}
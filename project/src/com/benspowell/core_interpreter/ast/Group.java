@@ -0,0 +1,24 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A parenthesized expression: (<exp>). It has the value of its contents;
+ * it's kept so the program can be printed as it was written.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Group extends Exp {
+	
+	private final Exp contents;
+	
+	public Group(Exp contents) {
+		this.contents = contents;
+	}
+	
+	public Exp getContents() {
+		return contents;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitGroup(this);
+	}
+}
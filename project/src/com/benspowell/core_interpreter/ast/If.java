@@ -0,0 +1,43 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.List;
+
+/**
+ * An if: if <cond> then <stmt seq> [else <stmt seq>] end;
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class If extends Stmt {
+	
+	private final Cond condition;
+	private final List<Stmt> thenBranch;
+	private final List<Stmt> elseBranch;
+	
+	/*
+	 * Constructor for an if; elseBranch is null if there's no else.
+	 */
+	public If(Cond condition, List<Stmt> thenBranch, List<Stmt> elseBranch) {
+		this.condition = condition;
+		this.thenBranch = Ast.freeze(thenBranch);
+		this.elseBranch = elseBranch == null ? null : Ast.freeze(elseBranch);
+	}
+	
+	public Cond getCondition() {
+		return condition;
+	}
+	
+	public List<Stmt> getThenBranch() {
+		return thenBranch;
+	}
+	
+	/*
+	 * The statements after else, or null if there's no else.
+	 */
+	public List<Stmt> getElseBranch() {
+		return elseBranch;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitIf(this);
+	}
+}
@@ -0,0 +1,23 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A negated condition: !<cond>
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Not extends Cond {
+	
+	private final Cond operand;
+	
+	public Not(Cond operand) {
+		this.operand = operand;
+	}
+	
+	public Cond getOperand() {
+		return operand;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitNot(this);
+	}
+}
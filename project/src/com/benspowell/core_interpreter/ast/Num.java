@@ -0,0 +1,23 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * An integer literal.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Num extends Exp {
+	
+	private final int value;
+	
+	public Num(int value) {
+		this.value = value;
+	}
+	
+	public int getValue() {
+		return value;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitNum(this);
+	}
+}
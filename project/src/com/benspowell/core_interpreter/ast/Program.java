@@ -0,0 +1,40 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.List;
+
+/**
+ * A whole CORE program: its declarations, then its statements.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Program {
+	
+	private final List<Decl> declarations;
+	private final List<Stmt> body;
+	private final int symbolCount;
+	
+	/*
+	 * Constructor for a program whose variables have symbols below
+	 * symbolCount.
+	 */
+	public Program(List<Decl> declarations, List<Stmt> body, int symbolCount) {
+		this.declarations = Ast.freeze(declarations);
+		this.body = Ast.freeze(body);
+		this.symbolCount = symbolCount;
+	}
+	
+	public List<Decl> getDeclarations() {
+		return declarations;
+	}
+	
+	public List<Stmt> getBody() {
+		return body;
+	}
+	
+	/*
+	 * Every Var in the program has a symbol below this.
+	 */
+	public int getSymbolCount() {
+		return symbolCount;
+	}
+}
@@ -0,0 +1,25 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.List;
+
+/**
+ * An in statement: read <id list>;
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Read extends Stmt {
+	
+	private final List<Var> ids;
+	
+	public Read(List<Var> ids) {
+		this.ids = Ast.freeze(ids);
+	}
+	
+	public List<Var> getIds() {
+		return ids;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitRead(this);
+	}
+}
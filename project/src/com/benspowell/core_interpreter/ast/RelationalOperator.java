@@ -0,0 +1,69 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * Comparison operators, in the order of the <comp op> alternatives.
+ * 
+ * @author Benjamin S. Powell
+ */
+public enum RelationalOperator {
+	
+	NOT_EQUAL("!="),
+	EQUAL("=="),
+	LESS("<"),
+	GREATER(">"),
+	LESS_OR_EQUAL("<="),
+	GREATER_OR_EQUAL(">=");
+	
+	private final String symbol;
+	
+	private RelationalOperator(String symbol) {
+		this.symbol = symbol;
+	}
+	
+	/*
+	 * The operator as it's written in CORE.
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+	
+	/*
+	 * The operator that's true exactly when this one is false.
+	 */
+	public RelationalOperator negate() {
+		switch (this) {
+		case NOT_EQUAL:
+			return EQUAL;
+		case EQUAL:
+			return NOT_EQUAL;
+		case LESS:
+			return GREATER_OR_EQUAL;
+		case GREATER:
+			return LESS_OR_EQUAL;
+		case LESS_OR_EQUAL:
+			return GREATER;
+		default:
+			return LESS;
+		}
+	}
+	
+	/*
+	 * Compare a with b.
+	 */
+	public boolean test(int a, int b) {
+		switch (this) {
+		case NOT_EQUAL:
+			return a != b;
+		case EQUAL:
+			return a == b;
+		case LESS:
+			return a < b;
+		case GREATER:
+			return a > b;
+		case LESS_OR_EQUAL:
+			return a <= b;
+		default:
+			return a >= b;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A CORE statement: an Assign, If, While, Read or Write.
+ * 
+ * @author Benjamin S. Powell
+ */
+public abstract class Stmt {
+	
+	/**
+	 * Operations on statements, one method per kind of statement. Methods
+	 * may throw X.
+	 */
+	public interface Visitor<R, X extends Exception> {
+		R visitAssign(Assign s) throws X;
+		R visitIf(If s) throws X;
+		R visitWhile(While s) throws X;
+		R visitRead(Read s) throws X;
+		R visitWrite(Write s) throws X;
+	}
+	
+	// Only the statements in this package.
+	Stmt() {}
+	
+	/*
+	 * Call the visitor's method for this kind of statement.
+	 */
+	public abstract <R, X extends Exception> R accept(Visitor<R, X> v) throws X;
+}
@@ -0,0 +1,30 @@
+package com.benspowell.core_interpreter.ast;
+
+/**
+ * A use of an identifier. The symbol is its number in the parser's
+ * SymbolTable, so every Var of the same name has the same symbol.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Var extends Exp {
+	
+	private final String name;
+	private final int symbol;
+	
+	public Var(String name, int symbol) {
+		this.name = name;
+		this.symbol = symbol;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getSymbol() {
+		return symbol;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitVar(this);
+	}
+}
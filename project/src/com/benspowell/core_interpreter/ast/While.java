@@ -0,0 +1,31 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.List;
+
+/**
+ * A loop: while <cond> loop <stmt seq> end;
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class While extends Stmt {
+	
+	private final Cond condition;
+	private final List<Stmt> body;
+	
+	public While(Cond condition, List<Stmt> body) {
+		this.condition = condition;
+		this.body = Ast.freeze(body);
+	}
+	
+	public Cond getCondition() {
+		return condition;
+	}
+	
+	public List<Stmt> getBody() {
+		return body;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitWhile(this);
+	}
+}
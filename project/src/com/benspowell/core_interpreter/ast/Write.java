@@ -0,0 +1,25 @@
+package com.benspowell.core_interpreter.ast;
+
+import java.util.List;
+
+/**
+ * An out statement: write <id list>;
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Write extends Stmt {
+	
+	private final List<Var> ids;
+	
+	public Write(List<Var> ids) {
+		this.ids = Ast.freeze(ids);
+	}
+	
+	public List<Var> getIds() {
+		return ids;
+	}
+	
+	public <R, X extends Exception> R accept(Visitor<R, X> v) throws X {
+		return v.visitWrite(this);
+	}
+}
@@ -0,0 +1,117 @@
+package com.benspowell.core_interpreter.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.Program;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.executor.*;
+import com.benspowell.core_interpreter.jvm.JvmEngine;
+import com.benspowell.core_interpreter.jvm.JvmLoopTier;
+import com.benspowell.core_interpreter.jvm.MethodHandleCompiler;
+import com.benspowell.core_interpreter.parser.*;
+import com.benspowell.core_interpreter.tokenizer.TokenStream;
+import com.benspowell.core_interpreter.tokenizer.Tokenizer;
+import com.benspowell.core_interpreter.vm.BytecodeCompiler;
+import com.benspowell.core_interpreter.vm.Peephole;
+import com.benspowell.core_interpreter.vm.VirtualMachine;
+
+/**
+ * Benchmark for the execution engines. Runs a loop-heavy synthetic program
+ * on each engine, and reports how long each took, including any compiling
+ * it does. Parsing is not timed. Every engine must write the same output.
+ * 
+ * Usage: EngineBenchmark [iterations] [rounds] [engines]
+ * 
+ * where engines is a comma-separated list of the Interpreter's engine
+ * names (tree, tiered, ast, spec, closure, vm, jvm, mh), all of them by default.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class EngineBenchmark {
+
+	private static final String ENGINES = "tree,tiered,ast,spec,closure,vm,jvm,mh";
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private EngineBenchmark() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments
+	 * @throws ParseException
+	 * @throws ExecutorException
+	 */
+	public static void main(String[] args) throws ParseException, ExecutorException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String[] engines = (args.length > 2 ? args[2] : ENGINES).split(",");
+
+		byte[] program = SyntheticPrograms.loop(iterations).getBytes(StandardCharsets.US_ASCII);
+		String expected = null;
+
+		for (int round = 0; round < rounds; round++) {
+			StringBuilder report = new StringBuilder();
+			report.append(String.format("round %2d:", round));
+
+			for (String name : engines) {
+				ParseTree tree = new Parser(TokenStream.lex(new Tokenizer(program))).coreProgram();
+				Program ast = AstBuilder.build(tree);
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				PrintStream out = new PrintStream(output);
+
+				long start = System.nanoTime();
+				createEngine(name, out, tree, ast).executeCoreProgram();
+				long nanos = System.nanoTime() - start;
+
+				out.flush();
+				String result = output.toString();
+				if (expected == null) expected = result;
+				else if (!result.equals(expected)) {
+					throw new IllegalStateException(name + " wrote " + result + " instead of " + expected);
+				}
+				report.append(String.format(" %s %.0f ms,", name, nanos / 1e6));
+			}
+
+			report.setLength(report.length() - 1);
+			System.out.println(report);
+		}
+	}
+
+	/**
+	 * The engine with the given name, as in the Interpreter's --engine.
+	 */
+	private static ExecutionEngine createEngine(String name, PrintStream out, ParseTree tree, Program ast)
+			throws ExecutorException {
+		Scanner noInput = new Scanner("");
+		switch (name) {
+		case "tree":
+			return new Executor(out, tree, noInput);
+		case "tiered":
+			Executor executor = new Executor(out, tree, noInput);
+			executor.setTiering(new JvmLoopTier(out, noInput), Executor.DEFAULT_TIERING_THRESHOLD);
+			return executor;
+		case "ast":
+			return new AstExecutor(out, ast, noInput);
+		case "spec":
+			return new SpecializingExecutor(out, ast, noInput);
+		case "closure":
+			return new ClosureCompiler(out, tree, noInput);
+		case "vm":
+			return new VirtualMachine(out, Peephole.optimize(BytecodeCompiler.compile(ast)), noInput);
+		case "jvm":
+			return new JvmEngine(out, ast, noInput);
+		case "mh":
+			return new MethodHandleCompiler(out, ast, noInput);
+		default:
+			throw new IllegalArgumentException("no engine called " + name);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.benspowell.core_interpreter.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generator of large, well-formed CORE programs for the benchmarks. Every
+ * generated program declares and initializes its variables before using
+ * them, never reads input, and always terminates.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class SyntheticPrograms {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private SyntheticPrograms() {
+	}
+
+	/**
+	 * Generate a program with the given number of top-level statements.
+	 */
+	public static String generate(int statements, long seed) {
+		Random r = new Random(seed);
+		int vars = 26;
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("program\n");
+		for (int i = 0; i < vars; i++) {
+			sb.append("     int V").append(i).append(", W").append(i).append(";\n");
+		}
+		sb.append("begin\n");
+		for (int i = 0; i < vars; i++) {
+			sb.append("     V").append(i).append(" = ").append(r.nextInt(100)).append(";\n");
+			sb.append("     W").append(i).append(" = 0;\n");
+		}
+
+		for (int i = 0; i < statements; i++) {
+			switch (r.nextInt(4)) {
+			case 0:
+			case 1:
+				sb.append("     V").append(r.nextInt(vars)).append(" = ");
+				expression(sb, r, vars);
+				sb.append(";\n");
+				break;
+			case 2:
+				sb.append("     if [(V").append(r.nextInt(vars)).append(" < V")
+					.append(r.nextInt(vars)).append(") && !(V").append(r.nextInt(vars))
+					.append(" == 7)] then\n          V").append(r.nextInt(vars))
+					.append(" = V").append(r.nextInt(vars)).append(" - 1;\n     else\n          V")
+					.append(r.nextInt(vars)).append(" = V").append(r.nextInt(vars))
+					.append(" * 2;\n     end;\n");
+				break;
+			default:
+				int w = r.nextInt(vars);
+				sb.append("     W").append(w).append(" = 0;\n     while (W").append(w)
+					.append(" < ").append(1 + r.nextInt(10)).append(") loop\n          V")
+					.append(r.nextInt(vars)).append(" = V").append(r.nextInt(vars))
+					.append(" + W").append(w).append(";\n          W").append(w)
+					.append(" = W").append(w).append(" + 1;\n     end;\n");
+				break;
+			}
+		}
+		sb.append("     write V0, V1, V2;\n");
+		sb.append("end\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Generate a small program that spends its time in a loop, running
+	 * its body the given number of times.
+	 */
+	public static String loop(int iterations) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("program\n");
+		sb.append("     int I, J, S, T;\n");
+		sb.append("begin\n");
+		sb.append("     I = ").append(iterations).append(";\n");
+		sb.append("     S = 0;\n");
+		sb.append("     T = 1;\n");
+		sb.append("     while (I > 0) loop\n");
+		sb.append("          S = S + I * 3 - T;\n");
+		sb.append("          T = T + 1;\n");
+		sb.append("          if [(S > 1000) && (T != 7)] then\n");
+		sb.append("               S = S - 1000;\n");
+		sb.append("          end;\n");
+		sb.append("          J = 0;\n");
+		sb.append("          while (J < 3) loop\n");
+		sb.append("               S = S - J;\n");
+		sb.append("               J = J + 1;\n");
+		sb.append("          end;\n");
+		sb.append("          I = I - 1;\n");
+		sb.append("     end;\n");
+		sb.append("     write S, T;\n");
+		sb.append("end\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Append a random arithmetic expression over the V variables.
+	 */
+	private static void expression(StringBuilder sb, Random r, int vars) {
+		int terms = 1 + r.nextInt(4);
+		for (int t = 0; t < terms; t++) {
+			if (t > 0) sb.append(r.nextBoolean() ? " + " : " - ");
+			if (r.nextInt(3) == 0) {
+				sb.append("(V").append(r.nextInt(vars)).append(" * ").append(r.nextInt(10)).append(")");
+			}
+			else if (r.nextBoolean()) {
+				sb.append("V").append(r.nextInt(vars));
+			}
+			else {
+				sb.append(r.nextInt(1000));
+			}
+		}
+	}
+}
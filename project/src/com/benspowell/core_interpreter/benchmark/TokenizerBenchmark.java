@@ -0,0 +1,82 @@
+package com.benspowell.core_interpreter.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+import com.benspowell.core_interpreter.tokenizer.TokenKind;
+import com.benspowell.core_interpreter.tokenizer.Tokenizer;
+
+/**
+ * Microbenchmark for the Tokenizer. Lexes a large synthetic program with
+ * the Tokenizer's switch-on-state FSA and with its transition table, and
+ * reports the throughput of each.
+ * 
+ * Usage: TokenizerBenchmark [statements] [rounds] [indentation]
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class TokenizerBenchmark {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private TokenizerBenchmark() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments
+	 */
+	public static void main(String[] args) {
+		int statements = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int indentation = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		String indent = "\n" + " ".repeat(indentation);
+		byte[] program = SyntheticPrograms.generate(statements, 42)
+				.replace("\n     ", indent)
+				.getBytes(StandardCharsets.US_ASCII);
+		System.out.println("corpus: " + program.length + " bytes");
+
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			int reference = lexWithTokenizer(program, false);
+			long switchNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int table = lexWithTokenizer(program, true);
+			long tableNanos = System.nanoTime() - start;
+
+			if (table != reference) {
+				throw new IllegalStateException("token counts differ: " + table + " vs " + reference);
+			}
+			System.out.printf("round %2d: %d tokens, switch %.1f MB/s, table %.1f MB/s%n",
+					round, reference, mbPerSecond(program.length, switchNanos),
+					mbPerSecond(program.length, tableNanos));
+		}
+	}
+
+	/**
+	 * Lex the whole program with the Tokenizer, returning the token count.
+	 * Every token's kind is found, reserved words included, whichever way
+	 * it is lexed.
+	 */
+	private static int lexWithTokenizer(byte[] program, boolean tableDriven) {
+		Tokenizer t = new Tokenizer(program);
+		t.setTableDriven(tableDriven);
+		int count = 0;
+		while (t.getTokenKind() != TokenKind.EOF) {
+			if (t.getTokenKind() == TokenKind.ERROR) {
+				throw new IllegalStateException("illegal token");
+			}
+			count++;
+			t.skipToken();
+		}
+		return count;
+	}
+
+	private static double mbPerSecond(int bytes, long nanos) {
+		return (bytes / 1e6) / (nanos / 1e9);
+	}
+}
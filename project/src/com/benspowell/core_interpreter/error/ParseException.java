@@ -10,6 +10,14 @@ import com.benspowell.core_interpreter.tokenizer.*;
  */
 public class ParseException extends Exception {
 	public ParseException(String expected, Tokenizer t) {
-		super ("\nPARSE ERROR: expected token from { "+expected+" }, but got a/an "+t.getTokenKind().toString());
-	}	
+		this (expected, t.getTokenKind());
+	}
+
+	public ParseException(String expected, TokenKind got) {
+		super ("\nPARSE ERROR: expected token from { "+expected+" }, but got a/an "+got.toString());
+	}
+
+	public ParseException(String message) {
+		super ("\nPARSE ERROR: "+message);
+	}
 }
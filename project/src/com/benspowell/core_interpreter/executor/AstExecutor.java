@@ -0,0 +1,152 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.io.*;
+
+import java.util.List;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+
+/**
+ * CORE Language Executor over a program's AST. It behaves exactly like
+ * the Executor, down to the order of its checks and its error messages.
+ *
+ * The AST is never changed, and all the run-time state is kept here, so
+ * any number of AstExecutors can run the same Program at once.
+ *
+ * @author Ben Powell
+ *
+ */
+public class AstExecutor implements ExecutionEngine, Stmt.Visitor<Void, ExecutorException>,
+		Cond.Visitor<Boolean, ExecutorException>, Exp.Visitor<Integer, ExecutorException> {
+
+	private Program program;
+	private PrintStream out;
+	private Resolution slots;
+	private Frame frame;
+	private Scanner inputFile;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public AstExecutor(Program program, Scanner i) {
+		this(System.out, program, i);
+	}
+
+	/**
+	 * Constructor for the AstExecutor class
+	 */
+	public AstExecutor(PrintStream out, Program program, Scanner inputFile) {
+		this.out = out;
+		this.program = program;
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * Execute a CORE program.
+	 *
+	 * @throws ExecutorException
+	 */
+	public void executeCoreProgram() throws ExecutorException {
+		// Declarations, and any undeclared variables, are dealt with here.
+		slots = Resolver.resolve(program);
+		frame = new Frame(slots.size());
+
+		executeStmts(program.getBody());
+	}
+
+	/**
+	 * Execute a statement sequence.
+	 * @throws ExecutorException
+	 */
+	private void executeStmts(List<Stmt> stmts) throws ExecutorException {
+		for (Stmt s : stmts) s.accept(this);
+	}
+
+	public Void visitAssign(Assign s) throws ExecutorException {
+		int val = s.getValue().accept(this);
+
+		frame.set(slots.slot(s.getTarget().getSymbol()), val);
+		return null;
+	}
+
+	public Void visitIf(If s) throws ExecutorException {
+		if (s.getCondition().accept(this)) {
+			executeStmts(s.getThenBranch());
+		}
+		else if (s.getElseBranch() != null) {
+			executeStmts(s.getElseBranch());
+		}
+		return null;
+	}
+
+	public Void visitWhile(While s) throws ExecutorException {
+		while (s.getCondition().accept(this)) {
+			executeStmts(s.getBody());
+		}
+		return null;
+	}
+
+	public Void visitRead(Read s) throws ExecutorException {
+		for (Var v : s.getIds()) {
+			if (!inputFile.hasNextInt()) throw new ExecutorException("input file is out of int's to read!");
+			frame.set(slots.slot(v.getSymbol()), inputFile.nextInt());
+		}
+		return null;
+	}
+
+	public Void visitWrite(Write s) throws ExecutorException {
+		for (Var v : s.getIds()) {
+			int slot = slots.slot(v.getSymbol());
+			if (!frame.isDefined(slot)) throw new ExecutorException("can't write value of " + v.getName() + " - it's undefined!");
+			out.println(v.getName()+" = "+frame.get(slot));
+		}
+		return null;
+	}
+
+	public Boolean visitCompare(Compare c) throws ExecutorException {
+		int op1 = c.getLeft().accept(this);
+		int op2 = c.getRight().accept(this);
+		return c.getOperator().test(op1, op2);
+	}
+
+	public Boolean visitNot(Not c) throws ExecutorException {
+		return !c.getOperand().accept(this);
+	}
+
+	/*
+	 * Both sides are always evaluated, as in the Executor.
+	 */
+	public Boolean visitAnd(And c) throws ExecutorException {
+		boolean c1 = c.getLeft().accept(this);
+		boolean c2 = c.getRight().accept(this);
+		return c1 && c2;
+	}
+
+	public Boolean visitOr(Or c) throws ExecutorException {
+		boolean c1 = c.getLeft().accept(this);
+		boolean c2 = c.getRight().accept(this);
+		return c1 || c2;
+	}
+
+	public Integer visitNum(Num e) {
+		return e.getValue();
+	}
+
+	public Integer visitVar(Var e) throws ExecutorException {
+		int slot = slots.slot(e.getSymbol());
+		if (!frame.isDefined(slot)) throw new ExecutorException(e.getName()+" is undefined!");
+		return frame.get(slot);
+	}
+
+	public Integer visitBinOp(BinOp e) throws ExecutorException {
+		int left = e.getLeft().accept(this);
+		int right = e.getRight().accept(this);
+		return e.getOperator().apply(left, right);
+	}
+
+	public Integer visitGroup(Group e) throws ExecutorException {
+		return e.getContents().accept(this);
+	}
+}
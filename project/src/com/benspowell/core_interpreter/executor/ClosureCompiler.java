@@ -0,0 +1,509 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.io.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.parser.NonTerminalKind;
+import com.benspowell.core_interpreter.parser.ParseTree;
+
+/**
+ * CORE Language Executor that compiles the parse tree into closures before
+ * running it. The tree is walked once: every expression becomes an
+ * IntNode, every condition a CondNode and every statement a StmtNode,
+ * bound directly to their variables' Frame slots. Running the program is
+ * then one call on the root StmtNode, with no cursor moves at all.
+ *
+ * Uses of variables that the DefinednessAnalysis proves are defined are
+ * compiled without a check.
+ *
+ * @author Ben Powell
+ *
+ */
+public class ClosureCompiler implements ExecutionEngine {
+
+	/*
+	 * A compiled expression.
+	 */
+	interface IntNode {
+		int eval() throws ExecutorException;
+	}
+
+	/*
+	 * A compiled condition.
+	 */
+	interface CondNode {
+		boolean test() throws ExecutorException;
+	}
+
+	/*
+	 * A compiled statement.
+	 */
+	interface StmtNode {
+		void run() throws ExecutorException;
+	}
+
+	private ParseTree p;
+	private PrintStream out;
+	private Resolution slots;
+	private Definedness definedness;
+	private Frame frame;
+	private Scanner inputFile;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public ClosureCompiler(ParseTree p, Scanner i) {
+		this(System.out, p, i);
+	}
+
+	/**
+	 * Constructor for the ClosureCompiler class
+	 */
+	public ClosureCompiler(PrintStream out, ParseTree fullyInitializedParseTree, Scanner inputFile) {
+		this.out = out;
+		this.p = fullyInitializedParseTree;
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * Run with the program's Resolution, and the DefinednessAnalysis of
+	 * it, already worked out by the caller, instead of working them out
+	 * again. Both must be of this ParseTree.
+	 */
+	public void setAnalysis(Resolution slots, Definedness definedness) {
+		this.slots = slots;
+		this.definedness = definedness;
+	}
+
+	/**
+	 * Compile, then execute, a CORE program.
+	 *
+	 * @throws ExecutorException
+	 */
+	public void executeCoreProgram() throws ExecutorException {
+		// Declarations, and any undeclared variables, are dealt with here.
+		if (slots == null) {
+			slots = Resolver.resolve(p);
+			definedness = DefinednessAnalysis.analyze(p, slots);
+		}
+		frame = new Frame(slots.size());
+
+		p.goAllTheWayBackUp();
+		p.goDownMiddleBranch();
+		StmtNode program = compileStmtSeq();
+		p.goUp();
+
+		program.run();
+	}
+
+	/**
+	 * Compile a statement sequence.
+	 */
+	private StmtNode compileStmtSeq() {
+		List<StmtNode> list = new ArrayList<StmtNode>();
+
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list.add(compileStmt());
+				p.goUp();
+			}
+		}
+		else {
+			// Follow the chain of nested sequences with a loop, then climb back.
+			int depth = 0;
+			while (true) {
+				p.goDownLeftBranch();
+				list.add(compileStmt());
+				p.goUp();
+				if (p.currentAlternative() != 2) break;
+				p.goDownMiddleBranch();
+				depth++;
+			}
+			for (; depth > 0; depth--) p.goUp();
+		}
+
+		if (list.size() == 1) return list.get(0);
+
+		final StmtNode[] stmts = list.toArray(new StmtNode[list.size()]);
+		return () -> {
+			for (StmtNode s : stmts) s.run();
+		};
+	}
+
+	/**
+	 * Compile an ID list, giving the slots of its variables.
+	 */
+	private int[] compileIdList() {
+		List<Integer> list = new ArrayList<Integer>();
+
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list.add(compileId());
+				p.goUp();
+			}
+		}
+		else {
+			// Follow the chain of nested lists with a loop, then climb back.
+			int depth = 0;
+			while (true) {
+				p.goDownLeftBranch();
+				list.add(compileId());
+				p.goUp();
+				if (p.currentAlternative() != 2) break;
+				p.goDownMiddleBranch();
+				depth++;
+			}
+			for (; depth > 0; depth--) p.goUp();
+		}
+
+		int[] ids = new int[list.size()];
+		for (int i = 0; i < ids.length; i++) ids[i] = list.get(i);
+		return ids;
+	}
+
+	/**
+	 * Compile a statement.
+	 */
+	private StmtNode compileStmt() {
+		int alternative = p.currentAlternative();
+
+		p.goDownLeftBranch();
+		StmtNode s;
+		switch (alternative) {
+		case 1:
+			s = compileAss();
+			break;
+		case 2:
+			s = compileIf();
+			break;
+		case 3:
+			s = compileLoop();
+			break;
+		case 4:
+			s = compileIn();
+			break;
+		default:
+			s = compileOut();
+			break;
+		}
+		p.goUp();
+
+		return s;
+	}
+
+	/**
+	 * Compile an assignment.
+	 */
+	private StmtNode compileAss() {
+		p.goDownLeftBranch();
+		final int slot = compileId();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		final IntNode value = compileExp();
+		p.goUp();
+
+		final Frame f = frame;
+		return () -> f.set(slot, value.eval());
+	}
+
+	/**
+	 * Compile an if.
+	 */
+	private StmtNode compileIf() {
+		p.goDownLeftBranch();
+		final CondNode cond = compileCond();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		final StmtNode thenBranch = compileStmtSeq();
+		p.goUp();
+
+		if (p.currentAlternative() != 2) {
+			return () -> {
+				if (cond.test()) thenBranch.run();
+			};
+		}
+
+		p.goDownRightBranch();
+		final StmtNode elseBranch = compileStmtSeq();
+		p.goUp();
+
+		return () -> {
+			if (cond.test()) thenBranch.run();
+			else elseBranch.run();
+		};
+	}
+
+	/**
+	 * Compile a loop.
+	 */
+	private StmtNode compileLoop() {
+		p.goDownLeftBranch();
+		final CondNode cond = compileCond();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		final StmtNode body = compileStmtSeq();
+		p.goUp();
+
+		return () -> {
+			while (cond.test()) body.run();
+		};
+	}
+
+	/**
+	 * Compile an in statement.
+	 */
+	private StmtNode compileIn() {
+		p.goDownLeftBranch();
+		final int[] ids = compileIdList();
+		p.goUp();
+
+		final Frame f = frame;
+		final Scanner in = inputFile;
+		return () -> {
+			for (int slot : ids) {
+				if (!in.hasNextInt()) throw new ExecutorException("input file is out of int's to read!");
+				f.set(slot, in.nextInt());
+			}
+		};
+	}
+
+	/**
+	 * Compile an out statement.
+	 */
+	private StmtNode compileOut() {
+		boolean proven = definedness.isProven(p.currentNodeId());
+
+		p.goDownLeftBranch();
+		final int[] ids = compileIdList();
+		p.goUp();
+
+		final Frame f = frame;
+		final Resolution names = slots;
+		final PrintStream o = out;
+		if (proven) return () -> {
+			for (int slot : ids) o.println(names.name(slot)+" = "+f.get(slot));
+		};
+		return () -> {
+			for (int slot : ids) {
+				if (!f.isDefined(slot)) throw new ExecutorException("can't write value of " + names.name(slot) + " - it's undefined!");
+				o.println(names.name(slot)+" = "+f.get(slot));
+			}
+		};
+	}
+
+	/**
+	 * Compile a condition. The right side of && and || is skipped, as in
+	 * the Executor, only if it can't fail.
+	 */
+	private CondNode compileCond() {
+		int alternative = p.currentAlternative();
+
+		p.goDownLeftBranch();
+		if (alternative == 1) {
+			CondNode comp = compileComp();
+			p.goUp();
+			return comp;
+		}
+		final CondNode c1 = compileCond();
+		p.goUp();
+
+		if (alternative == 2) return () -> !c1.test();
+
+		p.goDownMiddleBranch();
+		boolean proven = definedness.isProven(p.currentNodeId());
+		final CondNode c2 = compileCond();
+		p.goUp();
+
+		if (proven) {
+			if (alternative == 3) return () -> c1.test() && c2.test();
+			return () -> c1.test() || c2.test();
+		}
+		if (alternative == 3) {
+			return () -> {
+				boolean left = c1.test();
+				boolean right = c2.test();
+				return left && right;
+			};
+		}
+		return () -> {
+			boolean left = c1.test();
+			boolean right = c2.test();
+			return left || right;
+		};
+	}
+
+	/**
+	 * Compile a comparison.
+	 */
+	private CondNode compileComp() {
+		p.goDownLeftBranch();
+		final IntNode a = compileOp();
+		p.goUp();
+
+		p.goDownRightBranch();
+		final IntNode b = compileOp();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		int alternative = p.currentAlternative();
+		p.goUp();
+
+		switch (alternative) {
+		case 1:
+			return () -> a.eval() != b.eval();
+		case 2:
+			return () -> a.eval() == b.eval();
+		case 3:
+			return () -> a.eval() < b.eval();
+		case 4:
+			return () -> a.eval() > b.eval();
+		case 5:
+			return () -> a.eval() <= b.eval();
+		default:
+			return () -> a.eval() >= b.eval();
+		}
+	}
+
+	/**
+	 * Compile an expression.
+	 */
+	private IntNode compileExp() {
+		if (p.currentAlternative() == ParseTree.SUM) return compileSum();
+
+		p.goDownLeftBranch();
+		final IntNode a = compileTrm();
+		p.goUp();
+
+		switch (p.currentAlternative()) {
+		case 2: {
+			p.goDownMiddleBranch();
+			final IntNode b = compileExp();
+			p.goUp();
+			return () -> a.eval() + b.eval();
+		}
+		case 3: {
+			p.goDownMiddleBranch();
+			final IntNode b = compileExp();
+			p.goUp();
+			return () -> a.eval() - b.eval();
+		}
+		default:
+			return a;
+		}
+	}
+
+	/**
+	 * Compile a term.
+	 */
+	private IntNode compileTrm() {
+		if (p.currentAlternative() == ParseTree.PRODUCT) {
+			final IntNode[] factors = new IntNode[p.childCount()];
+			for (int i = 0; i < factors.length; i++) {
+				p.goDownBranch(i);
+				factors[i] = compileOp();
+				p.goUp();
+			}
+			return () -> {
+				int result = 1;
+				for (IntNode factor : factors) result *= factor.eval();
+				return result;
+			};
+		}
+
+		p.goDownLeftBranch();
+		final IntNode a = compileOp();
+		p.goUp();
+
+		if (p.currentAlternative() != 2) return a;
+
+		p.goDownMiddleBranch();
+		final IntNode b = compileTrm();
+		p.goUp();
+		return () -> a.eval() * b.eval();
+	}
+
+	/**
+	 * Compile an n-ary sum. Every '-' flips the sign of all the operands
+	 * after it, since CORE nests subtraction to the right; the signs are
+	 * worked out here, once.
+	 */
+	private IntNode compileSum() {
+		int n = p.childCount();
+		final IntNode[] operands = new IntNode[n];
+		final boolean[] negative = new boolean[n];
+
+		boolean negate = false;
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			if (p.getCurrentOperator() == ParseTree.MINUS) negate = !negate;
+			negative[i] = negate;
+			operands[i] = p.currentNTNo() == NonTerminalKind.TRM ? compileTrm() : compileOp();
+			p.goUp();
+		}
+
+		return () -> {
+			int result = 0;
+			for (int i = 0; i < operands.length; i++) {
+				int v = operands[i].eval();
+				result += negative[i] ? -v : v;
+			}
+			return result;
+		};
+	}
+
+	/**
+	 * Compile an operator.
+	 */
+	private IntNode compileOp() {
+		int alternative = p.currentAlternative();
+		boolean proven = definedness.isProven(p.currentNodeId());
+
+		p.goDownLeftBranch();
+		IntNode e;
+		switch (alternative) {
+		case 1: {
+			final int value = p.getCurrentIntVal();
+			e = () -> value;
+			break;
+		}
+		case 2: {
+			final int slot = compileId();
+			final Frame f = frame;
+			final String name = slots.name(slot);
+			if (proven) {
+				e = () -> f.get(slot);
+				break;
+			}
+			e = () -> {
+				if (!f.isDefined(slot)) throw new ExecutorException(name+" is undefined!");
+				return f.get(slot);
+			};
+			break;
+		}
+		default:
+			e = compileExp();
+			break;
+		}
+		p.goUp();
+
+		return e;
+	}
+
+	/**
+	 * Compile an ID, giving its variable's slot.
+	 */
+	private int compileId() {
+		return slots.slot(p.getCurrentSymbol());
+	}
+}
@@ -0,0 +1,74 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * What the DefinednessAnalysis proved about a parsed program: which uses
+ * of variables are sure to find them defined, so need no check when they
+ * run, and which are sure to fail if they are ever reached. Uses are
+ * looked up by the ParseTree's node ids: an <op> that reads a variable,
+ * and an <out> statement or a <cond>, which is proven when all of its
+ * uses are.
+ *
+ * @author Ben Powell
+ */
+public final class Definedness {
+
+	private final BitSet proven = new BitSet();
+	private final List<String> errors = new ArrayList<String>();
+	private int uses = 0;
+	private int provenUses = 0;
+
+	/*
+	 * Constructor for a Definedness with nothing proven yet.
+	 */
+	Definedness() {
+	}
+
+	/*
+	 * Record one use, and whether it's proven.
+	 */
+	void use(boolean isProven) {
+		uses++;
+		if (isProven) provenUses++;
+	}
+
+	void prove(int nodeId) {
+		proven.set(nodeId);
+	}
+
+	void fail(String message) {
+		errors.add(message);
+	}
+
+	/**
+	 * Whether the node's variables are sure to be defined when it runs.
+	 */
+	public boolean isProven(int nodeId) {
+		return proven.get(nodeId);
+	}
+
+	/**
+	 * How many uses of variables the program has.
+	 */
+	public int getUses() {
+		return uses;
+	}
+
+	/**
+	 * How many of them are proven, and need no check.
+	 */
+	public int getProvenUses() {
+		return provenUses;
+	}
+
+	/**
+	 * The errors of the uses that are sure to fail if they're reached, in
+	 * the order they're written.
+	 */
+	public List<String> getErrors() {
+		return errors;
+	}
+}
@@ -0,0 +1,378 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.benspowell.core_interpreter.parser.NonTerminalKind;
+import com.benspowell.core_interpreter.parser.ParseTree;
+
+/**
+ * Works out, before a parsed program runs, which of its uses of variables
+ * are sure to find them defined. It follows the program's control flow,
+ * keeping two sets of variables: those defined on every path to the
+ * current point, and those defined on some path. A use of a variable in
+ * the first set is proven, and needs no check; a use of one that isn't in
+ * the second is sure to fail if it's reached.
+ *
+ * A variable is defined once it's assigned or read in, and once a use of
+ * it has been checked, since the program can't get past a failed check.
+ * After an if, a variable is only sure to be defined if both branches
+ * define it; a loop might not go round at all, and the variables it
+ * assigns might be defined when its condition and body run again. A use in
+ * a condition doesn't count for the rest of the condition, or after it, so
+ * the proof doesn't depend on how much of a condition is evaluated.
+ *
+ * Undeclared variables are the Resolver's business, so the program must
+ * have been resolved first.
+ *
+ * @author Ben Powell
+ */
+public final class DefinednessAnalysis {
+
+	private final ParseTree p;
+	private final Resolution slots;
+	private final Definedness result = new Definedness();
+
+	private DefinednessAnalysis(ParseTree p, Resolution slots) {
+		this.p = p;
+		this.slots = slots;
+	}
+
+	/**
+	 * Analyze the program in a fully initialized, resolved ParseTree.
+	 */
+	public static Definedness analyze(ParseTree p, Resolution slots) {
+		DefinednessAnalysis analysis = new DefinednessAnalysis(p, slots);
+
+		p.goAllTheWayBackUp();
+		p.goDownMiddleBranch();
+		analysis.stmtSeq(new BitSet(), new BitSet());
+		p.goAllTheWayBackUp();
+
+		return analysis.result;
+	}
+
+	/*
+	 * Analyze a statement sequence. Each statement updates the variables
+	 * that must be, and may be, defined.
+	 */
+	private void stmtSeq(BitSet must, BitSet may) {
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				stmt(must, may);
+				p.goUp();
+			}
+			return;
+		}
+
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			stmt(must, may);
+			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+	}
+
+	private void stmt(BitSet must, BitSet may) {
+		int alternative = p.currentAlternative();
+		p.goDownLeftBranch();
+		switch (alternative) {
+		case 1:
+			ass(must, may);
+			break;
+		case 2:
+			ifStmt(must, may);
+			break;
+		case 3:
+			loop(must, may);
+			break;
+		case 4:
+			in(must, may);
+			break;
+		case 5:
+			out(must, may);
+			break;
+		}
+		p.goUp();
+	}
+
+	private void ass(BitSet must, BitSet may) {
+		p.goDownLeftBranch();
+		int slot = id();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		exp(must, may);
+		p.goUp();
+
+		must.set(slot);
+		may.set(slot);
+	}
+
+	private void ifStmt(BitSet must, BitSet may) {
+		p.goDownLeftBranch();
+		cond(must, may);
+		p.goUp();
+
+		BitSet thenMust = (BitSet) must.clone();
+		BitSet thenMay = (BitSet) may.clone();
+		p.goDownMiddleBranch();
+		stmtSeq(thenMust, thenMay);
+		p.goUp();
+
+		if (p.currentAlternative() == 2) {
+			BitSet elseMust = (BitSet) must.clone();
+			BitSet elseMay = (BitSet) may.clone();
+			p.goDownRightBranch();
+			stmtSeq(elseMust, elseMay);
+			p.goUp();
+
+			thenMust.and(elseMust);
+			must.or(thenMust);
+			may.or(elseMay);
+		}
+		may.or(thenMay);
+	}
+
+	/*
+	 * Analyze a loop. Its condition and body see what's defined before it
+	 * for sure, and perhaps anything it assigns, from going round before.
+	 */
+	private void loop(BitSet must, BitSet may) {
+		p.goDownMiddleBranch();
+		assigned(may);
+		p.goUp();
+
+		p.goDownLeftBranch();
+		cond(must, may);
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		stmtSeq((BitSet) must.clone(), (BitSet) may.clone());
+		p.goUp();
+	}
+
+	private void in(BitSet must, BitSet may) {
+		p.goDownLeftBranch();
+		for (int slot : idList()) {
+			must.set(slot);
+			may.set(slot);
+		}
+		p.goUp();
+	}
+
+	/*
+	 * Analyze an out statement, which is proven if all of its ids are.
+	 */
+	private void out(BitSet must, BitSet may) {
+		int node = p.currentNodeId();
+		boolean allProven = true;
+
+		p.goDownLeftBranch();
+		for (int slot : idList()) {
+			boolean isProven = must.get(slot);
+			result.use(isProven);
+			allProven &= isProven;
+			if (!may.get(slot)) result.fail("can't write value of " + slots.name(slot) + " - it's undefined!");
+			must.set(slot);
+			may.set(slot);
+		}
+		p.goUp();
+
+		if (allProven) result.prove(node);
+	}
+
+	/*
+	 * Analyze a condition. Each comparison is analyzed on its own, from
+	 * what's defined before the condition. A condition all of whose uses
+	 * are proven can't fail, so it needn't be evaluated at all.
+	 */
+	private void cond(BitSet must, BitSet may) {
+		int node = p.currentNodeId();
+		int unproven = result.getUses() - result.getProvenUses();
+
+		switch (p.currentAlternative()) {
+		case 1:
+			p.goDownLeftBranch();
+			comp((BitSet) must.clone(), (BitSet) may.clone());
+			p.goUp();
+			break;
+		case 2:
+			p.goDownLeftBranch();
+			cond(must, may);
+			p.goUp();
+			break;
+		default:
+			p.goDownLeftBranch();
+			cond(must, may);
+			p.goUp();
+
+			p.goDownMiddleBranch();
+			cond(must, may);
+			p.goUp();
+			break;
+		}
+
+		if (result.getUses() - result.getProvenUses() == unproven) result.prove(node);
+	}
+
+	private void comp(BitSet must, BitSet may) {
+		p.goDownLeftBranch();
+		op(must, may);
+		p.goUp();
+
+		p.goDownRightBranch();
+		op(must, may);
+		p.goUp();
+	}
+
+	/*
+	 * Analyze an expression, in the order the Executor evaluates it.
+	 */
+	private void exp(BitSet must, BitSet may) {
+		if (p.currentAlternative() == ParseTree.SUM) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				if (p.currentNTNo() == NonTerminalKind.TRM) trm(must, may);
+				else op(must, may);
+				p.goUp();
+			}
+			return;
+		}
+
+		p.goDownLeftBranch();
+		trm(must, may);
+		p.goUp();
+
+		if (p.currentAlternative() != 1) {
+			p.goDownMiddleBranch();
+			exp(must, may);
+			p.goUp();
+		}
+	}
+
+	private void trm(BitSet must, BitSet may) {
+		if (p.currentAlternative() == ParseTree.PRODUCT) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				op(must, may);
+				p.goUp();
+			}
+			return;
+		}
+
+		p.goDownLeftBranch();
+		op(must, may);
+		p.goUp();
+
+		if (p.currentAlternative() == 2) {
+			p.goDownMiddleBranch();
+			trm(must, may);
+			p.goUp();
+		}
+	}
+
+	private void op(BitSet must, BitSet may) {
+		switch (p.currentAlternative()) {
+		case 2:
+			int node = p.currentNodeId();
+			p.goDownLeftBranch();
+			int slot = id();
+			p.goUp();
+
+			boolean isProven = must.get(slot);
+			result.use(isProven);
+			if (isProven) result.prove(node);
+			if (!may.get(slot)) result.fail(slots.name(slot) + " is undefined!");
+			must.set(slot);
+			may.set(slot);
+			break;
+		case 3:
+			p.goDownLeftBranch();
+			exp(must, may);
+			p.goUp();
+			break;
+		}
+	}
+
+	/*
+	 * The slots of the variables in an ID list.
+	 */
+	private int[] idList() {
+		int[] list = new int[4];
+		int size = 0;
+
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			list = new int[n];
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list[size++] = id();
+				p.goUp();
+			}
+			return list;
+		}
+
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			if (size == list.length) list = Arrays.copyOf(list, size * 2);
+			list[size++] = id();
+			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+
+		return Arrays.copyOf(list, size);
+	}
+
+	private int id() {
+		return slots.slot(p.getCurrentSymbol());
+	}
+
+	/*
+	 * Add the variables assigned, or read in, anywhere under the cursor.
+	 * The subtree is walked with a stack, like the Resolver's walk.
+	 */
+	private void assigned(BitSet assigned) {
+		int[] nextChild = new int[64];
+		boolean[] assigning = new boolean[64];
+		int depth = 0;
+
+		while (true) {
+			if (nextChild[depth] == 0 && assigning[depth] && p.currentNTNo() == NonTerminalKind.ID) {
+				assigned.set(id());
+			}
+
+			if (nextChild[depth] < p.childCount()) {
+				int i = nextChild[depth]++;
+				NonTerminalKind parent = p.currentNTNo();
+				boolean childAssigning = parent == NonTerminalKind.ASS ? i == 0
+						: parent == NonTerminalKind.IN || parent == NonTerminalKind.ID_LIST && assigning[depth];
+
+				p.goDownBranch(i);
+				if (++depth == nextChild.length) {
+					nextChild = Arrays.copyOf(nextChild, depth * 2);
+					assigning = Arrays.copyOf(assigning, depth * 2);
+				}
+				nextChild[depth] = 0;
+				assigning[depth] = childAssigning;
+			}
+			else {
+				if (depth == 0) break;
+				p.goUp();
+				depth--;
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.benspowell.core_interpreter.executor;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.parser.ParseTree;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Tests for the DefinednessAnalysis. Each check analyzes the body of a
+ * small program, and compares how many of its uses of variables were
+ * proven, and which errors are sure to happen, with what's expected.
+ * Prints every failed check, and exits with status 1 if there were any.
+ *
+ * @author Ben Powell
+ */
+public final class DefinednessTest {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private DefinednessTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			straightLine();
+			branches();
+			loops();
+			conditions();
+		}
+		catch (ParseException | ExecutorException e) {
+			fail(e.getMessage());
+		}
+
+		finish("DefinednessTest");
+	}
+
+	/*
+	 * Uses after an assignment are proven; a use of a variable nothing
+	 * has assigned is sure to fail.
+	 */
+	private static void straightLine() throws ParseException, ExecutorException {
+		analyze("assigned, then used", "X = 1; Y = X + X; write Y;", "3 of 3 proven, errors []");
+		analyze("read, then used", "read X; Y = X * 2; write X, Y;", "3 of 3 proven, errors []");
+		analyze("never assigned", "write Y;", "0 of 1 proven, errors [can't write value of Y - it's undefined!]");
+		analyze("checked once", "X = Y; I = Y;", "1 of 2 proven, errors [Y is undefined!]");
+	}
+
+	/*
+	 * After an if, a variable is only proven if both branches define it.
+	 */
+	private static void branches() throws ParseException, ExecutorException {
+		analyze("assigned in one branch", "read X; if (X > 0) then Y = 1; end; write Y;",
+				"1 of 2 proven, errors []");
+		analyze("assigned in both branches", "read X; if (X > 0) then Y = 1; else Y = 2; end; write Y;",
+				"2 of 2 proven, errors []");
+	}
+
+	/*
+	 * A loop might not go round, so what its body assigns isn't proven
+	 * after it; and what its body assigns late in one iteration might be
+	 * defined early in the next, so a use there is neither proven nor
+	 * sure to fail. What's defined before the loop stays proven in it.
+	 */
+	private static void loops() throws ParseException, ExecutorException {
+		analyze("assigned in a loop, used after it", "I = 0; while (I < 3) loop S = I; I = I + 1; end; X = S;",
+				"3 of 4 proven, errors []");
+		analyze("carried round a loop", "I = 0; while (I < 3) loop if (I > 0) then write S; end; S = I; I = I + 1; end;",
+				"4 of 5 proven, errors []");
+		analyze("carried round a loop into its condition",
+				"read I; S = 0; while (S < I) loop if (S > 1) then X = X + S; end; X = S; S = S + 1; end;",
+				"6 of 7 proven, errors []");
+		analyze("undefined in a loop, whatever goes round", "I = 0; while (I < 3) loop X = Y; I = I + 1; end;",
+				"2 of 3 proven, errors [Y is undefined!]");
+	}
+
+	/*
+	 * A use in a condition isn't counted for the rest of the condition,
+	 * or after it, since it might not be evaluated.
+	 */
+	private static void conditions() throws ParseException, ExecutorException {
+		analyze("used on the right of &&", "X = 1; if [(X > 0) && (Y > 0)] then write X; end; X = Y;",
+				"2 of 4 proven, errors [Y is undefined!, Y is undefined!]");
+		analyze("used twice in a condition", "X = 1; if [(Y > 0) || (Y < 0)] then write X; end; X = Y;",
+				"1 of 4 proven, errors [Y is undefined!, Y is undefined!, Y is undefined!]");
+	}
+
+	/*
+	 * Check what the analysis makes of a program body over I, S, X and Y.
+	 */
+	private static void analyze(String name, String body, String expected) throws ParseException, ExecutorException {
+		ParseTree p = parse("program int I, S, X, Y; begin " + body + " end");
+		Definedness d = DefinednessAnalysis.analyze(p, Resolver.resolve(p));
+		checkEquals(name, expected, d.getProvenUses() + " of " + d.getUses() + " proven, errors " + d.getErrors());
+	}
+}
@@ -0,0 +1,324 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.io.PrintStream;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.Program;
+import com.benspowell.core_interpreter.benchmark.SyntheticPrograms;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.jvm.JvmCompiler;
+import com.benspowell.core_interpreter.jvm.JvmEngine;
+import com.benspowell.core_interpreter.jvm.JvmLoopTier;
+import com.benspowell.core_interpreter.jvm.MethodHandleCompiler;
+import com.benspowell.core_interpreter.parser.AstBuilder;
+import com.benspowell.core_interpreter.parser.FlatParseTree;
+import com.benspowell.core_interpreter.parser.LinkedParseTree;
+import com.benspowell.core_interpreter.parser.ParseTree;
+import com.benspowell.core_interpreter.parser.Parser;
+import com.benspowell.core_interpreter.vm.BytecodeCompiler;
+import com.benspowell.core_interpreter.vm.Peephole;
+import com.benspowell.core_interpreter.vm.VirtualMachine;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Conformance tests for the execution engines. Runs each program on every
+ * engine, and checks that it writes the same output, and fails with the
+ * same error after it, as on the tree Executor. Prints every engine that
+ * differs, and exits with status 1 if there were any.
+ *
+ * @author Ben Powell
+ */
+public final class EngineTest {
+
+	private static final String[] ENGINES = { "tiered", "ast", "spec", "closure", "vm", "jvm", "mh" };
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private EngineTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			conform("wrapping arithmetic",
+					"program int X, Y; begin X = 2147483647; Y = X + 1; write Y; Y = X * X - 3; write X, Y; end", "");
+			conform("input",
+					"program int X, Y, Z; begin read X, Y; Z = X * (Y - 4); write X, Y, Z; end", "7 -12");
+			conform("hot loop with junctions",
+					"program int I, S, T; begin I = 0; S = 0; T = 0;"
+					+ " while (I < 5000) loop"
+					+ " if [(I > 2500) && !(I == 4000)] then S = S + I; else T = T + 1; end;"
+					+ " if [(S > 100000) || (T > 2400)] then T = T + 2; end;"
+					+ " I = I + 1; end; write I, S, T; end", "");
+			conform("nested loops",
+					"program int I, J, N; begin I = 0; N = 0; while (I < 60) loop J = I;"
+					+ " while (J < 60) loop N = N + I * J; J = J + 1; end; I = I + 1; end; write N; end", "");
+			conform("undefined variable after output",
+					"program int X, Y; begin X = 3; write X; Y = X + Y; write Y; end", "");
+			conform("undefined variable in a hot loop",
+					"program int I, Y; begin I = 0; while (I < 3000) loop"
+					+ " if (I == 2999) then write Y; end; I = I + 1; end; end", "");
+			conform("undefined variable in a condition",
+					"program int X, Y; begin X = 1; if [(X > 0) && (Y > 0)] then write X; end; end", "");
+			conform("undeclared variable",
+					"program int X; begin X = 1; write X; Z = 2; end", "");
+			conform("variable declared twice",
+					"program int X; int X; begin X = 1; end", "");
+			conform("input exhausted",
+					"program int X, Y; begin read X; write X; read Y; write Y; end", "5");
+			for (long seed = 1; seed <= 10; seed++) {
+				conform("synthetic program " + seed, SyntheticPrograms.generate(60, seed), "");
+			}
+			conform("synthetic loop", SyntheticPrograms.loop(20000), "");
+			sharedAst();
+			closureShapes();
+			jvmClasses();
+			methodHandles();
+			specializing();
+			junctions();
+		}
+		catch (ParseException e) {
+			fail(e.getMessage());
+		}
+
+		finish("EngineTest");
+	}
+
+	/*
+	 * Run a program on every engine, and compare what it did with what it
+	 * did on the tree Executor.
+	 */
+	private static void conform(String name, String program, String input) throws ParseException {
+		String expected = run("tree", program, input);
+		for (String engine : ENGINES) {
+			checkEquals(name + " on " + engine, expected, run(engine, program, input));
+		}
+	}
+
+	/*
+	 * An AST has no cursor, so one Program runs the same again, and on
+	 * several threads at once.
+	 */
+	private static void sharedAst() throws ParseException {
+		String program = SyntheticPrograms.generate(60, 3);
+		String expected = run("tree", program, "");
+		Program ast = AstBuilder.build(parse(program));
+
+		checkEquals("an AST run once", expected, output("", (out, in) -> new AstExecutor(out, ast, in)));
+		checkEquals("an AST run again", expected, output("", (out, in) -> new AstExecutor(out, ast, in)));
+
+		String[] outputs = new String[8];
+		Thread[] threads = new Thread[outputs.length];
+		for (int i = 0; i < threads.length; i++) {
+			int t = i;
+			threads[i] = new Thread(() -> outputs[t] = output("", (out, in) -> new AstExecutor(out, ast, in)));
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			try {
+				threads[i].join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			checkEquals("an AST run on thread " + i, expected, outputs[i]);
+		}
+	}
+
+	/*
+	 * The ClosureCompiler compiles whatever tree it's given, flat or
+	 * linked, with sequences and expressions in any shape the Parser
+	 * builds, to closures that run as the tree Executor does.
+	 */
+	private static void closureShapes() throws ParseException {
+		String[] programs = {
+			"program int X, Y, Z, W; begin read X; Y = 0; Z = 1;"
+					+ " while (X > 0) loop Y = Y - X * 2 + (X - 1) * 3 * Z; Z = Z + 1; X = X - 1; end;"
+					+ " if [!(Y == 0) || [(X < 1) && (Y >= 2)]] then write X, Y, Z; end; write W; end",
+			SyntheticPrograms.generate(60, 5),
+			SyntheticPrograms.loop(300),
+		};
+		for (int i = 0; i < programs.length; i++) {
+			String expected = run("tree", programs[i], "6");
+			for (int shape = 0; shape < 8; shape++) {
+				boolean flat = (shape & 1) != 0, iterative = (shape & 2) != 0, nary = (shape & 4) != 0;
+				Parser parser = parser(programs[i], flat ? new FlatParseTree() : new LinkedParseTree());
+				parser.setIterativeSequences(iterative);
+				parser.setNaryExpressions(nary);
+				ParseTree tree = parser.coreProgram();
+				checkEquals("program " + i + " on closure" + (flat ? ", flat" : "") + (iterative ? ", iterative" : "")
+						+ (nary ? ", n-ary" : ""), expected, output("6", (out, in) -> new ClosureCompiler(out, tree, in)));
+			}
+		}
+	}
+
+	/*
+	 * Each while loop is a method of the compiled class, so variables
+	 * first defined, or found undefined, in an inner loop must get back to
+	 * the loops around it. A program too big for one class isn't compiled,
+	 * and the jvm engine runs it on the VirtualMachine instead.
+	 */
+	private static void jvmClasses() throws ParseException {
+		conform("a variable first defined in an inner loop",
+				"program int I, J, Y; begin I = 0; while (I < 3) loop J = 0;"
+				+ " while (J < 2) loop Y = I * 10 + J; J = J + 1; end; write Y; I = I + 1; end; write J, Y; end", "");
+		conform("an undefined variable three loops deep",
+				"program int I, J, K, Y; begin I = 0; while (I < 2) loop J = 0; while (J < 2) loop K = 0;"
+				+ " while (K < 2) loop if [(I == 1) && (K == 1)] then Y = Y + K; end; K = K + 1; end;"
+				+ " J = J + 1; end; write I; I = I + 1; end; end", "");
+		conform("reading in a loop",
+				"program int I, X; begin I = 0; while (I < 4) loop read X; write X; I = I + 1; end; end", "1 2 3");
+
+		try {
+			Program small = parseAst("program int X; begin X = 1; while (X < 5) loop X = X + 1; end; write X; end");
+			check("a small program compiles to a class", JvmCompiler.compile(small, Resolver.resolve(small)) != null);
+
+			Parser parser = parser("program int X; begin X = 0; " + "X = X + 1; ".repeat(5000) + "write X; end");
+			parser.setIterativeSequences(true);
+			ParseTree tree = parser.coreProgram();
+			Program big = AstBuilder.build(tree);
+			check("5000 statements are too big for a class", JvmCompiler.compile(big, Resolver.resolve(big)) == null);
+			checkEquals("5000 statements on jvm", output("", (out, in) -> new Executor(out, tree, in)),
+					output("", (out, in) -> new JvmEngine(out, big, in)));
+		}
+		catch (ExecutorException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/*
+	 * The mh engine's handles evaluate operands left to right, so the
+	 * first undefined one is the one reported, and a program builds into
+	 * one handle however deep its expressions or long its body.
+	 */
+	private static void methodHandles() throws ParseException {
+		String program = "program int X, Y, Z; begin Z = 1; write Z; Z = X * Y + Y; end";
+		conform("operands left to right", program, "");
+		check("the left operand is reported on mh", run("mh", program, "").endsWith("X is undefined!"));
+
+		conform("a deeply nested expression",
+				"program int X, Z; begin X = 2; Z = " + "(".repeat(150) + "X" + " + 1) * 1".repeat(150) + "; write Z; end", "");
+		conform("a long body",
+				"program int X; begin X = 0; " + "X = X + 3; if (X > 100) then X = X - 100; end; ".repeat(500)
+				+ "write X; end", "");
+	}
+
+	/*
+	 * The spec engine's nodes rewrite themselves once each, the first time
+	 * they run, however often they run after; specialized nodes keep the
+	 * Executor's errors; and a loop that reads input isn't a TightLoop.
+	 */
+	private static void specializing() throws ParseException {
+		int[] iterations = { 2000, 20000, 200000 };
+		int[] rewrites = new int[iterations.length];
+		for (int i = 0; i < iterations.length; i++) {
+			Program ast = parseAst(SyntheticPrograms.loop(iterations[i]));
+			SpecializingExecutor[] spec = new SpecializingExecutor[1];
+			output("", (out, in) -> spec[0] = new SpecializingExecutor(out, ast, in));
+			rewrites[i] = spec[0].getRewrites();
+		}
+		check("rewrites don't grow with iterations: " + rewrites[0] + ", " + rewrites[1] + ", " + rewrites[2],
+				rewrites[0] > 0 && rewrites[0] == rewrites[1] && rewrites[1] == rewrites[2]);
+
+		conform("an increment of an undefined variable",
+				"program int I, Y; begin I = 0; while (I < 10) loop if (I == 5) then Y = Y + 1; end;"
+				+ " write I; I = I + 1; end; end", "");
+		conform("a variable compared with a constant, undefined",
+				"program int I, Y; begin I = 1; write I; while (Y < 3) loop Y = Y + 1; end; end", "");
+		conform("a loop that reads input runs out of it",
+				"program int I, X, S; begin I = 0; S = 0; while (I < 5) loop read X; S = S + X; write S; I = I + 1; end; end",
+				"4 5 6");
+	}
+
+	/*
+	 * An && or || skips its second side once the first decides, but only
+	 * if the second side can't fail, so every engine still fails where
+	 * the others do. With adaptive conditions, the tree Executor puts the
+	 * side that decides more often first, where both sides can't fail.
+	 */
+	private static void junctions() throws ParseException {
+		conform("&& decided on the left, undefined on the right",
+				"program int X, Y; begin X = 1; write X; if [(X < 0) && (Y > 0)] then write X; end; end", "");
+		conform("|| decided on the left, undefined on the right",
+				"program int X, Y; begin X = 1; write X; if [(X > 0) || (Y > 0)] then write X; end; end", "");
+
+		String decisive = "program int I, S; begin I = 0; S = 0; while (I < 1000) loop"
+				+ " if [(I > 0) && (I > 990)] then S = S + I; end; I = I + 1; end; write S; end";
+		String expected = run("tree", decisive, "");
+		String profile = conditionProfile(decisive, false, expected);
+		check("&& short-circuited when its left side decides: " + profile,
+				profile.startsWith("&& and || evaluated: 1000, short-circuited: 1\n"));
+		profile = conditionProfile(decisive, true, expected);
+		check("adaptive && puts its more decisive right side first: " + profile,
+				profile.startsWith("&& and || evaluated: 1000, short-circuited: 990\n") && profile.contains("right first 998"));
+
+		String failing = "program int I, S, Y; begin I = 0; S = 0; while (I < 1000) loop"
+				+ " if [(I > 0) && [(I > 990) && (Y > 0)]] then S = S + I; end; I = I + 1; end; write S; end";
+		conform("a junction that might fail", failing, "");
+		profile = conditionProfile(failing, true, run("tree", failing, ""));
+		check("adaptive && keeps a side that might fail in place: " + profile,
+				profile.contains("right first 0 (not reorderable)") && profile.contains("short-circuited: 0\n"));
+	}
+
+	/*
+	 * The condition profile of a program run on the tree Executor, with
+	 * adaptive conditions or without, after checking its output.
+	 */
+	private static String conditionProfile(String program, boolean adaptive, String expected) throws ParseException {
+		ParseTree tree = parse(program);
+		Executor[] executor = new Executor[1];
+		String output = output("", (out, in) -> {
+			executor[0] = new Executor(out, tree, in);
+			executor[0].setConditionProfiling(true);
+			executor[0].setAdaptiveConditions(adaptive);
+			return executor[0];
+		});
+		checkEquals("output with" + (adaptive ? "" : "out") + " adaptive conditions", expected, output);
+		return executor[0].getConditionProfile();
+	}
+
+	/*
+	 * What a program writes on an engine, followed by the error it fails
+	 * with, if it does.
+	 */
+	private static String run(String engine, String program, String input) throws ParseException {
+		ParseTree tree = parse(program);
+		return output(input, (out, in) -> createEngine(engine, out, tree, in));
+	}
+
+	/*
+	 * The engine with the given name, as in the Interpreter's --engine.
+	 */
+	private static ExecutionEngine createEngine(String name, PrintStream out, ParseTree tree, Scanner input)
+			throws ExecutorException {
+		if (name.equals("tree")) return new Executor(out, tree, input);
+		if (name.equals("tiered")) {
+			Executor executor = new Executor(out, tree, input);
+			executor.setTiering(new JvmLoopTier(out, input), Executor.DEFAULT_TIERING_THRESHOLD);
+			return executor;
+		}
+		if (name.equals("closure")) return new ClosureCompiler(out, tree, input);
+
+		Program ast = AstBuilder.build(tree);
+		switch (name) {
+		case "ast":
+			return new AstExecutor(out, ast, input);
+		case "spec":
+			return new SpecializingExecutor(out, ast, input);
+		case "vm":
+			return new VirtualMachine(out, Peephole.optimize(BytecodeCompiler.compile(ast)), input);
+		case "jvm":
+			return new JvmEngine(out, ast, input);
+		default:
+			return new MethodHandleCompiler(out, ast, input);
+		}
+	}
+}
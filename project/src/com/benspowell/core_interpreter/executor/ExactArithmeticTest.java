@@ -0,0 +1,121 @@
+package com.benspowell.core_interpreter.executor;
+
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.jvm.JvmLoopTier;
+import com.benspowell.core_interpreter.parser.ParseTree;
+import com.benspowell.core_interpreter.parser.Parser;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Tests for the Executor's exact arithmetic. Each check runs a program
+ * whose values outgrow an int, or a long, and compares what it writes
+ * with the exact values. Prints every failed check, and exits with status
+ * 1 if there were any.
+ *
+ * @author Ben Powell
+ */
+public final class ExactArithmeticTest {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private ExactArithmeticTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			overflow();
+			wideValues();
+			errors();
+			loops();
+		}
+		catch (ParseException e) {
+			fail(e.getMessage());
+		}
+
+		finish("ExactArithmeticTest");
+	}
+
+	/*
+	 * Values that outgrow an int become longs, then BigIntegers, and go
+	 * back to ints when they fit again.
+	 */
+	private static void overflow() throws ParseException {
+		String program = "program int X, Y, Z; begin"
+				+ " X = 2147483647; X = X + 1; write X;"
+				+ " Y = (0 - 2147483647) - 2; write Y;"
+				+ " Z = 3037000500 * 3037000500; write Z;"
+				+ " Z = Z * Z; write Z;"
+				+ " Z = (Z - Z) + 5; write Z; end";
+
+		checkEquals("int, long and BigInteger arithmetic", "X = 2147483648\nY = -2147483649\n"
+				+ "Z = 9223372037000250000\nZ = 85070591732918141055018500062500000000\nZ = 5\n",
+				execute(program, "", false));
+		checkEquals("without exact arithmetic", "X = -2147483648\nY = 2147483647\n",
+				execute("program int X, Y; begin X = 2147483647; X = X + 1; write X;"
+						+ " Y = (0 - 2147483647) - 2; write Y; end", "", false, false));
+	}
+
+	/*
+	 * Constants, input and comparisons too large for an int.
+	 */
+	private static void wideValues() throws ParseException {
+		String program = "program int X, Y; begin read X; X = X + 1; write X;"
+				+ " Y = 99999999999999999999999; if (Y > X) then write Y; end;"
+				+ " if (X == 12345678901234567891) then X = 1; end; write X; end";
+
+		checkEquals("wide input and constants", "X = 12345678901234567891\nY = 99999999999999999999999\nX = 1\n",
+				execute(program, "12345678901234567890", false));
+	}
+
+	/*
+	 * A program that fails, fails the same way after its values have
+	 * outgrown an int.
+	 */
+	private static void errors() throws ParseException {
+		String program = "program int X, Y; begin X = 4294967296; X = X * X; write X; Y = X + Y; end";
+
+		checkEquals("undefined variable after overflow",
+				"X = 18446744073709551616\n\nRUN-TIME ERROR: Y is undefined!", execute(program, "", false));
+	}
+
+	/*
+	 * A loop whose sum outgrows an int comes out exact, whether or not the
+	 * Executor is asked to tier its loops.
+	 */
+	private static void loops() throws ParseException {
+		String program = "program int I, S; begin I = 0; S = 0;"
+				+ " while (I < 100000) loop I = I + 1; S = S + I * I; end; write S; end";
+
+		checkEquals("sum of squares", "S = 333338333350000\n", execute(program, "", false));
+		checkEquals("sum of squares, tiered", "S = 333338333350000\n", execute(program, "", true));
+	}
+
+	private static String execute(String program, String input, boolean tiered) throws ParseException {
+		return execute(program, input, tiered, true);
+	}
+
+	/*
+	 * What the program writes on the Executor, followed by the error it
+	 * fails with, if it does.
+	 */
+	private static String execute(String program, String input, boolean tiered, boolean exact) throws ParseException {
+		Parser parser = parser(program);
+		parser.setBigConstants(exact);
+		ParseTree p = parser.coreProgram();
+
+		return output(input, (out, in) -> {
+			Executor executor = new Executor(out, p, in);
+			if (tiered) executor.setTiering(new JvmLoopTier(out, in), Executor.DEFAULT_TIERING_THRESHOLD);
+			executor.setExactArithmetic(exact);
+			return executor;
+		});
+	}
+}
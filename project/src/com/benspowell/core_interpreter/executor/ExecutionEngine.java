@@ -0,0 +1,18 @@
+package com.benspowell.core_interpreter.executor;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+
+/**
+ * Something that can run a CORE program it has been given, such as the
+ * Executor, the AstExecutor or the bytecode VirtualMachine.
+ * 
+ * @author Ben Powell
+ */
+public interface ExecutionEngine {
+	
+	/**
+	 * Execute the CORE program.
+	 * @throws ExecutorException 
+	 */
+	void executeCoreProgram() throws ExecutorException;
+}
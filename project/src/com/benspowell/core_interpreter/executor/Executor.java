@@ -2,52 +2,115 @@ package com.benspowell.core_interpreter.executor;
 
 import java.io.*;
 
-import java.util.ArrayList;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
 import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.parser.AstBuilder;
+import com.benspowell.core_interpreter.parser.NonTerminalKind;
 import com.benspowell.core_interpreter.parser.ParseTree;
 
 /**
  * CORE Language Executor.
  * 
+ * With tiering on, the Executor counts how many times each loop goes
+ * round. Once a loop has gone round often enough it's compiled by the
+ * LoopTier, and the loop carries on, from its next test, in the compiled
+ * code; later runs of it start there. A loop that the tier can't compile
+ * stays in the Executor.
+ * 
+ * Uses of variables that the DefinednessAnalysis proves are defined are
+ * run without checking the Frame.
+ * 
+ * The right side of an && or || is skipped when the left side decides
+ * the result, if the DefinednessAnalysis proves the right side can't
+ * fail, so a program fails just as if both sides were evaluated. With
+ * adaptive conditions on, an && or || both of whose sides can't fail
+ * evaluates first the side that, by its profile so far, decides the
+ * result most often for its size.
+ * 
+ * With exact arithmetic on, nothing wraps. Expressions are still
+ * evaluated on ints, but with overflow checks; a statement whose
+ * arithmetic overflows, or that reads a variable or constant too large
+ * for an int, is evaluated again as longs, then BigIntegers once they
+ * outgrow a long. Variables too large for an int keep their value in a
+ * side table. Loops aren't tiered then, since compiled loops wrap.
+ * 
  * @author Ben Powell
  *
  */
-public class Executor {
+public class Executor implements ExecutionEngine {
 	
-	private ParseTree p;
-	private PrintStream out;
-	private Map<String,RuntimeVariable> runtimeVariables;
-	private Scanner inputFile;
+	/** A good number of times round a loop before compiling it. */
+	public static final int DEFAULT_TIERING_THRESHOLD = 1000;
 	
-	private class RuntimeVariable {
-		private int val;
-		private boolean defined;
+	/*
+	 * What tiering knows about one loop.
+	 */
+	private static class LoopProfile {
+		int backEdges = 0;
+		LoopTier.CompiledLoop compiled;
+		boolean uncompilable = false;
+	}
+	
+	/*
+	 * What profiling knows about one && or ||. Side 0 is the left, side 1
+	 * the right.
+	 */
+	private static class ConditionProfile {
+		final boolean and;
+		final boolean reorderable;
+		final int[] size = new int[2];
+		long evaluations = 0;
+		long shortCircuits = 0;
+		long rightFirst = 0;
+		final long[] evaluated = new long[2];
+		final long[] decided = new long[2];
 		
-		public RuntimeVariable() {
-			this.defined=false;
-		}
-		public RuntimeVariable(int x) {
-			this.val=x;
-			this.defined=true;
-		}
-		public boolean defined() {
-			return this.defined;
-		}
-		public int get() {
-			return this.val;
-		}
-		public void set(int x) {
-			this.val=x;
-			this.defined=true;
+		ConditionProfile(boolean and, boolean reorderable) {
+			this.and = and;
+			this.reorderable = reorderable;
 		}
 		
+		/*
+		 * Whether the right side should go first: if it decides the
+		 * result more often for its size. Rates start at a half.
+		 */
+		boolean isRightFirst() {
+			double left = (decided[0] + 1.0) / (evaluated[0] + 2.0);
+			double right = (decided[1] + 1.0) / (evaluated[1] + 2.0);
+			return right * size[0] > left * size[1];
+		}
 	}
 	
+	private ParseTree p;
+	private PrintStream out;
+	private Resolution slots;
+	private Frame frame;
+	private Scanner inputFile;
+	
+	private LoopTier tier;
+	private int threshold;
+	private Map<Integer,LoopProfile> loops = new HashMap<Integer,LoopProfile>();
+	
+	private Definedness definedness;
+	private boolean adaptive = false;
+	private boolean profiling = false;
+	private ConditionProfile[] conditions = new ConditionProfile[64];
+	
+	private boolean exact = false;
+	
+	// Whether the statement being executed overflowed an int, with exact
+	// arithmetic on.
+	private boolean overflowed;
+	
+	// The value of each variable that's too large for an int, as a Long or
+	// a BigInteger, or null if its value is the int in the Frame.
+	private Number[] wide;
+	
 	/**
 	 * Default constructor if no PrintStream is specified
 	 */
@@ -63,7 +126,87 @@ public class Executor {
 		this.p = fullyInitializedParseTree;
 		p.goAllTheWayBackUp();
 		this.inputFile = inputFile;
-		this.runtimeVariables = new HashMap<String,RuntimeVariable>();
+	}
+	
+	/**
+	 * Run with the program's Resolution, and the DefinednessAnalysis of
+	 * it, already worked out by the caller, instead of working them out
+	 * again. Both must be of this ParseTree.
+	 */
+	public void setAnalysis(Resolution slots, Definedness definedness) {
+		this.slots = slots;
+		this.definedness = definedness;
+	}
+	
+	/**
+	 * Hand loops that go round threshold times to tier.
+	 */
+	public void setTiering(LoopTier tier, int threshold) {
+		this.tier = tier;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Do arithmetic without wrapping, on values as large as they need to
+	 * be. Constants too large for an int need the Parser's big constants.
+	 */
+	public void setExactArithmetic(boolean exact) {
+		this.exact = exact;
+	}
+	
+	/**
+	 * Evaluate the sides of each && and || that can't fail in the order
+	 * their profiles suggest.
+	 */
+	public void setAdaptiveConditions(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+	
+	/**
+	 * Count how && and || are evaluated, for getConditionProfile.
+	 */
+	public void setConditionProfiling(boolean profiling) {
+		this.profiling = profiling;
+	}
+	
+	/**
+	 * A report of how the program's && and || were evaluated, if they
+	 * were profiled: how often the second side was skipped, then, for the
+	 * busiest, how often each side decided the result when it was
+	 * evaluated, and how often the right side went first.
+	 */
+	public String getConditionProfile() {
+		long evaluations = 0;
+		long shortCircuits = 0;
+		for (ConditionProfile c : conditions) {
+			if (c == null) continue;
+			evaluations += c.evaluations;
+			shortCircuits += c.shortCircuits;
+		}
+		
+		StringBuilder s = new StringBuilder();
+		s.append("&& and || evaluated: ").append(evaluations)
+			.append(", short-circuited: ").append(shortCircuits).append('\n');
+		
+		boolean[] shown = new boolean[conditions.length];
+		for (int n = 0; n < 5; n++) {
+			int top = -1;
+			for (int i = 0; i < conditions.length; i++) {
+				if (conditions[i] == null || shown[i] || conditions[i].evaluations == 0) continue;
+				if (top < 0 || conditions[i].evaluations > conditions[top].evaluations) top = i;
+			}
+			if (top < 0) break;
+			shown[top] = true;
+			
+			ConditionProfile c = conditions[top];
+			s.append("  ").append(c.and ? "&&" : "||").append(" at node ").append(top)
+				.append(": evaluated ").append(c.evaluations)
+				.append(", left decided ").append(c.decided[0]).append('/').append(c.evaluated[0])
+				.append(", right decided ").append(c.decided[1]).append('/').append(c.evaluated[1])
+				.append(", right first ").append(c.rightFirst)
+				.append(c.reorderable ? "" : " (not reorderable)").append('\n');
+		}
+		return s.toString();
 	}
 	
 	/**
@@ -75,81 +218,82 @@ public class Executor {
 	 * @throws ExecutorException 
 	 */
 	public void executeCoreProgram() throws ExecutorException {
-		p.goDownLeftBranch();
-		executeDeclSeq();
-		p.goUp();
+		// Declarations, and any undeclared variables, are dealt with here.
+		if (slots == null) {
+			slots = Resolver.resolve(p);
+			definedness = DefinednessAnalysis.analyze(p, slots);
+		}
+		frame = new Frame(slots.size());
+		if (exact) wide = new Number[slots.size()];
 		
+		p.goAllTheWayBackUp();
 		p.goDownMiddleBranch();
 		executeStmtSeq();
 		p.goUp();
 	}
 	
-	/**
-	 * Execute a declaration sequence.
-	 * @throws ExecutorException 
-	 */
-	private void executeDeclSeq() throws ExecutorException {
-		p.goDownLeftBranch();
-		executeDecl();
-		p.goUp();
-		if (p.currentAlternative()==2) {
-			p.goDownMiddleBranch();
-			executeDeclSeq();
-			p.goUp();
-		}
-	}
-	
 	/**
 	 * Execute a statement sequence.
 	 * @throws ExecutorException 
 	 */
 	private void executeStmtSeq() throws ExecutorException {
-		p.goDownLeftBranch();
-		executeStmt();
-		p.goUp();
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				executeStmt();
+				p.goUp();
+			}
+			return;
+		}
 		
-		if (p.currentAlternative() == 2) {
-			p.goDownMiddleBranch();
-			executeStmtSeq();
+		// Follow the chain of nested sequences with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			executeStmt();
 			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
 		}
+		for (; depth > 0; depth--) p.goUp();
 	}
 	
 	
 	
 	/**
-	 * Execute a declaration.
-	 * @throws ExecutorException 
+	 * Execute an ID list, giving the slots of its variables.
 	 */
-	private void executeDecl() throws ExecutorException {
-		p.goDownLeftBranch();
-		List<String> list = executeIdList();
-		p.goUp();
+	private int[] executeIdList() {
+		int[] list = new int[4];
+		int size = 0;
 		
-		for (String id : list) {
-			if (runtimeVariables.containsKey(id)) throw new ExecutorException("variable"+id+"has already been declared!");
-			
-			runtimeVariables.put(id, new RuntimeVariable() );
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			list = new int[n];
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list[size++] = executeId();
+				p.goUp();
+			}
+			return list;
 		}
-	}
-	
-	/**
-	 * Execute an ID list.
-	 */
-	private List<String> executeIdList() {
-		List<String> list = new ArrayList<String>();
 		
-		p.goDownLeftBranch();
-		list.add(executeId());
-		p.goUp();
-		
-		if (p.currentAlternative()==2) {
-			p.goDownMiddleBranch();
-			list.addAll(executeIdList());
+		// Follow the chain of nested lists with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			if (size == list.length) list = Arrays.copyOf(list, size * 2);
+			list[size++] = executeId();
 			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
 		}
+		for (; depth > 0; depth--) p.goUp();
 		
-		return list;
+		return Arrays.copyOf(list, size);
 	}
 	
 	/**
@@ -193,17 +337,21 @@ public class Executor {
 	private void executeAss() throws ExecutorException {
 		
 		p.goDownLeftBranch();
-		String id = p.getCurrentIdName();
+		int slot = executeId();
 		p.goUp();
 		
+		overflowed = false;
 		p.goDownMiddleBranch();
 		int val = executeExp(); 
+		if (overflowed) {
+			store(slot, wideExp());
+			p.goUp();
+			return;
+		}
 		p.goUp();
 		
-		if (id == null) throw new ExecutorException("no ID to assign to!");
-		if (!runtimeVariables.containsKey(id)) throw new ExecutorException("ID ' " + id + " ' has not been declared!");
-		
-		runtimeVariables.get(id).set(val);
+		frame.set(slot, val);
+		if (wide != null) wide[slot] = null;
 	}
 	
 	/**
@@ -232,6 +380,15 @@ public class Executor {
 	 * @throws ExecutorException 
 	 */
 	private void executeLoop() throws ExecutorException {
+		LoopProfile profile = null;
+		if (tier != null && !exact) {
+			profile = loops.computeIfAbsent(p.currentNodeId(), id -> new LoopProfile());
+			if (profile.compiled != null) {
+				profile.compiled.run(frame);
+				return;
+			}
+		}
+		
 		p.goDownLeftBranch();
 		boolean cond = executeCond();
 		p.goUp();
@@ -241,25 +398,47 @@ public class Executor {
 			executeStmtSeq();
 			p.goUp();
 			
+			// Once the loop is hot, replace it with the compiled loop here,
+			// at its test, and carry on in that.
+			if (profile != null && ++profile.backEdges >= threshold && compile(profile)) {
+				profile.compiled.run(frame);
+				return;
+			}
+			
 			p.goDownLeftBranch();
 			cond = executeCond();
 			p.goUp();
 		}
 	}
 	
+	/**
+	 * Compile the loop at the cursor, if it can be. 
+	 */
+	private boolean compile(LoopProfile profile) {
+		if (profile.uncompilable) return false;
+		
+		profile.compiled = tier.compile(AstBuilder.buildWhile(p), slots);
+		profile.uncompilable = profile.compiled == null;
+		return !profile.uncompilable;
+	}
+	
 	/**
 	 * Execute an in statement.
 	 * @throws ExecutorException 
 	 */
 	private void executeIn() throws ExecutorException {
 		p.goDownLeftBranch();
-		List<String> list = executeIdList();
+		int[] list = executeIdList();
 		p.goUp();
 		
-		for (String id : list) {
+		for (int slot : list) {
+			if (exact) {
+				if (!inputFile.hasNextBigInteger()) throw new ExecutorException("input file is out of int's to read!");
+				store(slot, narrow(inputFile.nextBigInteger()));
+				continue;
+			}
 			if (!inputFile.hasNextInt()) throw new ExecutorException("input file is out of int's to read!");
-			if (!runtimeVariables.containsKey(id)) throw new ExecutorException("can't assign value to " + id + " - it's undeclared!");
-			runtimeVariables.get(id).set(inputFile.nextInt());
+			frame.set(slot, inputFile.nextInt());
 		}
 	}
 	
@@ -268,14 +447,16 @@ public class Executor {
 	 * @throws ExecutorException 
 	 */
 	private void executeOut() throws ExecutorException {
+		boolean proven = definedness.isProven(p.currentNodeId());
+		
 		p.goDownLeftBranch();
-		List<String> list = executeIdList();
+		int[] list = executeIdList();
 		p.goUp();
 		
-		for (String id : list) {
-			if (!runtimeVariables.containsKey(id)) throw new ExecutorException("can't write value of " + id + " - it's undeclared!");
-			if (!runtimeVariables.get(id).defined()) throw new ExecutorException("can't write value of " + id + " - it's undefined!");
-			out.println(id+" = "+runtimeVariables.get(id).get());
+		for (int slot : list) {
+			if (!proven && !frame.isDefined(slot)) throw new ExecutorException("can't write value of " + slots.name(slot) + " - it's undefined!");
+			if (wide != null && wide[slot] != null) out.println(slots.name(slot)+" = "+wide[slot]);
+			else out.println(slots.name(slot)+" = "+frame.get(slot));
 		}
 	}
 	
@@ -284,7 +465,7 @@ public class Executor {
 	 * @throws ExecutorException 
 	 */
 	private boolean executeCond() throws ExecutorException {
-		boolean result = false, c1,c2;
+		boolean result = false;
 		
 		switch (p.currentAlternative()) {
 		case 1:
@@ -298,33 +479,108 @@ public class Executor {
 			p.goUp();
 			break;
 		case 3:
-			p.goDownLeftBranch();
-			c1 = executeCond();
-			p.goUp();
-			
-			p.goDownMiddleBranch();
-			c2 = executeCond();
-			p.goUp();
-			
-			result = c1 && c2;
-			
+			result = executeJunction(true);
 			break;
 		case 4:
+			result = executeJunction(false);
+			break;
+		}
+		
+		return result;
+	
+	}
+	
+	/**
+	 * Execute an && (if and is true) or an ||. The second side is only
+	 * skipped if it can't fail.
+	 * @throws ExecutorException 
+	 */
+	private boolean executeJunction(boolean and) throws ExecutorException {
+		if (!adaptive && !profiling) {
 			p.goDownLeftBranch();
-			c1 = executeCond();
+			boolean c1 = executeCond();
 			p.goUp();
 			
 			p.goDownMiddleBranch();
-			c2 = executeCond();
+			if (c1 != and && definedness.isProven(p.currentNodeId())) {
+				p.goUp();
+				return c1;
+			}
+			boolean c2 = executeCond();
 			p.goUp();
 			
-			result = c1 || c2;
-			
-			break;
+			return and ? c1 && c2 : c1 || c2;
 		}
 		
-		return result;
+		ConditionProfile profile = profile(and);
+		profile.evaluations++;
+		int first = adaptive && profile.reorderable && profile.isRightFirst() ? 1 : 0;
+		if (first == 1) profile.rightFirst++;
+		
+		boolean c1 = executeSide(first, profile);
+		if (c1 != and && (first == 1 || profile.reorderable || isSideProven(1))) {
+			profile.shortCircuits++;
+			return c1;
+		}
+		boolean c2 = executeSide(1 - first, profile);
+		
+		return and ? c1 && c2 : c1 || c2;
+	}
+	
+	/*
+	 * Execute one side of the && or || at the cursor, counting whether it
+	 * decided the result.
+	 */
+	private boolean executeSide(int side, ConditionProfile profile) throws ExecutorException {
+		if (side == 0) p.goDownLeftBranch();
+		else p.goDownMiddleBranch();
+		boolean c = executeCond();
+		p.goUp();
+		
+		profile.evaluated[side]++;
+		if (c != profile.and) profile.decided[side]++;
+		return c;
+	}
 	
+	private boolean isSideProven(int side) {
+		if (side == 0) p.goDownLeftBranch();
+		else p.goDownMiddleBranch();
+		boolean proven = definedness.isProven(p.currentNodeId());
+		p.goUp();
+		return proven;
+	}
+	
+	/*
+	 * The profile of the && or || at the cursor, made the first time it
+	 * runs. Its sides' sizes are the number of nodes under them.
+	 */
+	private ConditionProfile profile(boolean and) {
+		int node = p.currentNodeId();
+		if (node >= conditions.length) conditions = Arrays.copyOf(conditions, Math.max(node + 1, conditions.length * 2));
+		if (conditions[node] != null) return conditions[node];
+		
+		ConditionProfile profile = new ConditionProfile(and, isSideProven(0) && isSideProven(1));
+		for (int side = 0; side < 2; side++) {
+			if (side == 0) p.goDownLeftBranch();
+			else p.goDownMiddleBranch();
+			profile.size[side] = size();
+			p.goUp();
+		}
+		return conditions[node] = profile;
+	}
+	
+	/*
+	 * The number of nodes in the subtree at the cursor.
+	 */
+	private int size() {
+		int size = 1;
+		int n = p.childCount();
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			size += size();
+			p.goUp();
+		}
+		return size;
 	}
 	/**
 	 * Execute a comparison. 
@@ -333,6 +589,7 @@ public class Executor {
 	private boolean executeComp() throws ExecutorException {
 		boolean result = false;
 		
+		overflowed = false;
 		p.goDownLeftBranch();
 		int op1 = executeOp();
 		p.goUp();
@@ -341,26 +598,37 @@ public class Executor {
 		int op2 = executeOp();
 		p.goUp();
 		
+		int comparison = Integer.compare(op1, op2);
+		if (overflowed) {
+			p.goDownLeftBranch();
+			Number wide1 = wideOp();
+			p.goUp();
+			
+			p.goDownRightBranch();
+			comparison = compare(wide1, wideOp());
+			p.goUp();
+		}
+		
 		p.goDownMiddleBranch();
 		
 		switch (p.currentAlternative()) {
 		case 1:
-			result = op1 != op2;
+			result = comparison != 0;
 			break;
 		case 2:
-			result = op1 == op2;
+			result = comparison == 0;
 			break;
 		case 3:
-			result = op1 < op2;
+			result = comparison < 0;
 			break;
 		case 4:
-			result = op1 > op2;
+			result = comparison > 0;
 			break;
 		case 5:
-			result = op1 <= op2;
+			result = comparison <= 0;
 			break;
 		case 6:
-			result = op1 >= op2;
+			result = comparison >= 0;
 			break;
 		}
 		
@@ -375,6 +643,8 @@ public class Executor {
 	 * @throws ExecutorException 
 	 */
 	private int executeExp() throws ExecutorException {
+		if (p.currentAlternative() == ParseTree.SUM) return executeSum();
+		
 		p.goDownLeftBranch();
 		int result = executeTrm();
 		p.goUp();
@@ -382,12 +652,12 @@ public class Executor {
 		switch (p.currentAlternative()){
 		case 2:
 			p.goDownMiddleBranch();
-			result += executeExp();
+			result = add(result, executeExp());
 			p.goUp();
 			break;
 		case 3:
 			p.goDownMiddleBranch();
-			result -= executeExp();
+			result = subtract(result, executeExp());
 			p.goUp();
 			break;
 		}
@@ -399,26 +669,66 @@ public class Executor {
 	 * @throws ExecutorException 
 	 */
 	private int executeTrm() throws ExecutorException {
+		if (p.currentAlternative() == ParseTree.PRODUCT) return executeProduct();
+		
 		p.goDownLeftBranch();
 		int result = executeOp();
 		p.goUp();
 		
 		if (p.currentAlternative()==2) {
 			p.goDownMiddleBranch();
-			result *= executeTrm();
+			result = multiply(result, executeTrm());
 			p.goUp();
 		}
 		
 		return result;
 	}
 	
+	/**
+	 * Execute an n-ary sum. Subtraction nests to the right in CORE, so
+	 * a - b - c means a - (b - c): every '-' flips the sign of all the
+	 * operands after it.
+	 * @throws ExecutorException 
+	 */
+	private int executeSum() throws ExecutorException {
+		int result = 0;
+		boolean negate = false;
+		
+		int n = p.childCount();
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			if (p.getCurrentOperator() == ParseTree.MINUS) negate = !negate;
+			int operand = p.currentNTNo() == NonTerminalKind.TRM ? executeTrm() : executeOp();
+			p.goUp();
+			
+			result = negate ? subtract(result, operand) : add(result, operand);
+		}
+		return result;
+	}
+	
+	/**
+	 * Execute an n-ary product.
+	 * @throws ExecutorException 
+	 */
+	private int executeProduct() throws ExecutorException {
+		int result = 1;
+		
+		int n = p.childCount();
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			result = multiply(result, executeOp());
+			p.goUp();
+		}
+		return result;
+	}
+	
 	/**
 	 * Execute an operator.
 	 * @throws ExecutorException 
 	 */
 	private int executeOp() throws ExecutorException {
 		int result = 0;
-		String id;
+		int slot;
 		
 		switch(p.currentAlternative()) {
 		case 1:
@@ -427,12 +737,13 @@ public class Executor {
 			p.goUp();
 			break;
 		case 2:
+			boolean proven = definedness.isProven(p.currentNodeId());
 			p.goDownLeftBranch();
-			id = executeId();
+			slot = executeId();
 			p.goUp();
-			if (!runtimeVariables.containsKey(id)) throw new ExecutorException(id+" is undeclared!");
-			if (!runtimeVariables.get(id).defined()) throw new ExecutorException(id+" is undefined!");
-			result = runtimeVariables.get(id).get();
+			if (!proven && !frame.isDefined(slot)) throw new ExecutorException(slots.name(slot)+" is undefined!");
+			if (wide != null && wide[slot] != null) overflowed = true;
+			result = frame.get(slot);
 			break;
 		case 3:
 			p.goDownLeftBranch();
@@ -445,16 +756,221 @@ public class Executor {
 	}
 	
 	/**
-	 * Execute an ID. 
+	 * Execute an ID, giving its variable's slot. 
 	 */
-	private String executeId() {
-		return p.getCurrentIdName();
+	private int executeId() {
+		return slots.slot(p.getCurrentSymbol());
 	}
 	
 	/**
 	 * Execute a number. 
 	 */
 	private int executeNo() {
+		if (p.currentAlternative() == ParseTree.BIG) overflowed = true;
 		return p.getCurrentIntVal();
 	}
+	
+	/*
+	 * Arithmetic on ints, which wraps, or, with exact arithmetic on,
+	 * notes that the statement overflowed.
+	 */
+	private int add(int a, int b) {
+		if (!exact) return a + b;
+		try {
+			return Math.addExact(a, b);
+		}
+		catch (ArithmeticException e) {
+			overflowed = true;
+			return 0;
+		}
+	}
+	
+	private int subtract(int a, int b) {
+		if (!exact) return a - b;
+		try {
+			return Math.subtractExact(a, b);
+		}
+		catch (ArithmeticException e) {
+			overflowed = true;
+			return 0;
+		}
+	}
+	
+	private int multiply(int a, int b) {
+		if (!exact) return a * b;
+		try {
+			return Math.multiplyExact(a, b);
+		}
+		catch (ArithmeticException e) {
+			overflowed = true;
+			return 0;
+		}
+	}
+	
+	/*
+	 * Execute an expression again, after it overflowed an int, on values
+	 * that are Longs or, once they outgrow a long, BigIntegers. Every
+	 * variable it reads has just been checked.
+	 */
+	private Number wideExp() {
+		if (p.currentAlternative() == ParseTree.SUM) return wideSum();
+		
+		p.goDownLeftBranch();
+		Number result = wideTrm();
+		p.goUp();
+		
+		switch (p.currentAlternative()) {
+		case 2:
+			p.goDownMiddleBranch();
+			result = wideAdd(result, wideExp());
+			p.goUp();
+			break;
+		case 3:
+			p.goDownMiddleBranch();
+			result = wideSubtract(result, wideExp());
+			p.goUp();
+			break;
+		}
+		return result;
+	}
+	
+	private Number wideTrm() {
+		if (p.currentAlternative() == ParseTree.PRODUCT) return wideProduct();
+		
+		p.goDownLeftBranch();
+		Number result = wideOp();
+		p.goUp();
+		
+		if (p.currentAlternative() == 2) {
+			p.goDownMiddleBranch();
+			result = wideMultiply(result, wideTrm());
+			p.goUp();
+		}
+		return result;
+	}
+	
+	private Number wideSum() {
+		Number result = 0L;
+		boolean negate = false;
+		
+		int n = p.childCount();
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			if (p.getCurrentOperator() == ParseTree.MINUS) negate = !negate;
+			Number operand = p.currentNTNo() == NonTerminalKind.TRM ? wideTrm() : wideOp();
+			p.goUp();
+			
+			result = negate ? wideSubtract(result, operand) : wideAdd(result, operand);
+		}
+		return result;
+	}
+	
+	private Number wideProduct() {
+		Number result = 1L;
+		
+		int n = p.childCount();
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			result = wideMultiply(result, wideOp());
+			p.goUp();
+		}
+		return result;
+	}
+	
+	private Number wideOp() {
+		Number result;
+		
+		switch (p.currentAlternative()) {
+		case 1:
+			p.goDownLeftBranch();
+			if (p.currentAlternative() == ParseTree.BIG) result = narrow(p.getCurrentBigVal());
+			else result = (long) p.getCurrentIntVal();
+			p.goUp();
+			break;
+		case 2:
+			p.goDownLeftBranch();
+			int slot = executeId();
+			p.goUp();
+			result = wide[slot] != null ? wide[slot] : (Number) (long) frame.get(slot);
+			break;
+		default:
+			p.goDownLeftBranch();
+			result = wideExp();
+			p.goUp();
+			break;
+		}
+		return result;
+	}
+	
+	/*
+	 * Arithmetic on Longs, or on BigIntegers if either operand is one or
+	 * the result is too large for a long.
+	 */
+	private static Number wideAdd(Number a, Number b) {
+		if (a instanceof Long && b instanceof Long) {
+			try {
+				return Math.addExact(a.longValue(), b.longValue());
+			}
+			catch (ArithmeticException e) {
+				// Too large for a long.
+			}
+		}
+		return narrow(big(a).add(big(b)));
+	}
+	
+	private static Number wideSubtract(Number a, Number b) {
+		if (a instanceof Long && b instanceof Long) {
+			try {
+				return Math.subtractExact(a.longValue(), b.longValue());
+			}
+			catch (ArithmeticException e) {
+				// Too large for a long.
+			}
+		}
+		return narrow(big(a).subtract(big(b)));
+	}
+	
+	private static Number wideMultiply(Number a, Number b) {
+		if (a instanceof Long && b instanceof Long) {
+			try {
+				return Math.multiplyExact(a.longValue(), b.longValue());
+			}
+			catch (ArithmeticException e) {
+				// Too large for a long.
+			}
+		}
+		return narrow(big(a).multiply(big(b)));
+	}
+	
+	private static int compare(Number a, Number b) {
+		if (a instanceof Long && b instanceof Long) return Long.compare(a.longValue(), b.longValue());
+		return big(a).compareTo(big(b));
+	}
+	
+	private static BigInteger big(Number x) {
+		return x instanceof BigInteger ? (BigInteger) x : BigInteger.valueOf(x.longValue());
+	}
+	
+	/*
+	 * A BigInteger as a Long, if it fits in one.
+	 */
+	private static Number narrow(BigInteger x) {
+		if (x.bitLength() < 64) return x.longValue();
+		return x;
+	}
+	
+	/*
+	 * Set a variable to a Long or BigInteger value, keeping it in the
+	 * Frame if it fits in an int.
+	 */
+	private void store(int slot, Number value) {
+		if (value instanceof Long && value.longValue() == value.intValue()) {
+			frame.set(slot, value.intValue());
+			wide[slot] = null;
+		}
+		else {
+			frame.set(slot, 0);
+			wide[slot] = value;
+		}
+	}
 }
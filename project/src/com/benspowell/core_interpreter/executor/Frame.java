@@ -0,0 +1,42 @@
+package com.benspowell.core_interpreter.executor;
+
+/**
+ * The run-time values of a program's variables, one slot per declared
+ * variable. A slot is undefined until it's first assigned; which slots
+ * are defined is kept in a bitset.
+ * 
+ * @author Ben Powell
+ */
+public final class Frame {
+	
+	private final int[] values;
+	private final long[] defined;
+	
+	/*
+	 * Constructor for a Frame of size undefined slots.
+	 */
+	public Frame(int size) {
+		this.values = new int[size];
+		this.defined = new long[(size + 63) >>> 6];
+	}
+	
+	public int size() {
+		return values.length;
+	}
+	
+	public boolean isDefined(int slot) {
+		return (defined[slot >>> 6] & (1L << slot)) != 0;
+	}
+	
+	/*
+	 * Get the value in a slot, which must be defined.
+	 */
+	public int get(int slot) {
+		return values[slot];
+	}
+	
+	public void set(int slot, int x) {
+		values[slot] = x;
+		defined[slot >>> 6] |= 1L << slot;
+	}
+}
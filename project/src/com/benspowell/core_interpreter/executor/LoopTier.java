@@ -0,0 +1,27 @@
+package com.benspowell.core_interpreter.executor;
+
+import com.benspowell.core_interpreter.ast.While;
+import com.benspowell.core_interpreter.error.ExecutorException;
+
+/**
+ * A faster tier that the Executor can hand hot loops to (see
+ * Executor.setTiering).
+ * 
+ * @author Ben Powell
+ */
+public interface LoopTier {
+
+	/**
+	 * A compiled loop. It runs from the loop's next test, with and on the
+	 * variables in a Frame.
+	 */
+	interface CompiledLoop {
+		void run(Frame frame) throws ExecutorException;
+	}
+
+	/**
+	 * Compile a loop whose variables have the given slots, or return null
+	 * if this tier can't.
+	 */
+	CompiledLoop compile(While loop, Resolution slots);
+}
@@ -0,0 +1,63 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.util.Arrays;
+
+/**
+ * Which Frame slot each declared variable of a program lives in. Slots are
+ * numbered in order of declaration; variables are looked up by their
+ * symbol in the parser's SymbolTable.
+ * 
+ * @author Ben Powell
+ */
+public final class Resolution {
+	
+	// Slot of each symbol, or -1 if it's not declared.
+	private int[] slots;
+	
+	// Name of each slot's variable.
+	private String[] names;
+	
+	private int size;
+	
+	/*
+	 * Constructor for a Resolution of symbols below symbolCount, with
+	 * nothing declared yet.
+	 */
+	Resolution(int symbolCount) {
+		this.slots = new int[symbolCount];
+		Arrays.fill(slots, -1);
+		this.names = new String[Math.max(symbolCount, 1)];
+		this.size = 0;
+	}
+	
+	/*
+	 * Give the symbol the next slot. Returns false if it already has one.
+	 */
+	boolean declare(int symbol, String name) {
+		if (slots[symbol] >= 0) return false;
+		slots[symbol] = size;
+		names[size++] = name;
+		return true;
+	}
+	
+	/*
+	 * Number of slots.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/*
+	 * Slot of the variable with a symbol, or -1 if it's not declared.
+	 */
+	public int slot(int symbol) {
+		return slots[symbol];
+	}
+	
+	/*
+	 * Name of the variable in a slot.
+	 */
+	public String name(int slot) {
+		return names[slot];
+	}
+}
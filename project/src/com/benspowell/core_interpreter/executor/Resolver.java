@@ -0,0 +1,223 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.parser.NonTerminalKind;
+import com.benspowell.core_interpreter.parser.ParseTree;
+import com.benspowell.core_interpreter.tokenizer.SymbolTable;
+
+/**
+ * Resolves the variables of a parsed program to Frame slots, before it
+ * runs. Every identifier in the program is checked, in the order it's
+ * written, so a use of an undeclared variable (or a second declaration) is
+ * reported here even if the statement using it would never run. The
+ * messages are the ones the executors used to give when they got there.
+ *
+ * @author Ben Powell
+ */
+public final class Resolver {
+
+	// How an identifier is being used.
+	private static final int USE = 0;
+	private static final int DECLARE = 1;
+	private static final int ASSIGN = 2;
+	private static final int READ = 3;
+	private static final int WRITE = 4;
+
+	private Resolver() {}
+
+	/**
+	 * Resolve the variables of the program in a fully initialized ParseTree.
+	 * @throws ExecutorException
+	 */
+	public static Resolution resolve(ParseTree p) throws ExecutorException {
+		SymbolTable symbols = p.getSymbolTable();
+		Resolution r = new Resolution(symbols == null ? 0 : symbols.size());
+
+		// Walk the whole tree in order with a stack instead of recursion,
+		// since nested sequences can be as deep as the program is long.
+		int[] nextChild = new int[64];
+		int[] use = new int[64];
+		int depth = 0;
+
+		p.goAllTheWayBackUp();
+		while (true) {
+			if (nextChild[depth] == 0 && p.currentNTNo() == NonTerminalKind.ID) {
+				check(r, use[depth], p.getCurrentSymbol(), p.getCurrentIdName());
+			}
+
+			if (nextChild[depth] < p.childCount()) {
+				int i = nextChild[depth]++;
+				int childUse = useOfChild(p.currentNTNo(), i, use[depth]);
+
+				p.goDownBranch(i);
+				if (++depth == nextChild.length) {
+					nextChild = Arrays.copyOf(nextChild, depth * 2);
+					use = Arrays.copyOf(use, depth * 2);
+				}
+				nextChild[depth] = 0;
+				use[depth] = childUse;
+			}
+			else {
+				if (depth == 0) break;
+				p.goUp();
+				depth--;
+			}
+		}
+
+		return r;
+	}
+
+	/*
+	 * How the identifiers under child i of a kind of node are used.
+	 */
+	private static int useOfChild(NonTerminalKind parent, int i, int parentUse) {
+		switch (parent) {
+		case DECL:
+			return DECLARE;
+		case ASS:
+			return i == 0 ? ASSIGN : USE;
+		case IN:
+			return READ;
+		case OUT:
+			return WRITE;
+		case ID_LIST:
+			return parentUse;
+		default:
+			return USE;
+		}
+	}
+
+	/*
+	 * Declare, or look up, one identifier.
+	 */
+	private static void check(Resolution r, int use, int symbol, String id) throws ExecutorException {
+		if (use == DECLARE) {
+			if (!r.declare(symbol, id)) throw new ExecutorException("variable"+id+"has already been declared!");
+			return;
+		}
+		if (r.slot(symbol) >= 0) return;
+
+		switch (use) {
+		case ASSIGN:
+			throw new ExecutorException("ID ' " + id + " ' has not been declared!");
+		case READ:
+			throw new ExecutorException("can't assign value to " + id + " - it's undeclared!");
+		case WRITE:
+			throw new ExecutorException("can't write value of " + id + " - it's undeclared!");
+		default:
+			throw new ExecutorException(id+" is undeclared!");
+		}
+	}
+
+	/**
+	 * Resolve the variables of a program's AST.
+	 * @throws ExecutorException
+	 */
+	public static Resolution resolve(Program program) throws ExecutorException {
+		Resolution r = new Resolution(program.getSymbolCount());
+
+		for (Decl d : program.getDeclarations()) {
+			for (Var v : d.getIds()) check(r, DECLARE, v.getSymbol(), v.getName());
+		}
+		new AstWalk(r).walk(program.getBody());
+
+		return r;
+	}
+
+	/*
+	 * Checks the identifiers of statements, conditions and expressions.
+	 */
+	private static class AstWalk implements Stmt.Visitor<Void, ExecutorException>,
+			Cond.Visitor<Void, ExecutorException>, Exp.Visitor<Void, ExecutorException> {
+
+		private final Resolution r;
+
+		AstWalk(Resolution r) {
+			this.r = r;
+		}
+
+		void walk(List<Stmt> stmts) throws ExecutorException {
+			for (Stmt s : stmts) s.accept(this);
+		}
+
+		void walk(List<Var> ids, int use) throws ExecutorException {
+			for (Var v : ids) check(r, use, v.getSymbol(), v.getName());
+		}
+
+		public Void visitAssign(Assign s) throws ExecutorException {
+			check(r, ASSIGN, s.getTarget().getSymbol(), s.getTarget().getName());
+			s.getValue().accept(this);
+			return null;
+		}
+
+		public Void visitIf(If s) throws ExecutorException {
+			s.getCondition().accept(this);
+			walk(s.getThenBranch());
+			if (s.getElseBranch() != null) walk(s.getElseBranch());
+			return null;
+		}
+
+		public Void visitWhile(While s) throws ExecutorException {
+			s.getCondition().accept(this);
+			walk(s.getBody());
+			return null;
+		}
+
+		public Void visitRead(Read s) throws ExecutorException {
+			walk(s.getIds(), READ);
+			return null;
+		}
+
+		public Void visitWrite(Write s) throws ExecutorException {
+			walk(s.getIds(), WRITE);
+			return null;
+		}
+
+		public Void visitCompare(Compare c) throws ExecutorException {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitNot(Not c) throws ExecutorException {
+			c.getOperand().accept(this);
+			return null;
+		}
+
+		public Void visitAnd(And c) throws ExecutorException {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitOr(Or c) throws ExecutorException {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitNum(Num e) {
+			return null;
+		}
+
+		public Void visitVar(Var e) throws ExecutorException {
+			check(r, USE, e.getSymbol(), e.getName());
+			return null;
+		}
+
+		public Void visitBinOp(BinOp e) throws ExecutorException {
+			e.getLeft().accept(this);
+			e.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitGroup(Group e) throws ExecutorException {
+			e.getContents().accept(this);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.benspowell.core_interpreter.executor;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.parser.AstBuilder;
+import com.benspowell.core_interpreter.parser.ParseTree;
+import com.benspowell.core_interpreter.tokenizer.SymbolTable;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Tests for the Resolver and the Frame. Checks the slot each variable is
+ * given, the errors for undeclared and doubly declared variables, and
+ * that they're reported before a program runs. Prints every failed check,
+ * and exits with status 1 if there were any.
+ *
+ * @author Ben Powell
+ */
+public final class ResolverTest {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private ResolverTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			slots();
+			undeclared();
+			declaredTwice();
+		}
+		catch (ParseException e) {
+			fail(e.getMessage());
+		}
+		frames();
+
+		finish("ResolverTest");
+	}
+
+	/*
+	 * Slots are numbered in order of declaration, whatever order the
+	 * variables are first used in, and the tree and its AST resolve alike.
+	 */
+	private static void slots() throws ParseException {
+		String program = "program int C, A; int B; begin B = 1; A = B; C = A + B; write C; end";
+		ParseTree p = parse(program);
+		SymbolTable symbols = p.getSymbolTable();
+		try {
+			Resolution tree = Resolver.resolve(p);
+			Resolution ast = Resolver.resolve(AstBuilder.build(p));
+
+			checkEquals("number of slots", 3, tree.size());
+			checkEquals("slots in order of declaration", "C A B",
+					tree.name(0) + " " + tree.name(1) + " " + tree.name(2));
+			for (String name : new String[] { "A", "B", "C" }) {
+				int symbol = symbols.lookup(name);
+				checkEquals("slot of " + name + "'s symbol", name, tree.name(tree.slot(symbol)));
+				checkEquals("slot of " + name + " in the AST", tree.slot(symbol), ast.slot(symbol));
+			}
+		}
+		catch (ExecutorException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/*
+	 * An undeclared variable is reported with the message for how it's
+	 * used, even in a statement that would never run, and before anything
+	 * is written.
+	 */
+	private static void undeclared() throws ParseException {
+		String never = "program int X; begin X = 1; write X; if (X == 2) then ";
+		resolveFails("assigning to an undeclared variable", never + "Z = 1; end; end",
+				"ID ' Z ' has not been declared!");
+		resolveFails("reading an undeclared variable", never + "read X, Z; end; end",
+				"can't assign value to Z - it's undeclared!");
+		resolveFails("writing an undeclared variable", never + "write Z; end; end",
+				"can't write value of Z - it's undeclared!");
+		resolveFails("using an undeclared variable", never + "X = X + Z; end; end", "Z is undeclared!");
+		resolveFails("an undeclared variable in a condition",
+				"program int X; begin X = 1; while (Z > X) loop X = 2; end; end", "Z is undeclared!");
+
+		String ran = execute(never + "Z = 1; end; end");
+		check("nothing runs before an undeclared variable is reported",
+				!ran.contains("X = 1") && ran.endsWith("ID ' Z ' has not been declared!"));
+	}
+
+	/*
+	 * A variable declared twice is reported, in the same or a later
+	 * declaration.
+	 */
+	private static void declaredTwice() throws ParseException {
+		resolveFails("declared twice in one declaration", "program int X, X; begin X = 1; end",
+				"variableXhas already been declared!");
+		resolveFails("declared again later", "program int X, Y; int Y; begin X = 1; end",
+				"variableYhas already been declared!");
+	}
+
+	/*
+	 * A Frame's slots are undefined until they're set, including slots
+	 * past the first word of the definedness bitset.
+	 */
+	private static void frames() {
+		Frame frame = new Frame(130);
+		checkEquals("size of a frame", 130, frame.size());
+		check("a slot starts undefined", !frame.isDefined(0) && !frame.isDefined(129));
+
+		frame.set(65, -7);
+		frame.set(129, 3);
+		check("setting a slot defines it", frame.isDefined(65) && frame.isDefined(129));
+		check("setting a slot defines no other", !frame.isDefined(1) && !frame.isDefined(64) && !frame.isDefined(66));
+		checkEquals("a slot's value", -7, frame.get(65));
+		checkEquals("the last slot's value", 3, frame.get(129));
+	}
+
+	/*
+	 * Check that resolving a program, as a tree and as an AST, fails with
+	 * the message.
+	 */
+	private static void resolveFails(String name, String program, String message) throws ParseException {
+		ParseTree p = parse(program);
+		try {
+			Resolver.resolve(p);
+			fail(name + " is an error");
+		}
+		catch (ExecutorException e) {
+			check(name + ": " + e.getMessage(), e.getMessage().endsWith(message));
+		}
+		try {
+			Resolver.resolve(AstBuilder.build(p));
+			fail(name + " is an error in the AST");
+		}
+		catch (ExecutorException e) {
+			check(name + " in the AST: " + e.getMessage(), e.getMessage().endsWith(message));
+		}
+	}
+
+	private static String execute(String program) throws ParseException {
+		ParseTree p = parse(program);
+		return output("", (out, in) -> new Executor(out, p, in));
+	}
+}
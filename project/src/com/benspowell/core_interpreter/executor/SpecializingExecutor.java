@@ -0,0 +1,663 @@
+package com.benspowell.core_interpreter.executor;
+
+import java.io.*;
+import java.util.List;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+
+/**
+ * CORE Language Executor that runs a tree of nodes which rewrite
+ * themselves as they run.
+ *
+ * Every node starts out uninitialized, holding the AST it came from. The
+ * first time it runs it replaces itself, in its parent, with a node
+ * specialized to what it found: an operand becomes a constant or a slot
+ * read, a comparison of a variable with a constant becomes one node such
+ * as VarLtConst, X = X + 1 becomes an increment, and a loop whose body
+ * reads no input becomes a TightLoop. Specialized nodes keep the checks,
+ * and raise the errors, of the Executor.
+ *
+ * @author Ben Powell
+ *
+ */
+public class SpecializingExecutor implements ExecutionEngine {
+
+	private Program program;
+	private PrintStream out;
+	private Scanner inputFile;
+	private Resolution slots;
+
+	// How many nodes have replaced themselves.
+	private int rewrites = 0;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public SpecializingExecutor(Program program, Scanner i) {
+		this(System.out, program, i);
+	}
+
+	/**
+	 * Constructor for the SpecializingExecutor class
+	 */
+	public SpecializingExecutor(PrintStream out, Program program, Scanner inputFile) {
+		this.out = out;
+		this.program = program;
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * Execute a CORE program.
+	 *
+	 * @throws ExecutorException
+	 */
+	public void executeCoreProgram() throws ExecutorException {
+		// Declarations, and any undeclared variables, are dealt with here.
+		slots = Resolver.resolve(program);
+		Frame frame = new Frame(slots.size());
+
+		block(program.getBody()).execute(frame);
+	}
+
+	/**
+	 * How many nodes have replaced themselves so far.
+	 */
+	public int getRewrites() {
+		return rewrites;
+	}
+
+	/*
+	 * A node in the tree, which can replace itself in its parent.
+	 */
+	abstract class Node {
+
+		Node parent;
+
+		/*
+		 * Put replacement where child was.
+		 */
+		void replaceChild(Node child, Node replacement) {
+			throw new IllegalStateException(getClass().getSimpleName() + " has no children");
+		}
+
+		<T extends Node> T adopt(T child) {
+			child.parent = this;
+			return child;
+		}
+
+		<T extends Node> T replace(T replacement) {
+			rewrites++;
+			replacement.parent = parent;
+			parent.replaceChild(this, replacement);
+			return replacement;
+		}
+	}
+
+	abstract class ExpNode extends Node {
+		abstract int execute(Frame f) throws ExecutorException;
+	}
+
+	abstract class CondNode extends Node {
+		abstract boolean test(Frame f) throws ExecutorException;
+	}
+
+	abstract class StmtNode extends Node {
+		abstract void execute(Frame f) throws ExecutorException;
+	}
+
+	/*
+	 * The nodes for a statement sequence.
+	 */
+	private Block block(List<Stmt> stmts) {
+		StmtNode[] nodes = new StmtNode[stmts.size()];
+		for (int i = 0; i < nodes.length; i++) nodes[i] = new UninitializedStmt(stmts.get(i));
+		return new Block(nodes);
+	}
+
+	/*
+	 * Does a statement sequence read input anywhere?
+	 */
+	private static boolean reads(List<Stmt> stmts) {
+		for (Stmt s : stmts) {
+			if (s instanceof Read) return true;
+			if (s instanceof If) {
+				If i = (If) s;
+				if (reads(i.getThenBranch())) return true;
+				if (i.getElseBranch() != null && reads(i.getElseBranch())) return true;
+			}
+			if (s instanceof While && reads(((While) s).getBody())) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Statements.
+	 */
+
+	final class Block extends StmtNode {
+		private final StmtNode[] stmts;
+
+		Block(StmtNode[] stmts) {
+			this.stmts = stmts;
+			for (StmtNode s : stmts) adopt(s);
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			for (StmtNode s : stmts) s.execute(f);
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			for (int i = 0; i < stmts.length; i++) {
+				if (stmts[i] == child) stmts[i] = (StmtNode) replacement;
+			}
+		}
+	}
+
+	final class UninitializedStmt extends StmtNode {
+		private final Stmt ast;
+
+		UninitializedStmt(Stmt ast) {
+			this.ast = ast;
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			replace(specialize()).execute(f);
+		}
+
+		private StmtNode specialize() {
+			if (ast instanceof Assign) {
+				Assign a = (Assign) ast;
+				int slot = slots.slot(a.getTarget().getSymbol());
+				Exp value = a.getValue();
+
+				// X = X + c and X = X - c.
+				if (value instanceof BinOp) {
+					BinOp b = (BinOp) value;
+					if (b.getOperator() != ArithmeticOperator.TIMES && b.getLeft() instanceof Var
+							&& b.getRight() instanceof Num
+							&& slots.slot(((Var) b.getLeft()).getSymbol()) == slot) {
+						int c = ((Num) b.getRight()).getValue();
+						return new Increment(slot, b.getOperator() == ArithmeticOperator.PLUS ? c : -c);
+					}
+				}
+				return new AssignNode(slot, new UninitializedExp(value));
+			}
+			if (ast instanceof If) {
+				If i = (If) ast;
+				return new IfNode(new UninitializedCond(i.getCondition()), block(i.getThenBranch()),
+						i.getElseBranch() == null ? null : block(i.getElseBranch()));
+			}
+			if (ast instanceof While) {
+				While w = (While) ast;
+				if (!reads(w.getBody())) return new TightLoop(new UninitializedCond(w.getCondition()), block(w.getBody()));
+				return new WhileNode(new UninitializedCond(w.getCondition()), block(w.getBody()));
+			}
+			if (ast instanceof Read) return new ReadNode(slotsOf(((Read) ast).getIds()));
+			return new WriteNode(slotsOf(((Write) ast).getIds()));
+		}
+
+		private int[] slotsOf(List<Var> ids) {
+			int[] result = new int[ids.size()];
+			for (int i = 0; i < result.length; i++) result[i] = slots.slot(ids.get(i).getSymbol());
+			return result;
+		}
+	}
+
+	final class AssignNode extends StmtNode {
+		private final int slot;
+		private ExpNode value;
+
+		AssignNode(int slot, ExpNode value) {
+			this.slot = slot;
+			this.value = adopt(value);
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			f.set(slot, value.execute(f));
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			value = (ExpNode) replacement;
+		}
+	}
+
+	/*
+	 * X = X + delta, reading X as an operand would.
+	 */
+	final class Increment extends StmtNode {
+		private final int slot;
+		private final int delta;
+
+		Increment(int slot, int delta) {
+			this.slot = slot;
+			this.delta = delta;
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			if (!f.isDefined(slot)) throw new ExecutorException(slots.name(slot)+" is undefined!");
+			f.set(slot, f.get(slot) + delta);
+		}
+	}
+
+	final class IfNode extends StmtNode {
+		private CondNode cond;
+		private final Block thenBranch;
+		private final Block elseBranch;
+
+		IfNode(CondNode cond, Block thenBranch, Block elseBranch) {
+			this.cond = adopt(cond);
+			this.thenBranch = adopt(thenBranch);
+			this.elseBranch = elseBranch == null ? null : adopt(elseBranch);
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			if (cond.test(f)) thenBranch.execute(f);
+			else if (elseBranch != null) elseBranch.execute(f);
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			cond = (CondNode) replacement;
+		}
+	}
+
+	final class WhileNode extends StmtNode {
+		private CondNode cond;
+		private final Block body;
+
+		WhileNode(CondNode cond, Block body) {
+			this.cond = adopt(cond);
+			this.body = adopt(body);
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			while (cond.test(f)) body.execute(f);
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			cond = (CondNode) replacement;
+		}
+	}
+
+	/*
+	 * A loop whose body never reads input. Once its condition has
+	 * specialized, the loop runs the statements of its body straight from
+	 * its own array, with no Block in between.
+	 */
+	final class TightLoop extends StmtNode {
+		private CondNode cond;
+		private final StmtNode[] body;
+
+		TightLoop(CondNode cond, Block body) {
+			this.cond = adopt(cond);
+			this.body = body.stmts;
+			for (StmtNode s : this.body) adopt(s);
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			final StmtNode[] stmts = body;
+			while (cond.test(f)) {
+				for (StmtNode s : stmts) s.execute(f);
+			}
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			if (child == cond) {
+				cond = (CondNode) replacement;
+				return;
+			}
+			for (int i = 0; i < body.length; i++) {
+				if (body[i] == child) body[i] = (StmtNode) replacement;
+			}
+		}
+	}
+
+	final class ReadNode extends StmtNode {
+		private final int[] ids;
+
+		ReadNode(int[] ids) {
+			this.ids = ids;
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			for (int slot : ids) {
+				if (!inputFile.hasNextInt()) throw new ExecutorException("input file is out of int's to read!");
+				f.set(slot, inputFile.nextInt());
+			}
+		}
+	}
+
+	final class WriteNode extends StmtNode {
+		private final int[] ids;
+
+		WriteNode(int[] ids) {
+			this.ids = ids;
+		}
+
+		void execute(Frame f) throws ExecutorException {
+			for (int slot : ids) {
+				if (!f.isDefined(slot)) throw new ExecutorException("can't write value of " + slots.name(slot) + " - it's undefined!");
+				out.println(slots.name(slot)+" = "+f.get(slot));
+			}
+		}
+	}
+
+	/*
+	 * Conditions. Both sides of && and || are always evaluated, as in the
+	 * Executor.
+	 */
+
+	final class UninitializedCond extends CondNode {
+		private final Cond ast;
+
+		UninitializedCond(Cond ast) {
+			this.ast = ast;
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return replace(specialize()).test(f);
+		}
+
+		private CondNode specialize() {
+			if (ast instanceof Compare) {
+				Compare c = (Compare) ast;
+				if (c.getLeft() instanceof Var && c.getRight() instanceof Num) {
+					int slot = slots.slot(((Var) c.getLeft()).getSymbol());
+					int constant = ((Num) c.getRight()).getValue();
+					switch (c.getOperator()) {
+					case NOT_EQUAL:
+						return new VarNeConst(slot, constant);
+					case EQUAL:
+						return new VarEqConst(slot, constant);
+					case LESS:
+						return new VarLtConst(slot, constant);
+					case GREATER:
+						return new VarGtConst(slot, constant);
+					case LESS_OR_EQUAL:
+						return new VarLeConst(slot, constant);
+					default:
+						return new VarGeConst(slot, constant);
+					}
+				}
+				return new CompareNode(c.getOperator(), new UninitializedExp(c.getLeft()), new UninitializedExp(c.getRight()));
+			}
+			if (ast instanceof Not) return new NotNode(new UninitializedCond(((Not) ast).getOperand()));
+			if (ast instanceof And) {
+				And a = (And) ast;
+				return new AndNode(new UninitializedCond(a.getLeft()), new UninitializedCond(a.getRight()));
+			}
+			Or o = (Or) ast;
+			return new OrNode(new UninitializedCond(o.getLeft()), new UninitializedCond(o.getRight()));
+		}
+	}
+
+	final class CompareNode extends CondNode {
+		private final RelationalOperator operator;
+		private ExpNode left;
+		private ExpNode right;
+
+		CompareNode(RelationalOperator operator, ExpNode left, ExpNode right) {
+			this.operator = operator;
+			this.left = adopt(left);
+			this.right = adopt(right);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			int a = left.execute(f);
+			int b = right.execute(f);
+			return operator.test(a, b);
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			if (child == left) left = (ExpNode) replacement;
+			else right = (ExpNode) replacement;
+		}
+	}
+
+	/*
+	 * A comparison of a variable with a constant.
+	 */
+	abstract class VarConstCompare extends CondNode {
+		final int slot;
+		final int constant;
+
+		VarConstCompare(int slot, int constant) {
+			this.slot = slot;
+			this.constant = constant;
+		}
+
+		final int value(Frame f) throws ExecutorException {
+			if (!f.isDefined(slot)) throw new ExecutorException(slots.name(slot)+" is undefined!");
+			return f.get(slot);
+		}
+	}
+
+	final class VarNeConst extends VarConstCompare {
+		VarNeConst(int slot, int constant) {
+			super(slot, constant);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return value(f) != constant;
+		}
+	}
+
+	final class VarEqConst extends VarConstCompare {
+		VarEqConst(int slot, int constant) {
+			super(slot, constant);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return value(f) == constant;
+		}
+	}
+
+	final class VarLtConst extends VarConstCompare {
+		VarLtConst(int slot, int constant) {
+			super(slot, constant);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return value(f) < constant;
+		}
+	}
+
+	final class VarGtConst extends VarConstCompare {
+		VarGtConst(int slot, int constant) {
+			super(slot, constant);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return value(f) > constant;
+		}
+	}
+
+	final class VarLeConst extends VarConstCompare {
+		VarLeConst(int slot, int constant) {
+			super(slot, constant);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return value(f) <= constant;
+		}
+	}
+
+	final class VarGeConst extends VarConstCompare {
+		VarGeConst(int slot, int constant) {
+			super(slot, constant);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return value(f) >= constant;
+		}
+	}
+
+	final class NotNode extends CondNode {
+		private CondNode operand;
+
+		NotNode(CondNode operand) {
+			this.operand = adopt(operand);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			return !operand.test(f);
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			operand = (CondNode) replacement;
+		}
+	}
+
+	final class AndNode extends CondNode {
+		private CondNode left;
+		private CondNode right;
+
+		AndNode(CondNode left, CondNode right) {
+			this.left = adopt(left);
+			this.right = adopt(right);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			boolean a = left.test(f);
+			boolean b = right.test(f);
+			return a && b;
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			if (child == left) left = (CondNode) replacement;
+			else right = (CondNode) replacement;
+		}
+	}
+
+	final class OrNode extends CondNode {
+		private CondNode left;
+		private CondNode right;
+
+		OrNode(CondNode left, CondNode right) {
+			this.left = adopt(left);
+			this.right = adopt(right);
+		}
+
+		boolean test(Frame f) throws ExecutorException {
+			boolean a = left.test(f);
+			boolean b = right.test(f);
+			return a || b;
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			if (child == left) left = (CondNode) replacement;
+			else right = (CondNode) replacement;
+		}
+	}
+
+	/*
+	 * Expressions.
+	 */
+
+	final class UninitializedExp extends ExpNode {
+		private final Exp ast;
+
+		UninitializedExp(Exp ast) {
+			this.ast = ast;
+		}
+
+		int execute(Frame f) throws ExecutorException {
+			return replace(specialize(ast)).execute(f);
+		}
+
+		private ExpNode specialize(Exp e) {
+			if (e instanceof Num) return new Constant(((Num) e).getValue());
+			if (e instanceof Var) return new ReadSlot(slots.slot(((Var) e).getSymbol()));
+			if (e instanceof Group) return specialize(((Group) e).getContents());
+
+			BinOp b = (BinOp) e;
+			ExpNode left = new UninitializedExp(b.getLeft());
+			ExpNode right = new UninitializedExp(b.getRight());
+			switch (b.getOperator()) {
+			case PLUS:
+				return new Add(left, right);
+			case MINUS:
+				return new Subtract(left, right);
+			default:
+				return new Multiply(left, right);
+			}
+		}
+	}
+
+	final class Constant extends ExpNode {
+		private final int value;
+
+		Constant(int value) {
+			this.value = value;
+		}
+
+		int execute(Frame f) {
+			return value;
+		}
+	}
+
+	/*
+	 * A variable, which must be defined, as in Executor.executeOp.
+	 */
+	final class ReadSlot extends ExpNode {
+		private final int slot;
+
+		ReadSlot(int slot) {
+			this.slot = slot;
+		}
+
+		int execute(Frame f) throws ExecutorException {
+			if (!f.isDefined(slot)) throw new ExecutorException(slots.name(slot)+" is undefined!");
+			return f.get(slot);
+		}
+	}
+
+	abstract class BinaryNode extends ExpNode {
+		ExpNode left;
+		ExpNode right;
+
+		BinaryNode(ExpNode left, ExpNode right) {
+			this.left = adopt(left);
+			this.right = adopt(right);
+		}
+
+		void replaceChild(Node child, Node replacement) {
+			if (child == left) left = (ExpNode) replacement;
+			else right = (ExpNode) replacement;
+		}
+	}
+
+	final class Add extends BinaryNode {
+		Add(ExpNode left, ExpNode right) {
+			super(left, right);
+		}
+
+		int execute(Frame f) throws ExecutorException {
+			int a = left.execute(f);
+			return a + right.execute(f);
+		}
+	}
+
+	final class Subtract extends BinaryNode {
+		Subtract(ExpNode left, ExpNode right) {
+			super(left, right);
+		}
+
+		int execute(Frame f) throws ExecutorException {
+			int a = left.execute(f);
+			return a - right.execute(f);
+		}
+	}
+
+	final class Multiply extends BinaryNode {
+		Multiply(ExpNode left, ExpNode right) {
+			super(left, right);
+		}
+
+		int execute(Frame f) throws ExecutorException {
+			int a = left.execute(f);
+			return a * right.execute(f);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a JVM class file: just enough for the JvmCompiler and the
+ * MethodHandleCompiler. The class files are version 49 (Java 5), so the methods
+ * need no StackMapTable and the JVM's type-inferencing verifier checks
+ * them.
+ * 
+ * @author Benjamin S. Powell
+ */
+class ClassFileWriter {
+	
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+	
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	
+	// The constant pool, written as it's built, and its entries' indices.
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private final Map<String,Integer> constants = new HashMap<String,Integer>();
+	private int poolCount = 1;
+	
+	private final int thisClass;
+	private final int superClass;
+	private final List<Integer> interfaces = new ArrayList<Integer>();
+	private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+	private int fieldCount = 0;
+	private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+	private int methodCount = 0;
+	
+	/*
+	 * Constructor for a public final class named name (in internal form,
+	 * with slashes) extending superName.
+	 */
+	ClassFileWriter(String name, String superName) {
+		this.thisClass = classRef(name);
+		this.superClass = classRef(superName);
+	}
+	
+	void addInterface(String name) {
+		interfaces.add(classRef(name));
+	}
+	
+	/*
+	 * Get the index of a constant, adding it if it's new.
+	 */
+	private int constant(String key, int tag, int a, int b) {
+		Integer index = constants.get(key);
+		if (index != null) return index;
+		try {
+			pool.writeByte(tag);
+			if (tag == CONSTANT_CLASS || tag == CONSTANT_STRING) pool.writeShort(a);
+			else if (tag == CONSTANT_INTEGER) pool.writeInt(a);
+			else {
+				pool.writeShort(a);
+				pool.writeShort(b);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		constants.put(key, poolCount);
+		return poolCount++;
+	}
+	
+	int utf8(String s) {
+		Integer index = constants.get("U" + s);
+		if (index != null) return index;
+		try {
+			pool.writeByte(CONSTANT_UTF8);
+			pool.writeUTF(s);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		constants.put("U" + s, poolCount);
+		return poolCount++;
+	}
+	
+	int integer(int x) {
+		return constant("I" + x, CONSTANT_INTEGER, x, 0);
+	}
+	
+	int string(String s) {
+		return constant("S" + s, CONSTANT_STRING, utf8(s), 0);
+	}
+	
+	int classRef(String name) {
+		return constant("C" + name, CONSTANT_CLASS, utf8(name), 0);
+	}
+	
+	private int nameAndType(String name, String descriptor) {
+		return constant("N" + name + ' ' + descriptor, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+	}
+	
+	int fieldRef(String owner, String name, String descriptor) {
+		return constant("F" + owner + '.' + name + ' ' + descriptor, CONSTANT_FIELDREF,
+				classRef(owner), nameAndType(name, descriptor));
+	}
+	
+	int methodRef(String owner, String name, String descriptor) {
+		return constant("M" + owner + '.' + name + descriptor, CONSTANT_METHODREF,
+				classRef(owner), nameAndType(name, descriptor));
+	}
+	
+	int interfaceMethodRef(String owner, String name, String descriptor) {
+		return constant("J" + owner + '.' + name + descriptor, CONSTANT_INTERFACE_METHODREF,
+				classRef(owner), nameAndType(name, descriptor));
+	}
+	
+	/*
+	 * Add a field, with no initial value.
+	 */
+	void addField(int access, String name, String descriptor) {
+		try {
+			DataOutputStream f = new DataOutputStream(fields);
+			f.writeShort(access);
+			f.writeShort(utf8(name));
+			f.writeShort(utf8(descriptor));
+			f.writeShort(0);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		fieldCount++;
+	}
+	
+	/*
+	 * Add a method whose body is code.
+	 */
+	void addMethod(int access, String name, String descriptor, CodeBuilder code) {
+		byte[] bytes = code.toByteArray();
+		try {
+			DataOutputStream m = new DataOutputStream(methods);
+			m.writeShort(access);
+			m.writeShort(utf8(name));
+			m.writeShort(utf8(descriptor));
+			m.writeShort(1);
+			
+			m.writeShort(utf8("Code"));
+			m.writeInt(12 + bytes.length);
+			m.writeShort(code.maxStack());
+			m.writeShort(code.maxLocals());
+			m.writeInt(bytes.length);
+			m.write(bytes);
+			m.writeShort(0);
+			m.writeShort(0);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		methodCount++;
+	}
+	
+	/*
+	 * The class file.
+	 */
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			
+			if (poolCount > 0xFFFF) throw new IllegalStateException("too many constants");
+			if (methodCount > 0xFFFF) throw new IllegalStateException("too many methods");
+			out.writeShort(poolCount);
+			poolBytes.writeTo(out);
+			
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.size());
+			for (int i : interfaces) out.writeShort(i);
+			
+			out.writeShort(fieldCount);
+			fields.writeTo(out);
+			out.writeShort(methodCount);
+			methods.writeTo(out);
+			out.writeShort(0);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,249 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.util.Arrays;
+
+/**
+ * Builds the code of one JVM method, keeping track of how deep the operand
+ * stack gets. Only the instructions the JvmCompiler needs are here.
+ *
+ * @author Benjamin S. Powell
+ */
+class CodeBuilder {
+
+	static final int IF_ICMPEQ = 0x9F;
+	static final int IF_ICMPNE = 0xA0;
+	static final int IF_ICMPLT = 0xA1;
+	static final int IF_ICMPGE = 0xA2;
+	static final int IF_ICMPGT = 0xA3;
+	static final int IF_ICMPLE = 0xA4;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9A;
+	static final int GOTO = 0xA7;
+
+	static final int IADD = 0x60;
+	static final int ISUB = 0x64;
+	static final int IMUL = 0x68;
+	static final int IAND = 0x7E;
+	static final int IOR = 0x80;
+	static final int IXOR = 0x82;
+
+	static final int IALOAD = 0x2E;
+	static final int BALOAD = 0x33;
+	static final int IASTORE = 0x4F;
+	static final int BASTORE = 0x54;
+
+	private static final int ILOAD = 0x15;
+	private static final int ISTORE = 0x36;
+	private static final int ALOAD = 0x19;
+	private static final int ASTORE = 0x3A;
+	private static final int WIDE = 0xC4;
+
+	/**
+	 * A place in the code that branches can jump to before it's known.
+	 */
+	static class Label {
+		private int position = -1;
+
+		// Where the branches to this label are, and where their offsets go.
+		private int[] branches = new int[4];
+		private int count = 0;
+	}
+
+	private byte[] code = new byte[256];
+	private int length = 0;
+
+	private int stack = 0;
+	private int maxStack = 0;
+	private int maxLocals;
+
+	/*
+	 * Constructor for a method whose arguments take up the first
+	 * arguments locals.
+	 */
+	CodeBuilder(int arguments) {
+		this.maxLocals = arguments;
+	}
+
+	int length() {
+		return length;
+	}
+
+	int maxStack() {
+		return maxStack;
+	}
+
+	int maxLocals() {
+		return maxLocals;
+	}
+
+	/*
+	 * The code. Every label used must have been placed.
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(code, length);
+	}
+
+	private void u1(int b) {
+		if (length == code.length) code = Arrays.copyOf(code, length * 2);
+		code[length++] = (byte) b;
+	}
+
+	private void u2(int s) {
+		u1(s >> 8);
+		u1(s);
+	}
+
+	/*
+	 * Account for an instruction that changes the stack depth by delta.
+	 */
+	private void adjust(int delta) {
+		stack += delta;
+		if (stack > maxStack) maxStack = stack;
+	}
+
+	/*
+	 * Set the stack depth, where code is only reached by a jump.
+	 */
+	void setStack(int depth) {
+		stack = depth;
+	}
+
+	int stack() {
+		return stack;
+	}
+
+	/*
+	 * An instruction with no operands.
+	 */
+	void op(int opcode, int stackDelta) {
+		u1(opcode);
+		adjust(stackDelta);
+	}
+
+	/*
+	 * Push an int constant, in as few bytes as will do.
+	 */
+	void pushInt(int x, ClassFileWriter cf) {
+		if (x >= -1 && x <= 5) u1(0x03 + x);
+		else if (x >= Byte.MIN_VALUE && x <= Byte.MAX_VALUE) {
+			u1(0x10);
+			u1(x);
+		}
+		else if (x >= Short.MIN_VALUE && x <= Short.MAX_VALUE) {
+			u1(0x11);
+			u2(x);
+		}
+		else {
+			ldc(cf.integer(x));
+			return;
+		}
+		adjust(1);
+	}
+	
+	/*
+	 * Push a one-word constant from the constant pool.
+	 */
+	void ldc(int index) {
+		if (index <= 0xFF) {
+			u1(0x12);
+			u1(index);
+		}
+		else {
+			u1(0x13);
+			u2(index);
+		}
+		adjust(1);
+	}
+
+	/*
+	 * A load or store of a local variable.
+	 */
+	private void local(int opcode, int index, int stackDelta) {
+		if (index > 0xFF) {
+			u1(WIDE);
+			u1(opcode);
+			u2(index);
+		}
+		else {
+			u1(opcode);
+			u1(index);
+		}
+		if (index + 1 > maxLocals) maxLocals = index + 1;
+		adjust(stackDelta);
+	}
+
+	void iload(int index) {
+		local(ILOAD, index, 1);
+	}
+
+	void istore(int index) {
+		local(ISTORE, index, -1);
+	}
+
+	void aload(int index) {
+		local(ALOAD, index, 1);
+	}
+
+	void astore(int index) {
+		local(ASTORE, index, -1);
+	}
+
+	/*
+	 * An instruction with a two-byte constant pool index, such as a field
+	 * access or method call.
+	 */
+	void indexed(int opcode, int index, int stackDelta) {
+		u1(opcode);
+		u2(index);
+		adjust(stackDelta);
+	}
+
+	/*
+	 * invokeinterface, which has two extra operand bytes.
+	 */
+	void invokeInterface(int index, int argumentSlots, int stackDelta) {
+		u1(0xB9);
+		u2(index);
+		u1(argumentSlots + 1);
+		u1(0);
+		adjust(stackDelta);
+	}
+
+	/*
+	 * A branch to a label, for GOTO and the conditional branches.
+	 */
+	void branch(int opcode, Label target, int stackDelta) {
+		int at = length;
+		u1(opcode);
+		if (target.position >= 0) {
+			u2(target.position - at);
+		}
+		else {
+			if (target.count == target.branches.length) target.branches = Arrays.copyOf(target.branches, target.count * 2);
+			target.branches[target.count++] = at;
+			u2(0);
+		}
+		adjust(stackDelta);
+	}
+
+	/*
+	 * Put a label here, and fix up the branches already made to it.
+	 */
+	void place(Label label) {
+		label.position = length;
+		for (int i = 0; i < label.count; i++) {
+			int at = label.branches[i];
+			int offset = length - at;
+			code[at + 1] = (byte) (offset >> 8);
+			code[at + 2] = (byte) offset;
+		}
+		label.count = 0;
+	}
+
+	/*
+	 * Can every branch in the code reach its target?
+	 */
+	boolean branchesFit() {
+		return length <= Short.MAX_VALUE;
+	}
+}
@@ -0,0 +1,18 @@
+package com.benspowell.core_interpreter.jvm;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+
+/**
+ * A CORE program compiled to a JVM class, by the JvmCompiler or the
+ * MethodHandleCompiler.
+ * 
+ * @author Benjamin S. Powell
+ */
+public interface CompiledProgram {
+	
+	/**
+	 * Run the program, with its variables and I/O in rt.
+	 * @throws ExecutorException 
+	 */
+	void run(JvmRuntime rt) throws ExecutorException;
+}
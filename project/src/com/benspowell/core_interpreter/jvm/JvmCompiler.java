@@ -0,0 +1,632 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.executor.Resolution;
+
+import static com.benspowell.core_interpreter.jvm.CodeBuilder.*;
+
+/**
+ * Compiles a program's AST to a JVM class, and loads it as a hidden class,
+ * so that HotSpot compiles CORE loops to native code.
+ *
+ * Every while loop becomes a method of its own, so that each stays small
+ * enough for the JIT. Within a method the variables it uses are int
+ * locals, with another int local each for whether they're defined; they
+ * are loaded from the JvmRuntime on entry, and stored back on exit and
+ * around calls to inner loops. Reading an undefined variable throws the
+ * same ExecutorException, in the same order, as in the Executor.
+ *
+ * @author Benjamin S. Powell
+ */
+public class JvmCompiler {
+
+	private static final String CLASS = "com/benspowell/core_interpreter/jvm/CoreProgram";
+	private static final String RUNTIME = "com/benspowell/core_interpreter/jvm/JvmRuntime";
+	private static final String EXCEPTION = "com/benspowell/core_interpreter/error/ExecutorException";
+	private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+	private static final String METHOD = "(L" + RUNTIME + ";)V";
+
+	private static final int INVOKEVIRTUAL = 0xB6;
+	private static final int INVOKESPECIAL = 0xB7;
+	private static final int INVOKESTATIC = 0xB8;
+	private static final int GETSTATIC = 0xB2;
+	private static final int PUTSTATIC = 0xB3;
+	private static final int GETFIELD = 0xB4;
+	private static final int CHECKCAST = 0xC0;
+	private static final int ATHROW = 0xBF;
+	private static final int RETURN = 0xB1;
+
+	// Locals every method has: the JvmRuntime, and its two arrays.
+	private static final int RT = 0;
+	private static final int VALUES = 1;
+	private static final int DEFINED = 2;
+	private static final int FIRST_VARIABLE = 3;
+
+	private final ClassFileWriter cf;
+	private final Resolution slots;
+	private int loops = 0;
+
+	private JvmCompiler(Resolution slots) {
+		this.slots = slots;
+		this.cf = new ClassFileWriter(CLASS, "java/lang/Object");
+		cf.addInterface("com/benspowell/core_interpreter/jvm/CompiledProgram");
+	}
+
+	/**
+	 * Compile a program whose variables have been resolved, and load it.
+	 * Returns null if the program is too big for a JVM class.
+	 */
+	public static CompiledProgram compile(Program program, Resolution slots) {
+		return compile(program.getBody(), slots);
+	}
+
+	/**
+	 * Compile just one loop of a program, the same way. Run, it goes
+	 * round while its condition holds, then returns.
+	 */
+	public static CompiledProgram compileLoop(While loop, Resolution slots) {
+		return compile(List.of(loop), slots);
+	}
+
+	private static CompiledProgram compile(List<Stmt> body, Resolution slots) {
+		JvmCompiler c = new JvmCompiler(slots);
+		byte[] classFile;
+		try {
+			classFile = c.compileClass(body);
+		}
+		catch (IllegalStateException tooBig) {
+			return null;
+		}
+
+		try {
+			MethodHandles.Lookup hidden = load(classFile, null);
+			return (CompiledProgram) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException("can't load compiled program", e);
+		}
+	}
+
+	/**
+	 * A CompiledProgram that runs body, a (JvmRuntime)void method handle.
+	 * The handle is held in a static final field of a class of its own,
+	 * so the JIT treats it as a constant, and can inline all of it.
+	 */
+	public static CompiledProgram constant(MethodHandle body) {
+		ClassFileWriter cf = new ClassFileWriter(CLASS, "java/lang/Object");
+		cf.addInterface("com/benspowell/core_interpreter/jvm/CompiledProgram");
+		addHandles(cf, "BODY");
+		addConstructor(cf);
+
+		CodeBuilder run = new CodeBuilder(2);
+		run.indexed(GETSTATIC, cf.fieldRef(CLASS, "BODY", "L" + METHOD_HANDLE + ";"), 1);
+		run.aload(1);
+		run.indexed(INVOKEVIRTUAL, cf.methodRef(METHOD_HANDLE, "invokeExact", METHOD), -2);
+		run.op(RETURN, 0);
+		cf.addMethod(ClassFileWriter.ACC_PUBLIC, "run", METHOD, run);
+
+		try {
+			MethodHandles.Lookup hidden = load(cf.toByteArray(), List.of(body));
+			return (CompiledProgram) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException("can't load compiled program", e);
+		}
+	}
+
+	/**
+	 * A (JvmRuntime)void method handle that runs body while condition, a
+	 * (JvmRuntime)boolean handle, holds. Each loop is a method of its own,
+	 * with its handles as constants, so the JIT can compile it on its own
+	 * while it's running.
+	 */
+	public static MethodHandle loop(MethodHandle condition, MethodHandle body) {
+		ClassFileWriter cf = new ClassFileWriter(CLASS, "java/lang/Object");
+		addHandles(cf, "CONDITION", "BODY");
+
+		CodeBuilder loop = new CodeBuilder(1);
+		Label test = new Label();
+		Label top = new Label();
+		loop.branch(GOTO, test, 0);
+		loop.place(top);
+		loop.indexed(GETSTATIC, cf.fieldRef(CLASS, "BODY", "L" + METHOD_HANDLE + ";"), 1);
+		loop.aload(RT);
+		loop.indexed(INVOKEVIRTUAL, cf.methodRef(METHOD_HANDLE, "invokeExact", METHOD), -2);
+		loop.place(test);
+		loop.indexed(GETSTATIC, cf.fieldRef(CLASS, "CONDITION", "L" + METHOD_HANDLE + ";"), 1);
+		loop.aload(RT);
+		loop.indexed(INVOKEVIRTUAL, cf.methodRef(METHOD_HANDLE, "invokeExact", "(L" + RUNTIME + ";)Z"), -1);
+		loop.branch(IFNE, top, -1);
+		loop.op(RETURN, 0);
+		cf.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "loop", METHOD, loop);
+
+		try {
+			MethodHandles.Lookup hidden = load(cf.toByteArray(), List.of(condition, body));
+			return hidden.findStatic(hidden.lookupClass(), "loop", MethodType.methodType(void.class, JvmRuntime.class));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("can't load compiled loop", e);
+		}
+	}
+
+	/*
+	 * Add a static final MethodHandle field for each name, set from the
+	 * class data: a List of the handles, in the same order.
+	 */
+	private static void addHandles(ClassFileWriter cf, String... names) {
+		CodeBuilder clinit = new CodeBuilder(0);
+		for (int i = 0; i < names.length; i++) {
+			cf.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+					names[i], "L" + METHOD_HANDLE + ";");
+
+			clinit.indexed(INVOKESTATIC, cf.methodRef("java/lang/invoke/MethodHandles", "lookup",
+					"()Ljava/lang/invoke/MethodHandles$Lookup;"), 1);
+			clinit.ldc(cf.string("_"));
+			clinit.ldc(cf.classRef(METHOD_HANDLE));
+			clinit.pushInt(i, cf);
+			clinit.indexed(INVOKESTATIC, cf.methodRef("java/lang/invoke/MethodHandles", "classDataAt",
+					"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;"), -3);
+			clinit.indexed(CHECKCAST, cf.classRef(METHOD_HANDLE), 0);
+			clinit.indexed(PUTSTATIC, cf.fieldRef(CLASS, names[i], "L" + METHOD_HANDLE + ";"), -1);
+		}
+		clinit.op(RETURN, 0);
+		cf.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V", clinit);
+	}
+
+	/*
+	 * Define a class file as a hidden class, with data as its class data
+	 * if it's not null.
+	 */
+	private static MethodHandles.Lookup load(byte[] classFile, Object data) {
+		try {
+			return data == null
+					? MethodHandles.lookup().defineHiddenClass(classFile, true)
+					: MethodHandles.lookup().defineHiddenClassWithClassData(classFile, data, true);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("can't load compiled program", e);
+		}
+	}
+
+	/*
+	 * A public constructor that does nothing.
+	 */
+	private static void addConstructor(ClassFileWriter cf) {
+		CodeBuilder init = new CodeBuilder(1);
+		init.aload(0);
+		init.indexed(INVOKESPECIAL, cf.methodRef("java/lang/Object", "<init>", "()V"), -1);
+		init.op(RETURN, 0);
+		cf.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", init);
+	}
+
+	/*
+	 * The class file for a program with the given body.
+	 */
+	private byte[] compileClass(List<Stmt> body) {
+		addConstructor(cf);
+
+		CodeBuilder run = new CodeBuilder(2);
+		run.aload(1);
+		run.indexed(INVOKESTATIC, cf.methodRef(CLASS, "body", METHOD), -1);
+		run.op(RETURN, 0);
+		cf.addMethod(ClassFileWriter.ACC_PUBLIC, "run", METHOD, run);
+
+		new MethodCompiler("body", body, null).compile();
+
+		return cf.toByteArray();
+	}
+
+	/*
+	 * Which variables some code reads or writes, not counting the insides
+	 * of nested loops unless deep is set.
+	 */
+	private class Uses implements Stmt.Visitor<Void, RuntimeException>,
+			Cond.Visitor<Void, RuntimeException>, Exp.Visitor<Void, RuntimeException> {
+
+		final boolean[] used = new boolean[slots.size()];
+		final boolean[] assigned = new boolean[slots.size()];
+		private final boolean deep;
+
+		Uses(boolean deep) {
+			this.deep = deep;
+		}
+
+		void stmts(List<Stmt> stmts) {
+			for (Stmt s : stmts) s.accept(this);
+		}
+
+		private void use(Var v) {
+			used[slots.slot(v.getSymbol())] = true;
+		}
+
+		private void assign(Var v) {
+			used[slots.slot(v.getSymbol())] = true;
+			assigned[slots.slot(v.getSymbol())] = true;
+		}
+
+		public Void visitAssign(Assign s) {
+			assign(s.getTarget());
+			s.getValue().accept(this);
+			return null;
+		}
+
+		public Void visitIf(If s) {
+			s.getCondition().accept(this);
+			stmts(s.getThenBranch());
+			if (s.getElseBranch() != null) stmts(s.getElseBranch());
+			return null;
+		}
+
+		public Void visitWhile(While s) {
+			if (deep) {
+				s.getCondition().accept(this);
+				stmts(s.getBody());
+			}
+			return null;
+		}
+
+		public Void visitRead(Read s) {
+			for (Var v : s.getIds()) assign(v);
+			return null;
+		}
+
+		public Void visitWrite(Write s) {
+			for (Var v : s.getIds()) use(v);
+			return null;
+		}
+
+		public Void visitCompare(Compare c) {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitNot(Not c) {
+			c.getOperand().accept(this);
+			return null;
+		}
+
+		public Void visitAnd(And c) {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitOr(Or c) {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitNum(Num e) {
+			return null;
+		}
+
+		public Void visitVar(Var e) {
+			use(e);
+			return null;
+		}
+
+		public Void visitBinOp(BinOp e) {
+			e.getLeft().accept(this);
+			e.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitGroup(Group e) {
+			e.getContents().accept(this);
+			return null;
+		}
+	}
+
+	/*
+	 * Compiles one method: the program's body, or one while loop.
+	 */
+	private class MethodCompiler implements Stmt.Visitor<Void, RuntimeException>,
+			Exp.Visitor<Void, RuntimeException> {
+
+		private final String name;
+		private final List<Stmt> body;
+		private final Cond condition;
+		private final CodeBuilder code = new CodeBuilder(1);
+		private final Uses uses = new Uses(false);
+
+		// The locals of each variable's value; its defined flag is next.
+		private final int[] local = new int[slots.size()];
+
+		/*
+		 * Constructor for a method that runs body, or runs it while
+		 * condition holds if there is one.
+		 */
+		MethodCompiler(String name, List<Stmt> body, Cond condition) {
+			this.name = name;
+			this.body = body;
+			this.condition = condition;
+		}
+
+		void compile() {
+			uses.stmts(body);
+			if (condition != null) condition.accept(uses);
+
+			int next = FIRST_VARIABLE;
+			for (int slot = 0; slot < local.length; slot++) {
+				if (!uses.used[slot]) continue;
+				local[slot] = next;
+				next += 2;
+			}
+			if (next > 0xFFFF) throw new IllegalStateException("too many locals");
+
+			code.aload(RT);
+			code.indexed(GETFIELD, cf.fieldRef(RUNTIME, "values", "[I"), 0);
+			code.astore(VALUES);
+			code.aload(RT);
+			code.indexed(GETFIELD, cf.fieldRef(RUNTIME, "defined", "[Z"), 0);
+			code.astore(DEFINED);
+			load(uses.used);
+
+			if (condition == null) {
+				stmts(body);
+			}
+			else {
+				Label test = new Label();
+				Label top = new Label();
+				code.branch(GOTO, test, 0);
+				code.place(top);
+				stmts(body);
+				code.place(test);
+				jump(condition, true, top);
+			}
+
+			store(uses.assigned);
+			code.op(RETURN, 0);
+
+			if (!code.branchesFit()) throw new IllegalStateException("method too large");
+			cf.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, name, METHOD, code);
+		}
+
+		/*
+		 * Load the chosen variables from the JvmRuntime into locals.
+		 */
+		private void load(boolean[] which) {
+			for (int slot = 0; slot < which.length; slot++) {
+				if (!which[slot] || !uses.used[slot]) continue;
+				code.aload(VALUES);
+				code.pushInt(slot, cf);
+				code.op(IALOAD, -1);
+				code.istore(local[slot]);
+				code.aload(DEFINED);
+				code.pushInt(slot, cf);
+				code.op(BALOAD, -1);
+				code.istore(local[slot] + 1);
+			}
+		}
+
+		/*
+		 * Store the chosen variables back into the JvmRuntime.
+		 */
+		private void store(boolean[] which) {
+			for (int slot = 0; slot < which.length; slot++) {
+				if (!which[slot] || !uses.used[slot]) continue;
+				code.aload(VALUES);
+				code.pushInt(slot, cf);
+				code.iload(local[slot]);
+				code.op(IASTORE, -3);
+				code.aload(DEFINED);
+				code.pushInt(slot, cf);
+				code.iload(local[slot] + 1);
+				code.op(BASTORE, -3);
+			}
+		}
+
+		private void stmts(List<Stmt> stmts) {
+			for (Stmt s : stmts) s.accept(this);
+		}
+
+		/*
+		 * Set the variable in a slot to the value on top of the stack.
+		 */
+		private void set(int slot) {
+			code.istore(local[slot]);
+			code.pushInt(1, cf);
+			code.istore(local[slot] + 1);
+		}
+
+		/*
+		 * Throw the JvmRuntime's error for slot, unless it's defined.
+		 */
+		private void check(int slot, String error) {
+			Label ok = new Label();
+			code.iload(local[slot] + 1);
+			code.branch(IFNE, ok, -1);
+			code.aload(RT);
+			code.pushInt(slot, cf);
+			code.indexed(INVOKEVIRTUAL, cf.methodRef(RUNTIME, error, "(I)L" + EXCEPTION + ";"), -1);
+			code.op(ATHROW, -1);
+			code.place(ok);
+		}
+
+		public Void visitAssign(Assign s) {
+			s.getValue().accept(this);
+			set(slots.slot(s.getTarget().getSymbol()));
+			return null;
+		}
+
+		public Void visitIf(If s) {
+			Label otherwise = new Label();
+			jump(s.getCondition(), false, otherwise);
+			stmts(s.getThenBranch());
+
+			if (s.getElseBranch() == null) {
+				code.place(otherwise);
+				return null;
+			}
+
+			Label end = new Label();
+			code.branch(GOTO, end, 0);
+			code.place(otherwise);
+			stmts(s.getElseBranch());
+			code.place(end);
+			return null;
+		}
+
+		/*
+		 * An inner loop is a call to its own method. What this method has
+		 * assigned is stored first, and what the loop may assign is loaded
+		 * again after.
+		 */
+		public Void visitWhile(While s) {
+			String loop = "loop" + loops++;
+			new MethodCompiler(loop, s.getBody(), s.getCondition()).compile();
+
+			Uses inner = new Uses(true);
+			inner.stmts(s.getBody());
+
+			store(uses.assigned);
+			code.aload(RT);
+			code.indexed(INVOKESTATIC, cf.methodRef(CLASS, loop, METHOD), -1);
+			load(inner.assigned);
+			return null;
+		}
+
+		public Void visitRead(Read s) {
+			for (Var v : s.getIds()) {
+				code.aload(RT);
+				code.indexed(INVOKEVIRTUAL, cf.methodRef(RUNTIME, "read", "()I"), 0);
+				set(slots.slot(v.getSymbol()));
+			}
+			return null;
+		}
+
+		public Void visitWrite(Write s) {
+			for (Var v : s.getIds()) {
+				int slot = slots.slot(v.getSymbol());
+				check(slot, "writeUndefined");
+				code.aload(RT);
+				code.pushInt(slot, cf);
+				code.iload(local[slot]);
+				code.indexed(INVOKEVIRTUAL, cf.methodRef(RUNTIME, "write", "(II)V"), -3);
+			}
+			return null;
+		}
+
+		/*
+		 * Jump to target if the condition is when. A single comparison
+		 * is one compare-and-branch; anything else is worked out as 0 or
+		 * 1 first, evaluating both sides of && and ||, as the Executor does.
+		 */
+		private void jump(Cond c, boolean when, Label target) {
+			while (c instanceof Not) {
+				c = ((Not) c).getOperand();
+				when = !when;
+			}
+
+			if (c instanceof Compare) {
+				Compare comp = (Compare) c;
+				comp.getLeft().accept(this);
+				comp.getRight().accept(this);
+				RelationalOperator op = when ? comp.getOperator() : comp.getOperator().negate();
+				code.branch(compareOpcode(op), target, -2);
+				return;
+			}
+
+			value(c);
+			code.branch(when ? IFNE : IFEQ, target, -1);
+		}
+
+		/*
+		 * Push 1 if the condition holds, or 0.
+		 */
+		private void value(Cond c) {
+			if (c instanceof Compare) {
+				Compare comp = (Compare) c;
+				comp.getLeft().accept(this);
+				comp.getRight().accept(this);
+
+				int depth = code.stack() - 2;
+				Label yes = new Label();
+				Label end = new Label();
+				code.branch(compareOpcode(comp.getOperator()), yes, -2);
+				code.pushInt(0, cf);
+				code.branch(GOTO, end, 0);
+				code.place(yes);
+				code.setStack(depth);
+				code.pushInt(1, cf);
+				code.place(end);
+			}
+			else if (c instanceof Not) {
+				value(((Not) c).getOperand());
+				code.pushInt(1, cf);
+				code.op(IXOR, -1);
+			}
+			else if (c instanceof And) {
+				value(((And) c).getLeft());
+				value(((And) c).getRight());
+				code.op(IAND, -1);
+			}
+			else {
+				value(((Or) c).getLeft());
+				value(((Or) c).getRight());
+				code.op(IOR, -1);
+			}
+		}
+
+		private int compareOpcode(RelationalOperator op) {
+			switch (op) {
+			case NOT_EQUAL:
+				return IF_ICMPNE;
+			case EQUAL:
+				return IF_ICMPEQ;
+			case LESS:
+				return IF_ICMPLT;
+			case GREATER:
+				return IF_ICMPGT;
+			case LESS_OR_EQUAL:
+				return IF_ICMPLE;
+			default:
+				return IF_ICMPGE;
+			}
+		}
+
+		/*
+		 * Expressions leave their value on the stack.
+		 */
+		public Void visitNum(Num e) {
+			code.pushInt(e.getValue(), cf);
+			return null;
+		}
+
+		public Void visitVar(Var e) {
+			int slot = slots.slot(e.getSymbol());
+			check(slot, "undefined");
+			code.iload(local[slot]);
+			return null;
+		}
+
+		public Void visitBinOp(BinOp e) {
+			e.getLeft().accept(this);
+			e.getRight().accept(this);
+			switch (e.getOperator()) {
+			case PLUS:
+				code.op(IADD, -1);
+				break;
+			case MINUS:
+				code.op(ISUB, -1);
+				break;
+			default:
+				code.op(IMUL, -1);
+				break;
+			}
+			return null;
+		}
+
+		public Void visitGroup(Group e) {
+			e.getContents().accept(this);
+			return null;
+		}
+	}
+}
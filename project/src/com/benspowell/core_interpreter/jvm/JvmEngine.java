@@ -0,0 +1,60 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.io.*;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.Program;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.ExecutionEngine;
+import com.benspowell.core_interpreter.executor.Resolution;
+import com.benspowell.core_interpreter.executor.Resolver;
+import com.benspowell.core_interpreter.vm.BytecodeCompiler;
+import com.benspowell.core_interpreter.vm.Peephole;
+import com.benspowell.core_interpreter.vm.VirtualMachine;
+
+/**
+ * Runs a program by compiling it to a JVM class with the JvmCompiler.
+ * Programs too big for one class run on the VirtualMachine instead.
+ *
+ * @author Benjamin S. Powell
+ */
+public class JvmEngine implements ExecutionEngine {
+
+	private Program program;
+	private PrintStream out;
+	private Scanner inputFile;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public JvmEngine(Program program, Scanner i) {
+		this(System.out, program, i);
+	}
+
+	/**
+	 * Constructor for the JvmEngine class
+	 */
+	public JvmEngine(PrintStream out, Program program, Scanner inputFile) {
+		this.out = out;
+		this.program = program;
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * Compile, then run, the program.
+	 * @throws ExecutorException
+	 */
+	public void executeCoreProgram() throws ExecutorException {
+		Resolution slots = Resolver.resolve(program);
+		CompiledProgram compiled = JvmCompiler.compile(program, slots);
+
+		if (compiled == null) {
+			new VirtualMachine(out, Peephole.optimize(BytecodeCompiler.compile(program)), inputFile).executeCoreProgram();
+			return;
+		}
+
+		String[] names = new String[slots.size()];
+		for (int i = 0; i < names.length; i++) names[i] = slots.name(i);
+		compiled.run(new JvmRuntime(names, out, inputFile));
+	}
+}
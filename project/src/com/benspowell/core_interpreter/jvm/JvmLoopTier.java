@@ -0,0 +1,55 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.io.*;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.While;
+import com.benspowell.core_interpreter.executor.Frame;
+import com.benspowell.core_interpreter.executor.LoopTier;
+import com.benspowell.core_interpreter.executor.Resolution;
+
+/**
+ * A LoopTier that compiles hot loops with the JvmCompiler. Each time a
+ * compiled loop runs, the variables are copied from the Executor's Frame
+ * into a JvmRuntime, and the defined ones copied back after.
+ *
+ * @author Benjamin S. Powell
+ */
+public class JvmLoopTier implements LoopTier {
+
+	private PrintStream out;
+	private Scanner inputFile;
+
+	/**
+	 * Constructor for a JvmLoopTier whose loops write to out and read
+	 * from inputFile, as the Executor's do.
+	 */
+	public JvmLoopTier(PrintStream out, Scanner inputFile) {
+		this.out = out;
+		this.inputFile = inputFile;
+	}
+
+	public CompiledLoop compile(While loop, Resolution slots) {
+		final CompiledProgram compiled = JvmCompiler.compileLoop(loop, slots);
+		if (compiled == null) return null;
+
+		final String[] names = new String[slots.size()];
+		for (int i = 0; i < names.length; i++) names[i] = slots.name(i);
+
+		return frame -> {
+			JvmRuntime rt = new JvmRuntime(names, out, inputFile);
+			for (int slot = 0; slot < names.length; slot++) {
+				if (!frame.isDefined(slot)) continue;
+				rt.values[slot] = frame.get(slot);
+				rt.defined[slot] = true;
+			}
+
+			compiled.run(rt);
+
+			// A variable, once defined, stays defined.
+			for (int slot = 0; slot < names.length; slot++) {
+				if (rt.defined[slot]) frame.set(slot, rt.values[slot]);
+			}
+		};
+	}
+}
@@ -0,0 +1,63 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.io.*;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+
+/**
+ * What a CompiledProgram runs with: the values of its variables, by slot,
+ * and its input and output. The generated code calls back into it for
+ * I/O and to make its errors, so they are the Executor's.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class JvmRuntime {
+	
+	/** The values of the variables. */
+	public final int[] values;
+	
+	/** Which variables are defined. */
+	public final boolean[] defined;
+	
+	private final String[] names;
+	private final PrintStream out;
+	private final Scanner inputFile;
+	
+	JvmRuntime(String[] names, PrintStream out, Scanner inputFile) {
+		this.values = new int[names.length];
+		this.defined = new boolean[names.length];
+		this.names = names;
+		this.out = out;
+		this.inputFile = inputFile;
+	}
+	
+	/*
+	 * Read the next int of input.
+	 */
+	public int read() throws ExecutorException {
+		if (!inputFile.hasNextInt()) throw new ExecutorException("input file is out of int's to read!");
+		return inputFile.nextInt();
+	}
+	
+	/*
+	 * Write the value of the variable in a slot.
+	 */
+	public void write(int slot, int value) {
+		out.println(names[slot]+" = "+value);
+	}
+	
+	/*
+	 * The error for reading the undefined variable in a slot.
+	 */
+	public ExecutorException undefined(int slot) {
+		return new ExecutorException(names[slot]+" is undefined!");
+	}
+	
+	/*
+	 * The error for writing the undefined variable in a slot.
+	 */
+	public ExecutorException writeUndefined(int slot) {
+		return new ExecutorException("can't write value of " + names[slot] + " - it's undefined!");
+	}
+}
@@ -0,0 +1,288 @@
+package com.benspowell.core_interpreter.jvm;
+
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.ExecutionEngine;
+import com.benspowell.core_interpreter.executor.Resolution;
+import com.benspowell.core_interpreter.executor.Resolver;
+
+/**
+ * CORE Language engine that compiles a program's AST into one tree of
+ * method handle combinators, then runs it with one call. The handle is
+ * bound as a constant (see JvmCompiler.constant), so the JIT can compile
+ * the whole tree as one unit.
+ *
+ * Every handle takes the JvmRuntime. An expression is an (JvmRuntime)int,
+ * a condition an (JvmRuntime)boolean and a statement an (JvmRuntime)void.
+ * Operands are combined with foldArguments, which runs its combiner
+ * first, so they are evaluated left to right and undefined variables are
+ * reported in the same order as by the Executor. Ifs are guardWithTest.
+ * Whiles are not whileLoop, which runs every loop in one shared method
+ * that the JIT can't specialize, but a small method each, made by
+ * JvmCompiler.loop.
+ *
+ * @author Benjamin S. Powell
+ */
+public class MethodHandleCompiler implements ExecutionEngine, Stmt.Visitor<MethodHandle, RuntimeException>,
+		Cond.Visitor<MethodHandle, RuntimeException>, Exp.Visitor<MethodHandle, RuntimeException> {
+
+	private static final MethodHandle GET, SET, READ, WRITE, NOTHING;
+	private static final MethodHandle ADD, SUBTRACT, MULTIPLY;
+	private static final MethodHandle NOT, AND, OR;
+	private static final MethodHandle[] COMPARE = new MethodHandle[RelationalOperator.values().length];
+
+	// The methods for each RelationalOperator, in order.
+	private static final String[] COMPARE_METHODS = {
+		"notEqual", "equal", "less", "greater", "lessOrEqual", "greaterOrEqual"
+	};
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		Class<?> self = MethodHandleCompiler.class;
+		MethodType ints = MethodType.methodType(int.class, int.class, int.class);
+		MethodType booleans = MethodType.methodType(boolean.class, boolean.class, boolean.class);
+		MethodType compare = MethodType.methodType(boolean.class, int.class, int.class);
+
+		try {
+			GET = lookup.findStatic(self, "get", MethodType.methodType(int.class, JvmRuntime.class, int.class));
+			SET = lookup.findStatic(self, "set", MethodType.methodType(void.class, int.class, JvmRuntime.class, int.class));
+			READ = lookup.findVirtual(JvmRuntime.class, "read", MethodType.methodType(int.class));
+			WRITE = lookup.findStatic(self, "write", MethodType.methodType(void.class, JvmRuntime.class, int.class));
+			NOTHING = MethodHandles.empty(MethodType.methodType(void.class, JvmRuntime.class));
+
+			ADD = lookup.findStatic(self, "add", ints);
+			SUBTRACT = lookup.findStatic(self, "subtract", ints);
+			MULTIPLY = lookup.findStatic(self, "multiply", ints);
+
+			NOT = lookup.findStatic(self, "not", MethodType.methodType(boolean.class, boolean.class));
+			AND = lookup.findStatic(self, "and", booleans);
+			OR = lookup.findStatic(self, "or", booleans);
+
+			for (int i = 0; i < COMPARE.length; i++) COMPARE[i] = lookup.findStatic(self, COMPARE_METHODS[i], compare);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Program program;
+	private PrintStream out;
+	private Scanner inputFile;
+	private Resolution slots;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public MethodHandleCompiler(Program program, Scanner i) {
+		this(System.out, program, i);
+	}
+
+	/**
+	 * Constructor for the MethodHandleCompiler class
+	 */
+	public MethodHandleCompiler(PrintStream out, Program program, Scanner inputFile) {
+		this.out = out;
+		this.program = program;
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * Compile, then execute, a CORE program.
+	 *
+	 * @throws ExecutorException
+	 */
+	public void executeCoreProgram() throws ExecutorException {
+		// Declarations, and any undeclared variables, are dealt with here.
+		slots = Resolver.resolve(program);
+		MethodHandle body = compileStmts(program.getBody());
+
+		String[] names = new String[slots.size()];
+		for (int i = 0; i < names.length; i++) names[i] = slots.name(i);
+		JvmRuntime rt = new JvmRuntime(names, out, inputFile);
+
+		JvmCompiler.constant(body).run(rt);
+	}
+
+	/*
+	 * Compile a statement sequence. The sequence is split in halves, so
+	 * that long sequences don't make deep chains of handles.
+	 */
+	private MethodHandle compileStmts(List<Stmt> stmts) {
+		return sequence(stmts, 0, stmts.size());
+	}
+
+	private MethodHandle sequence(List<Stmt> stmts, int from, int to) {
+		if (to - from == 1) return stmts.get(from).accept(this);
+
+		int middle = (from + to) >>> 1;
+		return MethodHandles.foldArguments(sequence(stmts, middle, to), sequence(stmts, from, middle));
+	}
+
+	/*
+	 * A handle taking the JvmRuntime that applies op to the values of
+	 * left and right, evaluated in that order.
+	 */
+	private static MethodHandle binary(MethodHandle op, MethodHandle left, MethodHandle right) {
+		MethodHandle h = MethodHandles.dropArguments(op, 2, JvmRuntime.class);
+		h = MethodHandles.foldArguments(h, 1, right);
+		return MethodHandles.foldArguments(h, left);
+	}
+
+	/*
+	 * A statement that sets slot to the value of an (JvmRuntime)int.
+	 */
+	private static MethodHandle assign(int slot, MethodHandle value) {
+		return MethodHandles.foldArguments(MethodHandles.insertArguments(SET, 2, slot), value);
+	}
+
+	public MethodHandle visitAssign(Assign s) {
+		return assign(slots.slot(s.getTarget().getSymbol()), s.getValue().accept(this));
+	}
+
+	public MethodHandle visitIf(If s) {
+		MethodHandle elseBranch = s.getElseBranch() == null ? NOTHING : compileStmts(s.getElseBranch());
+		return MethodHandles.guardWithTest(s.getCondition().accept(this), compileStmts(s.getThenBranch()), elseBranch);
+	}
+
+	public MethodHandle visitWhile(While s) {
+		return JvmCompiler.loop(s.getCondition().accept(this), compileStmts(s.getBody()));
+	}
+
+	public MethodHandle visitRead(Read s) {
+		MethodHandle h = null;
+		for (Var v : s.getIds()) {
+			MethodHandle read = assign(slots.slot(v.getSymbol()), READ);
+			h = h == null ? read : MethodHandles.foldArguments(read, h);
+		}
+		return h;
+	}
+
+	public MethodHandle visitWrite(Write s) {
+		MethodHandle h = null;
+		for (Var v : s.getIds()) {
+			MethodHandle write = MethodHandles.insertArguments(WRITE, 1, slots.slot(v.getSymbol()));
+			h = h == null ? write : MethodHandles.foldArguments(write, h);
+		}
+		return h;
+	}
+
+	public MethodHandle visitCompare(Compare c) {
+		return binary(COMPARE[c.getOperator().ordinal()], c.getLeft().accept(this), c.getRight().accept(this));
+	}
+
+	public MethodHandle visitNot(Not c) {
+		return MethodHandles.filterReturnValue(c.getOperand().accept(this), NOT);
+	}
+
+	/*
+	 * Both sides of && and || are always evaluated, as in the Executor.
+	 */
+	public MethodHandle visitAnd(And c) {
+		return binary(AND, c.getLeft().accept(this), c.getRight().accept(this));
+	}
+
+	public MethodHandle visitOr(Or c) {
+		return binary(OR, c.getLeft().accept(this), c.getRight().accept(this));
+	}
+
+	public MethodHandle visitNum(Num e) {
+		return MethodHandles.dropArguments(MethodHandles.constant(int.class, e.getValue()), 0, JvmRuntime.class);
+	}
+
+	public MethodHandle visitVar(Var e) {
+		return MethodHandles.insertArguments(GET, 1, slots.slot(e.getSymbol()));
+	}
+
+	public MethodHandle visitBinOp(BinOp e) {
+		MethodHandle op;
+		switch (e.getOperator()) {
+		case PLUS:
+			op = ADD;
+			break;
+		case MINUS:
+			op = SUBTRACT;
+			break;
+		default:
+			op = MULTIPLY;
+			break;
+		}
+		return binary(op, e.getLeft().accept(this), e.getRight().accept(this));
+	}
+
+	public MethodHandle visitGroup(Group e) {
+		return e.getContents().accept(this);
+	}
+
+	/*
+	 * The methods the handles are made from.
+	 */
+	private static int get(JvmRuntime rt, int slot) throws ExecutorException {
+		if (!rt.defined[slot]) throw rt.undefined(slot);
+		return rt.values[slot];
+	}
+
+	private static void set(int value, JvmRuntime rt, int slot) {
+		rt.values[slot] = value;
+		rt.defined[slot] = true;
+	}
+
+	private static void write(JvmRuntime rt, int slot) throws ExecutorException {
+		if (!rt.defined[slot]) throw rt.writeUndefined(slot);
+		rt.write(slot, rt.values[slot]);
+	}
+
+	private static int add(int a, int b) {
+		return a + b;
+	}
+
+	private static int subtract(int a, int b) {
+		return a - b;
+	}
+
+	private static int multiply(int a, int b) {
+		return a * b;
+	}
+
+	private static boolean not(boolean a) {
+		return !a;
+	}
+
+	private static boolean and(boolean a, boolean b) {
+		return a && b;
+	}
+
+	private static boolean or(boolean a, boolean b) {
+		return a || b;
+	}
+
+	private static boolean notEqual(int a, int b) {
+		return a != b;
+	}
+
+	private static boolean equal(int a, int b) {
+		return a == b;
+	}
+
+	private static boolean less(int a, int b) {
+		return a < b;
+	}
+
+	private static boolean greater(int a, int b) {
+		return a > b;
+	}
+
+	private static boolean lessOrEqual(int a, int b) {
+		return a <= b;
+	}
+
+	private static boolean greaterOrEqual(int a, int b) {
+		return a >= b;
+	}
+}
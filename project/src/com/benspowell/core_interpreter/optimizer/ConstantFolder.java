@@ -0,0 +1,210 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+
+/**
+ * Constant folding and algebraic simplification of a program's
+ * expressions. It gives a new Program in which:
+ *
+ * - every operator whose operands are both constants is replaced by its
+ *   value, computed with int arithmetic, so it wraps as at run time;
+ * - X + 0, 0 + X, X - 0, X * 1 and 1 * X are replaced by X;
+ * - parentheses (Group nodes) are gone, since the tree's shape already
+ *   says how an expression groups.
+ *
+ * 0 * X and X * 0 are folded to 0 only when every variable X reads is sure
+ * to be defined there: otherwise reading X could fail, and the folded
+ * program must fail in the same way. A variable is sure to be defined
+ * after it's assigned, read in or written, and after an if both of whose
+ * branches define it. What a loop defines, or a condition reads, doesn't
+ * count after it, since the loop might not go round, and a condition
+ * might not be evaluated in full.
+ *
+ * Subtrees that don't change are shared with the original program.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class ConstantFolder implements Stmt.Visitor<Stmt, RuntimeException>,
+		Cond.Visitor<Cond, RuntimeException>, Exp.Visitor<Exp, RuntimeException> {
+
+	// How many expression nodes folding has removed.
+	private int removed = 0;
+
+	// The variables sure to be defined before the statement being folded.
+	private BitSet defined;
+
+	/**
+	 * Fold a program.
+	 */
+	public Program fold(Program program) {
+		defined = new BitSet();
+		return new Program(program.getDeclarations(), stmts(program.getBody()), program.getSymbolCount());
+	}
+
+	/**
+	 * How many expression nodes have been removed so far.
+	 */
+	public int getRemoved() {
+		return removed;
+	}
+
+	/*
+	 * The number of nodes in an expression.
+	 */
+	private static int size(Exp e) {
+		if (e instanceof BinOp) return 1 + size(((BinOp) e).getLeft()) + size(((BinOp) e).getRight());
+		if (e instanceof Group) return 1 + size(((Group) e).getContents());
+		return 1;
+	}
+
+	/*
+	 * Fold an expression, counting the nodes it loses.
+	 */
+	private Exp exp(Exp e) {
+		Exp folded = e.accept(this);
+		if (folded != e) removed += size(e) - size(folded);
+		return folded;
+	}
+
+	private List<Stmt> stmts(List<Stmt> stmts) {
+		List<Stmt> result = new ArrayList<Stmt>(stmts.size());
+		boolean changed = false;
+		for (Stmt s : stmts) {
+			Stmt folded = s.accept(this);
+			changed |= folded != s;
+			result.add(folded);
+			Variables.define(s, defined);
+		}
+		return changed ? result : stmts;
+	}
+
+	/*
+	 * Fold a branch or a loop body, which starts out with what's defined
+	 * now. Returns it with what it leaves defined in branchDefined.
+	 */
+	private List<Stmt> stmts(List<Stmt> stmts, BitSet branchDefined) {
+		BitSet outside = defined;
+		defined = branchDefined;
+		List<Stmt> result = stmts(stmts);
+		defined = outside;
+		return result;
+	}
+
+	public Stmt visitAssign(Assign s) {
+		Exp value = exp(s.getValue());
+		return value == s.getValue() ? s : new Assign(s.getTarget(), value);
+	}
+
+	public Stmt visitIf(If s) {
+		Cond condition = s.getCondition().accept(this);
+		BitSet thenDefined = (BitSet) defined.clone();
+		BitSet elseDefined = (BitSet) defined.clone();
+		List<Stmt> thenBranch = stmts(s.getThenBranch(), thenDefined);
+		List<Stmt> elseBranch = s.getElseBranch() == null ? null : stmts(s.getElseBranch(), elseDefined);
+		thenDefined.and(elseDefined);
+		defined.or(thenDefined);
+		if (condition == s.getCondition() && thenBranch == s.getThenBranch() && elseBranch == s.getElseBranch()) return s;
+		return new If(condition, thenBranch, elseBranch);
+	}
+
+	public Stmt visitWhile(While s) {
+		Cond condition = s.getCondition().accept(this);
+		List<Stmt> body = stmts(s.getBody(), (BitSet) defined.clone());
+		if (condition == s.getCondition() && body == s.getBody()) return s;
+		return new While(condition, body);
+	}
+
+	public Stmt visitRead(Read s) {
+		return s;
+	}
+
+	public Stmt visitWrite(Write s) {
+		return s;
+	}
+
+	public Cond visitCompare(Compare c) {
+		Exp left = exp(c.getLeft());
+		Exp right = exp(c.getRight());
+		if (left == c.getLeft() && right == c.getRight()) return c;
+		return new Compare(left, c.getOperator(), right);
+	}
+
+	public Cond visitNot(Not c) {
+		Cond operand = c.getOperand().accept(this);
+		return operand == c.getOperand() ? c : new Not(operand);
+	}
+
+	public Cond visitAnd(And c) {
+		Cond left = c.getLeft().accept(this);
+		Cond right = c.getRight().accept(this);
+		if (left == c.getLeft() && right == c.getRight()) return c;
+		return new And(left, right);
+	}
+
+	public Cond visitOr(Or c) {
+		Cond left = c.getLeft().accept(this);
+		Cond right = c.getRight().accept(this);
+		if (left == c.getLeft() && right == c.getRight()) return c;
+		return new Or(left, right);
+	}
+
+	public Exp visitNum(Num e) {
+		return e;
+	}
+
+	public Exp visitVar(Var e) {
+		return e;
+	}
+
+	public Exp visitGroup(Group e) {
+		return e.getContents().accept(this);
+	}
+
+	public Exp visitBinOp(BinOp e) {
+		Exp left = e.getLeft().accept(this);
+		Exp right = e.getRight().accept(this);
+		ArithmeticOperator op = e.getOperator();
+
+		if (left instanceof Num && right instanceof Num) {
+			return new Num(op.apply(((Num) left).getValue(), ((Num) right).getValue()));
+		}
+
+		switch (op) {
+		case PLUS:
+			if (isConstant(right, 0)) return left;
+			if (isConstant(left, 0)) return right;
+			break;
+		case MINUS:
+			if (isConstant(right, 0)) return left;
+			break;
+		default:
+			if (isConstant(right, 1)) return left;
+			if (isConstant(left, 1)) return right;
+			if ((isConstant(left, 0) && isDefined(right)) || (isConstant(right, 0) && isDefined(left))) {
+				return new Num(0);
+			}
+			break;
+		}
+
+		if (left == e.getLeft() && right == e.getRight()) return e;
+		return new BinOp(op, left, right);
+	}
+
+	private static boolean isConstant(Exp e, int value) {
+		return e instanceof Num && ((Num) e).getValue() == value;
+	}
+
+	/*
+	 * Whether every variable an expression reads is sure to be defined.
+	 */
+	private boolean isDefined(Exp e) {
+		BitSet used = new BitSet();
+		Variables.uses(e, used);
+		used.andNot(defined);
+		return used.isEmpty();
+	}
+}
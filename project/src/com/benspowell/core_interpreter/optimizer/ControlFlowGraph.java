@@ -0,0 +1,330 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.executor.Resolution;
+
+/**
+ * A program lowered to a control-flow graph in SSA form. Every value is
+ * defined once: a variable's entry (undefined) value, each assignment,
+ * each read from input, each phi, and each part of an expression or
+ * condition. Variables are numbered by their Frame slot.
+ *
+ * Because CORE only has ifs and whiles, the graph is built straight from
+ * the AST. An if's join block has a phi for each variable whose value
+ * differs after its two branches; a while's header has a phi for each
+ * variable assigned anywhere in its body.
+ *
+ * The uses of variables in expressions, the assignments and the branch
+ * conditions are also listed in the order they appear in the program, so
+ * that the AST can be rewritten from the results of an analysis.
+ *
+ * @author Benjamin S. Powell
+ */
+final class ControlFlowGraph {
+
+	/*
+	 * The kinds of Value.
+	 */
+	enum Kind {
+		ENTRY, INPUT, ASSIGN, PHI, WRITE, NUM, USE, BINOP, COMPARE, NOT, AND, OR
+	}
+
+	/*
+	 * A value, and the instruction that makes it.
+	 */
+	static final class Value {
+		final Kind kind;
+		final Block block;
+
+		// The variable an ENTRY, INPUT, ASSIGN, PHI, WRITE or USE is of.
+		final int variable;
+
+		Value[] operands;
+		final List<Value> users = new ArrayList<Value>();
+
+		int literal;
+		ArithmeticOperator arithmetic;
+		RelationalOperator relation;
+
+		// For a USE: a value of another variable that is also that
+		// variable's current value at the use.
+		Value copy;
+
+		// For an ASSIGN, the value it copies if it just copies a variable.
+		Value copied;
+
+		// The Var naming the variable of copy or copied.
+		Var copyVar;
+
+		// For an ASSIGN or a condition, the range of uses in it.
+		int firstUse, endUse;
+
+		// What an analysis has found out.
+		int state;
+		int value;
+		boolean defined;
+		boolean live;
+
+		Value(Kind kind, Block block, int variable, Value... operands) {
+			this.kind = kind;
+			this.block = block;
+			this.variable = variable;
+			this.operands = operands;
+		}
+	}
+
+	/*
+	 * A basic block: phis, then straight-line code, then a jump to its one
+	 * successor, or, if it has a condition, to its first successor when
+	 * the condition holds and its second when it doesn't. Each phi has one
+	 * operand for each predecessor, in order.
+	 */
+	static final class Block {
+		final List<Value> phis = new ArrayList<Value>();
+		final List<Value> code = new ArrayList<Value>();
+		final List<Block> successors = new ArrayList<Block>(2);
+		final List<Block> predecessors = new ArrayList<Block>(2);
+		Value condition;
+
+		// What an analysis has found out.
+		boolean executable;
+		boolean[] executableEdges;
+	}
+
+	final Block entry;
+	final List<Block> blocks = new ArrayList<Block>();
+	final List<Value> phis = new ArrayList<Value>();
+	final List<Value> writes = new ArrayList<Value>();
+
+	// In program order.
+	final List<Value> uses = new ArrayList<Value>();
+	final List<Value> assignments = new ArrayList<Value>();
+	final List<Value> conditions = new ArrayList<Value>();
+
+	private final Resolution slots;
+	private Block block;
+	private Value[] current;
+
+	/**
+	 * Lower a program, whose variables are already resolved.
+	 */
+	ControlFlowGraph(Program program, Resolution slots) {
+		this.slots = slots;
+		entry = block = newBlock();
+		current = new Value[slots.size()];
+		for (int v = 0; v < current.length; v++) current[v] = add(Kind.ENTRY, v);
+		lower(program.getBody());
+	}
+
+	private Block newBlock() {
+		Block b = new Block();
+		blocks.add(b);
+		return b;
+	}
+
+	private static void edge(Block from, Block to) {
+		from.successors.add(to);
+		to.predecessors.add(from);
+	}
+
+	private Value add(Kind kind, int variable, Value... operands) {
+		Value v = new Value(kind, block, variable, operands);
+		for (Value operand : operands) operand.users.add(v);
+		block.code.add(v);
+		return v;
+	}
+
+	private Value phi(Block at, int variable, Value... operands) {
+		Value v = new Value(Kind.PHI, at, variable, operands);
+		for (Value operand : operands) {
+			if (operand != null) operand.users.add(v);
+		}
+		at.phis.add(v);
+		phis.add(v);
+		return v;
+	}
+
+	private int slot(Var v) {
+		return slots.slot(v.getSymbol());
+	}
+
+	private void lower(List<Stmt> stmts) {
+		for (Stmt s : stmts) lower(s);
+	}
+
+	private void lower(Stmt s) {
+		if (s instanceof Assign) {
+			Assign a = (Assign) s;
+			int first = uses.size();
+			Value value = lower(a.getValue());
+			Value def = add(Kind.ASSIGN, slot(a.getTarget()), value);
+			def.firstUse = first;
+			def.endUse = uses.size();
+
+			Exp e = a.getValue();
+			while (e instanceof Group) e = ((Group) e).getContents();
+			if (e instanceof Var) {
+				def.copied = value.operands[0];
+				def.copyVar = (Var) e;
+			}
+			assignments.add(def);
+			current[def.variable] = def;
+		}
+		else if (s instanceof If) {
+			lowerIf((If) s);
+		}
+		else if (s instanceof While) {
+			lowerWhile((While) s);
+		}
+		else if (s instanceof Read) {
+			for (Var v : ((Read) s).getIds()) current[slot(v)] = add(Kind.INPUT, slot(v));
+		}
+		else {
+			for (Var v : ((Write) s).getIds()) writes.add(add(Kind.WRITE, slot(v), current[slot(v)]));
+		}
+	}
+
+	private void lowerIf(If s) {
+		Block test = block;
+		test.condition = lowerCondition(s.getCondition());
+
+		Value[] before = current.clone();
+		block = newBlock();
+		edge(test, block);
+		lower(s.getThenBranch());
+		Block thenEnd = block;
+		Value[] afterThen = current;
+
+		current = before;
+		Block elseEnd = test;
+		if (s.getElseBranch() != null) {
+			block = newBlock();
+			edge(test, block);
+			lower(s.getElseBranch());
+			elseEnd = block;
+		}
+
+		Block join = newBlock();
+		edge(thenEnd, join);
+		edge(elseEnd, join);
+		for (int v = 0; v < current.length; v++) {
+			if (afterThen[v] != current[v]) current[v] = phi(join, v, afterThen[v], current[v]);
+		}
+		block = join;
+	}
+
+	private void lowerWhile(While s) {
+		Block header = newBlock();
+		edge(block, header);
+
+		boolean[] assigned = new boolean[current.length];
+		assigned(s.getBody(), assigned);
+		Value[] loopPhis = new Value[current.length];
+		for (int v = 0; v < current.length; v++) {
+			if (assigned[v]) current[v] = loopPhis[v] = phi(header, v, current[v], null);
+		}
+
+		block = header;
+		header.condition = lowerCondition(s.getCondition());
+		Value[] atHeader = current.clone();
+
+		Block body = newBlock();
+		Block exit = newBlock();
+		edge(header, body);
+		edge(header, exit);
+
+		block = body;
+		lower(s.getBody());
+		edge(block, header);
+		for (int v = 0; v < current.length; v++) {
+			if (loopPhis[v] != null) {
+				loopPhis[v].operands[1] = current[v];
+				current[v].users.add(loopPhis[v]);
+			}
+		}
+
+		block = exit;
+		current = atHeader;
+	}
+
+	/*
+	 * Mark the variables that statements assign to or read into.
+	 */
+	private void assigned(List<Stmt> stmts, boolean[] assigned) {
+		for (Stmt s : stmts) {
+			if (s instanceof Assign) {
+				assigned[slot(((Assign) s).getTarget())] = true;
+			}
+			else if (s instanceof If) {
+				assigned(((If) s).getThenBranch(), assigned);
+				if (((If) s).getElseBranch() != null) assigned(((If) s).getElseBranch(), assigned);
+			}
+			else if (s instanceof While) {
+				assigned(((While) s).getBody(), assigned);
+			}
+			else if (s instanceof Read) {
+				for (Var v : ((Read) s).getIds()) assigned[slot(v)] = true;
+			}
+		}
+	}
+
+	private Value lowerCondition(Cond c) {
+		int first = uses.size();
+		Value condition = lower(c);
+		condition.firstUse = first;
+		condition.endUse = uses.size();
+		conditions.add(condition);
+		return condition;
+	}
+
+	private Value lower(Cond c) {
+		if (c instanceof Compare) {
+			Compare compare = (Compare) c;
+			Value left = lower(compare.getLeft());
+			Value v = add(Kind.COMPARE, -1, left, lower(compare.getRight()));
+			v.relation = compare.getOperator();
+			return v;
+		}
+		if (c instanceof Not) return add(Kind.NOT, -1, lower(((Not) c).getOperand()));
+		if (c instanceof And) {
+			Value left = lower(((And) c).getLeft());
+			return add(Kind.AND, -1, left, lower(((And) c).getRight()));
+		}
+		Value left = lower(((Or) c).getLeft());
+		return add(Kind.OR, -1, left, lower(((Or) c).getRight()));
+	}
+
+	/*
+	 * Lower an expression. A use of a variable that was copied from
+	 * another is given the furthest variable along the chain of copies
+	 * that still holds the same value here.
+	 */
+	private Value lower(Exp e) {
+		if (e instanceof Num) {
+			Value v = add(Kind.NUM, -1);
+			v.literal = ((Num) e).getValue();
+			return v;
+		}
+		if (e instanceof Var) {
+			Value v = add(Kind.USE, slot((Var) e), current[slot((Var) e)]);
+			for (Value d = v.operands[0]; d.copied != null; d = d.copied) {
+				if (current[d.copied.variable] == d.copied) {
+					v.copy = d.copied;
+					v.copyVar = d.copyVar;
+				}
+			}
+			uses.add(v);
+			return v;
+		}
+		if (e instanceof Group) return lower(((Group) e).getContents());
+
+		BinOp b = (BinOp) e;
+		Value left = lower(b.getLeft());
+		Value v = add(Kind.BINOP, -1, left, lower(b.getRight()));
+		v.arithmetic = b.getOperator();
+		return v;
+	}
+}
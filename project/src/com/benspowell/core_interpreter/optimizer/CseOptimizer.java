@@ -0,0 +1,287 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.Resolver;
+
+/**
+ * Common-subexpression elimination. An expression that is worked out
+ * again, while none of the variables it reads has been assigned, is
+ * worked out once, into a new variable (see Temporaries), and the later
+ * occurrences read that variable.
+ *
+ * Values are numbered as the program is walked: each assignment gives
+ * its variable a new version, and two expressions have the same value if
+ * they're written the same and read the same versions. A value is only
+ * available in the code its first occurrence comes before on every path:
+ * after it in the same sequence, and inside ifs and whiles that follow.
+ * Variables assigned in a while get new versions on the way in and on the
+ * way out, and those assigned in either branch of an if on the way out.
+ *
+ * The program is walked twice: first to count how often each value is
+ * used again, then to rewrite it. A value's new variable is assigned
+ * just before the statement it first occurs in, and only if every
+ * variable it reads is sure to be defined there, so it can't fail, and
+ * the program reads, writes and fails just as it did. Values first found
+ * in a while's condition, which is worked out again each time round, get
+ * no variable.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class CseOptimizer {
+
+	private boolean rewriting;
+	private Temporaries temporaries;
+
+	// The value numbering.
+	private int[] version;
+	private int clock;
+	private Map<String, Integer> available;
+	private int nextValue;
+
+	// How many times each value is used again, counted on the first walk.
+	private final List<Integer> reuses = new ArrayList<Integer>();
+
+	// The variable each value is kept in, on the second walk.
+	private final Map<Integer, Var> kept = new HashMap<Integer, Var>();
+
+	// The statement being rewritten: what's sure to be defined before it,
+	// what has to be done before it, and whether it's a while's condition.
+	private BitSet defined;
+	private List<Stmt> before;
+	private boolean inWhileCondition;
+
+	private int reused = 0;
+	private int avoided = 0;
+
+	/**
+	 * Eliminate the common subexpressions of a program.
+	 */
+	public Program optimize(Program program) {
+		try {
+			Resolver.resolve(program);
+		}
+		catch (ExecutorException e) {
+			return program;
+		}
+
+		program = new ConstantFolder().fold(program);
+		temporaries = new Temporaries(program);
+
+		rewriting = false;
+		walk(program);
+		rewriting = true;
+		List<Stmt> body = walk(program);
+
+		return temporaries.declare(program, body);
+	}
+
+	/**
+	 * How many occurrences of expressions now read a kept value.
+	 */
+	public int getReused() {
+		return reused;
+	}
+
+	/**
+	 * How many arithmetic operations are no longer done, counting each
+	 * statement once.
+	 */
+	public int getAvoided() {
+		return avoided;
+	}
+
+	private List<Stmt> walk(Program program) {
+		version = new int[program.getSymbolCount()];
+		clock = 0;
+		available = new HashMap<String, Integer>();
+		nextValue = 0;
+		return walk(program.getBody(), new BitSet());
+	}
+
+	/*
+	 * Give a variable a new version.
+	 */
+	private void assign(int symbol) {
+		version[symbol] = ++clock;
+	}
+
+	private void assign(BitSet symbols) {
+		for (int s = symbols.nextSetBit(0); s >= 0; s = symbols.nextSetBit(s + 1)) assign(s);
+	}
+
+	private static BitSet assigned(List<Stmt> stmts) {
+		BitSet assigned = new BitSet();
+		Variables.assigned(stmts, assigned, new HashMap<Integer, Integer>());
+		return assigned;
+	}
+
+	/*
+	 * Walk a statement sequence, given what's sure to be defined before it,
+	 * which is updated to what's sure to be defined after it.
+	 */
+	private List<Stmt> walk(List<Stmt> stmts, BitSet defined) {
+		List<Stmt> result = new ArrayList<Stmt>(stmts.size());
+		for (Stmt s : stmts) {
+			this.defined = defined;
+			before = new ArrayList<Stmt>();
+
+			if (s instanceof Assign) {
+				Assign a = (Assign) s;
+				Exp value = exp(a.getValue());
+				assign(a.getTarget().getSymbol());
+				result.addAll(before);
+				result.add(value == a.getValue() ? s : new Assign(a.getTarget(), value));
+				Variables.define(s, defined);
+			}
+			else if (s instanceof If) {
+				If i = (If) s;
+				Cond condition = cond(i.getCondition());
+				result.addAll(before);
+
+				Map<String, Integer> outside = available;
+				int[] versions = version.clone();
+				BitSet thenDefined = (BitSet) defined.clone();
+				BitSet elseDefined = (BitSet) defined.clone();
+				available = new HashMap<String, Integer>(outside);
+				List<Stmt> thenBranch = walk(i.getThenBranch(), thenDefined);
+				List<Stmt> elseBranch = null;
+				if (i.getElseBranch() != null) {
+					available = new HashMap<String, Integer>(outside);
+					version = versions.clone();
+					elseBranch = walk(i.getElseBranch(), elseDefined);
+				}
+				available = outside;
+				version = versions;
+
+				assign(assigned(i.getThenBranch()));
+				if (i.getElseBranch() != null) assign(assigned(i.getElseBranch()));
+				thenDefined.and(elseDefined);
+				defined.or(thenDefined);
+				result.add(new If(condition, thenBranch, elseBranch));
+			}
+			else if (s instanceof While) {
+				While w = (While) s;
+				BitSet assigned = assigned(w.getBody());
+				assign(assigned);
+				inWhileCondition = true;
+				Cond condition = cond(w.getCondition());
+				inWhileCondition = false;
+
+				Map<String, Integer> outside = available;
+				available = new HashMap<String, Integer>(outside);
+				List<Stmt> body = walk(w.getBody(), (BitSet) defined.clone());
+				available = outside;
+
+				assign(assigned);
+				result.add(new While(condition, body));
+			}
+			else {
+				if (s instanceof Read) {
+					for (Var v : ((Read) s).getIds()) assign(v.getSymbol());
+				}
+				Variables.define(s, defined);
+				result.add(s);
+			}
+		}
+		return result;
+	}
+
+	private Cond cond(Cond c) {
+		if (c instanceof Compare) {
+			Compare compare = (Compare) c;
+			Exp left = exp(compare.getLeft());
+			Exp right = exp(compare.getRight());
+			if (left == compare.getLeft() && right == compare.getRight()) return c;
+			return new Compare(left, compare.getOperator(), right);
+		}
+		if (c instanceof Not) {
+			Cond operand = cond(((Not) c).getOperand());
+			return operand == ((Not) c).getOperand() ? c : new Not(operand);
+		}
+		if (c instanceof And) {
+			And and = (And) c;
+			Cond left = cond(and.getLeft());
+			Cond right = cond(and.getRight());
+			return left == and.getLeft() && right == and.getRight() ? c : new And(left, right);
+		}
+		Or or = (Or) c;
+		Cond left = cond(or.getLeft());
+		Cond right = cond(or.getRight());
+		return left == or.getLeft() && right == or.getRight() ? c : new Or(left, right);
+	}
+
+	/*
+	 * Walk an expression. An operation whose value is available isn't
+	 * looked inside, since its operands' values were available too.
+	 */
+	private Exp exp(Exp e) {
+		if (!(e instanceof BinOp)) return e;
+		BinOp b = (BinOp) e;
+
+		String key = key(e);
+		Integer value = available.get(key);
+		if (value != null) {
+			if (!rewriting) {
+				reuses.set(value, reuses.get(value) + 1);
+				return e;
+			}
+			Var v = kept.get(value);
+			if (v == null) return e;
+			reused++;
+			avoided += operations(e);
+			return v;
+		}
+
+		Exp left = exp(b.getLeft());
+		Exp right = exp(b.getRight());
+		value = nextValue++;
+		available.put(key, value);
+		if (!rewriting) {
+			reuses.add(0);
+			return e;
+		}
+
+		Exp result = left == b.getLeft() && right == b.getRight() ? e : new BinOp(b.getOperator(), left, right);
+		if (reuses.get(value) == 0 || inWhileCondition || !isDefined(e)) return result;
+
+		Var v = temporaries.next();
+		kept.put(value, v);
+		before.add(new Assign(v, result));
+		return v;
+	}
+
+	/*
+	 * Whether every variable an expression reads is sure to be defined.
+	 */
+	private boolean isDefined(Exp e) {
+		BitSet used = new BitSet();
+		Variables.uses(e, used);
+		used.andNot(defined);
+		return used.isEmpty();
+	}
+
+	/*
+	 * The value number's key for an expression: how it's written, with
+	 * each variable's version.
+	 */
+	private String key(Exp e) {
+		if (e instanceof Num) return Integer.toString(((Num) e).getValue());
+		if (e instanceof Var) return "#" + ((Var) e).getSymbol() + "." + version[((Var) e).getSymbol()];
+		if (e instanceof Group) return key(((Group) e).getContents());
+		BinOp b = (BinOp) e;
+		return "(" + key(b.getLeft()) + b.getOperator().getSymbol() + key(b.getRight()) + ")";
+	}
+
+	private static int operations(Exp e) {
+		if (e instanceof BinOp) return 1 + operations(((BinOp) e).getLeft()) + operations(((BinOp) e).getRight());
+		if (e instanceof Group) return operations(((Group) e).getContents());
+		return 0;
+	}
+}
@@ -0,0 +1,157 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.benspowell.core_interpreter.ast.*;
+
+/**
+ * Hash-consing of expressions. It gives a new Program in which
+ * expressions that are written the same are one node, so each program's
+ * expressions are a DAG rather than a tree. Nodes are interned bottom
+ * up, so two nodes are the same if they are the same kind and operator
+ * and their operands are the same nodes; looking one up is a hash of its
+ * fields, not a walk of the subtree.
+ *
+ * The AST is immutable, so every engine can run the shared nodes.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class ExpressionInterner {
+
+	// Estimated sizes of nodes, in bytes, on a 64-bit JVM with compressed
+	// references: a 12-byte header and 4 bytes a field, rounded up to 8.
+	private static final int BINOP_SIZE = 24, VAR_SIZE = 24, NUM_SIZE = 16, GROUP_SIZE = 16;
+
+	/*
+	 * What identifies a node: its class, its operator, literal or symbol,
+	 * and its operands, which are already interned.
+	 */
+	private static final class Key {
+		final Class<?> kind;
+		final Object operator;
+		final int value;
+		final Exp left, right;
+
+		Key(Class<?> kind, Object operator, int value, Exp left, Exp right) {
+			this.kind = kind;
+			this.operator = operator;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return kind == k.kind && operator == k.operator && value == k.value && left == k.left && right == k.right;
+		}
+
+		public int hashCode() {
+			int h = kind.hashCode();
+			h = 31 * h + (operator == null ? 0 : operator.hashCode());
+			h = 31 * h + value;
+			h = 31 * h + System.identityHashCode(left);
+			return 31 * h + System.identityHashCode(right);
+		}
+	}
+
+	private final Map<Key, Exp> nodes = new HashMap<Key, Exp>();
+	private int visited = 0;
+	private int saved = 0;
+
+	/**
+	 * Intern the expressions of a program.
+	 */
+	public Program intern(Program program) {
+		return new Program(program.getDeclarations(), stmts(program.getBody()), program.getSymbolCount());
+	}
+
+	/**
+	 * How many expression nodes the program's trees had.
+	 */
+	public int getNodes() {
+		return visited;
+	}
+
+	/**
+	 * How many distinct expression nodes are left.
+	 */
+	public int getDistinctNodes() {
+		return nodes.size();
+	}
+
+	/**
+	 * About how many bytes of nodes sharing saves.
+	 */
+	public int getBytesSaved() {
+		return saved;
+	}
+
+	private List<Stmt> stmts(List<Stmt> stmts) {
+		List<Stmt> result = new ArrayList<Stmt>(stmts.size());
+		for (Stmt s : stmts) result.add(stmt(s));
+		return result;
+	}
+
+	private Stmt stmt(Stmt s) {
+		if (s instanceof Assign) return new Assign(((Assign) s).getTarget(), exp(((Assign) s).getValue()));
+		if (s instanceof If) {
+			If i = (If) s;
+			return new If(cond(i.getCondition()), stmts(i.getThenBranch()), i.getElseBranch() == null ? null : stmts(i.getElseBranch()));
+		}
+		if (s instanceof While) return new While(cond(((While) s).getCondition()), stmts(((While) s).getBody()));
+		return s;
+	}
+
+	private Cond cond(Cond c) {
+		if (c instanceof Compare) {
+			Compare compare = (Compare) c;
+			return new Compare(exp(compare.getLeft()), compare.getOperator(), exp(compare.getRight()));
+		}
+		if (c instanceof Not) return new Not(cond(((Not) c).getOperand()));
+		if (c instanceof And) return new And(cond(((And) c).getLeft()), cond(((And) c).getRight()));
+		return new Or(cond(((Or) c).getLeft()), cond(((Or) c).getRight()));
+	}
+
+	/*
+	 * The interned node for an expression.
+	 */
+	private Exp exp(Exp e) {
+		visited++;
+		Key key;
+		int size;
+		if (e instanceof Num) {
+			key = new Key(Num.class, null, ((Num) e).getValue(), null, null);
+			size = NUM_SIZE;
+		}
+		else if (e instanceof Var) {
+			key = new Key(Var.class, null, ((Var) e).getSymbol(), null, null);
+			size = VAR_SIZE;
+		}
+		else if (e instanceof Group) {
+			Exp contents = exp(((Group) e).getContents());
+			key = new Key(Group.class, null, 0, contents, null);
+			e = contents == ((Group) e).getContents() ? e : new Group(contents);
+			size = GROUP_SIZE;
+		}
+		else {
+			BinOp b = (BinOp) e;
+			Exp left = exp(b.getLeft());
+			Exp right = exp(b.getRight());
+			key = new Key(BinOp.class, b.getOperator(), 0, left, right);
+			e = left == b.getLeft() && right == b.getRight() ? e : new BinOp(b.getOperator(), left, right);
+			size = BINOP_SIZE;
+		}
+
+		Exp node = nodes.get(key);
+		if (node != null) {
+			saved += size;
+			return node;
+		}
+		nodes.put(key, e);
+		return e;
+	}
+}
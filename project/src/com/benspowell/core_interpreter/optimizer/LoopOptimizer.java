@@ -0,0 +1,433 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.Resolver;
+
+/**
+ * Loop optimizer. Each while loop, outermost first, is:
+ *
+ * 1. replaced by an if, if it is a counting loop whose effect can be
+ *    worked out in closed form. The loop's condition must be I < N (or
+ *    I > N), its body must only assign, each variable once, I must go up
+ *    (or down) by 1, and every other variable must either be set to, or
+ *    have added or subtracted, an expression of variables the loop never
+ *    assigns. Each such accumulation becomes one multiplication by the
+ *    number of times round, N - I (or I - N), which wraps exactly as the
+ *    repeated additions would;
+ * 2. otherwise, stripped of its loop-invariant expressions: each
+ *    expression of variables that the loop never assigns, and that are
+ *    defined before it, is worked out once into a new variable before
+ *    the loop;
+ * 3. then strength-reduced: for each basic induction variable I, which
+ *    the loop assigns once, as I = I + k at the top of its body, each
+ *    I * c becomes a new variable, set to I * c before the loop, and
+ *    increased by k * c after I is.
+ *
+ * Nothing moved out of a loop can fail, or has side effects, so the
+ * program reads, writes and fails just as it did. The new variables are
+ * Temporaries.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class LoopOptimizer {
+
+	private Temporaries temporaries;
+
+	private int hoisted = 0;
+	private int reduced = 0;
+	private int replaced = 0;
+
+	/**
+	 * Optimize the loops of a program.
+	 */
+	public Program optimize(Program program) {
+		try {
+			Resolver.resolve(program);
+		}
+		catch (ExecutorException e) {
+			return program;
+		}
+
+		program = new ConstantFolder().fold(program);
+		temporaries = new Temporaries(program);
+		List<Stmt> body = walk(program.getBody(), new BitSet());
+		return new ConstantFolder().fold(temporaries.declare(program, body));
+	}
+
+	/**
+	 * How many loop-invariant expressions have been moved out of loops.
+	 */
+	public int getHoisted() {
+		return hoisted;
+	}
+
+	/**
+	 * How many multiplications by induction variables have been replaced
+	 * by additions.
+	 */
+	public int getReduced() {
+		return reduced;
+	}
+
+	/**
+	 * How many loops have been replaced by their closed forms.
+	 */
+	public int getReplaced() {
+		return replaced;
+	}
+
+	/*
+	 * Optimize the loops in a statement sequence. defined holds the
+	 * symbols of the variables that are sure to be defined before it, and
+	 * is updated to those that are after it. A variable is defined once
+	 * it's assigned, read, or used without failing. Conditions aren't
+	 * counted, since not all of one need be evaluated.
+	 */
+	private List<Stmt> walk(List<Stmt> stmts, BitSet defined) {
+		List<Stmt> result = new ArrayList<Stmt>(stmts.size());
+		for (Stmt s : stmts) {
+			if (s instanceof While) {
+				loop((While) s, defined, result);
+			}
+			else if (s instanceof If) {
+				If i = (If) s;
+				BitSet thenDefined = (BitSet) defined.clone();
+				BitSet elseDefined = (BitSet) defined.clone();
+				List<Stmt> thenBranch = walk(i.getThenBranch(), thenDefined);
+				List<Stmt> elseBranch = i.getElseBranch() == null ? null : walk(i.getElseBranch(), elseDefined);
+				thenDefined.and(elseDefined);
+				defined.or(thenDefined);
+				result.add(new If(i.getCondition(), thenBranch, elseBranch));
+			}
+			else {
+				Variables.define(s, defined);
+				result.add(s);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Optimize a loop, adding it, and anything that has to be done before
+	 * it, to result.
+	 */
+	private void loop(While w, BitSet defined, List<Stmt> result) {
+		BitSet assigned = new BitSet();
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		Variables.assigned(w.getBody(), assigned, counts);
+
+		Stmt closed = closedForm(w, assigned);
+		if (closed != null) {
+			replaced++;
+			result.add(closed);
+			return;
+		}
+
+		Cond condition = w.getCondition();
+		List<Stmt> body = w.getBody();
+
+		// Hoist the invariant expressions.
+		Hoister hoister = new Hoister(assigned, defined);
+		condition = hoister.cond(condition);
+		body = hoister.stmts(body);
+		for (Map.Entry<Var, Exp> e : hoister.hoisted.entrySet()) {
+			Stmt s = new Assign(e.getKey(), e.getValue());
+			Variables.define(s, defined);
+			result.add(s);
+		}
+
+		// Reduce multiplications by the induction variables.
+		Map<Integer, Integer> steps = new HashMap<Integer, Integer>();
+		for (Stmt s : body) {
+			if (!(s instanceof Assign)) continue;
+			Var target = ((Assign) s).getTarget();
+			Integer step = step(target, ((Assign) s).getValue());
+			if (step != null && counts.get(target.getSymbol()) == 1 && defined.get(target.getSymbol())) {
+				steps.put(target.getSymbol(), step);
+			}
+		}
+		if (!steps.isEmpty()) {
+			Reducer reducer = new Reducer(steps);
+			condition = reducer.cond(condition);
+			body = reducer.stmts(body);
+			if (!reducer.reduced.isEmpty()) body = reduce(body, reducer, steps, defined, result);
+		}
+
+		result.add(new While(condition, walk(body, (BitSet) defined.clone())));
+	}
+
+	/*
+	 * Set up the variables that stand for the reduced multiplications
+	 * before the loop, and update each after its induction variable is.
+	 */
+	private List<Stmt> reduce(List<Stmt> body, Reducer reducer, Map<Integer, Integer> steps, BitSet defined, List<Stmt> result) {
+		for (Map.Entry<Var, BinOp> e : reducer.reduced.entrySet()) {
+			Stmt s = new Assign(e.getKey(), e.getValue());
+			Variables.define(s, defined);
+			result.add(s);
+		}
+
+		List<Stmt> updated = new ArrayList<Stmt>();
+		for (Stmt s : body) {
+			updated.add(s);
+			if (!(s instanceof Assign)) continue;
+			int symbol = ((Assign) s).getTarget().getSymbol();
+			if (!steps.containsKey(symbol)) continue;
+
+			for (Map.Entry<Var, BinOp> e : reducer.reduced.entrySet()) {
+				Var induction = (Var) e.getValue().getLeft();
+				if (induction.getSymbol() != symbol) continue;
+				int increase = steps.get(symbol) * ((Num) e.getValue().getRight()).getValue();
+				updated.add(new Assign(e.getKey(), increase < 0 && increase != Integer.MIN_VALUE
+						? new BinOp(ArithmeticOperator.MINUS, e.getKey(), new Num(-increase))
+						: new BinOp(ArithmeticOperator.PLUS, e.getKey(), new Num(increase))));
+			}
+		}
+		return updated;
+	}
+
+	/*
+	 * The step k if value is target + k, k + target or target - k, else
+	 * null.
+	 */
+	private static Integer step(Var target, Exp value) {
+		if (!(value instanceof BinOp)) return null;
+		BinOp b = (BinOp) value;
+		if (isVar(b.getLeft(), target) && b.getRight() instanceof Num) {
+			if (b.getOperator() == ArithmeticOperator.PLUS) return ((Num) b.getRight()).getValue();
+			if (b.getOperator() == ArithmeticOperator.MINUS) return -((Num) b.getRight()).getValue();
+		}
+		if (b.getOperator() == ArithmeticOperator.PLUS && b.getLeft() instanceof Num && isVar(b.getRight(), target)) {
+			return ((Num) b.getLeft()).getValue();
+		}
+		return null;
+	}
+
+	private static boolean isVar(Exp e, Var v) {
+		return e instanceof Var && ((Var) e).getSymbol() == v.getSymbol();
+	}
+
+	/*
+	 * Whether an expression only reads variables that the loop doesn't
+	 * assign.
+	 */
+	private static boolean unassigned(Exp e, BitSet assigned) {
+		BitSet used = new BitSet();
+		Variables.uses(e, used);
+		return !used.intersects(assigned);
+	}
+
+	/*
+	 * The closed form of a counting loop, or null if it isn't one.
+	 */
+	private static Stmt closedForm(While w, BitSet assigned) {
+		if (!(w.getCondition() instanceof Compare)) return null;
+		Compare c = (Compare) w.getCondition();
+
+		// Find I, N, and which way I goes.
+		Var counter;
+		Exp bound;
+		int step;
+		RelationalOperator op = c.getOperator();
+		if (c.getLeft() instanceof Var && (op == RelationalOperator.LESS || op == RelationalOperator.GREATER)) {
+			counter = (Var) c.getLeft();
+			bound = c.getRight();
+			step = op == RelationalOperator.LESS ? 1 : -1;
+		}
+		else if (c.getRight() instanceof Var && (op == RelationalOperator.LESS || op == RelationalOperator.GREATER)) {
+			counter = (Var) c.getRight();
+			bound = c.getLeft();
+			step = op == RelationalOperator.GREATER ? 1 : -1;
+		}
+		else {
+			return null;
+		}
+		if (!(bound instanceof Num || bound instanceof Var) || !unassigned(bound, assigned)) return null;
+
+		// Check the body, and build the closed form of each statement.
+		Exp times = step == 1 ? new BinOp(ArithmeticOperator.MINUS, bound, counter) : new BinOp(ArithmeticOperator.MINUS, counter, bound);
+		List<Stmt> closed = new ArrayList<Stmt>();
+		BitSet seen = new BitSet();
+		boolean counts = false;
+		for (Stmt s : w.getBody()) {
+			if (!(s instanceof Assign)) return null;
+			Var target = ((Assign) s).getTarget();
+			Exp value = ((Assign) s).getValue();
+			if (seen.get(target.getSymbol())) return null;
+			seen.set(target.getSymbol());
+
+			if (target.getSymbol() == counter.getSymbol()) {
+				Integer k = step(target, value);
+				if (k == null || k != step) return null;
+				counts = true;
+			}
+			else if (unassigned(value, assigned)) {
+				closed.add(s);
+			}
+			else if (value instanceof BinOp && ((BinOp) value).getOperator() != ArithmeticOperator.TIMES) {
+				BinOp b = (BinOp) value;
+				if (isVar(b.getLeft(), target) && unassigned(b.getRight(), assigned)) {
+					closed.add(new Assign(target, new BinOp(b.getOperator(), target, new BinOp(ArithmeticOperator.TIMES, times, b.getRight()))));
+				}
+				else if (b.getOperator() == ArithmeticOperator.PLUS && isVar(b.getRight(), target) && unassigned(b.getLeft(), assigned)) {
+					closed.add(new Assign(target, new BinOp(ArithmeticOperator.PLUS, new BinOp(ArithmeticOperator.TIMES, times, b.getLeft()), target)));
+				}
+				else {
+					return null;
+				}
+			}
+			else {
+				return null;
+			}
+		}
+		if (!counts) return null;
+
+		// I is set last, since the other statements count from it.
+		closed.add(new Assign(counter, bound));
+		return new If(c, closed, null);
+	}
+
+	/*
+	 * A rewriter of the expressions in a loop. replace gives what an
+	 * expression becomes, or null to look inside it.
+	 */
+	private abstract static class Rewriter {
+
+		abstract Exp replace(Exp e);
+
+		List<Stmt> stmts(List<Stmt> stmts) {
+			List<Stmt> result = new ArrayList<Stmt>(stmts.size());
+			for (Stmt s : stmts) result.add(stmt(s));
+			return result;
+		}
+
+		Stmt stmt(Stmt s) {
+			if (s instanceof Assign) return new Assign(((Assign) s).getTarget(), exp(((Assign) s).getValue()));
+			if (s instanceof If) {
+				If i = (If) s;
+				return new If(cond(i.getCondition()), stmts(i.getThenBranch()), i.getElseBranch() == null ? null : stmts(i.getElseBranch()));
+			}
+			if (s instanceof While) return new While(cond(((While) s).getCondition()), stmts(((While) s).getBody()));
+			return s;
+		}
+
+		Cond cond(Cond c) {
+			if (c instanceof Compare) {
+				Compare compare = (Compare) c;
+				return new Compare(exp(compare.getLeft()), compare.getOperator(), exp(compare.getRight()));
+			}
+			if (c instanceof Not) return new Not(cond(((Not) c).getOperand()));
+			if (c instanceof And) return new And(cond(((And) c).getLeft()), cond(((And) c).getRight()));
+			return new Or(cond(((Or) c).getLeft()), cond(((Or) c).getRight()));
+		}
+
+		Exp exp(Exp e) {
+			Exp replacement = replace(e);
+			if (replacement != null) return replacement;
+			if (e instanceof BinOp) {
+				BinOp b = (BinOp) e;
+				return new BinOp(b.getOperator(), exp(b.getLeft()), exp(b.getRight()));
+			}
+			if (e instanceof Group) return new Group(exp(((Group) e).getContents()));
+			return e;
+		}
+	}
+
+	/*
+	 * A key that's the same for expressions that are written the same.
+	 */
+	private static String key(Exp e) {
+		if (e instanceof Num) return Integer.toString(((Num) e).getValue());
+		if (e instanceof Var) return "#" + ((Var) e).getSymbol();
+		if (e instanceof Group) return key(((Group) e).getContents());
+		BinOp b = (BinOp) e;
+		return "(" + key(b.getLeft()) + b.getOperator().getSymbol() + key(b.getRight()) + ")";
+	}
+
+	/*
+	 * Replaces each largest loop-invariant expression that reads a
+	 * variable with a new variable.
+	 */
+	private final class Hoister extends Rewriter {
+		private final BitSet assigned, defined;
+		private final Map<String, Var> byKey = new HashMap<String, Var>();
+		final Map<Var, Exp> hoisted = new LinkedHashMap<Var, Exp>();
+
+		Hoister(BitSet assigned, BitSet defined) {
+			this.assigned = assigned;
+			this.defined = defined;
+		}
+
+		Exp replace(Exp e) {
+			if (!(e instanceof BinOp)) return null;
+			BitSet used = new BitSet();
+			Variables.uses(e, used);
+			if (used.isEmpty() || used.intersects(assigned)) return null;
+			BitSet undefined = (BitSet) used.clone();
+			undefined.andNot(defined);
+			if (!undefined.isEmpty()) return null;
+
+			Var v = byKey.get(key(e));
+			if (v == null) {
+				v = temporaries.next();
+				byKey.put(key(e), v);
+				hoisted.put(v, e);
+				LoopOptimizer.this.hoisted++;
+			}
+			return v;
+		}
+	}
+
+	/*
+	 * Replaces each multiplication of an induction variable by a constant
+	 * with a new variable.
+	 */
+	private final class Reducer extends Rewriter {
+		private final Map<Integer, Integer> steps;
+		private final Map<String, Var> byKey = new HashMap<String, Var>();
+
+		// Each new variable, and the multiplication, as I * c, it stands for.
+		final Map<Var, BinOp> reduced = new LinkedHashMap<Var, BinOp>();
+
+		Reducer(Map<Integer, Integer> steps) {
+			this.steps = steps;
+		}
+
+		Exp replace(Exp e) {
+			if (!(e instanceof BinOp) || ((BinOp) e).getOperator() != ArithmeticOperator.TIMES) return null;
+			BinOp b = (BinOp) e;
+			Var induction;
+			Num factor;
+			if (b.getLeft() instanceof Var && b.getRight() instanceof Num) {
+				induction = (Var) b.getLeft();
+				factor = (Num) b.getRight();
+			}
+			else if (b.getLeft() instanceof Num && b.getRight() instanceof Var) {
+				induction = (Var) b.getRight();
+				factor = (Num) b.getLeft();
+			}
+			else {
+				return null;
+			}
+			if (!steps.containsKey(induction.getSymbol())) return null;
+
+			String key = induction.getSymbol() + "*" + factor.getValue();
+			Var v = byKey.get(key);
+			if (v == null) {
+				v = temporaries.next();
+				byKey.put(key, v);
+				reduced.put(v, new BinOp(ArithmeticOperator.TIMES, induction, factor));
+			}
+			LoopOptimizer.this.reduced++;
+			return v;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import com.benspowell.core_interpreter.ast.Program;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.executor.AstExecutor;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Tests for the optimizers. Each check optimizes a small program, then
+ * compares the program the AstPrinter prints, with its whitespace
+ * collapsed, and what it writes when it runs, with what's expected.
+ * Prints every failed check, and exits with status 1 if there were any.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class OptimizerTest {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private OptimizerTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			folding();
+			globalOptimization();
+			loops();
+			commonSubexpressions();
+		}
+		catch (ParseException e) {
+			fail(e.getMessage());
+		}
+
+		finish("OptimizerTest");
+	}
+
+	/*
+	 * Constants are folded and identities dropped; 0 * X is only folded
+	 * when X is sure to be defined.
+	 */
+	private static void folding() throws ParseException {
+		ConstantFolder folder = new ConstantFolder();
+		Program program = folder.fold(parseAst("program int X, Y, Z; begin read Y;"
+				+ " X = 2 * 3 + Y * 1; Z = 0 * Y; write X, Z; X = (Y - 0) * (4 - 4); write X; end"));
+		checkEquals("folded program", "program int X, Y, Z; begin read Y;"
+				+ " X = 6 + Y; Z = 0; write X, Z; X = 0; write X; end", print(program));
+		checkEquals("folded program's output", "X = 11\nZ = 0\nX = 0\n", execute(program, "5"));
+		checkEquals("nodes removed by folding", 14, folder.getRemoved());
+
+		String undefined = "program int X, Y; begin X = 0 * Y; write X; end";
+		program = new ConstantFolder().fold(parseAst(undefined));
+		checkEquals("0 * Y with Y undefined is kept", undefined, print(program));
+		checkEquals("0 * Y with Y undefined still fails", "\nRUN-TIME ERROR: Y is undefined!", execute(program, ""));
+	}
+
+	/*
+	 * Constants and copies are propagated, dead stores removed, and a
+	 * branch that is never taken pruned.
+	 */
+	private static void globalOptimization() throws ParseException {
+		SsaOptimizer optimizer = new SsaOptimizer();
+		Program program = optimizer.optimize(parseAst("program int X, Y, Z; begin X = 4; Y = X + 1; Z = 7;"
+				+ " Z = Y * 2; if (Y > 3) then write Z; else write X; end; end"));
+		checkEquals("globally optimized program", "program int X, Y, Z; begin X = 4; Z = 10; write Z; end", print(program));
+		checkEquals("globally optimized program's output", "Z = 10\n", execute(program, ""));
+		checkEquals("stores removed", 2, optimizer.getRemovedStores());
+		checkEquals("branches pruned", 1, optimizer.getPrunedBranches());
+	}
+
+	/*
+	 * A counting loop is replaced by its closed form, an invariant is
+	 * hoisted, and a multiplication by an induction variable is reduced.
+	 */
+	private static void loops() throws ParseException {
+		LoopOptimizer optimizer = new LoopOptimizer();
+		Program program = optimizer.optimize(parseAst("program int I, N, S, X; begin read N, X; I = 0; S = 0;"
+				+ " while (I < N) loop S = S + X; I = I + 1; end; write I, S; end"));
+		checkEquals("counting loop", "program int I, N, S, X; begin read N, X; I = 0; S = 0;"
+				+ " if (I < N) then S = S + (N - I) * X; I = N; end; write I, S; end", print(program));
+		checkEquals("counting loop's output", "I = 5\nS = 35\n", execute(program, "5 7"));
+		checkEquals("loops replaced", 1, optimizer.getReplaced());
+
+		optimizer = new LoopOptimizer();
+		program = optimizer.optimize(parseAst("program int I, N, S, A, B; begin read N, A, B; I = 0; S = 0;"
+				+ " while (I < N) loop S = S + I * (A + B); write S; I = I + 1; end; end"));
+		checkEquals("hoisted invariant", "program int I, N, S, A, B; int T1; begin read N, A, B; I = 0; S = 0;"
+				+ " T1 = A + B; while (I < N) loop S = S + I * T1; write S; I = I + 1; end; end", print(program));
+		checkEquals("hoisted invariant's output", "S = 0\nS = 10\nS = 30\n", execute(program, "3 7 3"));
+		checkEquals("invariants hoisted", 1, optimizer.getHoisted());
+
+		optimizer = new LoopOptimizer();
+		program = optimizer.optimize(parseAst("program int I, N, S; begin read N; I = 0; S = 0;"
+				+ " while (I < N) loop I = I + 1; S = S + I * 3; write S; end; end"));
+		checkEquals("reduced multiplication", "program int I, N, S; int T1; begin read N; I = 0; S = 0;"
+				+ " T1 = I * 3; while (I < N) loop I = I + 1; T1 = T1 + 3; S = S + T1; write S; end; end", print(program));
+		checkEquals("reduced multiplication's output", "S = 3\nS = 9\nS = 18\n", execute(program, "3"));
+		checkEquals("multiplications reduced", 1, optimizer.getReduced());
+	}
+
+	/*
+	 * A subexpression worked out again is worked out once, into a new
+	 * variable.
+	 */
+	private static void commonSubexpressions() throws ParseException {
+		CseOptimizer optimizer = new CseOptimizer();
+		Program program = optimizer.optimize(parseAst("program int A, B, X, Y; begin read A, B;"
+				+ " X = (A + B) * (A + B); Y = (A + B) - 1; write X, Y; end"));
+		checkEquals("common subexpression", "program int A, B, X, Y; int T1; begin read A, B;"
+				+ " T1 = A + B; X = T1 * T1; Y = T1 - 1; write X, Y; end", print(program));
+		checkEquals("common subexpression's output", "X = 144\nY = 11\n", execute(program, "5 7"));
+		checkEquals("subexpressions reused", 2, optimizer.getReused());
+	}
+
+	/*
+	 * What the program writes on the AstExecutor, followed by the error it
+	 * fails with, if it does.
+	 */
+	private static String execute(Program program, String input) {
+		return output(input, (out, in) -> new AstExecutor(out, program, in));
+	}
+}
@@ -0,0 +1,454 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.Resolution;
+import com.benspowell.core_interpreter.executor.Resolver;
+import com.benspowell.core_interpreter.optimizer.ControlFlowGraph.Block;
+import com.benspowell.core_interpreter.optimizer.ControlFlowGraph.Kind;
+import com.benspowell.core_interpreter.optimizer.ControlFlowGraph.Value;
+
+/**
+ * Global optimizer over the SSA form of a program (a ControlFlowGraph).
+ * It runs:
+ *
+ * - sparse conditional constant propagation, which finds the variables
+ *   that always hold one constant where they're used, and the branches
+ *   that are never taken;
+ * - copy propagation: a use of Y after Y = X reads X instead, as long as
+ *   X still holds the same value;
+ * - dead-store elimination: an assignment is removed when no use of its
+ *   value is left and it can't fail, because every variable it reads is
+ *   defined there on every path.
+ *
+ * The results are written back into a new AST, which any engine can run.
+ * Ifs whose condition is known are replaced by the branch that is taken,
+ * whiles whose condition is known to be false are removed, and the
+ * ConstantFolder then folds what propagation made constant. Conditions
+ * only count as known when everything they read is, so no condition that
+ * could fail is ever removed. Reads and writes are all kept, in order.
+ *
+ * A program with undeclared or redeclared variables is left alone, so
+ * that it fails as it would have.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class SsaOptimizer {
+
+	// States of the constant propagation lattice.
+	private static final int TOP = 0, CONSTANT = 1, BOTTOM = 2;
+
+	private ControlFlowGraph graph;
+	private int nextUse, nextAssignment, nextCondition;
+
+	private int propagated = 0;
+	private int removedStores = 0;
+	private int prunedBranches = 0;
+
+	/**
+	 * Optimize a program.
+	 */
+	public Program optimize(Program program) {
+		Resolution slots;
+		try {
+			slots = Resolver.resolve(program);
+		}
+		catch (ExecutorException e) {
+			return program;
+		}
+
+		graph = new ControlFlowGraph(program, slots);
+		propagateConstants();
+		findDefinedValues();
+		markLiveValues();
+
+		nextUse = nextAssignment = nextCondition = 0;
+		Program rewritten = new Program(program.getDeclarations(), rewrite(program.getBody(), true), program.getSymbolCount());
+		graph = null;
+		return new ConstantFolder().fold(rewritten);
+	}
+
+	/**
+	 * How many uses of variables have been replaced by constants or by
+	 * other variables.
+	 */
+	public int getPropagated() {
+		return propagated;
+	}
+
+	/**
+	 * How many assignments have been removed.
+	 */
+	public int getRemovedStores() {
+		return removedStores;
+	}
+
+	/**
+	 * How many ifs and whiles have been replaced by the code that runs.
+	 */
+	public int getPrunedBranches() {
+		return prunedBranches;
+	}
+
+	/*
+	 * Sparse conditional constant propagation (Wegman and Zadeck). Every
+	 * value starts at TOP, and only ever moves down to a CONSTANT and then
+	 * to BOTTOM. Only blocks reached along edges found to be executable
+	 * are looked at.
+	 */
+	private void propagateConstants() {
+		for (Block b : graph.blocks) b.executableEdges = new boolean[b.predecessors.size()];
+
+		ArrayDeque<Block> blocks = new ArrayDeque<Block>();
+		ArrayDeque<Value> values = new ArrayDeque<Value>();
+		graph.entry.executable = true;
+		blocks.add(graph.entry);
+
+		while (!blocks.isEmpty() || !values.isEmpty()) {
+			if (!blocks.isEmpty()) {
+				Block b = blocks.poll();
+				for (Value v : b.phis) evaluate(v, values);
+				for (Value v : b.code) evaluate(v, values);
+				branch(b, blocks, values);
+				continue;
+			}
+
+			Value changed = values.poll();
+			for (Value user : changed.users) {
+				if (user.block.executable) evaluate(user, values);
+			}
+			if (changed.block.condition == changed && changed.block.executable) branch(changed.block, blocks, values);
+		}
+	}
+
+	/*
+	 * Mark the edges out of a block that can be taken.
+	 */
+	private void branch(Block b, ArrayDeque<Block> blocks, ArrayDeque<Value> values) {
+		Value c = b.condition;
+		for (int i = 0; i < b.successors.size(); i++) {
+			if (c == null || c.state == BOTTOM || (c.state == CONSTANT && (c.value != 0) == (i == 0))) {
+				Block to = b.successors.get(i);
+				int edge = to.predecessors.indexOf(b);
+				if (to.executableEdges[edge]) continue;
+				to.executableEdges[edge] = true;
+
+				if (!to.executable) {
+					to.executable = true;
+					blocks.add(to);
+				}
+				else {
+					for (Value phi : to.phis) evaluate(phi, values);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Work out a value's state again, queueing it if it changes.
+	 */
+	private void evaluate(Value v, ArrayDeque<Value> values) {
+		int state, value = 0;
+		switch (v.kind) {
+		case NUM:
+			state = CONSTANT;
+			value = v.literal;
+			break;
+		case USE:
+		case ASSIGN:
+			state = v.operands[0].state;
+			value = v.operands[0].value;
+			break;
+		case PHI:
+			state = TOP;
+			for (int i = 0; i < v.operands.length && state != BOTTOM; i++) {
+				if (!v.block.executableEdges[i]) continue;
+				Value operand = v.operands[i];
+				if (operand.state == TOP) continue;
+				if (state == TOP) {
+					state = operand.state;
+					value = operand.value;
+				}
+				else if (operand.state == BOTTOM || operand.value != value) {
+					state = BOTTOM;
+				}
+			}
+			break;
+		case BINOP:
+		case COMPARE:
+		case NOT:
+		case AND:
+		case OR:
+			state = CONSTANT;
+			for (Value operand : v.operands) {
+				if (operand.state == BOTTOM) state = BOTTOM;
+				else if (operand.state == TOP && state == CONSTANT) state = TOP;
+			}
+			if (state == CONSTANT) value = apply(v);
+			break;
+		case WRITE:
+			return;
+		default:
+			state = BOTTOM;
+			break;
+		}
+
+		if (state != v.state || (state == CONSTANT && value != v.value)) {
+			v.state = state;
+			v.value = value;
+			values.add(v);
+		}
+	}
+
+	/*
+	 * The value of an operator whose operands are all constants. A
+	 * condition is 1 if it holds and 0 if it doesn't.
+	 */
+	private static int apply(Value v) {
+		Value[] o = v.operands;
+		switch (v.kind) {
+		case BINOP:
+			return v.arithmetic.apply(o[0].value, o[1].value);
+		case COMPARE:
+			return v.relation.test(o[0].value, o[1].value) ? 1 : 0;
+		case NOT:
+			return 1 - o[0].value;
+		case AND:
+			return o[0].value & o[1].value;
+		default:
+			return o[0].value | o[1].value;
+		}
+	}
+
+	/*
+	 * Find the values of variables that are defined on every executable
+	 * path: all but the entry values, and the phis all of whose operands
+	 * are. Phis start out defined, and are marked undefined until nothing
+	 * changes.
+	 */
+	private void findDefinedValues() {
+		for (Block b : graph.blocks) {
+			for (Value v : b.code) v.defined = v.kind != Kind.ENTRY;
+		}
+		for (Value phi : graph.phis) phi.defined = true;
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Value phi : graph.phis) {
+				if (!phi.defined) continue;
+				for (int i = 0; i < phi.operands.length; i++) {
+					if (phi.block.executableEdges[i] && !phi.operands[i].defined) {
+						phi.defined = false;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * The value of a variable that a use reads once the AST is rewritten,
+	 * or null if it's replaced by a constant.
+	 */
+	private static Value reads(Value use) {
+		if (!use.block.executable) return use.operands[0];
+		if (use.state == CONSTANT) return null;
+		return use.copy != null ? use.copy : use.operands[0];
+	}
+
+	/*
+	 * Mark the values that are needed: those written, those read by the
+	 * conditions, by assignments that could fail and by code that is
+	 * never reached (which is kept as it is), and, in turn, the values
+	 * that the needed ones are made from. A phi only needs the operands
+	 * from edges that can be taken.
+	 */
+	private void markLiveValues() {
+		ArrayDeque<Value> work = new ArrayDeque<Value>();
+
+		for (Value write : graph.writes) live(write.operands[0], work);
+		for (Value condition : graph.conditions) liveUses(condition, work);
+		for (Value assignment : graph.assignments) {
+			if (!assignment.block.executable || mayFail(assignment)) live(assignment, work);
+		}
+
+		while (!work.isEmpty()) {
+			Value v = work.poll();
+			if (v.kind == Kind.ASSIGN) {
+				liveUses(v, work);
+			}
+			else if (v.kind == Kind.PHI) {
+				for (int i = 0; i < v.operands.length; i++) {
+					if (v.block.executableEdges[i] || !v.block.executable) live(v.operands[i], work);
+				}
+			}
+		}
+	}
+
+	private static void live(Value v, ArrayDeque<Value> work) {
+		if (v.live) return;
+		v.live = true;
+		work.add(v);
+	}
+
+	private void liveUses(Value v, ArrayDeque<Value> work) {
+		for (int i = v.firstUse; i < v.endUse; i++) {
+			Value read = reads(graph.uses.get(i));
+			if (read != null) live(read, work);
+		}
+	}
+
+	/*
+	 * Whether an assignment could read a variable that isn't defined.
+	 */
+	private boolean mayFail(Value assignment) {
+		for (int i = assignment.firstUse; i < assignment.endUse; i++) {
+			Value read = reads(graph.uses.get(i));
+			if (read != null && !read.defined) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Rewrite a statement sequence, walking the AST in the order it was
+	 * lowered in. The sequences of an if or while that is removed may come
+	 * out empty, but CORE has no empty sequences, so if every statement of
+	 * a sequence that is kept is removed, its last statement is rewritten
+	 * again without being removed.
+	 */
+	private List<Stmt> rewrite(List<Stmt> stmts, boolean kept) {
+		List<Stmt> result = new ArrayList<Stmt>(stmts.size());
+		int[] beforeLast = null;
+		for (Stmt s : stmts) {
+			beforeLast = position();
+			rewrite(s, result, true);
+		}
+
+		if (result.isEmpty() && kept) {
+			reposition(beforeLast);
+			rewrite(stmts.get(stmts.size() - 1), result, false);
+		}
+		return result;
+	}
+
+	/*
+	 * Where the rewriting is up to, and how much it has done.
+	 */
+	private int[] position() {
+		return new int[] { nextUse, nextAssignment, nextCondition, propagated, removedStores, prunedBranches };
+	}
+
+	private void reposition(int[] p) {
+		nextUse = p[0];
+		nextAssignment = p[1];
+		nextCondition = p[2];
+		propagated = p[3];
+		removedStores = p[4];
+		prunedBranches = p[5];
+	}
+
+	/*
+	 * Add what a statement becomes to result. If it mustn't be removed, an
+	 * assignment that isn't needed becomes an assignment of 0, because its
+	 * value may read stores that were removed; nothing reads the variable
+	 * before it's assigned again.
+	 */
+	private void rewrite(Stmt s, List<Stmt> result, boolean removable) {
+		if (s instanceof Assign) {
+			Assign a = (Assign) s;
+			Exp value = rewrite(a.getValue());
+			Value def = graph.assignments.get(nextAssignment++);
+
+			if (!def.block.executable || def.live) result.add(value == a.getValue() ? s : new Assign(a.getTarget(), value));
+			else if (removable) removedStores++;
+			else result.add(new Assign(a.getTarget(), new Num(0)));
+		}
+		else if (s instanceof If) {
+			If i = (If) s;
+			Cond condition = rewrite(i.getCondition());
+			Value known = graph.conditions.get(nextCondition++);
+			boolean pruned = removable && known.block.executable && known.state == CONSTANT;
+			List<Stmt> thenBranch = rewrite(i.getThenBranch(), !pruned);
+			List<Stmt> elseBranch = i.getElseBranch() == null ? null : rewrite(i.getElseBranch(), !pruned);
+
+			if (pruned) {
+				prunedBranches++;
+				if (known.value != 0) result.addAll(thenBranch);
+				else if (elseBranch != null) result.addAll(elseBranch);
+			}
+			else {
+				result.add(new If(condition, thenBranch, elseBranch));
+			}
+		}
+		else if (s instanceof While) {
+			While w = (While) s;
+			Cond condition = rewrite(w.getCondition());
+			Value known = graph.conditions.get(nextCondition++);
+			boolean pruned = removable && known.block.executable && known.state == CONSTANT && known.value == 0;
+			List<Stmt> body = rewrite(w.getBody(), !pruned);
+
+			if (pruned) prunedBranches++;
+			else result.add(new While(condition, body));
+		}
+		else {
+			result.add(s);
+		}
+	}
+
+	private Cond rewrite(Cond c) {
+		if (c instanceof Compare) {
+			Compare compare = (Compare) c;
+			Exp left = rewrite(compare.getLeft());
+			Exp right = rewrite(compare.getRight());
+			if (left == compare.getLeft() && right == compare.getRight()) return c;
+			return new Compare(left, compare.getOperator(), right);
+		}
+		if (c instanceof Not) {
+			Cond operand = rewrite(((Not) c).getOperand());
+			return operand == ((Not) c).getOperand() ? c : new Not(operand);
+		}
+		if (c instanceof And) {
+			And and = (And) c;
+			Cond left = rewrite(and.getLeft());
+			Cond right = rewrite(and.getRight());
+			return left == and.getLeft() && right == and.getRight() ? c : new And(left, right);
+		}
+		Or or = (Or) c;
+		Cond left = rewrite(or.getLeft());
+		Cond right = rewrite(or.getRight());
+		return left == or.getLeft() && right == or.getRight() ? c : new Or(left, right);
+	}
+
+	private Exp rewrite(Exp e) {
+		if (e instanceof Var) {
+			Value use = graph.uses.get(nextUse++);
+			if (!use.block.executable) return e;
+			if (use.state == CONSTANT) {
+				propagated++;
+				return new Num(use.value);
+			}
+			if (use.copy != null) {
+				propagated++;
+				return use.copyVar;
+			}
+			return e;
+		}
+		if (e instanceof Group) {
+			Exp contents = rewrite(((Group) e).getContents());
+			return contents == ((Group) e).getContents() ? e : new Group(contents);
+		}
+		if (e instanceof BinOp) {
+			BinOp b = (BinOp) e;
+			Exp left = rewrite(b.getLeft());
+			Exp right = rewrite(b.getRight());
+			return left == b.getLeft() && right == b.getRight() ? e : new BinOp(b.getOperator(), left, right);
+		}
+		return e;
+	}
+}
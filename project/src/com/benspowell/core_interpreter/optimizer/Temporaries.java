@@ -0,0 +1,60 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.benspowell.core_interpreter.ast.*;
+
+/**
+ * New variables for an optimizer to keep values in. They are given names
+ * the program doesn't use, and symbols after all of its own, and are
+ * declared after its own variables, so the optimized program still
+ * prints as valid CORE.
+ *
+ * @author Benjamin S. Powell
+ */
+final class Temporaries {
+
+	private final Set<String> names = new HashSet<String>();
+	private final List<Var> vars = new ArrayList<Var>();
+	private int symbolCount;
+	private int nextName = 1;
+
+	/**
+	 * Constructor for the Temporaries of a program.
+	 */
+	Temporaries(Program program) {
+		symbolCount = program.getSymbolCount();
+		for (Decl d : program.getDeclarations()) {
+			for (Var v : d.getIds()) names.add(v.getName());
+		}
+	}
+
+	/*
+	 * A new variable.
+	 */
+	Var next() {
+		String name;
+		do {
+			name = "T" + nextName++;
+		} while (names.contains(name));
+
+		Var v = new Var(name, symbolCount++);
+		vars.add(v);
+		return v;
+	}
+
+	/*
+	 * The program with a new body, declaring the new variables.
+	 */
+	Program declare(Program program, List<Stmt> body) {
+		List<Decl> declarations = program.getDeclarations();
+		if (!vars.isEmpty()) {
+			declarations = new ArrayList<Decl>(declarations);
+			declarations.add(new Decl(vars));
+		}
+		return new Program(declarations, body, symbolCount);
+	}
+}
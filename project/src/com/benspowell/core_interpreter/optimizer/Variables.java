@@ -0,0 +1,85 @@
+package com.benspowell.core_interpreter.optimizer;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import com.benspowell.core_interpreter.ast.*;
+
+/**
+ * What statements and expressions do with the program's variables, by
+ * symbol, for the optimizers to work out what is defined or assigned
+ * where.
+ *
+ * @author Benjamin S. Powell
+ */
+final class Variables {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private Variables() {
+	}
+
+	/*
+	 * Mark the variables that are sure to be defined after an assignment,
+	 * read or write that didn't fail: those it sets, and those it reads.
+	 * Ifs and whiles are up to the caller.
+	 */
+	static void define(Stmt s, BitSet defined) {
+		if (s instanceof Assign) {
+			uses(((Assign) s).getValue(), defined);
+			defined.set(((Assign) s).getTarget().getSymbol());
+		}
+		else if (s instanceof Read) {
+			for (Var v : ((Read) s).getIds()) defined.set(v.getSymbol());
+		}
+		else if (s instanceof Write) {
+			for (Var v : ((Write) s).getIds()) defined.set(v.getSymbol());
+		}
+	}
+
+	/*
+	 * Mark the variables an expression reads.
+	 */
+	static void uses(Exp e, BitSet used) {
+		if (e instanceof Var) {
+			used.set(((Var) e).getSymbol());
+		}
+		else if (e instanceof BinOp) {
+			uses(((BinOp) e).getLeft(), used);
+			uses(((BinOp) e).getRight(), used);
+		}
+		else if (e instanceof Group) {
+			uses(((Group) e).getContents(), used);
+		}
+	}
+
+	/*
+	 * Mark the variables that statements assign to or read into, and
+	 * count how many times each is.
+	 */
+	static void assigned(List<Stmt> stmts, BitSet assigned, Map<Integer, Integer> counts) {
+		for (Stmt s : stmts) {
+			if (s instanceof Assign) {
+				assign(((Assign) s).getTarget(), assigned, counts);
+			}
+			else if (s instanceof Read) {
+				for (Var v : ((Read) s).getIds()) assign(v, assigned, counts);
+			}
+			else if (s instanceof If) {
+				assigned(((If) s).getThenBranch(), assigned, counts);
+				if (((If) s).getElseBranch() != null) assigned(((If) s).getElseBranch(), assigned, counts);
+			}
+			else if (s instanceof While) {
+				assigned(((While) s).getBody(), assigned, counts);
+			}
+		}
+	}
+
+	private static void assign(Var v, BitSet assigned, Map<Integer, Integer> counts) {
+		assigned.set(v.getSymbol());
+		Integer count = counts.get(v.getSymbol());
+		counts.put(v.getSymbol(), count == null ? 1 : count + 1);
+	}
+}
@@ -0,0 +1,414 @@
+package com.benspowell.core_interpreter.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.tokenizer.SymbolTable;
+
+/**
+ * Builds the typed, immutable AST of a program from its ParseTree. Every
+ * shape the Parser can produce is accepted: nested or LIST sequences, and
+ * binary or SUM/PRODUCT expressions. A SUM becomes the same right-nested
+ * BinOps as the binary tree, so results and error order don't change.
+ *
+ * The ParseTree's cursor is only used while building; the AST has none.
+ *
+ * @author Benjamin S. Powell
+ */
+public class AstBuilder {
+
+	private final ParseTree p;
+
+	private AstBuilder(ParseTree p) {
+		this.p = p;
+	}
+
+	/**
+	 * Build the AST of the program in a fully initialized ParseTree. It
+	 * must have no constants too large for an int (see
+	 * Parser.setBigConstants).
+	 */
+	public static Program build(ParseTree fullyInitializedParseTree) {
+		return new AstBuilder(fullyInitializedParseTree).buildProgram();
+	}
+
+	/**
+	 * Build the AST of the loop at the cursor, which is left where it was.
+	 */
+	public static While buildWhile(ParseTree atLoop) {
+		return new AstBuilder(atLoop).buildLoop();
+	}
+
+	/**
+	 * Build the program at the root.
+	 */
+	private Program buildProgram() {
+		p.goAllTheWayBackUp();
+
+		p.goDownLeftBranch();
+		List<Decl> declarations = buildDeclSeq();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		List<Stmt> body = buildStmtSeq();
+		p.goUp();
+
+		SymbolTable symbols = p.getSymbolTable();
+		return new Program(declarations, body, symbols == null ? 0 : symbols.size());
+	}
+
+	/**
+	 * Build a declaration sequence.
+	 */
+	private List<Decl> buildDeclSeq() {
+		List<Decl> list = new ArrayList<Decl>();
+		
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list.add(buildDecl());
+				p.goUp();
+			}
+			return list;
+		}
+		
+		// Follow the chain of nested sequences with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			list.add(buildDecl());
+			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+		
+		return list;
+	}
+	
+	/**
+	 * Build a statement sequence.
+	 */
+	private List<Stmt> buildStmtSeq() {
+		List<Stmt> list = new ArrayList<Stmt>();
+		
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list.add(buildStmt());
+				p.goUp();
+			}
+			return list;
+		}
+		
+		// Follow the chain of nested sequences with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			list.add(buildStmt());
+			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+		
+		return list;
+	}
+	
+	/**
+	 * Build a declaration.
+	 */
+	private Decl buildDecl() {
+		p.goDownLeftBranch();
+		List<Var> ids = buildIdList();
+		p.goUp();
+
+		return new Decl(ids);
+	}
+
+	/**
+	 * Build an ID list.
+	 */
+	private List<Var> buildIdList() {
+		List<Var> list = new ArrayList<Var>();
+		
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				list.add(buildId());
+				p.goUp();
+			}
+			return list;
+		}
+		
+		// Follow the chain of nested lists with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			list.add(buildId());
+			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+		
+		return list;
+	}
+
+	/**
+	 * Build a statement.
+	 */
+	private Stmt buildStmt() {
+		int alternative = p.currentAlternative();
+
+		p.goDownLeftBranch();
+		Stmt s;
+		switch (alternative) {
+		case 1:
+			s = buildAss();
+			break;
+		case 2:
+			s = buildIf();
+			break;
+		case 3:
+			s = buildLoop();
+			break;
+		case 4:
+			s = new Read(buildIds());
+			break;
+		default:
+			s = new Write(buildIds());
+			break;
+		}
+		p.goUp();
+
+		return s;
+	}
+
+	/**
+	 * Build an assignment.
+	 */
+	private Assign buildAss() {
+		p.goDownLeftBranch();
+		Var target = buildId();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		Exp value = buildExp();
+		p.goUp();
+
+		return new Assign(target, value);
+	}
+
+	/**
+	 * Build an if.
+	 */
+	private If buildIf() {
+		p.goDownLeftBranch();
+		Cond condition = buildCond();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		List<Stmt> thenBranch = buildStmtSeq();
+		p.goUp();
+
+		List<Stmt> elseBranch = null;
+		if (p.currentAlternative() == 2) {
+			p.goDownRightBranch();
+			elseBranch = buildStmtSeq();
+			p.goUp();
+		}
+
+		return new If(condition, thenBranch, elseBranch);
+	}
+
+	/**
+	 * Build a loop.
+	 */
+	private While buildLoop() {
+		p.goDownLeftBranch();
+		Cond condition = buildCond();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		List<Stmt> body = buildStmtSeq();
+		p.goUp();
+
+		return new While(condition, body);
+	}
+
+	/**
+	 * Build the ID list of an in or out statement.
+	 */
+	private List<Var> buildIds() {
+		p.goDownLeftBranch();
+		List<Var> ids = buildIdList();
+		p.goUp();
+
+		return ids;
+	}
+
+	/**
+	 * Build a condition.
+	 */
+	private Cond buildCond() {
+		int alternative = p.currentAlternative();
+
+		p.goDownLeftBranch();
+		Cond left = alternative == 1 ? buildComp() : buildCond();
+		p.goUp();
+
+		if (alternative == 1) return left;
+		if (alternative == 2) return new Not(left);
+
+		p.goDownMiddleBranch();
+		Cond right = buildCond();
+		p.goUp();
+
+		return alternative == 3 ? new And(left, right) : new Or(left, right);
+	}
+
+	/**
+	 * Build a comparison.
+	 */
+	private Compare buildComp() {
+		p.goDownLeftBranch();
+		Exp left = buildOp();
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		RelationalOperator operator = RelationalOperator.values()[p.currentAlternative() - 1];
+		p.goUp();
+
+		p.goDownRightBranch();
+		Exp right = buildOp();
+		p.goUp();
+
+		return new Compare(left, operator, right);
+	}
+
+	/**
+	 * Build an expression.
+	 */
+	private Exp buildExp() {
+		if (p.currentAlternative() == ParseTree.SUM) return buildSum();
+
+		p.goDownLeftBranch();
+		Exp left = buildTrm();
+		p.goUp();
+
+		if (p.currentAlternative() == 1) return left;
+
+		p.goDownMiddleBranch();
+		Exp right = buildExp();
+		p.goUp();
+
+		return new BinOp(p.currentAlternative() == 2 ? ArithmeticOperator.PLUS : ArithmeticOperator.MINUS,
+				left, right);
+	}
+
+	/**
+	 * Build an n-ary sum into BinOps nested to the right, the way CORE
+	 * groups + and -.
+	 */
+	private Exp buildSum() {
+		int n = p.childCount();
+		Exp[] operands = new Exp[n];
+		int[] operators = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			operators[i] = p.getCurrentOperator();
+			operands[i] = p.currentNTNo() == NonTerminalKind.TRM ? buildTrm() : buildOp();
+			p.goUp();
+		}
+
+		Exp result = operands[n - 1];
+		for (int i = n - 2; i >= 0; i--) {
+			ArithmeticOperator operator = operators[i + 1] == ParseTree.MINUS
+					? ArithmeticOperator.MINUS : ArithmeticOperator.PLUS;
+			result = new BinOp(operator, operands[i], result);
+		}
+		return result;
+	}
+
+	/**
+	 * Build a term.
+	 */
+	private Exp buildTrm() {
+		if (p.currentAlternative() == ParseTree.PRODUCT) {
+			int n = p.childCount();
+			Exp[] operands = new Exp[n];
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				operands[i] = buildOp();
+				p.goUp();
+			}
+
+			Exp result = operands[n - 1];
+			for (int i = n - 2; i >= 0; i--) result = new BinOp(ArithmeticOperator.TIMES, operands[i], result);
+			return result;
+		}
+
+		p.goDownLeftBranch();
+		Exp left = buildOp();
+		p.goUp();
+
+		if (p.currentAlternative() != 2) return left;
+
+		p.goDownMiddleBranch();
+		Exp right = buildTrm();
+		p.goUp();
+
+		return new BinOp(ArithmeticOperator.TIMES, left, right);
+	}
+
+	/**
+	 * Build an operator.
+	 */
+	private Exp buildOp() {
+		int alternative = p.currentAlternative();
+
+		p.goDownLeftBranch();
+		Exp e;
+		switch (alternative) {
+		case 1:
+			e = buildNo();
+			break;
+		case 2:
+			e = buildId();
+			break;
+		default:
+			e = new Group(buildExp());
+			break;
+		}
+		p.goUp();
+
+		return e;
+	}
+
+	/**
+	 * Build a number. The AST's Nums are ints, so a BIG <no> has none.
+	 */
+	private Num buildNo() {
+		if (p.currentAlternative() == ParseTree.BIG) {
+			throw new IllegalArgumentException("the constant " + p.getCurrentBigVal()
+					+ " is too large for an int, so the program has no AST");
+		}
+		return new Num(p.getCurrentIntVal());
+	}
+
+	/**
+	 * Build an ID.
+	 */
+	private Var buildId() {
+		return new Var(p.getCurrentIdName(), p.getCurrentSymbol());
+	}
+}
@@ -0,0 +1,255 @@
+package com.benspowell.core_interpreter.parser;
+
+import java.util.Arrays;
+
+import com.benspowell.core_interpreter.tokenizer.*;
+
+/**
+ * ParseTree backed by parallel primitive arrays. Node n has non-terminal
+ * nt[n], alternative alt[n], parent parent[n] and payload payload[n] (the
+ * value of a <no>, the symbol of an <id>, or the operator of an operand of
+ * a SUM). Its children are the node numbers
+ * children[firstChild[n] .. firstChild[n] + childCount[n]).
+ *
+ * Nodes are numbered in the order they are created. For the Parser that is
+ * pre-order, so a subtree is laid out close together in memory, except
+ * that a node made by wrapCurrentNode (for n-ary expressions) is numbered
+ * after the nodes under it. Nothing depends on the order.
+ *
+ * @author Benjamin S. Powell
+ */
+public class FlatParseTree extends ParseTree {
+
+	// Number of child slots reserved for a node by its first child.
+	private static final int INITIAL_CHILD_SLOTS = 3;
+
+	private static final NonTerminalKind[] KINDS = NonTerminalKind.values();
+
+	// Per-node columns.
+	private byte[] nt;
+	private byte[] alt;
+	private int[] parent;
+	private int[] payload;
+	private int[] firstChild;
+	private int[] childCount;
+
+	// Number of nodes.
+	private int size;
+
+	// Child slots of all the nodes.
+	private int[] children;
+
+	// Number of child slots in use.
+	private int childSlots;
+
+	// The cursor.
+	private int currentNode;
+
+	/*
+	 * Constructor for the FlatParseTree class.
+	 */
+	public FlatParseTree() {
+		this(1024);
+	}
+
+	/*
+	 * Constructor for a FlatParseTree expected to grow to about capacity nodes.
+	 */
+	public FlatParseTree(int capacity) {
+		capacity = Math.max(capacity, 16);
+		this.nt = new byte[capacity];
+		this.alt = new byte[capacity];
+		this.parent = new int[capacity];
+		this.payload = new int[capacity];
+		this.firstChild = new int[capacity];
+		this.childCount = new int[capacity];
+		this.children = new int[capacity];
+		this.size = 0;
+		this.childSlots = 0;
+
+		this.currentNode = newNode(-1);
+	}
+
+	/*
+	 * Number of nodes in the tree.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Append a new node with the given parent, and return its number.
+	 */
+	private int newNode(int p) {
+		if (size == nt.length) {
+			int capacity = size * 2;
+			nt = Arrays.copyOf(nt, capacity);
+			alt = Arrays.copyOf(alt, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			payload = Arrays.copyOf(payload, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			childCount = Arrays.copyOf(childCount, capacity);
+		}
+		int n = size++;
+		parent[n] = p;
+		childCount[n] = 0;
+		return n;
+	}
+
+	/*
+	 * Reserve count contiguous child slots, and return the first.
+	 */
+	private int reserveChildSlots(int count) {
+		if (childSlots + count > children.length) {
+			children = Arrays.copyOf(children, Math.max(children.length * 2, childSlots + count));
+		}
+		int first = childSlots;
+		childSlots += count;
+		return first;
+	}
+
+	/*
+	 * Number of child slots reserved for a node with count children: three
+	 * at first, then doubling.
+	 */
+	private static int slotsFor(int count) {
+		return count <= INITIAL_CHILD_SLOTS ? INITIAL_CHILD_SLOTS
+				: Integer.highestOneBit(count - 1) << 1;
+	}
+
+	/*
+	 * Create child number i of the current node. Children are always
+	 * created in order, so this appends. A node whose slots are full is
+	 * moved to a new run of slots twice the size.
+	 */
+	private void createChild(int i) {
+		int n = currentNode;
+		if (i == 0) {
+			firstChild[n] = reserveChildSlots(slotsFor(1));
+		}
+		else if (i == slotsFor(i)) {
+			int moved = reserveChildSlots(slotsFor(i + 1));
+			System.arraycopy(children, firstChild[n], children, moved, i);
+			firstChild[n] = moved;
+		}
+		children[firstChild[n] + i] = newNode(n);
+		childCount[n] = i + 1;
+	}
+
+	public void goAllTheWayBackUp() {
+		this.currentNode = 0;
+	}
+
+	public NonTerminalKind currentNTNo() {
+		return KINDS[nt[currentNode]];
+	}
+
+	public int currentNodeId() {
+		return currentNode;
+	}
+
+	public int currentAlternative() {
+		return alt[currentNode];
+	}
+
+	public void goDownLeftBranch() {
+		currentNode = children[firstChild[currentNode]];
+	}
+
+	public void createLeftBranch() {
+		createChild(0);
+	}
+
+	public void goDownRightBranch() {
+		currentNode = children[firstChild[currentNode] + 2];
+	}
+
+	public void createRightBranch() {
+		createChild(2);
+	}
+
+	public void goDownMiddleBranch() {
+		currentNode = children[firstChild[currentNode] + 1];
+	}
+
+	public void createMiddleBranch() {
+		createChild(1);
+	}
+
+	public void goUp() {
+		currentNode = parent[currentNode];
+	}
+
+	public int childCount() {
+		return childCount[currentNode];
+	}
+
+	public void goDownBranch(int i) {
+		currentNode = children[firstChild[currentNode] + i];
+	}
+
+	public void createNextBranch() {
+		createChild(childCount[currentNode]);
+	}
+
+	public void wrapCurrentNode() {
+		int old = currentNode;
+		int p = parent[old];
+		int m = newNode(p);
+
+		// The node being wrapped is almost always its parent's last child.
+		int slot = firstChild[p] + childCount[p] - 1;
+		while (children[slot] != old) slot--;
+		children[slot] = m;
+
+		parent[old] = m;
+		firstChild[m] = reserveChildSlots(slotsFor(1));
+		children[firstChild[m]] = old;
+		childCount[m] = 1;
+		currentNode = m;
+	}
+
+	public int getCurrentIntVal() {
+		return payload[currentNode];
+	}
+
+	public void setCurrentIntVal(int x) {
+		payload[currentNode] = x;
+	}
+
+	public String getCurrentIdName() {
+		return getSymbolTable().name(payload[currentNode]);
+	}
+
+	/*
+	 * Names are kept in the SymbolTable, so setting one interns it.
+	 */
+	public void setCurrentIdName(String x) {
+		if (getSymbolTable() == null) setSymbolTable(new SymbolTable());
+		payload[currentNode] = getSymbolTable().intern(x);
+	}
+
+	public int getCurrentSymbol() {
+		return payload[currentNode];
+	}
+
+	public void setCurrentSymbol(int s) {
+		payload[currentNode] = s;
+	}
+
+	public int getCurrentOperator() {
+		return payload[currentNode];
+	}
+
+	public void setCurrentOperator(int op) {
+		payload[currentNode] = op;
+	}
+
+	public void setNT(NonTerminalKind nt) {
+		this.nt[currentNode] = (byte) nt.ordinal();
+	}
+
+	public void setAltNo(int i) {
+		this.alt[currentNode] = (byte) i;
+	}
+}
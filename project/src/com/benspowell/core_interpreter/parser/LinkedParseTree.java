@@ -0,0 +1,226 @@
+package com.benspowell.core_interpreter.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ParseTree backed by one heap object per node, each holding its own list of
+ * children and a pointer to its parent.
+ * 
+ * @author Benjamin S. Powell
+ */
+public class LinkedParseTree extends ParseTree {
+	private Node root;
+	private Node currentNode;
+	
+	private int nodeCount = 0;
+	
+	public class Node {
+		public Node() {
+			this.children = new ArrayList <Node>();
+			this.id = nodeCount++;
+		}
+		
+		private final int id;
+		private Node parent;
+		private List<Node> children;
+		
+		private NonTerminalKind nt;
+        private int alt;
+        
+        //ONLY FOR <id>'S (and the operator of SUM operands)
+        private int idVal;
+        private String idName;
+        private int symbol;
+    }
+	
+	/*
+	 * Constructor for the LinkedParseTree class.
+	 */
+	public LinkedParseTree() {
+		Node n = new Node();
+		n.parent=null;
+		
+		this.root=n;
+		this.currentNode=this.root;
+	}
+	
+	public void goAllTheWayBackUp() {
+		this.currentNode=this.root;
+	}
+	
+	/*
+	 * Get the non-terminal at the current node.
+	 */
+	public NonTerminalKind currentNTNo() {
+		return this.currentNode.nt;
+	}
+	
+	public int currentNodeId() {
+		return this.currentNode.id;
+	}
+	
+	/*
+	 * Get the alternative number used at the current node.
+	 */
+	public int currentAlternative() {
+		return this.currentNode.alt;
+	}
+	
+	/*
+	 * Move the cursor to the first child.
+	 */
+	public void goDownLeftBranch() {
+		this.currentNode=this.currentNode.children.get(0);
+	}
+	
+	/*
+	 * Create a left child of the current node.
+	 */
+	public void createLeftBranch() {
+		Node n = new Node();
+		n.parent=this.currentNode;
+		this.currentNode.children.add(0,n);
+	}
+	
+	/*
+	 * Move the cursor to the second child.
+	 */
+	public void goDownRightBranch() {
+		this.currentNode=this.currentNode.children.get(2);
+	}
+	
+	/*
+	 * Create a left child of the current node.
+	 */
+	public void createRightBranch() {
+		Node n = new Node();
+		n.parent=this.currentNode;
+		this.currentNode.children.add(2,n);
+	}
+	
+	/*
+	 * Move the cursor to the third child.
+	 */
+	public void goDownMiddleBranch() {
+		this.currentNode=this.currentNode.children.get(1);
+	}
+	
+	/*
+	 * Create a left child of the current node.
+	 */
+	public void createMiddleBranch() {
+		Node n = new Node();
+		n.parent=this.currentNode;
+		this.currentNode.children.add(1,n);
+	} 
+	
+	/*
+	 * Move the cursor to the parent node.
+	 */
+	public void goUp() {
+		this.currentNode=this.currentNode.parent;
+	}
+	
+	/*
+	 * Get the number of children of the current node.
+	 */
+	public int childCount() {
+		return this.currentNode.children.size();
+	}
+	
+	/*
+	 * Move the cursor to child number i.
+	 */
+	public void goDownBranch(int i) {
+		this.currentNode=this.currentNode.children.get(i);
+	}
+	
+	/*
+	 * Create a child of the current node after all its other children.
+	 */
+	public void createNextBranch() {
+		Node n = new Node();
+		n.parent=this.currentNode;
+		this.currentNode.children.add(n);
+	}
+	
+	/*
+	 * Push the current node one level down, under a new node.
+	 */
+	public void wrapCurrentNode() {
+		Node old = this.currentNode;
+		Node n = new Node();
+		n.parent = old.parent;
+		n.parent.children.set(n.parent.children.lastIndexOf(old), n);
+		old.parent = n;
+		n.children.add(old);
+		this.currentNode = n;
+	}
+	
+	/*
+	 * Get the value of the current node if it's an <id>
+	 */
+	public int getCurrentIntVal() {
+		return this.currentNode.idVal;
+	}
+	
+	/*
+	 * Set the value of the current node if it's an <id>
+	 */
+	public void setCurrentIntVal(int x) {
+		this.currentNode.idVal=x;
+	}
+	
+	/*
+	 * Get the name of the current node if it's an <id>
+	 */
+	public String getCurrentIdName() {
+		return this.currentNode.idName;
+	}
+	
+	/*
+	 * Get the name of the current node if it's an <id>
+	 */
+	public void setCurrentIdName(String x) {
+		this.currentNode.idName = x;
+	}
+
+	/*
+	 * Get the symbol of the current node if it's an <id>
+	 */
+	public int getCurrentSymbol() {
+		return this.currentNode.symbol;
+	}
+	
+	/*
+	 * Set the symbol of the current node if it's an <id>
+	 */
+	public void setCurrentSymbol(int s) {
+		this.currentNode.symbol = s;
+	}
+	
+	/*
+	 * Get the operator in front of the current node, for SUM operands.
+	 */
+	public int getCurrentOperator() {
+		return this.currentNode.idVal;
+	}
+	
+	/*
+	 * Set the operator in front of the current node, for SUM operands.
+	 */
+	public void setCurrentOperator(int op) {
+		this.currentNode.idVal = op;
+	}
+
+	public void setNT(NonTerminalKind nt) {
+		this.currentNode.nt=nt;
+	}
+
+	public void setAltNo(int i) {
+		this.currentNode.alt=i;
+	}
+	
+	
+}
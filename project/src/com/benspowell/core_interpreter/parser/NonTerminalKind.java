@@ -4,7 +4,7 @@ package com.benspowell.core_interpreter.parser;
  * Parse Tree Node Kinds enumerator.
  * @author Benjamin S. Powell
  */
-enum NonTerminalKind {
+public enum NonTerminalKind {
 
     PROG,
     DECL_SEQ,
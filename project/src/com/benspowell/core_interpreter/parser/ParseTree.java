@@ -1,7 +1,8 @@
 package com.benspowell.core_interpreter.parser;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.benspowell.core_interpreter.tokenizer.*;
 
@@ -9,148 +10,211 @@ import com.benspowell.core_interpreter.tokenizer.*;
  * Parse Tree Class. Creates an abstract data structure of ParseTree, which 
  * can be built and navigated by the Parser.
  * 
+ * The tree is built and navigated through a single cursor, the current
+ * node. Most nodes have up to three children, the left, middle and right
+ * branches; sequence and list nodes built with alternative LIST have any
+ * number, reached with childCount and goDownBranch. How the nodes are
+ * stored is up to the backend: LinkedParseTree keeps one object per node,
+ * FlatParseTree keeps parallel primitive arrays.
+ * 
  * @author Benjamin S. Powell
  */
-public class ParseTree {
-	private Node root;
-	private Node currentNode;
-	
-	public class Node {
-		public Node() {
-			this.children = new ArrayList <Node>();
-			
-		}
-		
-		private Node parent;
-		private List<Node> children;
-		
-		private NonTerminalKind nt;
-        private int alt;
-        
-        //ONLY FOR <id>'S
-        private int idVal;
-        private String idName;
-    }
-	
-	/*
-	 * Constructor for the ParseTree class.
-	 */
-	public ParseTree() {
-		Node n = new Node();
-		n.parent=null;
-		
-		this.root=n;
-		this.currentNode=this.root;
-	}
+public abstract class ParseTree {
 	
-	public void goAllTheWayBackUp() {
-		this.currentNode=this.root;
-	}
+	/**
+	 * Alternative number of a <stmt seq>, <decl seq> or <id list> node
+	 * whose elements are all its direct children, rather than a left child
+	 * followed by a nested sequence.
+	 */
+	public static final int LIST = 3;
+	
+	/**
+	 * Alternative number of an n-ary <exp> node: a sum of any number of
+	 * operands, each an <op>, or a <trm> with alternative PRODUCT. Every
+	 * operand after the first carries the operator in front of it.
+	 */
+	public static final int SUM = 4;
+	
+	/**
+	 * Alternative number of an n-ary <trm> node: the product of its
+	 * children, which are all <op>s.
+	 */
+	public static final int PRODUCT = 3;
+	
+	/**
+	 * Operators carried by the operands of a SUM node. They are the
+	 * alternative numbers of the binary <exp> node they stand for.
+	 */
+	public static final int PLUS = 2;
+	public static final int MINUS = 3;
+	
+	/**
+	 * Alternative number of a <no> node whose value is too large for an
+	 * int. Its value is getCurrentBigVal().
+	 */
+	public static final int BIG = 2;
+	
+	// The identifiers that <id> nodes refer to.
+	private SymbolTable symbols;
+	
+	// The values of BIG <no> nodes, by node id.
+	private Map<Integer,BigInteger> bigValues;
+	
+	/*
+	 * Move the cursor back to the root.
+	 */
+	public abstract void goAllTheWayBackUp();
 	
 	/*
 	 * Get the non-terminal at the current node.
 	 */
-	public NonTerminalKind currentNTNo() {
-		return this.currentNode.nt;
-	}
+	public abstract NonTerminalKind currentNTNo();
+	
+	/*
+	 * A number for the current node, different from every other node's in
+	 * the tree, for keeping information about it.
+	 */
+	public abstract int currentNodeId();
 	
 	/*
 	 * Get the alternative number used at the current node.
 	 */
-	public int currentAlternative() {
-		return this.currentNode.alt;
-	}
+	public abstract int currentAlternative();
 	
 	/*
 	 * Move the cursor to the first child.
 	 */
-	public void goDownLeftBranch() {
-		this.currentNode=this.currentNode.children.get(0);
-	}
+	public abstract void goDownLeftBranch();
 	
 	/*
 	 * Create a left child of the current node.
 	 */
-	public void createLeftBranch() {
-		Node n = new Node();
-		n.parent=this.currentNode;
-		this.currentNode.children.add(0,n);
-	}
+	public abstract void createLeftBranch();
 	
 	/*
-	 * Move the cursor to the second child.
+	 * Move the cursor to the third child.
 	 */
-	public void goDownRightBranch() {
-		this.currentNode=this.currentNode.children.get(2);
-	}
+	public abstract void goDownRightBranch();
 	
 	/*
-	 * Create a left child of the current node.
+	 * Create a right child of the current node.
 	 */
-	public void createRightBranch() {
-		Node n = new Node();
-		n.parent=this.currentNode;
-		this.currentNode.children.add(2,n);
-	}
+	public abstract void createRightBranch();
 	
 	/*
-	 * Move the cursor to the third child.
+	 * Move the cursor to the second child.
 	 */
-	public void goDownMiddleBranch() {
-		this.currentNode=this.currentNode.children.get(1);
-	}
+	public abstract void goDownMiddleBranch();
 	
 	/*
-	 * Create a left child of the current node.
+	 * Create a middle child of the current node.
 	 */
-	public void createMiddleBranch() {
-		Node n = new Node();
-		n.parent=this.currentNode;
-		this.currentNode.children.add(1,n);
-	} 
+	public abstract void createMiddleBranch();
 	
 	/*
 	 * Move the cursor to the parent node.
 	 */
-	public void goUp() {
-		this.currentNode=this.currentNode.parent;
-	}
+	public abstract void goUp();
 	
 	/*
-	 * Get the value of the current node if it's an <id>
+	 * Get the number of children of the current node.
 	 */
-	public int getCurrentIntVal() {
-		return this.currentNode.idVal;
-	}
+	public abstract int childCount();
 	
 	/*
-	 * Set the value of the current node if it's an <id>
+	 * Move the cursor to child number i (counting from 0).
 	 */
-	public void setCurrentIntVal(int x) {
-		this.currentNode.idVal=x;
-	}
+	public abstract void goDownBranch(int i);
 	
 	/*
-	 * Get the name of the current node if it's an <id>
+	 * Create a child of the current node after all its other children.
 	 */
-	public String getCurrentIdName() {
-		return this.currentNode.idName;
-	}
+	public abstract void createNextBranch();
+	
+	/*
+	 * Replace the current node, in its parent, by a new node whose only
+	 * child is the current node. The cursor moves to the new node.
+	 */
+	public abstract void wrapCurrentNode();
+	
+	/*
+	 * Get the value of the current node if it's a <no>
+	 */
+	public abstract int getCurrentIntVal();
+	
+	/*
+	 * Set the value of the current node if it's a <no>
+	 */
+	public abstract void setCurrentIntVal(int x);
 	
 	/*
 	 * Get the name of the current node if it's an <id>
 	 */
-	public void setCurrentIdName(String x) {
-		this.currentNode.idName = x;
-	}
-
-	public void setNT(NonTerminalKind nt) {
-		this.currentNode.nt=nt;
+	public abstract String getCurrentIdName();
+	
+	/*
+	 * Set the name of the current node if it's an <id>
+	 */
+	public abstract void setCurrentIdName(String x);
+	
+	/*
+	 * Get the symbol of the current node if it's an <id>
+	 */
+	public abstract int getCurrentSymbol();
+	
+	/*
+	 * Set the symbol of the current node if it's an <id>
+	 */
+	public abstract void setCurrentSymbol(int s);
+	
+	/*
+	 * Get the operator in front of the current node if it's an operand of
+	 * a SUM node: PLUS or MINUS (or 0, for the first operand).
+	 */
+	public abstract int getCurrentOperator();
+	
+	/*
+	 * Set the operator in front of the current node if it's an operand of
+	 * a SUM node.
+	 */
+	public abstract void setCurrentOperator(int op);
+	
+	/*
+	 * Set the non-terminal at the current node.
+	 */
+	public abstract void setNT(NonTerminalKind nt);
+	
+	/*
+	 * Set the alternative number used at the current node.
+	 */
+	public abstract void setAltNo(int i);
+	
+	/*
+	 * Get the value of the current node if it's a BIG <no>
+	 */
+	public BigInteger getCurrentBigVal() {
+		return bigValues == null ? null : bigValues.get(currentNodeId());
 	}
-
-	public void setAltNo(int i) {
-		this.currentNode.alt=i;
+	
+	/*
+	 * Set the value of the current node if it's a BIG <no>
+	 */
+	public void setCurrentBigVal(BigInteger x) {
+		if (bigValues == null) bigValues = new HashMap<Integer,BigInteger>();
+		bigValues.put(currentNodeId(), x);
 	}
 	
+	/*
+	 * Get the table of identifiers that <id> symbols refer to.
+	 */
+	public SymbolTable getSymbolTable() {
+		return this.symbols;
+	}
 	
+	/*
+	 * Set the table of identifiers that <id> symbols refer to.
+	 */
+	public void setSymbolTable(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
 }
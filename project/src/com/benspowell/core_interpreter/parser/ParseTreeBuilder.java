@@ -0,0 +1,550 @@
+package com.benspowell.core_interpreter.parser;
+
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.tokenizer.SymbolTable;
+
+/**
+ * Builds the ParseTree of a program from its AST, the other way round from
+ * the AstBuilder, so that an optimized program can run on the engines that
+ * walk a ParseTree. The tree is the one the Parser would build from the
+ * program as the AstPrinter prints it, in the same shapes: nested or LIST
+ * sequences, and binary or SUM/PRODUCT expressions. A negative constant,
+ * which the grammar can't write, becomes (0 - v), and the smallest int
+ * ((0 - 2147483647) - 1).
+ *
+ * Names are interned into a new SymbolTable in the order they are printed,
+ * as lexing the printed program would.
+ *
+ * @author Benjamin S. Powell
+ */
+public class ParseTreeBuilder {
+
+	private final ParseTree p;
+
+	private final SymbolTable symbols;
+
+	private final boolean iterative;
+
+	private final boolean nary;
+
+	private ParseTreeBuilder(ParseTree p, boolean iterative, boolean nary) {
+		this.p = p;
+		this.symbols = new SymbolTable();
+		this.iterative = iterative;
+		this.nary = nary;
+	}
+
+	/**
+	 * Build the ParseTree of a program into emptyTree, which may be any
+	 * ParseTree backend, with sequences and expressions in the shapes the
+	 * Parser's setIterativeSequences and setNaryExpressions would choose.
+	 * Returns the tree, with its cursor at the root.
+	 */
+	public static ParseTree build(Program program, ParseTree emptyTree, boolean iterativeSequences,
+			boolean naryExpressions) {
+		ParseTreeBuilder builder = new ParseTreeBuilder(emptyTree, iterativeSequences, naryExpressions);
+		builder.buildProgram(program);
+		emptyTree.setSymbolTable(builder.symbols);
+		emptyTree.goAllTheWayBackUp();
+		return emptyTree;
+	}
+
+	/**
+	 * Build the program at the root.
+	 */
+	private void buildProgram(Program program) {
+		p.setNT(NonTerminalKind.PROG);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.createMiddleBranch();
+
+		p.goDownLeftBranch();
+		buildDeclSeq(program.getDeclarations());
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		buildStmtSeq(program.getBody());
+		p.goUp();
+	}
+
+	/**
+	 * Build a declaration sequence.
+	 */
+	private void buildDeclSeq(List<Decl> declarations) {
+		if (iterative) {
+			p.setNT(NonTerminalKind.DECL_SEQ);
+			p.setAltNo(ParseTree.LIST);
+			for (Decl d : declarations) {
+				p.createNextBranch();
+				p.goDownBranch(p.childCount() - 1);
+				buildDecl(d);
+				p.goUp();
+			}
+			return;
+		}
+
+		// Build the chain of nested sequences with a loop, then climb back.
+		int n = declarations.size();
+		for (int i = 0; i < n; i++) {
+			p.setNT(NonTerminalKind.DECL_SEQ);
+			p.setAltNo(i < n - 1 ? 2 : 1);
+
+			p.createLeftBranch();
+			p.goDownLeftBranch();
+			buildDecl(declarations.get(i));
+			p.goUp();
+
+			if (i < n - 1) {
+				p.createMiddleBranch();
+				p.goDownMiddleBranch();
+			}
+		}
+		for (int depth = n - 1; depth > 0; depth--) p.goUp();
+	}
+
+	/**
+	 * Build a statement sequence.
+	 */
+	private void buildStmtSeq(List<Stmt> stmts) {
+		if (iterative) {
+			p.setNT(NonTerminalKind.STMT_SEQ);
+			p.setAltNo(ParseTree.LIST);
+			for (Stmt s : stmts) {
+				p.createNextBranch();
+				p.goDownBranch(p.childCount() - 1);
+				buildStmt(s);
+				p.goUp();
+			}
+			return;
+		}
+
+		// Build the chain of nested sequences with a loop, then climb back.
+		int n = stmts.size();
+		for (int i = 0; i < n; i++) {
+			p.setNT(NonTerminalKind.STMT_SEQ);
+			p.setAltNo(i < n - 1 ? 2 : 1);
+
+			p.createLeftBranch();
+			p.goDownLeftBranch();
+			buildStmt(stmts.get(i));
+			p.goUp();
+
+			if (i < n - 1) {
+				p.createMiddleBranch();
+				p.goDownMiddleBranch();
+			}
+		}
+		for (int depth = n - 1; depth > 0; depth--) p.goUp();
+	}
+
+	/**
+	 * Build a declaration.
+	 */
+	private void buildDecl(Decl d) {
+		p.setNT(NonTerminalKind.DECL);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.goDownLeftBranch();
+		buildIdList(d.getIds());
+		p.goUp();
+	}
+
+	/**
+	 * Build an ID list.
+	 */
+	private void buildIdList(List<Var> ids) {
+		if (iterative) {
+			p.setNT(NonTerminalKind.ID_LIST);
+			p.setAltNo(ParseTree.LIST);
+			for (Var v : ids) {
+				p.createNextBranch();
+				p.goDownBranch(p.childCount() - 1);
+				buildId(v);
+				p.goUp();
+			}
+			return;
+		}
+
+		// Build the chain of nested lists with a loop, then climb back.
+		int n = ids.size();
+		for (int i = 0; i < n; i++) {
+			p.setNT(NonTerminalKind.ID_LIST);
+			p.setAltNo(i < n - 1 ? 2 : 1);
+
+			p.createLeftBranch();
+			p.goDownLeftBranch();
+			buildId(ids.get(i));
+			p.goUp();
+
+			if (i < n - 1) {
+				p.createMiddleBranch();
+				p.goDownMiddleBranch();
+			}
+		}
+		for (int depth = n - 1; depth > 0; depth--) p.goUp();
+	}
+
+	/**
+	 * Build a statement.
+	 */
+	private void buildStmt(Stmt s) {
+		p.setNT(NonTerminalKind.STMT);
+
+		p.createLeftBranch();
+		p.goDownLeftBranch();
+		if (s instanceof Assign) {
+			buildAss((Assign) s);
+			p.goUp();
+			p.setAltNo(1);
+		}
+		else if (s instanceof If) {
+			buildIf((If) s);
+			p.goUp();
+			p.setAltNo(2);
+		}
+		else if (s instanceof While) {
+			buildLoop((While) s);
+			p.goUp();
+			p.setAltNo(3);
+		}
+		else if (s instanceof Read) {
+			buildIds(NonTerminalKind.IN, ((Read) s).getIds());
+			p.goUp();
+			p.setAltNo(4);
+		}
+		else {
+			buildIds(NonTerminalKind.OUT, ((Write) s).getIds());
+			p.goUp();
+			p.setAltNo(5);
+		}
+	}
+
+	/**
+	 * Build an assignment.
+	 */
+	private void buildAss(Assign s) {
+		p.setNT(NonTerminalKind.ASS);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.createMiddleBranch();
+
+		p.goDownLeftBranch();
+		buildId(s.getTarget());
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		buildExp(s.getValue());
+		p.goUp();
+	}
+
+	/**
+	 * Build an if statement.
+	 */
+	private void buildIf(If s) {
+		p.setNT(NonTerminalKind.IF);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.createMiddleBranch();
+
+		p.goDownLeftBranch();
+		buildCond(s.getCondition());
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		buildStmtSeq(s.getThenBranch());
+		p.goUp();
+
+		if (s.getElseBranch() != null) {
+			p.setAltNo(2);
+
+			p.createRightBranch();
+			p.goDownRightBranch();
+			buildStmtSeq(s.getElseBranch());
+			p.goUp();
+		}
+	}
+
+	/**
+	 * Build a loop.
+	 */
+	private void buildLoop(While s) {
+		p.setNT(NonTerminalKind.LOOP);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.createMiddleBranch();
+
+		p.goDownLeftBranch();
+		buildCond(s.getCondition());
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		buildStmtSeq(s.getBody());
+		p.goUp();
+	}
+
+	/**
+	 * Build an input or output statement.
+	 */
+	private void buildIds(NonTerminalKind nt, List<Var> ids) {
+		p.setNT(nt);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.goDownLeftBranch();
+		buildIdList(ids);
+		p.goUp();
+	}
+
+	/**
+	 * Build a condition.
+	 */
+	private void buildCond(Cond c) {
+		p.setNT(NonTerminalKind.COND);
+
+		p.createLeftBranch();
+		if (c instanceof Compare) {
+			p.setAltNo(1);
+			p.goDownLeftBranch();
+			buildComp((Compare) c);
+			p.goUp();
+		}
+		else if (c instanceof Not) {
+			p.setAltNo(2);
+			p.goDownLeftBranch();
+			buildCond(((Not) c).getOperand());
+			p.goUp();
+		}
+		else {
+			boolean and = c instanceof And;
+			p.goDownLeftBranch();
+			buildCond(and ? ((And) c).getLeft() : ((Or) c).getLeft());
+			p.goUp();
+
+			p.setAltNo(and ? 3 : 4);
+
+			p.createMiddleBranch();
+			p.goDownMiddleBranch();
+			buildCond(and ? ((And) c).getRight() : ((Or) c).getRight());
+			p.goUp();
+		}
+	}
+
+	/**
+	 * Build a comparison. Either side that is a BinOp is printed in
+	 * parentheses, which buildOp gives it.
+	 */
+	private void buildComp(Compare c) {
+		p.setNT(NonTerminalKind.COMP);
+		p.setAltNo(1);
+
+		p.createLeftBranch();
+		p.createMiddleBranch();
+		p.createRightBranch();
+
+		p.goDownLeftBranch();
+		buildOp(c.getLeft());
+		p.goUp();
+
+		p.goDownMiddleBranch();
+		p.setNT(NonTerminalKind.COMP_OP);
+		p.setAltNo(c.getOperator().ordinal() + 1);
+		p.goUp();
+
+		p.goDownRightBranch();
+		buildOp(c.getRight());
+		p.goUp();
+	}
+
+	/**
+	 * Build an expression. The right side of + and - is never printed in
+	 * parentheses, so a chain of them is one <exp> per operand; the left
+	 * side is, if it is a sum itself, which buildTrm gives it.
+	 */
+	private void buildExp(Exp e) {
+		if (nary) {
+			buildNaryExp(e);
+			return;
+		}
+
+		// Build the chain of sums with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.setNT(NonTerminalKind.EXP);
+
+			p.createLeftBranch();
+			p.goDownLeftBranch();
+			if (!isSum(e)) {
+				buildTrm(e);
+				p.goUp();
+				p.setAltNo(1);
+				break;
+			}
+			BinOp b = (BinOp) e;
+			buildTrm(b.getLeft());
+			p.goUp();
+
+			p.setAltNo(b.getOperator() == ArithmeticOperator.PLUS ? 2 : 3);
+
+			p.createMiddleBranch();
+			p.goDownMiddleBranch();
+			e = b.getRight();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+	}
+
+	/**
+	 * Build a term. The left side of * is printed in parentheses if it is
+	 * a BinOp, and the right side if it is a sum, which buildOp gives
+	 * them.
+	 */
+	private void buildTrm(Exp e) {
+		// Build the chain of products with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.setNT(NonTerminalKind.TRM);
+
+			p.createLeftBranch();
+			p.goDownLeftBranch();
+			if (!isProduct(e)) {
+				buildOp(e);
+				p.goUp();
+				p.setAltNo(1);
+				break;
+			}
+			BinOp b = (BinOp) e;
+			buildOp(b.getLeft());
+			p.goUp();
+
+			p.setAltNo(2);
+
+			p.createMiddleBranch();
+			p.goDownMiddleBranch();
+			e = b.getRight();
+			depth++;
+		}
+		for (; depth > 0; depth--) p.goUp();
+	}
+
+	/**
+	 * Build a SUM <exp>, with an operand per <trm> of the chain of + and -.
+	 */
+	private void buildNaryExp(Exp e) {
+		p.setNT(NonTerminalKind.EXP);
+		p.setAltNo(ParseTree.SUM);
+
+		int operator = 0;
+		while (true) {
+			p.createNextBranch();
+			p.goDownBranch(p.childCount() - 1);
+			buildNaryTrm(isSum(e) ? ((BinOp) e).getLeft() : e);
+			p.setCurrentOperator(operator);
+			p.goUp();
+
+			if (!isSum(e)) break;
+			operator = ((BinOp) e).getOperator() == ArithmeticOperator.PLUS ? ParseTree.PLUS : ParseTree.MINUS;
+			e = ((BinOp) e).getRight();
+		}
+	}
+
+	/**
+	 * Build an operand of a SUM: an <op>, wrapped in a PRODUCT <trm> if it
+	 * is a product, as the Parser does.
+	 */
+	private void buildNaryTrm(Exp e) {
+		if (!isProduct(e)) {
+			buildOp(e);
+			return;
+		}
+		buildOp(((BinOp) e).getLeft());
+		e = ((BinOp) e).getRight();
+
+		p.wrapCurrentNode();
+		p.setNT(NonTerminalKind.TRM);
+		p.setAltNo(ParseTree.PRODUCT);
+
+		while (true) {
+			p.createNextBranch();
+			p.goDownBranch(p.childCount() - 1);
+			buildOp(isProduct(e) ? ((BinOp) e).getLeft() : e);
+			p.goUp();
+
+			if (!isProduct(e)) break;
+			e = ((BinOp) e).getRight();
+		}
+	}
+
+	/**
+	 * Build an operator: a constant, a variable, or an expression in
+	 * parentheses, which a Group or any BinOp is.
+	 */
+	private void buildOp(Exp e) {
+		p.setNT(NonTerminalKind.OP);
+
+		p.createLeftBranch();
+		if (e instanceof Num && ((Num) e).getValue() >= 0) {
+			p.setAltNo(1);
+			p.goDownLeftBranch();
+			buildNo(((Num) e).getValue());
+		}
+		else if (e instanceof Var) {
+			p.setAltNo(2);
+			p.goDownLeftBranch();
+			buildId((Var) e);
+		}
+		else {
+			p.setAltNo(3);
+			p.goDownLeftBranch();
+			if (e instanceof Num) buildExp(negative(((Num) e).getValue()));
+			else if (e instanceof Group) buildExp(((Group) e).getContents());
+			else buildExp(e);
+		}
+		p.goUp();
+	}
+
+	/**
+	 * Build an ID.
+	 */
+	private void buildId(Var v) {
+		p.setNT(NonTerminalKind.ID);
+
+		int symbol = symbols.intern(v.getName());
+		p.setCurrentSymbol(symbol);
+		p.setCurrentIdName(symbols.name(symbol));
+	}
+
+	/**
+	 * Build a non-negative integer constant.
+	 */
+	private void buildNo(int value) {
+		p.setNT(NonTerminalKind.NO);
+		p.setCurrentIntVal(value);
+	}
+
+	/*
+	 * The expression, inside the parentheses, that a negative constant is
+	 * printed as.
+	 */
+	private static Exp negative(int value) {
+		if (value == Integer.MIN_VALUE) {
+			Exp max = new Group(new BinOp(ArithmeticOperator.MINUS, new Num(0), new Num(Integer.MAX_VALUE)));
+			return new BinOp(ArithmeticOperator.MINUS, max, new Num(1));
+		}
+		return new BinOp(ArithmeticOperator.MINUS, new Num(0), new Num(-value));
+	}
+
+	private static boolean isSum(Exp e) {
+		return e instanceof BinOp && ((BinOp) e).getOperator() != ArithmeticOperator.TIMES;
+	}
+
+	private static boolean isProduct(Exp e) {
+		return e instanceof BinOp && ((BinOp) e).getOperator() == ArithmeticOperator.TIMES;
+	}
+}
@@ -1,6 +1,9 @@
 package com.benspowell.core_interpreter.parser;
+import java.math.BigInteger;
+
 import com.benspowell.core_interpreter.tokenizer.*;
 import com.benspowell.core_interpreter.error.*;
+import com.benspowell.core_interpreter.ast.Program;
 
 /**
  * Parser for the CORE Interpreter Project.
@@ -12,17 +15,89 @@ import com.benspowell.core_interpreter.error.*;
 public class Parser {
 	
 
-	// The persistent Tokenizer used throughout the class.
-	Tokenizer t;
+	// The pre-lexed program used throughout the class.
+	TokenStream ts;
+	
+	// Index of the front token in ts.
+	int pos;
 	
 	// The ParseTree used throughout the class.
 	ParseTree p;
 	
+	// Whether sequences and lists are built as ParseTree.LIST nodes.
+	boolean iterative;
+	
+	// Whether expressions are built as ParseTree.SUM and PRODUCT nodes.
+	boolean nary;
+	
+	// Whether constants too large for an int are parsed as ParseTree.BIG
+	// <no> nodes.
+	boolean big;
+	
 	public Parser(Tokenizer t) {
+		this(TokenStream.lex(t));
+	}
+	
+	public Parser(TokenStream ts) {
+		this(ts, new LinkedParseTree());
+	}
+	
+	/**
+	 * Create a Parser that builds the program into emptyTree, which may be
+	 * any ParseTree backend.
+	 */
+	public Parser(TokenStream ts, ParseTree emptyTree) {
 		
 		//initialize class variables
-		this.t = t;
-		this.p = new ParseTree();
+		this.ts = ts;
+		this.pos = 0;
+		this.p = emptyTree;
+		this.p.setSymbolTable(ts.symbols());
+		this.iterative = false;
+		this.nary = false;
+		this.big = false;
+	}
+	
+	/**
+	 * Choose whether <decl seq>, <stmt seq> and <id list> are parsed with
+	 * loops into ParseTree.LIST nodes, so that neither the parser nor
+	 * anything walking the tree recurses once per element. Off by default.
+	 */
+	public void setIterativeSequences(boolean iterative) {
+		this.iterative = iterative;
+	}
+	
+	/**
+	 * Choose whether <exp>s are parsed by precedence climbing into n-ary
+	 * ParseTree.SUM and ParseTree.PRODUCT nodes, instead of one right-nested
+	 * <exp> or <trm> per operand. Off by default.
+	 */
+	public void setNaryExpressions(boolean nary) {
+		this.nary = nary;
+	}
+	
+	/**
+	 * Choose whether integer constants too large for an int are parsed into
+	 * ParseTree.BIG <no> nodes, holding their BigInteger value, instead of
+	 * being rejected. Off by default, since only exact arithmetic can use
+	 * them.
+	 */
+	public void setBigConstants(boolean big) {
+		this.big = big;
+	}
+	
+	/**
+	 * Kind of the front token.
+	 */
+	private TokenKind kind() {
+		return ts.kind(pos);
+	}
+	
+	/**
+	 * Skip the front token. The final EOF or ERROR token is never skipped.
+	 */
+	private void skip() {
+		if (pos < ts.size() - 1) pos++;
 	}
 	
 	/**
@@ -41,8 +116,8 @@ public class Parser {
 		p.setAltNo(1);
 		
 		//check for 'program'
-		if (t.getTokenKind()!=TokenKind.PROGRAM) throw new ParseException("'program'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.PROGRAM) throw new ParseException("'program'", kind());
+		skip();
 		
 		//create branches
 		p.createLeftBranch();
@@ -54,8 +129,8 @@ public class Parser {
 		p.goUp();
 		
 		//check for 'begin'
-		if (t.getTokenKind()!=TokenKind.BEGIN) throw new ParseException("'begin'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.BEGIN) throw new ParseException("'begin'", kind());
+		skip();
 		
 		//parse stmt seq, add to tree
 		p.goDownMiddleBranch();
@@ -63,26 +138,45 @@ public class Parser {
 		p.goUp();
 		
 		//check for 'end'
-		if (t.getTokenKind()!=TokenKind.END) throw new ParseException("'end'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.END) throw new ParseException("'end'", kind());
+		skip();
 		
 		//return the tree
 		return p;
 	}
 	
+	/**
+	 * Parse a CORE program into its typed, immutable AST, which has no
+	 * cursor and can be shared between threads.
+	 */
+	public Program coreProgramAst() throws ParseException{
+		return AstBuilder.build(coreProgram());
+	}
+	
 	/**
 	 * Parse a declaration sequence.
 	 */
 	private void parseDeclSeq()  throws ParseException{
 		p.setNT(NonTerminalKind.DECL_SEQ);
 		
+		if (iterative) {
+			p.setAltNo(ParseTree.LIST);
+			do {
+				p.createNextBranch();
+				p.goDownBranch(p.childCount() - 1);
+				parseDecl();
+				p.goUp();
+			} while (kind()!=TokenKind.BEGIN);
+			return;
+		}
+		
 		p.createLeftBranch();
 		
 		p.goDownLeftBranch();
 		parseDecl();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.BEGIN) {
+		if (kind()!=TokenKind.BEGIN) {
 			p.setAltNo(2);
 			
 			p.createMiddleBranch();
@@ -103,6 +197,17 @@ public class Parser {
 	private void parseStmtSeq() throws ParseException{
 		p.setNT(NonTerminalKind.STMT_SEQ);
 		
+		if (iterative) {
+			p.setAltNo(ParseTree.LIST);
+			do {
+				p.createNextBranch();
+				p.goDownBranch(p.childCount() - 1);
+				parseStmt();
+				p.goUp();
+			} while ((kind() != TokenKind.END) && (kind() != TokenKind.ELSE));
+			return;
+		}
+		
 		//assume 1st alternative, will update it later if necessary.
 		p.setAltNo(1);
 		
@@ -112,7 +217,7 @@ public class Parser {
 		parseStmt();
 		p.goUp();
 		
-		if ((t.getTokenKind() != TokenKind.END) && (t.getTokenKind() != TokenKind.ELSE)) {
+		if ((kind() != TokenKind.END) && (kind() != TokenKind.ELSE)) {
 			p.setAltNo(2);
 			
 			p.createMiddleBranch();
@@ -130,8 +235,8 @@ public class Parser {
 		p.setNT(NonTerminalKind.DECL);
 		p.setAltNo(1);
 		
-		if (t.getTokenKind()!=TokenKind.INT) throw new ParseException("'int'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.INT) throw new ParseException("'int'", kind());
+		skip();
 		
 		p.createLeftBranch();
 		
@@ -139,8 +244,8 @@ public class Parser {
 		parseIdList();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.SEMICOLON) throw new ParseException("';'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.SEMICOLON) throw new ParseException("';'", kind());
+		skip();
 	}
 	
 	/**
@@ -148,6 +253,20 @@ public class Parser {
 	 */
 	private void parseIdList() throws ParseException{
 		p.setNT(NonTerminalKind.ID_LIST);
+		
+		if (iterative) {
+			p.setAltNo(ParseTree.LIST);
+			while (true) {
+				p.createNextBranch();
+				p.goDownBranch(p.childCount() - 1);
+				parseId();
+				p.goUp();
+				
+				if (kind()!=TokenKind.COMMA) break;
+				skip();
+			}
+			return;
+		}
 		p.setAltNo(1);
 		
 		p.createLeftBranch();
@@ -156,8 +275,8 @@ public class Parser {
 		parseId();
 		p.goUp();
 		
-		if (t.getTokenKind()==TokenKind.COMMA) {
-			t.skipToken();
+		if (kind()==TokenKind.COMMA) {
+			skip();
 			p.setAltNo(2);
 			
 			p.createMiddleBranch();
@@ -176,7 +295,7 @@ public class Parser {
 		
 		p.createLeftBranch();
 
-		switch (t.getTokenKind()) {
+		switch (kind()) {
 		case IDENTIFIER:
 			p.setAltNo(1);
 			
@@ -208,7 +327,7 @@ public class Parser {
 			parseOut();
 			break;
 		default:
-			throw new ParseException("<id>, 'if', 'while', 'read', 'write'", t);
+			throw new ParseException("<id>, 'if', 'while', 'read', 'write'", kind());
 		}
 		p.goUp();
 	}
@@ -228,15 +347,15 @@ public class Parser {
 		parseId();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.ASSIGNMENT_OPERATOR) throw new ParseException("'='", t);
-		t.skipToken();
+		if (kind()!=TokenKind.ASSIGNMENT_OPERATOR) throw new ParseException("'='", kind());
+		skip();
 		
 		p.goDownMiddleBranch();
 		parseExp();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.SEMICOLON) throw new ParseException("';'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.SEMICOLON) throw new ParseException("';'", kind());
+		skip();
 	}
 	
 	/**
@@ -246,8 +365,8 @@ public class Parser {
 		p.setNT(NonTerminalKind.IF);
 		p.setAltNo(1);
 		
-		if (t.getTokenKind()!=TokenKind.IF) throw new ParseException("'if'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.IF) throw new ParseException("'if'", kind());
+		skip();
 		
 		p.createLeftBranch();
 		p.createMiddleBranch();
@@ -256,15 +375,15 @@ public class Parser {
 		parseCond();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.THEN) throw new ParseException("'then'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.THEN) throw new ParseException("'then'", kind());
+		skip();
 		
 		p.goDownMiddleBranch();
 		parseStmtSeq();
 		p.goUp();
 		
-		if (t.getTokenKind()==TokenKind.ELSE) {
-			t.skipToken();
+		if (kind()==TokenKind.ELSE) {
+			skip();
 			p.setAltNo(2);
 			
 			p.createRightBranch();
@@ -274,10 +393,10 @@ public class Parser {
 			p.goUp();
 		}
 		
-		if (t.getTokenKind()!=TokenKind.END) throw new ParseException("'end'", t);
-		t.skipToken();
-		if (t.getTokenKind()!=TokenKind.SEMICOLON) throw new ParseException("';'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.END) throw new ParseException("'end'", kind());
+		skip();
+		if (kind()!=TokenKind.SEMICOLON) throw new ParseException("';'", kind());
+		skip();
 	}
 	
 	/**
@@ -290,25 +409,25 @@ public class Parser {
 		p.createLeftBranch();
 		p.createMiddleBranch();
 		
-		if (t.getTokenKind()!=TokenKind.WHILE) throw new ParseException("'while'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.WHILE) throw new ParseException("'while'", kind());
+		skip();
 		
 		p.goDownLeftBranch();
 		parseCond();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.LOOP) throw new ParseException("'loop'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.LOOP) throw new ParseException("'loop'", kind());
+		skip();
 		
 		p.goDownMiddleBranch();
 		parseStmtSeq();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.END) throw new ParseException("'end'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.END) throw new ParseException("'end'", kind());
+		skip();
 		
-		if (t.getTokenKind()!=TokenKind.SEMICOLON) throw new ParseException("';'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.SEMICOLON) throw new ParseException("';'", kind());
+		skip();
 	}
 	
 	/**
@@ -318,8 +437,8 @@ public class Parser {
 		p.setNT(NonTerminalKind.IN);
 		p.setAltNo(1);
 		
-		if (t.getTokenKind()!=TokenKind.READ) throw new ParseException("'read'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.READ) throw new ParseException("'read'", kind());
+		skip();
 		
 		p.createLeftBranch();
 		
@@ -327,8 +446,8 @@ public class Parser {
 		parseIdList();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.SEMICOLON) throw new ParseException("';'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.SEMICOLON) throw new ParseException("';'", kind());
+		skip();
 	}
 	
 	/**
@@ -338,8 +457,8 @@ public class Parser {
 		p.setNT(NonTerminalKind.OUT);
 		p.setAltNo(1);
 		
-		if (t.getTokenKind()!=TokenKind.WRITE) throw new ParseException("'write'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.WRITE) throw new ParseException("'write'", kind());
+		skip();
 		
 		p.createLeftBranch();
 		
@@ -347,8 +466,8 @@ public class Parser {
 		parseIdList();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.SEMICOLON) throw new ParseException("';'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.SEMICOLON) throw new ParseException("';'", kind());
+		skip();
 	}
 	
 	/**
@@ -361,7 +480,7 @@ public class Parser {
 		
 		
 		
-		switch (t.getTokenKind()) {
+		switch (kind()) {
 		case OPEN_PAREN:
 			p.setAltNo(1);
 			p.goDownLeftBranch();
@@ -371,26 +490,26 @@ public class Parser {
 		case BANG:
 			p.setAltNo(2);
 			p.goDownLeftBranch();
-			t.skipToken();
+			skip();
 			parseCond();
 			p.goUp();
 			break;
 		case OPEN_BRACKET:
-			t.skipToken();
+			skip();
 			p.goDownLeftBranch();
 			parseCond();
 			p.goUp();
 			
-			if (t.getTokenKind()!=TokenKind.AND_OPERATOR) {
+			if (kind()==TokenKind.AND_OPERATOR) {
 				p.setAltNo(3);
-				t.skipToken();
+				skip();
 			}
-			else if (t.getTokenKind()!=TokenKind.OR_OPERATOR) {
+			else if (kind()==TokenKind.OR_OPERATOR) {
 				p.setAltNo(4);
-				t.skipToken();
+				skip();
 			}
 			else {
-				throw new ParseException("'&&', '|'", t);
+				throw new ParseException("'&&', '|'", kind());
 			}
 			
 			p.createMiddleBranch();
@@ -399,12 +518,12 @@ public class Parser {
 			parseCond();
 			p.goUp();
 			
-			if (t.getTokenKind()!=TokenKind.CLOSE_BRACKET) throw new ParseException("']'", t);
-			t.skipToken();
+			if (kind()!=TokenKind.CLOSE_BRACKET) throw new ParseException("']'", kind());
+			skip();
 			
 			break;
 		default:
-			throw new ParseException("'(', '!', '['", t);
+			throw new ParseException("'(', '!', '['", kind());
 		}
 		
 	}
@@ -416,8 +535,8 @@ public class Parser {
 		p.setNT(NonTerminalKind.COMP);
 		p.setAltNo(1);
 		
-		if (t.getTokenKind()!=TokenKind.OPEN_PAREN) throw new ParseException("'('", t);
-		t.skipToken();
+		if (kind()!=TokenKind.OPEN_PAREN) throw new ParseException("'('", kind());
+		skip();
 		
 		p.createLeftBranch();
 		p.createMiddleBranch();
@@ -435,14 +554,19 @@ public class Parser {
 		parseOp();
 		p.goUp();
 		
-		if (t.getTokenKind()!=TokenKind.CLOSE_PAREN) throw new ParseException("')'", t);
-		t.skipToken();
+		if (kind()!=TokenKind.CLOSE_PAREN) throw new ParseException("')'", kind());
+		skip();
 	}
 	
 	/**
 	 * Parse an expression.
 	 */
 	private void parseExp() throws ParseException{
+		if (nary) {
+			parseNaryExp();
+			return;
+		}
+		
 		p.setNT(NonTerminalKind.EXP);
 		p.setAltNo(1);
 		
@@ -452,16 +576,16 @@ public class Parser {
 		parseTrm();
 		p.goUp();
 		
-		if (t.getTokenKind()==TokenKind.PLUS) {
-			t.skipToken();
+		if (kind()==TokenKind.PLUS) {
+			skip();
 			p.setAltNo(2);
 			p.createMiddleBranch();
 			p.goDownMiddleBranch();
 			parseExp();
 			p.goUp();
 		}
-		else if (t.getTokenKind()==TokenKind.MINUS) {
-			t.skipToken();
+		else if (kind()==TokenKind.MINUS) {
+			skip();
 			p.setAltNo(3);
 			p.createMiddleBranch();
 			p.goDownMiddleBranch();
@@ -484,8 +608,8 @@ public class Parser {
 		parseOp();
 		p.goUp();
 		
-		if (t.getTokenKind()==TokenKind.ASTERISK) {
-			t.skipToken();
+		if (kind()==TokenKind.ASTERISK) {
+			skip();
 			p.setAltNo(2);
 			p.createMiddleBranch();
 			p.goDownMiddleBranch();
@@ -494,6 +618,66 @@ public class Parser {
 		}
 	}
 	
+	/**
+	 * Binding power of a binary operator, or 0 if kind is not one.
+	 */
+	private static int bindingPower(TokenKind kind) {
+		switch (kind) {
+		case PLUS:
+		case MINUS:
+			return 1;
+		case ASTERISK:
+			return 2;
+		default:
+			return 0;
+		}
+	}
+	
+	/**
+	 * Parse an expression by precedence climbing, into a SUM <exp>. The
+	 * operators of the lowest binding power, + and -, are gathered here in
+	 * a loop, and each operand is parsed at the next binding power up.
+	 */
+	private void parseNaryExp() throws ParseException{
+		p.setNT(NonTerminalKind.EXP);
+		p.setAltNo(ParseTree.SUM);
+		
+		int operator = 0;
+		while (true) {
+			p.createNextBranch();
+			p.goDownBranch(p.childCount() - 1);
+			parseNaryTrm();
+			p.setCurrentOperator(operator);
+			p.goUp();
+			
+			if (bindingPower(kind()) != 1) break;
+			operator = kind()==TokenKind.PLUS ? ParseTree.PLUS : ParseTree.MINUS;
+			skip();
+		}
+	}
+	
+	/**
+	 * Parse an operand of a SUM: an <op>, which is wrapped in a PRODUCT
+	 * <trm> as soon as a '*' shows that it is the first of several factors.
+	 */
+	private void parseNaryTrm() throws ParseException{
+		parseOp();
+		
+		if (bindingPower(kind()) != 2) return;
+		
+		p.wrapCurrentNode();
+		p.setNT(NonTerminalKind.TRM);
+		p.setAltNo(ParseTree.PRODUCT);
+		
+		while (bindingPower(kind()) == 2) {
+			skip();
+			p.createNextBranch();
+			p.goDownBranch(p.childCount() - 1);
+			parseOp();
+			p.goUp();
+		}
+	}
+	
 	/**
 	 * Parse an operator.
 	 */
@@ -502,7 +686,7 @@ public class Parser {
 		
 		p.createLeftBranch();
 		
-		switch (t.getTokenKind()) {
+		switch (kind()) {
 		case INTEGER_CONSTANT:
 			p.setAltNo(1);
 			
@@ -516,18 +700,19 @@ public class Parser {
 			parseId();
 			break;
 		case OPEN_PAREN:
-			if (t.getTokenKind()!=TokenKind.OPEN_PAREN) throw new ParseException("'('", t);
-			t.skipToken();
+			p.setAltNo(3);
+			
+			skip();
 			
 			p.goDownLeftBranch();
 
 			parseExp();
 			
-			if (t.getTokenKind()!=TokenKind.CLOSE_PAREN) throw new ParseException("')'", t);
-			t.skipToken();
+			if (kind()!=TokenKind.CLOSE_PAREN) throw new ParseException("')'", kind());
+			skip();
 			break;
 		default:
-			throw new ParseException("<no>, <id>, '('", t);
+			throw new ParseException("<no>, <id>, '('", kind());
 		}
 		
 		p.goUp();
@@ -540,7 +725,7 @@ public class Parser {
 		p.setNT(NonTerminalKind.COMP_OP);
 //		p.createLeftBranch();
 		
-		switch (t.getTokenKind()) {
+		switch (kind()) {
 		case NOT_EQ_TEST:
 			p.setAltNo(1);
 			break;
@@ -560,9 +745,9 @@ public class Parser {
 			p.setAltNo(6);
 			break;
 		default:
-			throw new ParseException("'!=', '==', '<', '>', '<=', '>='", t);
+			throw new ParseException("'!=', '==', '<', '>', '<=', '>='", kind());
 		}
-		t.skipToken();
+		skip();
 	}
 	
 	/**
@@ -570,8 +755,11 @@ public class Parser {
 	 */
 	private void parseId() throws ParseException{
 		p.setNT(NonTerminalKind.ID);
-		p.setCurrentIdName(t.getTokenVal());
-		t.skipToken();
+		if (kind()!=TokenKind.IDENTIFIER) throw new ParseException("<id>", kind());
+		int symbol = ts.symbol(pos);
+		p.setCurrentSymbol(symbol);
+		p.setCurrentIdName(ts.symbols().name(symbol));
+		skip();
 	}
 	
 	/**
@@ -579,8 +767,15 @@ public class Parser {
 	 */
 	private void parseNo() throws ParseException{
 		p.setNT(NonTerminalKind.NO);
-		p.setCurrentIntVal(Integer.parseInt(t.getTokenVal()));
-		t.skipToken();
+		int value = ts.intValue(pos);
+		if (value == TokenStream.OUT_OF_RANGE) {
+			if (!big) throw new ParseException("the constant " + ts.text(pos) + " is too large for an int");
+			p.setAltNo(ParseTree.BIG);
+			p.setCurrentBigVal(new BigInteger(ts.text(pos)));
+			value = 0;
+		}
+		p.setCurrentIntVal(value);
+		skip();
 	}
 	
 }
@@ -0,0 +1,326 @@
+package com.benspowell.core_interpreter.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.Program;
+import com.benspowell.core_interpreter.benchmark.SyntheticPrograms;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.executor.Executor;
+import com.benspowell.core_interpreter.optimizer.ConstantFolder;
+import com.benspowell.core_interpreter.optimizer.CseOptimizer;
+import com.benspowell.core_interpreter.optimizer.SsaOptimizer;
+import com.benspowell.core_interpreter.printer.AstPrinter;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Regression tests for the Parser and the Printer. Each check parses a
+ * small program, then looks at the alternatives the Parser recorded, at
+ * what the Printer prints, or at what the Executor writes. Prints every
+ * failed check, and exits with status 1 if there were any.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class ParserTest {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private ParserTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			parenthesizedOps();
+			junctions();
+			printedConditions();
+			bigConstants();
+			flatTrees();
+			iterativeSequences();
+			naryExpressions();
+			asts();
+			rebuiltTrees();
+		}
+		catch (ParseException e) {
+			fail(e.getMessage());
+		}
+
+		finish("ParserTest");
+	}
+
+	/*
+	 * A parenthesized <op> is alternative 3, and evaluates to its <exp>.
+	 * (It used to keep alternative 0, so it evaluated to 0 and the Printer
+	 * lost its place in the tree.)
+	 */
+	private static void parenthesizedOps() throws ParseException {
+		String program = "program int X, Y; begin X = 2; Y = (X + 1) * 3; write Y; end";
+
+		check("(X + 1) is <op> alternative 3", shape(parse(program)).contains("OP/3"));
+		checkEquals("(X + 1) * 3 with X = 2", "Y = 9\n", execute(program, ""));
+	}
+
+	/*
+	 * '[c1 && c2]' is <cond> alternative 3 and '[c1 || c2]' alternative 4,
+	 * as the Printer and Executor read them. (They used to be swapped.)
+	 */
+	private static void junctions() throws ParseException {
+		String and = "program int X; begin X = 1; if [(X > 0) && (X > 5)] then write X; end; end";
+		String or = "program int X; begin X = 1; if [(X > 0) || (X > 5)] then write X; end; end";
+
+		check("&& is <cond> alternative 3", shape(parse(and)).contains("COND/3"));
+		check("|| is <cond> alternative 4", shape(parse(or)).contains("COND/4"));
+		checkEquals("[(1 > 0) && (1 > 5)]", "", execute(and, ""));
+		checkEquals("[(1 > 0) || (1 > 5)]", "X = 1\n", execute(or, ""));
+	}
+
+	/*
+	 * '!', '&&' and '||' print as they were written, and what's printed
+	 * parses back to the same program. (printCond used to read the
+	 * alternative of its child, so they printed as comparisons.)
+	 */
+	private static void printedConditions() throws ParseException {
+		String program = "program int X, Y; begin X = 2; Y = 9;"
+				+ " if [(X < 3) && (Y > 100)] then write X; else write Y; end;"
+				+ " if [(X > 3) || !(Y == 9)] then write X; end; end";
+
+		String printed = print(parse(program));
+		check("&& is printed", printed.contains("if [(X < 3) && (Y > 100)] then"));
+		check("|| and ! are printed", printed.contains("if [(X > 3) || !(Y == 9)] then"));
+		checkEquals("printed program reprints the same", printed, print(parse(printed)));
+	}
+
+	/*
+	 * A constant too large for an int is a parse error, unless it's asked
+	 * for. Then it has no AST, rather than one with a wrong value.
+	 */
+	private static void bigConstants() throws ParseException {
+		String program = "program int X; begin X = 99999999999999999999; write X; end";
+
+		try {
+			parse(program);
+			check("an oversized constant is a parse error", false);
+		}
+		catch (ParseException e) {
+			check("an oversized constant is a parse error", e.getMessage().contains("99999999999999999999"));
+		}
+
+		Parser parser = parser(program);
+		parser.setBigConstants(true);
+		ParseTree p = parser.coreProgram();
+		check("an oversized constant is a BIG <no>", shape(p).contains("NO/" + ParseTree.BIG));
+		check("a BIG <no> prints as written", print(p).contains("X = 99999999999999999999;"));
+		try {
+			AstBuilder.build(p);
+			check("a BIG <no> has no AST", false);
+		}
+		catch (IllegalArgumentException e) {
+			check("a BIG <no> has no AST", e.getMessage().contains("99999999999999999999"));
+		}
+	}
+
+	/*
+	 * A FlatParseTree holds the same tree as a LinkedParseTree, node for
+	 * node, in each shape the Parser builds, and prints and runs the same.
+	 */
+	private static void flatTrees() throws ParseException {
+		String[] programs = {
+			"program int X, Y; begin read X; Y = 0;"
+					+ " while (X > 0) loop Y = Y - X * 2 + (X - 1) * 3; X = X - 1; end;"
+					+ " if [!(Y == 0) || [(X < 1) && (Y >= 2)]] then write X, Y; else write Y; end; end",
+			SyntheticPrograms.generate(40, 1),
+			SyntheticPrograms.generate(40, 2),
+			SyntheticPrograms.generate(40, 3),
+		};
+		for (int i = 0; i < programs.length; i++) {
+			for (int shape = 0; shape < 4; shape++) {
+				boolean iterative = (shape & 1) != 0, nary = (shape & 2) != 0;
+				String name = "program " + i + (iterative ? ", iterative" : "") + (nary ? ", n-ary" : "");
+				ParseTree linked = build(programs[i], new LinkedParseTree(), iterative, nary);
+				ParseTree flat = build(programs[i], new FlatParseTree(), iterative, nary);
+
+				checkEquals("flat tree of " + name, dump(linked), dump(flat));
+				checkEquals("flat tree of " + name + " prints the same", print(linked), print(flat));
+				checkEquals("flat tree of " + name + " runs the same", execute(linked, "3 4"), execute(flat, "3 4"));
+			}
+		}
+	}
+
+	/*
+	 * Sequences parsed with loops are LIST nodes, but print, build into
+	 * ASTs and run just as the recursive ones do, and a program with more
+	 * statements than the recursive Parser has stack for parses and runs.
+	 */
+	private static void iterativeSequences() throws ParseException {
+		String program = "program int X; int Y, Z, W; begin read X, Y; Z = 0;"
+				+ " while (X > 0) loop Z = Z + Y; X = X - 1; write X; end;"
+				+ " if (Z > 5) then W = 1; write Z, W; else W = 2; end; write W; end";
+		ParseTree recursive = parse(program);
+		ParseTree iterative = build(program, new LinkedParseTree(), true, false);
+
+		List<String> nodes = shape(iterative);
+		check("<decl seq> is a LIST", nodes.contains("DECL_SEQ/" + ParseTree.LIST));
+		check("<stmt seq> is a LIST", nodes.contains("STMT_SEQ/" + ParseTree.LIST));
+		check("<id list> is a LIST", nodes.contains("ID_LIST/" + ParseTree.LIST));
+		checkEquals("iterative sequences print the same", print(recursive), print(iterative));
+		checkEquals("iterative sequences build the same AST", print(AstBuilder.build(recursive)),
+				print(AstBuilder.build(iterative)));
+		checkEquals("iterative sequences run the same", execute(recursive, "3 2"), execute(iterative, "3 2"));
+
+		String longProgram = "program int X; begin X = 0; " + "X = X + 1; ".repeat(100000) + "write X; end";
+		try {
+			ParseTree p = build(longProgram, new LinkedParseTree(), true, false);
+			checkEquals("100000 statements, iteratively", "X = 100000\n", execute(p, ""));
+			checkEquals("100000 statements, built into an AST", 100002, AstBuilder.build(p).getBody().size());
+		}
+		catch (StackOverflowError e) {
+			fail("100000 statements overflow the stack");
+		}
+	}
+
+	/*
+	 * <exp>s parsed by precedence climbing are SUM and PRODUCT nodes, but
+	 * keep the grammar's right-nesting, so 'X - Y + Z' is 'X - (Y + Z)',
+	 * and print, build into ASTs and run as the binary ones do.
+	 */
+	private static void naryExpressions() throws ParseException {
+		String program = "program int X, Y, Z, W; begin read X, Y, Z;"
+				+ " W = X - Y + Z; write W; W = X - Y - Z; write W;"
+				+ " W = X * Y - Z * X * 2 + (X - Z) * Y; write W; W = X; write W; end";
+		ParseTree binary = parse(program);
+		ParseTree nary = build(program, new LinkedParseTree(), false, true);
+
+		List<String> nodes = shape(nary);
+		check("a sum is a SUM", nodes.contains("EXP/" + ParseTree.SUM));
+		check("a product is a PRODUCT", nodes.contains("TRM/" + ParseTree.PRODUCT));
+		checkEquals("n-ary expressions print the same", print(binary), print(nary));
+		checkEquals("n-ary expressions build the same AST", print(AstBuilder.build(binary)),
+				print(AstBuilder.build(nary)));
+		checkEquals("X - Y + Z is X - (Y + Z)", "W = 5\nW = 9\nW = -34\nW = 10\n", execute(nary, "10 3 2"));
+		checkEquals("n-ary expressions run the same", execute(binary, "10 3 2"), execute(nary, "10 3 2"));
+	}
+
+	/*
+	 * The AstPrinter prints a program's AST exactly as the Printer prints
+	 * the tree it was built from, in each shape the Parser builds.
+	 */
+	private static void asts() throws ParseException {
+		String[] programs = {
+			"program int X, Y; begin read X; Y = (X + 1) * (3 - X);"
+					+ " if [!(Y == 0) || [(X < 1) && (Y >= 2)]] then write X, Y; end;"
+					+ " while (X > 0) loop X = X - 1; end; end",
+			SyntheticPrograms.generate(40, 4),
+		};
+		for (int i = 0; i < programs.length; i++) {
+			for (int shape = 0; shape < 4; shape++) {
+				boolean iterative = (shape & 1) != 0, nary = (shape & 2) != 0;
+				ParseTree p = build(programs[i], new LinkedParseTree(), iterative, nary);
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				new AstPrinter(new PrintStream(bytes, true)).printCoreProgram(AstBuilder.build(p));
+				checkEquals("AST of program " + i + (iterative ? ", iterative" : "") + (nary ? ", n-ary" : "")
+						+ " prints the same", print(p), bytes.toString());
+			}
+		}
+	}
+
+	/*
+	 * The ParseTreeBuilder builds an optimized program's AST into the tree
+	 * the Parser would build from the program as the AstPrinter prints it,
+	 * node for node, in each kind of tree and shape, negative constants
+	 * and all.
+	 */
+	private static void rebuiltTrees() throws ParseException {
+		Program[] programs = {
+			new ConstantFolder().fold(parseAst("program int X, Y, Z; begin read X; Y = 3 - 8;"
+					+ " Z = (0 - 2147483647) - 1; while (X > Y) loop X = X - 1 * 2; write X, Z; end; end")),
+			new SsaOptimizer().optimize(parseAst(SyntheticPrograms.generate(40, 6))),
+			new CseOptimizer().optimize(parseAst(SyntheticPrograms.loop(10))),
+		};
+		for (int i = 0; i < programs.length; i++) {
+			String printed = print(programs[i]);
+			for (int shape = 0; shape < 8; shape++) {
+				boolean flat = (shape & 1) != 0, iterative = (shape & 2) != 0, nary = (shape & 4) != 0;
+				ParseTree parsed = build(printed, flat ? new FlatParseTree() : new LinkedParseTree(), iterative, nary);
+				ParseTree built = ParseTreeBuilder.build(programs[i], flat ? new FlatParseTree() : new LinkedParseTree(),
+						iterative, nary);
+				checkEquals("optimized program " + i + " rebuilt" + (flat ? ", flat" : "") + (iterative ? ", iterative" : "")
+						+ (nary ? ", n-ary" : ""), dump(parsed), dump(built));
+			}
+		}
+	}
+
+	private static ParseTree build(String program, ParseTree emptyTree, boolean iterative, boolean nary)
+			throws ParseException {
+		Parser parser = parser(program, emptyTree);
+		parser.setIterativeSequences(iterative);
+		parser.setNaryExpressions(nary);
+		return parser.coreProgram();
+	}
+
+	private static String execute(String program, String input) throws ParseException {
+		return execute(parse(program), input);
+	}
+
+	private static String execute(ParseTree p, String input) {
+		return output(input, (out, in) -> new Executor(out, p, in));
+	}
+
+	/*
+	 * Every node of the tree, in pre-order, as "NT/alternative".
+	 */
+	private static List<String> shape(ParseTree p) {
+		List<String> nodes = new ArrayList<String>();
+		p.goAllTheWayBackUp();
+		shape(p, nodes);
+		p.goAllTheWayBackUp();
+		return nodes;
+	}
+
+	private static void shape(ParseTree p, List<String> nodes) {
+		nodes.add(p.currentNTNo() + "/" + p.currentAlternative());
+		for (int i = 0; i < p.childCount(); i++) {
+			p.goDownBranch(i);
+			shape(p, nodes);
+			p.goUp();
+		}
+	}
+
+	/*
+	 * The whole tree, in pre-order: each node's NT, alternative and child
+	 * count, a <no>'s value, an <id>'s name and symbol, and the operator
+	 * before each operand of an n-ary sum.
+	 */
+	private static String dump(ParseTree p) {
+		StringBuilder s = new StringBuilder();
+		p.goAllTheWayBackUp();
+		dump(p, false, s);
+		p.goAllTheWayBackUp();
+		return s.append(" symbols=").append(p.getSymbolTable().size()).toString();
+	}
+
+	private static void dump(ParseTree p, boolean operand, StringBuilder s) {
+		if (operand) s.append(p.getCurrentOperator() == ParseTree.MINUS ? "- " : "+ ");
+		s.append(p.currentNTNo()).append('/').append(p.currentAlternative());
+		if (p.currentNTNo() == NonTerminalKind.NO) s.append('=').append(p.getCurrentIntVal());
+		if (p.currentNTNo() == NonTerminalKind.ID) s.append('=').append(p.getCurrentIdName()).append('#').append(p.getCurrentSymbol());
+		int n = p.childCount();
+		boolean sum = p.currentNTNo() == NonTerminalKind.EXP && p.currentAlternative() == ParseTree.SUM;
+		s.append('[').append(n).append(']');
+		for (int i = 0; i < n; i++) {
+			p.goDownBranch(i);
+			s.append(' ');
+			dump(p, sum, s);
+			p.goUp();
+		}
+		s.append(" .");
+	}
+}
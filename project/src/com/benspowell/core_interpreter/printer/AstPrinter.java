@@ -0,0 +1,226 @@
+package com.benspowell.core_interpreter.printer;
+
+import java.io.*;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+
+/**
+ * Pretty printer for a CORE program's AST. The output is the same as the
+ * Printer's for the ParseTree the AST was built from.
+ *
+ * @author Benjamin S. Powell
+ */
+public class AstPrinter implements Stmt.Visitor<Void, RuntimeException>,
+		Cond.Visitor<Void, RuntimeException>, Exp.Visitor<Void, RuntimeException> {
+
+	private PrettyPrintStream out;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public AstPrinter() {
+		this(System.out);
+	}
+
+	/**
+	 * Constructor for the AstPrinter class
+	 */
+	public AstPrinter(PrintStream out) {
+		this.out = new PrettyPrintStream(out);
+	}
+
+	/**
+	 * PrettyPrint a CORE program.
+	 */
+	public void printCoreProgram(Program program) {
+		out.println("program");
+
+		out.increaseIndent();
+		for (Decl d : program.getDeclarations()) {
+			out.print("int ");
+			printIds(d.getIds());
+			out.println(";");
+		}
+		out.decreaseIndent();
+
+		out.println("begin");
+
+		out.increaseIndent();
+		printStmts(program.getBody());
+		out.decreaseIndent();
+
+		out.println("end");
+	}
+
+	/**
+	 * Print a statement sequence.
+	 */
+	private void printStmts(List<Stmt> stmts) {
+		for (Stmt s : stmts) s.accept(this);
+	}
+
+	/**
+	 * Print an ID list.
+	 */
+	private void printIds(List<Var> ids) {
+		for (int i = 0; i < ids.size(); i++) {
+			if (i > 0) out.print(", ");
+			out.print(ids.get(i).getName());
+		}
+	}
+
+	public Void visitAssign(Assign s) {
+		out.print(s.getTarget().getName());
+		out.print(" = ");
+		s.getValue().accept(this);
+		out.println(";");
+		return null;
+	}
+
+	public Void visitIf(If s) {
+		out.print("if ");
+		s.getCondition().accept(this);
+		out.println(" then");
+
+		out.increaseIndent();
+		printStmts(s.getThenBranch());
+		out.decreaseIndent();
+
+		if (s.getElseBranch() != null) {
+			out.println("else");
+
+			out.increaseIndent();
+			printStmts(s.getElseBranch());
+			out.decreaseIndent();
+		}
+
+		out.println("end;");
+		return null;
+	}
+
+	public Void visitWhile(While s) {
+		out.print("while ");
+		s.getCondition().accept(this);
+		out.println(" loop");
+
+		out.increaseIndent();
+		printStmts(s.getBody());
+		out.decreaseIndent();
+
+		out.println("end;");
+		return null;
+	}
+
+	public Void visitRead(Read s) {
+		out.print("read ");
+		printIds(s.getIds());
+		out.println(";");
+		return null;
+	}
+
+	public Void visitWrite(Write s) {
+		out.print("write ");
+		printIds(s.getIds());
+		out.println(";");
+		return null;
+	}
+
+	/*
+	 * The sides of a comparison are <op>s, so a side that lost its
+	 * parentheses in a transformed AST is given them back.
+	 */
+	public Void visitCompare(Compare c) {
+		out.print("(");
+		printOperand(c.getLeft(), !isOperand(c.getLeft()));
+		out.print(" " + c.getOperator().getSymbol() + " ");
+		printOperand(c.getRight(), !isOperand(c.getRight()));
+		out.print(")");
+		return null;
+	}
+
+	public Void visitNot(Not c) {
+		out.print("!");
+		c.getOperand().accept(this);
+		return null;
+	}
+
+	public Void visitAnd(And c) {
+		out.print("[");
+		c.getLeft().accept(this);
+		out.print(" && ");
+		c.getRight().accept(this);
+		out.print("]");
+		return null;
+	}
+
+	public Void visitOr(Or c) {
+		out.print("[");
+		c.getLeft().accept(this);
+		out.print(" || ");
+		c.getRight().accept(this);
+		out.print("]");
+		return null;
+	}
+
+	/*
+	 * CORE has no negative literals, but a folded AST can have negative
+	 * constants, so they're printed as subtractions.
+	 */
+	public Void visitNum(Num e) {
+		int value = e.getValue();
+		if (value == Integer.MIN_VALUE) out.print("((0 - " + Integer.MAX_VALUE + ") - 1)");
+		else if (value < 0) out.print("(0 - " + -value + ")");
+		else out.print(Integer.toString(value));
+		return null;
+	}
+
+	public Void visitVar(Var e) {
+		out.print(e.getName());
+		return null;
+	}
+
+	/*
+	 * The grammar nests + and - to the right, and an operand of * can't be
+	 * a sum, so any other shape (which only a transformed AST can have) is
+	 * printed in parentheses.
+	 */
+	public Void visitBinOp(BinOp e) {
+		boolean times = e.getOperator() == ArithmeticOperator.TIMES;
+
+		printOperand(e.getLeft(), times ? !isOperand(e.getLeft()) : isSum(e.getLeft()));
+		out.print(" " + e.getOperator().getSymbol() + " ");
+		printOperand(e.getRight(), times && isSum(e.getRight()));
+		return null;
+	}
+
+	public Void visitGroup(Group e) {
+		out.print("(");
+		e.getContents().accept(this);
+		out.print(")");
+		return null;
+	}
+
+	/*
+	 * Print an operand of a BinOp, in parentheses if need be.
+	 */
+	private void printOperand(Exp e, boolean parenthesize) {
+		if (parenthesize) out.print("(");
+		e.accept(this);
+		if (parenthesize) out.print(")");
+	}
+
+	/*
+	 * Is e a + or - BinOp?
+	 */
+	private static boolean isSum(Exp e) {
+		return e instanceof BinOp && ((BinOp) e).getOperator() != ArithmeticOperator.TIMES;
+	}
+
+	/*
+	 * Could e be written as an <op>?
+	 */
+	private static boolean isOperand(Exp e) {
+		return !(e instanceof BinOp);
+	}
+}
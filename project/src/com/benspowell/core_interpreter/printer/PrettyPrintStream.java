@@ -0,0 +1,96 @@
+package com.benspowell.core_interpreter.printer;
+
+import java.io.*;
+
+/**
+ * PrintStream Wrapper with a little extra functionality in order to set 
+ * and maintain a given indentation size throughout the printing process.
+ */
+class PrettyPrintStream{
+	private int currentIndentationSize;
+	private PrintStream ps;
+	private boolean newLine;
+	
+	public PrettyPrintStream(PrintStream ps) {
+		this.ps=ps;
+		currentIndentationSize = 0;
+		this.newLine=true;
+	}
+	
+	/**
+	 * Return an appropriately-sized indentation.
+	 */
+	private String indentStr(){
+		String s = "";
+		for (int i = 0;i<(currentIndentationSize*5);i++) {
+			s+=" ";
+		}
+		return s;
+	}
+	
+	/**
+	 * Print a string, then a newline
+	 */
+	public void println(String str) {
+		//print the string with an appropriately sized indent in front.
+		String prefix = this.newLine? indentStr() : "";
+		ps.print(prefix + prettify(str) + "\n");
+		
+		//record the fact that a new line has been started.
+		this.newLine=true;
+	}
+	
+	/**
+	 * Print a new line
+	 */
+	public void println() {
+		ps.print("\n");
+		//record the fact that a new line has been started.
+		this.newLine=true;
+	}
+	
+	/**
+	 * Maintain the indentation pattern in this string.
+	 */
+	private String prettify(String s) {
+		//chop off any newline characters from the end of the string
+		while (s.charAt(s.length()-1)=='\n') {
+			s=s.substring(0, s.length()-1);
+		}
+		
+		//prepend any new lines in the string with an appropriate indent
+		return s.replace("\n", "\n"+indentStr());
+	}
+	
+	/**
+	 * Print a string
+	 */
+	public void print(String s) {
+		
+		//if you should have used println, use it.
+		if (s.charAt(s.length()-1)=='\n') {
+			println(s);
+		}
+		
+		//print the string, starting with an indent if on a new line
+		else {		
+			String prefix = this.newLine? indentStr() : "";
+			ps.print(prefix + prettify(s));
+			this.newLine=false;
+		}
+	}
+	
+	/**
+	 * Increase the current indentation size.
+	 */
+	public void increaseIndent() {
+		this.currentIndentationSize++;
+	}
+	
+	/**
+	 * Decrease the current indentation size.
+	 */
+	public void decreaseIndent() {
+		this.currentIndentationSize--;
+	}
+}
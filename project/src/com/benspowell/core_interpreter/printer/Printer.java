@@ -1,4 +1,5 @@
 package com.benspowell.core_interpreter.printer;
+import com.benspowell.core_interpreter.parser.NonTerminalKind;
 import com.benspowell.core_interpreter.parser.ParseTree;
 
 import java.io.*;
@@ -8,99 +9,6 @@ public class Printer {
 	PrettyPrintStream out;
 	ParseTree p;
 	
-	/**
-	 * PrintStream Wrapper with a little extra functionality in order to set 
-	 * and maintain a given indentation size throughout the printing process.
-	 */
-	private class PrettyPrintStream{
-		private int currentIndentationSize;
-		private PrintStream ps;
-		private boolean newLine;
-		
-		public PrettyPrintStream(PrintStream ps) {
-			this.ps=ps;
-			currentIndentationSize = 0;
-			this.newLine=true;
-		}
-		
-		/**
-		 * Return an appropriately-sized indentation.
-		 */
-		private String indentStr(){
-			String s = "";
-			for (int i = 0;i<(currentIndentationSize*5);i++) {
-				s+=" ";
-			}
-			return s;
-		}
-		
-		/**
-		 * Print a string, then a newline
-		 */
-		public void println(String str) {
-			//print the string with an appropriately sized indent in front.
-			String prefix = this.newLine? indentStr() : "";
-			ps.print(prefix + prettify(str) + "\n");
-			
-			//record the fact that a new line has been started.
-			this.newLine=true;
-		}
-		
-		/**
-		 * Print a new line
-		 */
-		public void println() {
-			ps.print("\n");
-			//record the fact that a new line has been started.
-			this.newLine=true;
-		}
-		
-		/**
-		 * Maintain the indentation pattern in this string.
-		 */
-		private String prettify(String s) {
-			//chop off any newline characters from the end of the string
-			while (s.charAt(s.length()-1)=='\n') {
-				s=s.substring(0, s.length()-1);
-			}
-			
-			//prepend any new lines in the string with an appropriate indent
-			return s.replace("\n", "\n"+indentStr());
-		}
-		
-		/**
-		 * Print a string
-		 */
-		public void print(String s) {
-			
-			//if you should have used println, use it.
-			if (s.charAt(s.length()-1)=='\n') {
-				println(s);
-			}
-			
-			//print the string, starting with an indent if on a new line
-			else {		
-				String prefix = this.newLine? indentStr() : "";
-				ps.print(prefix + prettify(s));
-				this.newLine=false;
-			}
-		}
-		
-		/**
-		 * Increase the current indentation size.
-		 */
-		public void increaseIndent() {
-			this.currentIndentationSize++;
-		}
-		
-		/**
-		 * Decrease the current indentation size.
-		 */
-		public void decreaseIndent() {
-			this.currentIndentationSize--;
-		}
-	}
-	
 	/**
 	 * Default constructor if no Printstream is specified
 	 */
@@ -148,32 +56,54 @@ public class Printer {
 	 * print a declaration sequence.
 	 */
 	private void printDeclSeq() {
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				printDecl();
+				p.goUp();
+			}
+			return;
+		}
 		
-		p.goDownLeftBranch();
-		printDecl();
-		p.goUp();
-		
-		if (p.currentAlternative()==2) {
-			p.goDownMiddleBranch();
-			printDeclSeq();
+		// Follow the chain of nested sequences with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			printDecl();
 			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
 		}
+		for (; depth > 0; depth--) p.goUp();
 	}
 	
 	/**
 	 * print a statement sequence.
 	 */
 	private void printStmtSeq() {
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				printStmt();
+				p.goUp();
+			}
+			return;
+		}
 		
-		p.goDownLeftBranch();
-		printStmt();
-		p.goUp();
-		
-		if (p.currentAlternative()==2) {
-			p.goDownMiddleBranch();
-			printStmtSeq();
+		// Follow the chain of nested sequences with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			printStmt();
 			p.goUp();
+			if (p.currentAlternative() != 2) break;
+			p.goDownMiddleBranch();
+			depth++;
 		}
+		for (; depth > 0; depth--) p.goUp();
 	}
 	
 	
@@ -195,19 +125,29 @@ public class Printer {
 	 * print an ID list.
 	 */
 	private void printIdList() {
+		if (p.currentAlternative() == ParseTree.LIST) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				if (i > 0) out.print(", ");
+				p.goDownBranch(i);
+				printId();
+				p.goUp();
+			}
+			return;
+		}
 		
-		p.goDownLeftBranch();
-		printId();
-		p.goUp();
-		
-		if (p.currentAlternative()==2) {
+		// Follow the chain of nested lists with a loop, then climb back.
+		int depth = 0;
+		while (true) {
+			p.goDownLeftBranch();
+			printId();
+			p.goUp();
+			if (p.currentAlternative() != 2) break;
 			out.print(", ");
-			
 			p.goDownMiddleBranch();
-			printIdList();
-			p.goUp();
+			depth++;
 		}
-		
+		for (; depth > 0; depth--) p.goUp();
 	}
 	
 	/**
@@ -347,19 +287,24 @@ public class Printer {
 	 * Print a condition.
 	 */
 	private void printCond() {
-		p.goDownLeftBranch();
 		
 		switch (p.currentAlternative()) {
 		case 1:
+			p.goDownLeftBranch();
 			printComp();
+			p.goUp();
 			break;
 		case 2:
 			out.print("!");
+			
+			p.goDownLeftBranch();
 			printCond();
+			p.goUp();
 			break;
 		case 3:
 			out.print("[");
 			
+			p.goDownLeftBranch();
 			printCond();
 			p.goUp();
 			
@@ -367,12 +312,14 @@ public class Printer {
 			
 			p.goDownMiddleBranch();
 			printCond();
+			p.goUp();
 			
 			out.print("]");
 			break;
 		case 4:
 			out.print("[");
 			
+			p.goDownLeftBranch();
 			printCond();
 			p.goUp();
 			
@@ -380,12 +327,11 @@ public class Printer {
 			
 			p.goDownMiddleBranch();
 			printCond();
+			p.goUp();
 
 			out.print("]");
 			break;
 		}
-		
-		p.goUp();
 	}
 	/**
 	 * Print a comparison. 
@@ -412,6 +358,18 @@ public class Printer {
 	 * Print an expression.
 	 */
 	private void printExp() {
+		if (p.currentAlternative() == ParseTree.SUM) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				p.goDownBranch(i);
+				if (i > 0) out.print(p.getCurrentOperator() == ParseTree.MINUS ? " - " : " + ");
+				if (p.currentNTNo() == NonTerminalKind.TRM) printTrm();
+				else printOp();
+				p.goUp();
+			}
+			return;
+		}
+		
 		p.goDownLeftBranch();
 		printTrm();
 		p.goUp();
@@ -440,6 +398,17 @@ public class Printer {
 	 * Print a term.
 	 */
 	private void printTrm() {
+		if (p.currentAlternative() == ParseTree.PRODUCT) {
+			int n = p.childCount();
+			for (int i = 0; i < n; i++) {
+				if (i > 0) out.print(" * ");
+				p.goDownBranch(i);
+				printOp();
+				p.goUp();
+			}
+			return;
+		}
+		
 		p.goDownLeftBranch();
 		printOp();
 		p.goUp();
@@ -514,7 +483,8 @@ public class Printer {
 	 * Print a number. 
 	 */
 	private void printNo() {
-		out.print(Integer.toString(p.getCurrentIntVal()));
+		if (p.currentAlternative() == ParseTree.BIG) out.print(p.getCurrentBigVal().toString());
+		else out.print(Integer.toString(p.getCurrentIntVal()));
 	}
 
 	
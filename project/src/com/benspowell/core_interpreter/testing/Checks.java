@@ -0,0 +1,141 @@
+package com.benspowell.core_interpreter.testing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.ast.Program;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.executor.ExecutionEngine;
+import com.benspowell.core_interpreter.parser.AstBuilder;
+import com.benspowell.core_interpreter.parser.LinkedParseTree;
+import com.benspowell.core_interpreter.parser.ParseTree;
+import com.benspowell.core_interpreter.parser.Parser;
+import com.benspowell.core_interpreter.printer.AstPrinter;
+import com.benspowell.core_interpreter.printer.Printer;
+import com.benspowell.core_interpreter.tokenizer.TokenStream;
+import com.benspowell.core_interpreter.tokenizer.Tokenizer;
+
+/**
+ * What the *Test classes share: counting and printing the checks that
+ * fail, parsing, printing and running small programs, and exiting with
+ * status 1 at the end if anything failed.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class Checks {
+
+	/**
+	 * Creates the engine to run a program on, writing to out and reading
+	 * from input.
+	 */
+	public interface Engine {
+		ExecutionEngine create(PrintStream out, Scanner input) throws ExecutorException;
+	}
+
+	// Number of checks that failed so far.
+	private static int failures = 0;
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private Checks() {
+	}
+
+	/**
+	 * Fail the check with a name unless ok.
+	 */
+	public static void check(String name, boolean ok) {
+		if (!ok) fail(name);
+	}
+
+	/**
+	 * Fail the check with a name unless actual equals expected.
+	 */
+	public static void checkEquals(String name, Object expected, Object actual) {
+		if (!expected.equals(actual)) fail(name + ": expected <" + expected + "> but got <" + actual + ">");
+	}
+
+	/**
+	 * Count a failed check, and print what went wrong.
+	 */
+	public static void fail(String message) {
+		failures++;
+		System.out.println("FAILED: " + message);
+	}
+
+	/**
+	 * Print whether the test's checks all passed, and exit with status 1
+	 * if they didn't.
+	 */
+	public static void finish(String test) {
+		System.out.println(failures == 0 ? test + ": all checks passed"
+				: test + ": " + failures + " check(s) failed");
+		if (failures > 0) System.exit(1);
+	}
+
+	/**
+	 * A Parser over a program's text, for a test to set up as it likes.
+	 */
+	public static Parser parser(String program) {
+		return parser(program, new LinkedParseTree());
+	}
+
+	/**
+	 * A Parser over a program's text, that builds the program into
+	 * emptyTree.
+	 */
+	public static Parser parser(String program, ParseTree emptyTree) {
+		return new Parser(TokenStream.lex(new Tokenizer(program.getBytes(StandardCharsets.US_ASCII))), emptyTree);
+	}
+
+	/**
+	 * A program's ParseTree, as the Parser builds it by default.
+	 */
+	public static ParseTree parse(String program) throws ParseException {
+		return parser(program).coreProgram();
+	}
+
+	/**
+	 * A program's AST.
+	 */
+	public static Program parseAst(String program) throws ParseException {
+		return AstBuilder.build(parse(program));
+	}
+
+	/**
+	 * A program as the Printer prints its ParseTree.
+	 */
+	public static String print(ParseTree p) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new Printer(new PrintStream(bytes, true), p).printCoreProgram();
+		return bytes.toString();
+	}
+
+	/**
+	 * A program as the AstPrinter prints it, on one line.
+	 */
+	public static String print(Program program) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new AstPrinter(new PrintStream(bytes, true)).printCoreProgram(program);
+		return bytes.toString().trim().replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * What a program writes on an engine, given its input, followed by
+	 * the error it fails with, if it does.
+	 */
+	public static String output(String input, Engine engine) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, true);
+		try {
+			engine.create(out, new Scanner(input)).executeCoreProgram();
+		}
+		catch (ExecutorException e) {
+			out.print(e.getMessage());
+		}
+		return bytes.toString();
+	}
+}
@@ -0,0 +1,235 @@
+package com.benspowell.core_interpreter.tokenizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Tests for lexing. Each check lexes a small program, or an awkward piece
+ * of one, and compares the tokens that come out with what's expected.
+ * Prints every failed check, and exits with status 1 if there were any.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class LexingTest {
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private LexingTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		frontToken();
+		tableAndSwitch();
+		tokenStream();
+		longRuns();
+		symbols();
+		try {
+			mappedPrograms();
+		}
+		catch (IOException e) {
+			fail(e.getMessage());
+		}
+
+		finish("LexingTest");
+	}
+
+	/*
+	 * Each token is lexed once, out of the one buffer, and asking for the
+	 * front token again gives back the same one until it's skipped.
+	 */
+	private static void frontToken() {
+		String program = "program int X1; begin X1 = 42; end";
+
+		checkEquals("tokens of a small program", "program int X1 ; begin X1 = 42 ; end EOF",
+				tokens(new Tokenizer(bytes(program))));
+		checkEquals("tokens read through a Scanner", tokens(new Tokenizer(bytes(program))),
+				tokens(new Tokenizer(new Scanner(program))));
+
+		Tokenizer t = new Tokenizer(bytes("X1 = 42"));
+		check("the front token's value is cached", t.getTokenVal() == t.getTokenVal());
+		checkEquals("the front token stays put", TokenKind.IDENTIFIER, t.getTokenKind());
+		t.skipToken();
+		t.skipToken();
+		checkEquals("a constant's value", "42", t.getTokenVal());
+		t.skipToken();
+		t.skipToken();
+		checkEquals("skipping EOF stays at EOF", TokenKind.EOF, t.getTokenKind());
+
+		checkEquals("no whitespace between tokens", "X = Y + 1 ; write X , Y ; EOF",
+				tokens(new Tokenizer(bytes("X=Y+1;write X,Y;"))));
+		checkEquals("an illegal token ends lexing", "X = ERROR", tokens(new Tokenizer(bytes("X = x + 1;"))));
+	}
+
+	/*
+	 * The transition table and the switch-on-state FSA give the same
+	 * tokens, on inputs that end tokens in awkward places.
+	 */
+	private static void tableAndSwitch() {
+		String[] inputs = {
+			"!= ! == = <= < >= > && || ;,[]()+-*",
+			"!!= =!= <<= >>= <> ><",
+			"A AB12 A1 ABC123 X9Y",
+			"int in integer while whileX if iff endX end1 read write",
+			"0 007 2147483647 99999999999999999999 12X",
+			"X\t=\n\r1 ;\f",
+			"X = Y & Z;",
+			"X = Y | Z;",
+			"X = #;",
+			"X = \u0080;",
+			"",
+			"   ",
+		};
+		for (String input : inputs) {
+			String switched = tokens(tokenizer(input, false));
+			checkEquals("table and switch on <" + input + ">", switched, tokens(tokenizer(input, true)));
+		}
+
+		checkEquals("operators end at the right character", "!= == <= < >= = EOF",
+				tokens(tokenizer("!= ==<=< >==", true)));
+		checkEquals("an upper case identifier ends at a digit run's end", "ABC123 ; EOF",
+				tokens(tokenizer("ABC123;", true)));
+		checkEquals("a letter after digits in an identifier is illegal", "ERROR", tokens(tokenizer("X9Y", true)));
+		checkEquals("a single & is illegal", "X = Y ERROR", tokens(tokenizer("X = Y & Z;", true)));
+	}
+
+	/*
+	 * A TokenStream holds the same tokens as the Tokenizer gives, with
+	 * their extents, constants' values and identifiers' symbols, and ends
+	 * with EOF or ERROR, which is what's seen past the end.
+	 */
+	private static void tokenStream() {
+		String program = "program int X, Y; begin X = 2147483648; Y = 7; end";
+		TokenStream ts = TokenStream.lex(new Tokenizer(bytes(program)));
+
+		checkEquals("number of tokens", 17, ts.size());
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < ts.size() - 1; i++) {
+			text.append(i == 0 ? "" : " ").append(ts.text(i));
+			checkEquals("extent of token " + i, ts.text(i), program.substring(ts.start(i), ts.end(i)));
+		}
+		checkEquals("the same tokens as the Tokenizer", tokens(new Tokenizer(bytes(program))), text + " EOF");
+		checkEquals("the last token", TokenKind.EOF, ts.kind(ts.size() - 1));
+		checkEquals("past the end is the last token", TokenKind.EOF, ts.kind(ts.size() + 5));
+
+		checkEquals("a constant too large for an int", TokenStream.OUT_OF_RANGE, ts.intValue(9));
+		checkEquals("a constant", 7, ts.intValue(13));
+		checkEquals("an identifier's symbol", ts.symbol(2), ts.symbol(7));
+		checkEquals("a later identifier's symbol", 1, ts.symbol(4));
+
+		ts = TokenStream.lex(new Tokenizer(bytes("X = Y + 1 & 2")));
+		checkEquals("lexing stops at an illegal token", TokenKind.ERROR, ts.kind(ts.size() - 1));
+		checkEquals("tokens before an illegal one", 6, ts.size());
+	}
+
+	/*
+	 * Long runs of whitespace, letters and digits, which the Tokenizer
+	 * skips and gathers a character at a time, end where they should,
+	 * including at the very end of the program, and whether or not the
+	 * source has an array behind it.
+	 */
+	private static void longRuns() {
+		String indent = " \t".repeat(100);
+		String name = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".repeat(10);
+		String digits = "1234567890".repeat(20);
+		String program = indent + name + indent + "=" + digits + "\n" + indent + "write" + "\n".repeat(300);
+		String expected = name + " = " + digits + " write EOF";
+
+		checkEquals("long runs, table-driven", expected, tokens(tokenizer(program, true)));
+		checkEquals("long runs, switch-based", expected, tokens(tokenizer(program, false)));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(program.length());
+		direct.put(bytes(program)).flip();
+		checkEquals("long runs, without an array", expected, tokens(new Tokenizer(direct)));
+		checkEquals("only whitespace", "EOF", tokens(tokenizer(indent, true)));
+	}
+
+	/*
+	 * Identifiers are interned once each, and numbered densely from 0 in
+	 * order of first appearance, however many there are.
+	 */
+	private static void symbols() {
+		SymbolTable table = new SymbolTable();
+		checkEquals("first symbol", 0, table.intern("X"));
+		checkEquals("second symbol", 1, table.intern("Y"));
+		checkEquals("a symbol interned again", 0, table.intern("X"));
+		checkEquals("a symbol's name", "Y", table.name(1));
+		checkEquals("looking up a symbol", 1, table.lookup("Y"));
+		checkEquals("looking up a name never interned", -1, table.lookup("Z"));
+		checkEquals("looking up doesn't intern", 2, table.size());
+
+		boolean dense = true;
+		for (int i = 0; i < 5000; i++) dense &= table.intern("V" + i) == i + 2;
+		for (int i = 0; i < 5000; i++) dense &= table.lookup("V" + i) == i + 2 && table.name(i + 2).equals("V" + i);
+		check("5000 more symbols are dense", dense && table.size() == 5002);
+
+		String program = "program int B, A, AB; begin A = B; AB = A + B; write AB; end";
+		TokenStream ts = TokenStream.lex(new Tokenizer(bytes(program)));
+		SymbolTable lexed = ts.symbols();
+		checkEquals("symbols of a program", 3, lexed.size());
+		checkEquals("symbols in order of first appearance", "B A AB",
+				lexed.name(0) + " " + lexed.name(1) + " " + lexed.name(2));
+		boolean same = true;
+		for (int i = 0; i < ts.size(); i++) {
+			if (ts.kind(i) == TokenKind.IDENTIFIER) same &= ts.symbol(i) == lexed.lookup(ts.text(i));
+		}
+		check("each identifier's symbol is its name's", same);
+	}
+
+	/*
+	 * A memory-mapped program file gives the same tokens as the program
+	 * read onto the heap, and so does an empty one.
+	 */
+	private static void mappedPrograms() throws IOException {
+		String program = "program int X, Y; begin read X;\n\tY = X * 3 + 1;\n\twrite Y; end\n";
+		Path file = Files.createTempFile("LexingTest", ".core");
+		try {
+			Files.write(file, bytes(program));
+			checkEquals("tokens of a mapped program", tokens(new Tokenizer(bytes(program))), tokens(Tokenizer.map(file)));
+			checkEquals("symbols of a mapped program", 2, TokenStream.lex(Tokenizer.map(file)).symbols().size());
+
+			Files.write(file, new byte[0]);
+			checkEquals("tokens of an empty mapped program", "EOF", tokens(Tokenizer.map(file)));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	private static Tokenizer tokenizer(String input, boolean tableDriven) {
+		Tokenizer t = new Tokenizer(bytes(input));
+		t.setTableDriven(tableDriven);
+		return t;
+	}
+
+	private static byte[] bytes(String program) {
+		return program.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/*
+	 * The tokens a Tokenizer gives, separated by spaces: each token's text,
+	 * and EOF or ERROR for the last.
+	 */
+	private static String tokens(Tokenizer t) {
+		StringBuilder s = new StringBuilder();
+		while (true) {
+			TokenKind kind = t.getTokenKind();
+			if (s.length() > 0) s.append(' ');
+			if (kind == TokenKind.EOF || kind == TokenKind.ERROR) return s.append(kind).toString();
+			s.append(t.getTokenVal());
+			t.skipToken();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.benspowell.core_interpreter.tokenizer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interned identifiers. Each distinct identifier of a program is stored
+ * once and numbered densely from 0 in order of first appearance, so later
+ * phases can index arrays by symbol instead of hashing names.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class SymbolTable {
+
+	// Names by symbol.
+	private String[] names;
+
+	// Number of symbols.
+	private int size;
+
+	// Open-addressed hash table of symbol + 1 (0 is an empty slot), sized
+	// to a power of two at least twice the number of symbols.
+	private int[] table;
+
+	public SymbolTable() {
+		this.names = new String[16];
+		this.size = 0;
+		this.table = new int[32];
+	}
+
+	/**
+	 * Number of distinct symbols.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Name of symbol s.
+	 */
+	public String name(int s) {
+		return names[s];
+	}
+
+	/**
+	 * Symbol for name, or -1 if it has never been interned.
+	 */
+	public int lookup(String name) {
+		int mask = table.length - 1;
+		for (int i = name.hashCode() & mask; table[i] != 0; i = (i + 1) & mask) {
+			if (names[table[i] - 1].equals(name)) return table[i] - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Symbol for name, interning it if necessary.
+	 */
+	public int intern(String name) {
+		int mask = table.length - 1;
+		int i = name.hashCode() & mask;
+		for (; table[i] != 0; i = (i + 1) & mask) {
+			if (names[table[i] - 1].equals(name)) return table[i] - 1;
+		}
+		return add(i, name);
+	}
+
+	/**
+	 * Symbol for the ASCII name source[start, end), interning it if
+	 * necessary. A String is only created for a new symbol.
+	 */
+	int intern(ByteBuffer source, int start, int end) {
+		// Same as String.hashCode for ASCII names.
+		int hash = 0;
+		for (int j = start; j < end; j++) hash = 31 * hash + source.get(j);
+
+		int mask = table.length - 1;
+		int i = hash & mask;
+		for (; table[i] != 0; i = (i + 1) & mask) {
+			if (spells(names[table[i] - 1], source, start, end)) return table[i] - 1;
+		}
+		return add(i, Tokenizer.decode(source, start, end));
+	}
+
+	private static boolean spells(String name, ByteBuffer source, int start, int end) {
+		if (name.length() != end - start) return false;
+		for (int j = start; j < end; j++) {
+			if (name.charAt(j - start) != source.get(j)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Add name as a new symbol, in free table slot i.
+	 */
+	private int add(int i, String name) {
+		int s = size++;
+		if (s == names.length) names = Arrays.copyOf(names, s * 2);
+		names[s] = name;
+		table[i] = s + 1;
+		if (size * 2 > table.length) rehash();
+		return s;
+	}
+
+	private void rehash() {
+		int[] bigger = new int[table.length * 2];
+		int mask = bigger.length - 1;
+		for (int s = 0; s < size; s++) {
+			int i = names[s].hashCode() & mask;
+			while (bigger[i] != 0) i = (i + 1) & mask;
+			bigger[i] = s + 1;
+		}
+		table = bigger;
+	}
+}
@@ -0,0 +1,151 @@
+package com.benspowell.core_interpreter.tokenizer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A whole CORE program, lexed up front into parallel primitive arrays.
+ * Token i has kind kind(i), occupies source offsets [start(i), end(i)),
+ * and, if it is an integer constant, has value intValue(i), or, if it is an
+ * identifier, has symbol symbol(i) in symbols(). The last token
+ * is always EOF or ERROR; nothing after an illegal token is lexed.
+ * 
+ * Looking up any token, including looking ahead, is O(1), and no per-token
+ * objects are created.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class TokenStream {
+
+	/**
+	 * intValue of an integer constant too large for an int.
+	 */
+	public static final int OUT_OF_RANGE = -1;
+
+	private static final TokenKind[] KINDS = TokenKind.values();
+
+	private final ByteBuffer source;
+	private final SymbolTable symbols;
+	private byte[] kinds;
+	private int[] starts;
+	private int[] ends;
+	private int[] values;
+	private int size;
+
+	private TokenStream(ByteBuffer source, int capacity) {
+		this.source = source;
+		this.symbols = new SymbolTable();
+		this.kinds = new byte[capacity];
+		this.starts = new int[capacity];
+		this.ends = new int[capacity];
+		this.values = new int[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Lex everything remaining in t.
+	 */
+	public static TokenStream lex(Tokenizer t) {
+		ByteBuffer source = t.source();
+		// A rough guess of one token per four characters saves most regrowth
+		// on small programs; large ones grow by doubling.
+		TokenStream ts = new TokenStream(source, Math.max(16, Math.min(source.limit() / 4, 1 << 20)));
+
+		TokenKind kind;
+		do {
+			kind = t.getTokenKind();
+			int start = t.tokenStart(), end = t.tokenEnd();
+			int value = 0;
+			if (kind == TokenKind.INTEGER_CONSTANT) value = parseInt(source, start, end);
+			else if (kind == TokenKind.IDENTIFIER) value = ts.symbols.intern(source, start, end);
+			ts.add(kind, start, end, value);
+			t.skipToken();
+		} while (kind != TokenKind.EOF && kind != TokenKind.ERROR);
+
+		return ts;
+	}
+
+	/**
+	 * Value of the unsigned decimal constant source[start, end), or
+	 * OUT_OF_RANGE if it does not fit in an int.
+	 */
+	private static int parseInt(ByteBuffer source, int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + (source.get(i) - '0');
+			if (value > Integer.MAX_VALUE) return OUT_OF_RANGE;
+		}
+		return (int) value;
+	}
+
+	private void add(TokenKind kind, int start, int end, int value) {
+		if (size == kinds.length) {
+			int capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		kinds[size] = (byte) kind.ordinal();
+		starts[size] = start;
+		ends[size] = end;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Number of tokens, including the final EOF or ERROR.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Kind of token i. Indices past the end see the final token.
+	 */
+	public TokenKind kind(int i) {
+		return KINDS[kinds[Math.min(i, size - 1)]];
+	}
+
+	/**
+	 * Source offset of the first character of token i.
+	 */
+	public int start(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * Source offset just past the last character of token i.
+	 */
+	public int end(int i) {
+		return ends[i];
+	}
+
+	/**
+	 * Value of integer constant i, or OUT_OF_RANGE.
+	 */
+	public int intValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Symbol of identifier i.
+	 */
+	public int symbol(int i) {
+		return values[i];
+	}
+
+	/**
+	 * The identifiers of this program.
+	 */
+	public SymbolTable symbols() {
+		return symbols;
+	}
+
+	/**
+	 * Text of token i.
+	 */
+	public String text(int i) {
+		return Tokenizer.decode(source, starts[i], ends[i]);
+	}
+}
@@ -1,11 +1,22 @@
 package com.benspowell.core_interpreter.tokenizer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 
 /**
  * Tokenizer for Core Interpreter project. (Note: by package-wide convention,
  * unless stated otherwise, all references are non-null.)
  *
- * @author Benjamin S. Powell 
+ * The whole program is read once into a byte buffer (or memory-mapped, see
+ * map), and the Tokenizer advances an offset through it. The front token is
+ * lexed at most once and cached, so repeated calls to getTokenKind and
+ * getTokenVal are free.
+ *
+ * @author Benjamin S. Powell
  *
  * @mathsubtypes <pre>
  * TOKENIZER_MODEL is (
@@ -29,322 +40,509 @@ import java.util.Scanner;
  *
  */
 public class Tokenizer {
-	
-	class PeekableScanner {
-
-	    private final Scanner scanner;
-	    private String next;
-
-	    public PeekableScanner(Scanner scanner) {
-	        this.scanner = scanner;
-	        this.next = scanner.hasNext() ? scanner.next() : null;
-	    }
-
-	    public boolean hasNext() {
-	        return next != null;
-	    }
-
-	    public String next() {
-	        String current = next;
-	        next = scanner.hasNext() ? scanner.next() : null;
-	        return current;
-	    }
-	    
-	    public void skip(String s) {
-	    	while(!next.isEmpty() && !s.isEmpty() && (peek().charAt(0)==s.charAt(0))) {
-	    		next = next.substring(1,next.length());
-	    		s = s.substring(1,s.length());
-	    	}
-	    	if (next.isEmpty()) {
-	    		next = scanner.hasNext()? scanner.next() : null;
-	    	}
-	    }
-	    
-	    public String peek() {
-	        return next;
-	    }
-	}
-	
-	PeekableScanner in;
-	private TokenKind Top_Token_Kind = null; 
-	private String Top_Token = ""; 
-	private static boolean isUpperCase(char c) { return "ABCDEFGHIJKLMNOPQRSTUVWXYZ".contains(String.valueOf(c));}
-	private static boolean isLowerCase(char c) { return "abcdefghijklmnopqrstuvwxyz".contains(String.valueOf(c));}
-	private static boolean isDigit(char c) { return "0123456789".contains(String.valueOf(c));}
-	private static boolean isAnotherAcceptableCharacter(char c) { return ";,=![]&|()+-*<>".contains(String.valueOf(c));}
-	
+
+	// The program source, one byte per (ASCII) character. Only absolute
+	// gets are used, so the buffer's own position is never disturbed.
+	private final ByteBuffer source;
+
+	// The array behind source, when it has one, for faster access.
+	private final byte[] array;
+
+	// Whether tokens are lexed with the transition table, rather than the
+	// switch-on-state FSA.
+	private boolean tableDriven;
+
+	// Number of meaningful bytes in source.
+	private final int length;
+
+	// Offset of the first character not yet consumed by skipToken.
+	private int position;
+
+	// Cached front token: its kind (null until lexed) and its extent.
+	private TokenKind Top_Token_Kind = null;
+	private int Top_Token_Start;
+	private int Top_Token_End;
+
+	// Cached value of the front token, built on demand by getTokenVal.
+	private String Top_Token = null;
+
+	/**
+	 * Create a Tokenizer over everything remaining in s.
+	 */
 	public Tokenizer(Scanner s) {
-		in = new PeekableScanner(s);
+		this(readAll(s));
 	}
 
+	/**
+	 * Create a Tokenizer over an ASCII-encoded program.
+	 */
+	public Tokenizer(byte[] source) {
+		this(ByteBuffer.wrap(source));
+	}
+
+	/**
+	 * Create a Tokenizer over the ASCII-encoded program in source[0, limit).
+	 */
+	public Tokenizer(ByteBuffer source) {
+		this.source = source;
+		this.array = source.hasArray() && source.arrayOffset() == 0 ? source.array() : null;
+		this.tableDriven = true;
+		this.length = source.limit();
+		this.position = 0;
+	}
+
+	/**
+	 * Lex with the transition table, or with the switch-on-state FSA it
+	 * replaced. Either way the same tokens come out. The table is on by
+	 * default, because it is the faster of the two in TokenizerBenchmark.
+	 */
+	public void setTableDriven(boolean tableDriven) {
+		this.tableDriven = tableDriven;
+	}
+
+	/**
+	 * Create a Tokenizer that lexes the program file directly out of a
+	 * read-only memory mapping. The program is never copied onto the heap,
+	 * so it may be larger than the heap, but it must be under 2GB.
+	 */
+	public static Tokenizer map(Path program) throws IOException {
+		try (FileChannel channel = FileChannel.open(program, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(program + " is too large to map (" + size + " bytes)");
+			}
+			// The mapping stays valid after the channel is closed.
+			return new Tokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/**
+	 * Decode source[start, end) into a String.
+	 */
+	static String decode(ByteBuffer source, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		source.get(start, bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Drain a Scanner into a byte buffer. Characters outside of ASCII can
+	 * never be part of a legal token, so they are replaced by '?'.
+	 */
+	private static byte[] readAll(Scanner s) {
+		s.useDelimiter("\\A");
+		String program = s.hasNext() ? s.next() : "";
+		return program.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/*
+	 * Character classes. Every byte value maps to exactly one of these.
+	 */
+	private static final int
+		C_UPPER = 0, C_LOWER = 1, C_DIGIT = 2, C_SPACE = 3, C_SEMICOLON = 4,
+		C_COMMA = 5, C_EQ = 6, C_BANG = 7, C_OPEN_BRACKET = 8,
+		C_CLOSE_BRACKET = 9, C_AND = 10, C_BAR = 11, C_OPEN_PAREN = 12,
+		C_CLOSE_PAREN = 13, C_PLUS = 14, C_MINUS = 15, C_ASTERISK = 16,
+		C_GREATER_THAN = 17, C_LESS_THAN = 18, C_OTHER = 19;
+
+	/**
+	 * Character class of every byte value.
+	 */
+	private static final byte[] CHAR_CLASS = new byte[256];
+
 	private enum State{
-		READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN, 
-		GATHER_UC, 
-		FINISH_ID, 
-		GATHER_LC, 
-		GATHER_DIGITS, 
-		GOT_AN_EQ, 
-		GOT_A_BANG, 
-		GOT_AN_AND, 
-		GOT_A_BAR, 
-		GOT_A_GREATER_THAN, 
-		GOT_A_LESS_THAN, 
-		FINISHED;
+		READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN,
+		GATHER_UC,
+		FINISH_ID,
+		GATHER_LC,
+		GATHER_DIGITS,
+		GOT_AN_EQ,
+		GOT_A_BANG,
+		GOT_AN_AND,
+		GOT_A_BAR,
+		GOT_A_GREATER_THAN,
+		GOT_A_LESS_THAN;
+	}
+
+	/*
+	 * An entry of the transition matrix is either the ordinal of the next
+	 * State (the character is consumed), or FINISHED combined with the
+	 * ordinal of the token kind, and with CONSUME if the character belongs
+	 * to the token. KEYWORD stands in for a reserved word, which is looked
+	 * up once the whole run of lower case letters is known.
+	 */
+	private static final int FINISHED = 0x100;
+	private static final int CONSUME = 0x200;
+	private static final int KIND_MASK = 0xFF;
+	private static final int KEYWORD = KIND_MASK;
+
+	/**
+	 * Transition matrix, indexed by (state << 8) | (byte & 0xFF).
+	 */
+	private static final int[] TRANSITIONS = new int[State.values().length << 8];
+
+	/**
+	 * Token kinds by ordinal.
+	 */
+	private static final TokenKind[] KINDS = TokenKind.values();
+
+	static {
+		for (int c = 0; c < 256; c++) CHAR_CLASS[c] = C_OTHER;
+		for (int c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = C_UPPER;
+		for (int c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = C_LOWER;
+		for (int c = '0'; c <= '9'; c++) CHAR_CLASS[c] = C_DIGIT;
+		for (int c = 0; c < 128; c++) {
+			if (Character.isWhitespace(c)) CHAR_CLASS[c] = C_SPACE;
+		}
+		CHAR_CLASS[';'] = C_SEMICOLON;
+		CHAR_CLASS[','] = C_COMMA;
+		CHAR_CLASS['='] = C_EQ;
+		CHAR_CLASS['!'] = C_BANG;
+		CHAR_CLASS['['] = C_OPEN_BRACKET;
+		CHAR_CLASS[']'] = C_CLOSE_BRACKET;
+		CHAR_CLASS['&'] = C_AND;
+		CHAR_CLASS['|'] = C_BAR;
+		CHAR_CLASS['('] = C_OPEN_PAREN;
+		CHAR_CLASS[')'] = C_CLOSE_PAREN;
+		CHAR_CLASS['+'] = C_PLUS;
+		CHAR_CLASS['-'] = C_MINUS;
+		CHAR_CLASS['*'] = C_ASTERISK;
+		CHAR_CLASS['>'] = C_GREATER_THAN;
+		CHAR_CLASS['<'] = C_LESS_THAN;
+
+		for (State s : State.values()) {
+			for (int c = 0; c < 256; c++) {
+				TRANSITIONS[(s.ordinal() << 8) | c] = transition(s, CHAR_CLASS[c]);
+			}
+		}
+	}
+
+	/**
+	 * The FSA: what state s does with a character of class c.
+	 */
+	private static int transition(State s, int c) {
+		switch (s) {
+		case READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN:
+			switch (c) {
+			case C_UPPER: return State.GATHER_UC.ordinal();
+			case C_LOWER: return State.GATHER_LC.ordinal();
+			case C_DIGIT: return State.GATHER_DIGITS.ordinal();
+			case C_EQ: return State.GOT_AN_EQ.ordinal();
+			case C_BANG: return State.GOT_A_BANG.ordinal();
+			case C_AND: return State.GOT_AN_AND.ordinal();
+			case C_BAR: return State.GOT_A_BAR.ordinal();
+			case C_GREATER_THAN: return State.GOT_A_GREATER_THAN.ordinal();
+			case C_LESS_THAN: return State.GOT_A_LESS_THAN.ordinal();
+			case C_SEMICOLON: return take(TokenKind.SEMICOLON);
+			case C_COMMA: return take(TokenKind.COMMA);
+			case C_OPEN_BRACKET: return take(TokenKind.OPEN_BRACKET);
+			case C_CLOSE_BRACKET: return take(TokenKind.CLOSE_BRACKET);
+			case C_OPEN_PAREN: return take(TokenKind.OPEN_PAREN);
+			case C_CLOSE_PAREN: return take(TokenKind.CLOSE_PAREN);
+			case C_PLUS: return take(TokenKind.PLUS);
+			case C_MINUS: return take(TokenKind.MINUS);
+			case C_ASTERISK: return take(TokenKind.ASTERISK);
+			default: return take(TokenKind.ERROR);
+			}
+		case GATHER_UC:
+			if (c == C_UPPER) return State.GATHER_UC.ordinal();
+			if (c == C_DIGIT) return State.FINISH_ID.ordinal();
+			if (c == C_LOWER) return take(TokenKind.ERROR);
+			return leave(TokenKind.IDENTIFIER.ordinal());
+		case FINISH_ID:
+			if (c == C_DIGIT) return State.FINISH_ID.ordinal();
+			if (c == C_LOWER || c == C_UPPER) return take(TokenKind.ERROR);
+			return leave(TokenKind.IDENTIFIER.ordinal());
+		case GATHER_LC:
+			if (c == C_LOWER) return State.GATHER_LC.ordinal();
+			if (c == C_DIGIT || c == C_UPPER) return take(TokenKind.ERROR);
+			return leave(KEYWORD);
+		case GATHER_DIGITS:
+			if (c == C_DIGIT) return State.GATHER_DIGITS.ordinal();
+			if (c == C_LOWER || c == C_UPPER) return take(TokenKind.ERROR);
+			return leave(TokenKind.INTEGER_CONSTANT.ordinal());
+		case GOT_AN_EQ:
+			return c == C_EQ ? take(TokenKind.EQUALITY_TEST)
+					: leave(TokenKind.ASSIGNMENT_OPERATOR.ordinal());
+		case GOT_A_BANG:
+			return c == C_EQ ? take(TokenKind.NOT_EQ_TEST)
+					: leave(TokenKind.BANG.ordinal());
+		case GOT_A_GREATER_THAN:
+			return c == C_EQ ? take(TokenKind.GREATER_THAN_OR_EQUAL_TO)
+					: leave(TokenKind.GREATER_THAN.ordinal());
+		case GOT_A_LESS_THAN:
+			return c == C_EQ ? take(TokenKind.LESS_THAN_OR_EQUAL_TO)
+					: leave(TokenKind.LESS_THAN.ordinal());
+		case GOT_AN_AND:
+			return take(c == C_AND ? TokenKind.AND_OPERATOR : TokenKind.ERROR);
+		case GOT_A_BAR:
+			return take(c == C_BAR ? TokenKind.OR_OPERATOR : TokenKind.ERROR);
+		default:
+			throw new AssertionError(s);
+		}
+	}
+
+	/**
+	 * Finish a token of kind k, including the current character.
+	 */
+	private static int take(TokenKind k) {
+		return FINISHED | CONSUME | k.ordinal();
+	}
+
+	/**
+	 * Finish a token of kind ordinal k, leaving the current character.
+	 */
+	private static int leave(int k) {
+		return FINISHED | k;
 	}
 
     /**
-     * Update the kind of the front token. (Restores this.)
+     * Lex the front token, if it has not been lexed already. (Restores this.)
      */
-    @SuppressWarnings("unused")
 	private void getToken() {
-    	State currentState = State.READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN; 
-    	Top_Token_Kind = null; 
-    	Top_Token = ""; 
-    	char nextchar = ' ';
-    	int pos = 0;
-
-    	while(currentState != State.FINISHED) {
-        	if (in.hasNext()) {
-        		nextchar = pos >= in.peek().length()? ' ' : in.peek().trim().charAt(pos++);
-        		Top_Token += nextchar;
-        	}
-        	else {
-        		Top_Token_Kind = TokenKind.EOF;	
-        		currentState = State.FINISHED;
-        	}
-	    	switch(currentState){
-	    	case READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN:
-	    		if (isUpperCase(nextchar)) currentState = State.GATHER_UC;
-	    		
-	    		else if (isLowerCase(nextchar)) currentState = State.GATHER_LC;
-	    		
-	    		else if (isDigit(nextchar)) currentState = State.GATHER_DIGITS;
-	    		
-	    		else if (isAnotherAcceptableCharacter(nextchar)) {
-	    			switch(nextchar) {
-	    				case ';':
-	    					Top_Token_Kind = TokenKind.SEMICOLON;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case '[':
-	    					Top_Token_Kind = TokenKind.OPEN_BRACKET;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case ']':
-	    					Top_Token_Kind = TokenKind.CLOSE_BRACKET;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case ',':
-	    					Top_Token_Kind = TokenKind.COMMA;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case '(':
-	    					Top_Token_Kind = TokenKind.OPEN_PAREN;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case ')':
-	    					Top_Token_Kind = TokenKind.CLOSE_PAREN;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case '+':
-	    					Top_Token_Kind = TokenKind.PLUS;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case '-':
-	    					Top_Token_Kind = TokenKind.MINUS;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case '*':
-	    					Top_Token_Kind = TokenKind.ASTERISK;
-	    					currentState = State.FINISHED;
-	    					break;
-	    				case '=':
-	    					currentState = State.GOT_AN_EQ;
-	    					break;
-	    				case '!':
-	    					currentState = State.GOT_A_BANG;
-	    					break;
-	    				case '&':
-	    					currentState = State.GOT_AN_AND;
-	    					break;
-	    				case '|':
-	    					currentState = State.GOT_A_BAR;
-	    					break;
-	    				case '>':
-	    					currentState = State.GOT_A_GREATER_THAN;
-	    					break;
-	    				case '<':
-	    					currentState = State.GOT_A_LESS_THAN;
-	    					break;
-		    			}
-	    		}
-	    		else {
-	    			Top_Token_Kind = TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-	    		}
-	    		break;
-	    	case GATHER_UC:
-	    		if (isUpperCase(nextchar)) ;
-	    		else if(isDigit(nextchar)) currentState=State.FINISH_ID;
-	    		else if(isLowerCase(nextchar)) {
-	    			Top_Token_Kind = TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-	    		}
-	    		else {
-	    	    	Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-	    			Top_Token_Kind=TokenKind.IDENTIFIER;
-	    			currentState = State.FINISHED;
-	    		}
-	    		break;
+		if (Top_Token_Kind != null) return;
+
+		final byte[] arr = array;
+		final ByteBuffer src = source;
+		final int len = length;
+		int pos = position;
+		while (pos < len && CHAR_CLASS[(arr != null ? arr[pos] : src.get(pos)) & 0xFF] == C_SPACE) pos++;
+		position = pos;
+		Top_Token_Start = pos;
+
+		if (pos >= len) {
+			Top_Token_Kind = TokenKind.EOF;
+			Top_Token_End = pos;
+			return;
+		}
+
+		Top_Token_Kind = tableDriven ? lexWithTable(pos) : lexWithSwitch(pos);
+	}
+
+	/**
+	 * Lex the token starting at pos with the transition table, and set
+	 * Top_Token_End. Returns its kind.
+	 */
+	private TokenKind lexWithTable(int pos) {
+		final byte[] arr = array;
+		final ByteBuffer src = source;
+		final int len = length;
+
+		// Running off the end of the buffer behaves like reading a space.
+		int action = State.READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN.ordinal();
+		do {
+			int c = pos < len ? (arr != null ? arr[pos] : src.get(pos)) & 0xFF : ' ';
+			action = TRANSITIONS[(action << 8) | c];
+			pos++;
+		} while (action < FINISHED);
+		if ((action & CONSUME) == 0) pos--;
+
+		Top_Token_End = Math.min(pos, len);
+		int kind = action & KIND_MASK;
+		return kind == KEYWORD ? keywordKind(Top_Token_Start, pos) : KINDS[kind];
+	}
+
+	private static boolean isUpperCase(int c) { return c >= 'A' && c <= 'Z';}
+	private static boolean isLowerCase(int c) { return c >= 'a' && c <= 'z';}
+	private static boolean isDigit(int c) { return c >= '0' && c <= '9';}
+
+	/**
+	 * Lex the token starting at pos with the switch-on-state FSA, and set
+	 * Top_Token_End. Returns its kind.
+	 */
+	private TokenKind lexWithSwitch(int pos) {
+		final byte[] arr = array;
+		final ByteBuffer src = source;
+		final int len = length;
+
+		State currentState = State.READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN;
+		TokenKind kind = null;
+
+		// Every branch either consumes nextchar (pos++) and keeps going, or
+		// finishes the token without consuming it. Running off the end of
+		// the buffer behaves like reading a space.
+		while (kind == null) {
+			int nextchar = pos < len ? (arr != null ? arr[pos] : src.get(pos)) : ' ';
+			switch (currentState) {
+			case READY_FOR_FIRST_CHAR_OF_NEXT_TOKEN:
+				pos++;
+				if (isUpperCase(nextchar)) currentState = State.GATHER_UC;
+				else if (isLowerCase(nextchar)) currentState = State.GATHER_LC;
+				else if (isDigit(nextchar)) currentState = State.GATHER_DIGITS;
+				else {
+					switch (nextchar) {
+					case ';': kind = TokenKind.SEMICOLON; break;
+					case '[': kind = TokenKind.OPEN_BRACKET; break;
+					case ']': kind = TokenKind.CLOSE_BRACKET; break;
+					case ',': kind = TokenKind.COMMA; break;
+					case '(': kind = TokenKind.OPEN_PAREN; break;
+					case ')': kind = TokenKind.CLOSE_PAREN; break;
+					case '+': kind = TokenKind.PLUS; break;
+					case '-': kind = TokenKind.MINUS; break;
+					case '*': kind = TokenKind.ASTERISK; break;
+					case '=': currentState = State.GOT_AN_EQ; break;
+					case '!': currentState = State.GOT_A_BANG; break;
+					case '&': currentState = State.GOT_AN_AND; break;
+					case '|': currentState = State.GOT_A_BAR; break;
+					case '>': currentState = State.GOT_A_GREATER_THAN; break;
+					case '<': currentState = State.GOT_A_LESS_THAN; break;
+					default: kind = TokenKind.ERROR; break;
+					}
+				}
+				break;
+			case GATHER_UC:
+				if (isUpperCase(nextchar)) {
+					pos++;
+				}
+				else if (isDigit(nextchar)) {
+					pos++;
+					currentState = State.FINISH_ID;
+				}
+				else if (isLowerCase(nextchar)) {
+					pos++;
+					kind = TokenKind.ERROR;
+				}
+				else kind = TokenKind.IDENTIFIER;
+				break;
 			case FINISH_ID:
-	    		if (isDigit(nextchar)) ;
-	    		else if(isLowerCase(nextchar)||isUpperCase(nextchar)) {
-	    			Top_Token_Kind = TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-	    		}
-	    		else {
-	    			Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-	    			Top_Token_Kind=TokenKind.IDENTIFIER;
-	    			currentState = State.FINISHED;
-	    		}
-	    		break;
+				if (isDigit(nextchar)) {
+					pos++;
+				}
+				else if (isLowerCase(nextchar) || isUpperCase(nextchar)) {
+					pos++;
+					kind = TokenKind.ERROR;
+				}
+				else kind = TokenKind.IDENTIFIER;
+				break;
 			case GATHER_LC:
-	    		if (isLowerCase(nextchar)) ;
-	    		else if(isDigit(nextchar)||isUpperCase(nextchar)) {
-	    			Top_Token_Kind = TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-	    		}
-	    		else {
-	    			Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-	    			Top_Token_Kind = null;
-	    			currentState = State.FINISHED;
-	    		}
-	    		break;
+				if (isLowerCase(nextchar)) {
+					pos++;
+				}
+				else if (isDigit(nextchar) || isUpperCase(nextchar)) {
+					pos++;
+					kind = TokenKind.ERROR;
+				}
+				else kind = keywordKind(Top_Token_Start, pos);
+				break;
 			case GATHER_DIGITS:
-	    		if (isDigit(nextchar)) ;
-	    		else if(isLowerCase(nextchar)||isUpperCase(nextchar)) {
-	    			Top_Token_Kind = TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-	    		}
-	    		else {
-	    			Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-	    			Top_Token_Kind=TokenKind.INTEGER_CONSTANT;
-	    			currentState = State.FINISHED;
-	    		}
-	    		break;
-			case GOT_AN_EQ:
-				if (nextchar=='=') {
-	    			Top_Token_Kind=TokenKind.EQUALITY_TEST;
-	    			currentState = State.FINISHED;
+				if (isDigit(nextchar)) {
+					pos++;
 				}
-				else {
-					Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-	    			Top_Token_Kind=TokenKind.ASSIGNMENT_OPERATOR;
-	    			currentState = State.FINISHED;
+				else if (isLowerCase(nextchar) || isUpperCase(nextchar)) {
+					pos++;
+					kind = TokenKind.ERROR;
 				}
+				else kind = TokenKind.INTEGER_CONSTANT;
 				break;
-			case GOT_A_BANG:
-				if (nextchar=='=') {
-	    			Top_Token_Kind=TokenKind.NOT_EQ_TEST;
-	    			currentState = State.FINISHED;
+			case GOT_AN_EQ:
+				if (nextchar == '=') {
+					pos++;
+					kind = TokenKind.EQUALITY_TEST;
 				}
-				else {
-					Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-	    			Top_Token_Kind=TokenKind.BANG;
-	    			currentState = State.FINISHED;
+				else kind = TokenKind.ASSIGNMENT_OPERATOR;
+				break;
+			case GOT_A_BANG:
+				if (nextchar == '=') {
+					pos++;
+					kind = TokenKind.NOT_EQ_TEST;
 				}
+				else kind = TokenKind.BANG;
 				break;
 			case GOT_A_GREATER_THAN:
-				if (nextchar=='=') {
-					Top_Token_Kind=TokenKind.GREATER_THAN_OR_EQUAL_TO;
-					currentState = State.FINISHED;
-				}
-				else {
-					Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-					Top_Token_Kind=TokenKind.GREATER_THAN;
-					currentState = State.FINISHED;
+				if (nextchar == '=') {
+					pos++;
+					kind = TokenKind.GREATER_THAN_OR_EQUAL_TO;
 				}
+				else kind = TokenKind.GREATER_THAN;
 				break;
 			case GOT_A_LESS_THAN:
-				if (nextchar=='=') {
-					Top_Token_Kind=TokenKind.LESS_THAN_OR_EQUAL_TO;
-					currentState = State.FINISHED;
-				}
-				else {
-					Top_Token = Top_Token.substring(0,Top_Token.length()-1);
-					Top_Token_Kind=TokenKind.LESS_THAN;
-					currentState = State.FINISHED;
+				if (nextchar == '=') {
+					pos++;
+					kind = TokenKind.LESS_THAN_OR_EQUAL_TO;
 				}
+				else kind = TokenKind.LESS_THAN;
 				break;
 			case GOT_AN_AND:
-				if (nextchar=='&') {
-	    			Top_Token_Kind=TokenKind.AND_OPERATOR;
-	    			currentState = State.FINISHED;
-				}
-				else {
-	    			Top_Token_Kind=TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-				}
+				pos++;
+				kind = nextchar == '&' ? TokenKind.AND_OPERATOR : TokenKind.ERROR;
 				break;
 			case GOT_A_BAR:
-				if (nextchar=='|') {
-	    			Top_Token_Kind=TokenKind.OR_OPERATOR;
-	    			currentState = State.FINISHED;
-				}
-				else {
-	    			Top_Token_Kind=TokenKind.ERROR;
-	    			currentState = State.FINISHED;
-				}
+				pos++;
+				kind = nextchar == '|' ? TokenKind.OR_OPERATOR : TokenKind.ERROR;
 				break;
 			default:
 				break;
-	    	}
-    	}
-    	
-
-    	
-    	if (Top_Token_Kind==null) {
-    		switch(Top_Token) {
-    		case "program":
-    			Top_Token_Kind=TokenKind.PROGRAM;
-    			break;
-    		case "begin":
-    			Top_Token_Kind=TokenKind.BEGIN;
-    			break;
-    		case "end":
-    			Top_Token_Kind=TokenKind.END;
-    			break;
-    		case "int":
-    			Top_Token_Kind=TokenKind.INT;
-    			break;
-    		case "if":
-    			Top_Token_Kind=TokenKind.IF;
-    			break;
-    		case "then":
-    			Top_Token_Kind=TokenKind.THEN;
-    			break;
-    		case "else":
-    			Top_Token_Kind=TokenKind.ELSE;
-    			break;
-    		case "while":
-    			Top_Token_Kind=TokenKind.WHILE;
-    			break;
-    		case "loop":
-    			Top_Token_Kind=TokenKind.LOOP;
-    			break;
-    		case "read":
-    			Top_Token_Kind=TokenKind.READ;
-    			break;
-    		case "write":
-    			Top_Token_Kind=TokenKind.WRITE;
-    			break;
-    		default:
-    			Top_Token_Kind=TokenKind.ERROR;
-    			break;
-    		}
-    	}
-    }
-    
+			}
+		}
+
+		Top_Token_End = Math.min(pos, len);
+		return kind;
+	}
+
+	/**
+	 * Return the reserved word spelled by source[start, end), or ERROR if
+	 * those lower case letters are not a reserved word.
+	 */
+	private TokenKind keywordKind(int start, int end) {
+		switch (end - start) {
+		case 2:
+			if (matches(start, "if")) return TokenKind.IF;
+			break;
+		case 3:
+			if (matches(start, "end")) return TokenKind.END;
+			if (matches(start, "int")) return TokenKind.INT;
+			break;
+		case 4:
+			if (matches(start, "then")) return TokenKind.THEN;
+			if (matches(start, "else")) return TokenKind.ELSE;
+			if (matches(start, "loop")) return TokenKind.LOOP;
+			if (matches(start, "read")) return TokenKind.READ;
+			break;
+		case 5:
+			if (matches(start, "begin")) return TokenKind.BEGIN;
+			if (matches(start, "while")) return TokenKind.WHILE;
+			if (matches(start, "write")) return TokenKind.WRITE;
+			break;
+		case 7:
+			if (matches(start, "program")) return TokenKind.PROGRAM;
+			break;
+		}
+		return TokenKind.ERROR;
+	}
+
+	/**
+	 * Does the source starting at start spell out word?
+	 */
+	private boolean matches(int start, String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (source.get(start + i) != word.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Offset of the first character of the front token.
+	 */
+	int tokenStart() {
+		getToken();
+		return Top_Token_Start;
+	}
+
+	/**
+	 * Offset just past the last character of the front token.
+	 */
+	int tokenEnd() {
+		getToken();
+		return Top_Token_End;
+	}
+
+	/**
+	 * The program source the offsets refer to.
+	 */
+	ByteBuffer source() {
+		return source;
+	}
+
     /**
      * Skip front token.
      *
@@ -356,7 +554,9 @@ public class Tokenizer {
      */
     public void skipToken() {
     	getToken();
-    	in.skip(Top_Token);
+    	position = Top_Token_End;
+    	Top_Token_Kind = null;
+    	Top_Token = null;
     }
 
     /**
@@ -366,10 +566,10 @@ public class Tokenizer {
      * @ensures getTokenKind = [the kind of token this.front]
      */
     public TokenKind getTokenKind() {
-    	this.getToken();
+    	getToken();
     	return this.Top_Token_Kind;
     }
-    
+
     /**
      * Return the value of the front token. (Restores this.)
      *
@@ -377,7 +577,10 @@ public class Tokenizer {
      * @ensures getTokenVal = [the value of token this.front]
      */
     public String getTokenVal() {
-    	this.getToken();
+    	getToken();
+    	if (Top_Token == null) {
+    		Top_Token = decode(source, Top_Token_Start, Top_Token_End);
+    	}
     	return this.Top_Token;
     }
 }
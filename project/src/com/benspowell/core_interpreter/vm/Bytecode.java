@@ -0,0 +1,92 @@
+package com.benspowell.core_interpreter.vm;
+
+/**
+ * A CORE program compiled for the VirtualMachine: its code, and what its
+ * registers hold.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Bytecode {
+	
+	private final int[] code;
+	private final int registers;
+	private final String[] variables;
+	
+	// How many of the compiler's instructions the one at each pc does.
+	private final int[] weights;
+	
+	Bytecode(int[] code, int registers, String[] variables) {
+		this(code, registers, variables, null);
+	}
+	
+	/*
+	 * Constructor for optimized code, where weights[pc] is how many of
+	 * the compiler's instructions the one at pc does the work of.
+	 */
+	Bytecode(int[] code, int registers, String[] variables, int[] weights) {
+		this.code = code;
+		this.registers = registers;
+		this.variables = variables;
+		this.weights = weights;
+	}
+	
+	/*
+	 * The instructions. The caller must not change them.
+	 */
+	int[] code() {
+		return code;
+	}
+	
+	/*
+	 * Number of registers, variables and temporaries together.
+	 */
+	public int registers() {
+		return registers;
+	}
+	
+	/*
+	 * Number of variables, which are the first registers.
+	 */
+	public int variables() {
+		return variables.length;
+	}
+	
+	/*
+	 * The name of the variable in register r.
+	 */
+	public String name(int r) {
+		return variables[r];
+	}
+	
+	/*
+	 * How many of the compiler's instructions the one at pc does the work
+	 * of: 1, unless the code has been optimized.
+	 */
+	public int weight(int pc) {
+		return weights == null ? 1 : weights[pc];
+	}
+	
+	String[] variableNames() {
+		return variables;
+	}
+	
+	/*
+	 * Size of the code, in ints.
+	 */
+	public int length() {
+		return code.length;
+	}
+	
+	/*
+	 * A listing of the code, one instruction per line.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int pc = 0; pc < code.length; pc += 1 + Opcodes.operands(code[pc])) {
+			s.append(pc).append(": ").append(Opcodes.name(code[pc]));
+			for (int i = 1; i <= Opcodes.operands(code[pc]); i++) s.append(' ').append(code[pc + i]);
+			s.append('\n');
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,394 @@
+package com.benspowell.core_interpreter.vm;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.benspowell.core_interpreter.ast.*;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.Resolution;
+import com.benspowell.core_interpreter.executor.Resolver;
+
+import static com.benspowell.core_interpreter.vm.Opcodes.*;
+
+/**
+ * Compiles a program's AST to Bytecode for the VirtualMachine.
+ *
+ * Variables live in the registers numbered by their Frame slots, so an
+ * expression reads them in place. Every variable an expression reads is
+ * CHECKed first, in the order the Executor would read it, so programs fail
+ * with the same errors. A condition CHECKs all its variables before its
+ * first branch, because the Executor evaluates both sides of && and ||.
+ *
+ * @author Benjamin S. Powell
+ */
+public class BytecodeCompiler implements Stmt.Visitor<Void, RuntimeException>,
+		Exp.Visitor<Integer, RuntimeException> {
+
+	private final Resolution slots;
+
+	// The code so far.
+	private int[] code = new int[64];
+	private int length = 0;
+
+	// First free temporary register, and the most registers ever used.
+	private int nextTemp;
+	private int registers;
+
+	// Variables already CHECKed by the statement being compiled.
+	private boolean[] checked;
+	private int[] checkedList;
+	private int checkedCount;
+
+	private BytecodeCompiler(Resolution slots) {
+		this.slots = slots;
+		this.nextTemp = slots.size();
+		this.registers = slots.size();
+		this.checked = new boolean[slots.size()];
+		this.checkedList = new int[Math.max(slots.size(), 1)];
+	}
+
+	/**
+	 * Compile a program. Its variables are resolved first, so undeclared
+	 * variables are reported here.
+	 * @throws ExecutorException
+	 */
+	public static Bytecode compile(Program program) throws ExecutorException {
+		Resolution slots = Resolver.resolve(program);
+		BytecodeCompiler c = new BytecodeCompiler(slots);
+
+		c.compileStmts(program.getBody());
+		c.emit(HALT);
+
+		String[] names = new String[slots.size()];
+		for (int i = 0; i < names.length; i++) names[i] = slots.name(i);
+		return new Bytecode(Arrays.copyOf(c.code, c.length), c.registers, names);
+	}
+
+	/*
+	 * Append one int to the code.
+	 */
+	private void put(int x) {
+		if (length == code.length) code = Arrays.copyOf(code, length * 2);
+		code[length++] = x;
+	}
+
+	private void emit(int opcode) {
+		put(opcode);
+	}
+
+	private void emit(int opcode, int a) {
+		put(opcode);
+		put(a);
+	}
+
+	private void emit(int opcode, int a, int b) {
+		put(opcode);
+		put(a);
+		put(b);
+	}
+
+	private void emit(int opcode, int a, int b, int c) {
+		put(opcode);
+		put(a);
+		put(b);
+		put(c);
+	}
+
+	/*
+	 * Point a list of jump targets, linked through the targets themselves
+	 * and ending in -1, at target.
+	 */
+	private void patch(int link, int target) {
+		while (link != -1) {
+			int next = code[link];
+			code[link] = target;
+			link = next;
+		}
+	}
+
+	/*
+	 * A new temporary register.
+	 */
+	private int newTemp() {
+		int t = nextTemp++;
+		if (nextTemp > registers) registers = nextTemp;
+		return t;
+	}
+
+	/*
+	 * CHECK variable r, unless this statement already has.
+	 */
+	private void check(int r) {
+		if (checked[r]) return;
+		checked[r] = true;
+		checkedList[checkedCount++] = r;
+		emit(CHECK, r);
+	}
+
+	/*
+	 * Start compiling a new statement.
+	 */
+	private void startStatement() {
+		for (int i = 0; i < checkedCount; i++) checked[checkedList[i]] = false;
+		checkedCount = 0;
+		nextTemp = slots.size();
+	}
+
+	/**
+	 * Compile a statement sequence.
+	 */
+	private void compileStmts(List<Stmt> stmts) {
+		for (Stmt s : stmts) {
+			startStatement();
+			s.accept(this);
+		}
+	}
+
+	public Void visitAssign(Assign s) {
+		int target = slots.slot(s.getTarget().getSymbol());
+		compileInto(s.getValue(), target);
+		return null;
+	}
+
+	public Void visitIf(If s) {
+		s.getCondition().accept(new Checks());
+		int toElse = branch(s.getCondition(), false);
+
+		compileStmts(s.getThenBranch());
+
+		if (s.getElseBranch() == null) {
+			patch(toElse, length);
+			return null;
+		}
+
+		emit(JUMP, -1);
+		int toEnd = length - 1;
+
+		patch(toElse, length);
+		compileStmts(s.getElseBranch());
+		patch(toEnd, length);
+		return null;
+	}
+
+	/*
+	 * The condition is tested at the bottom, so each time round the loop
+	 * costs one branch.
+	 */
+	public Void visitWhile(While s) {
+		emit(JUMP, -1);
+		int toTest = length - 1;
+
+		int body = length;
+		compileStmts(s.getBody());
+
+		startStatement();
+		patch(toTest, length);
+		s.getCondition().accept(new Checks());
+		patch(branch(s.getCondition(), true), body);
+		return null;
+	}
+
+	public Void visitRead(Read s) {
+		for (Var v : s.getIds()) emit(READ, slots.slot(v.getSymbol()));
+		return null;
+	}
+
+	public Void visitWrite(Write s) {
+		for (Var v : s.getIds()) emit(WRITE, slots.slot(v.getSymbol()));
+		return null;
+	}
+
+	/*
+	 * Compile a branch taken if the condition is when. Returns the list of
+	 * its jump targets, for patch.
+	 */
+	private int branch(Cond c, boolean when) {
+		Branch b = new Branch(when);
+		c.accept(b);
+		return b.link;
+	}
+
+	/*
+	 * Compile the value of e into register dst.
+	 */
+	private void compileInto(Exp e, int dst) {
+		if (e instanceof Group) {
+			compileInto(((Group) e).getContents(), dst);
+		}
+		else if (e instanceof Num) {
+			emit(CONST, dst, ((Num) e).getValue());
+		}
+		else if (e instanceof BinOp) {
+			BinOp b = (BinOp) e;
+			int mark = nextTemp;
+			int left = b.getLeft().accept(this);
+			int right = b.getRight().accept(this);
+			nextTemp = mark;
+			emit(opcodeOf(b.getOperator()), dst, left, right);
+		}
+		else {
+			int src = e.accept(this);
+			if (src != dst) emit(MOVE, dst, src);
+		}
+	}
+
+	private static int opcodeOf(ArithmeticOperator operator) {
+		switch (operator) {
+		case PLUS:
+			return ADD;
+		case MINUS:
+			return SUB;
+		default:
+			return MUL;
+		}
+	}
+
+	/*
+	 * Expressions compile to the register that holds their value.
+	 */
+	public Integer visitNum(Num e) {
+		int t = newTemp();
+		emit(CONST, t, e.getValue());
+		return t;
+	}
+
+	public Integer visitVar(Var e) {
+		int r = slots.slot(e.getSymbol());
+		check(r);
+		return r;
+	}
+
+	public Integer visitBinOp(BinOp e) {
+		int mark = nextTemp;
+		int left = e.getLeft().accept(this);
+		int right = e.getRight().accept(this);
+		nextTemp = mark;
+
+		int t = newTemp();
+		emit(opcodeOf(e.getOperator()), t, left, right);
+		return t;
+	}
+
+	public Integer visitGroup(Group e) {
+		return e.getContents().accept(this);
+	}
+
+	/*
+	 * CHECKs every variable a condition reads, in order.
+	 */
+	private class Checks implements Cond.Visitor<Void, RuntimeException>, Exp.Visitor<Void, RuntimeException> {
+
+		public Void visitCompare(Compare c) {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitNot(Not c) {
+			c.getOperand().accept(this);
+			return null;
+		}
+
+		public Void visitAnd(And c) {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitOr(Or c) {
+			c.getLeft().accept(this);
+			c.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitNum(Num e) {
+			return null;
+		}
+
+		public Void visitVar(Var e) {
+			check(slots.slot(e.getSymbol()));
+			return null;
+		}
+
+		public Void visitBinOp(BinOp e) {
+			e.getLeft().accept(this);
+			e.getRight().accept(this);
+			return null;
+		}
+
+		public Void visitGroup(Group e) {
+			e.getContents().accept(this);
+			return null;
+		}
+	}
+
+	/*
+	 * Compiles a condition to compare-and-branch instructions that jump
+	 * if it's when, and fall through otherwise. The targets of all the
+	 * jumps are linked into a list through link, to be patched together.
+	 */
+	private class Branch implements Cond.Visitor<Void, RuntimeException> {
+
+		private boolean when;
+
+		// Where the last unpatched jump target is, or -1.
+		int link = -1;
+
+		Branch(boolean when) {
+			this.when = when;
+		}
+
+		public Void visitCompare(Compare c) {
+			int mark = nextTemp;
+			int left = c.getLeft().accept(BytecodeCompiler.this);
+			int right = c.getRight().accept(BytecodeCompiler.this);
+			nextTemp = mark;
+
+			RelationalOperator operator = when ? c.getOperator() : c.getOperator().negate();
+			emit(JNE + operator.ordinal(), left, right, link);
+			link = length - 1;
+			return null;
+		}
+
+		public Void visitNot(Not c) {
+			when = !when;
+			c.getOperand().accept(this);
+			when = !when;
+			return null;
+		}
+
+		public Void visitAnd(And c) {
+			if (!when) {
+				// Either side false is enough.
+				c.getLeft().accept(this);
+				c.getRight().accept(this);
+				return null;
+			}
+			return both(c.getLeft(), c.getRight());
+		}
+
+		public Void visitOr(Or c) {
+			if (when) {
+				// Either side true is enough.
+				c.getLeft().accept(this);
+				c.getRight().accept(this);
+				return null;
+			}
+			return both(c.getLeft(), c.getRight());
+		}
+
+		/*
+		 * Jump only if both left and right are when: skip past right's
+		 * test if left isn't.
+		 */
+		private Void both(Cond left, Cond right) {
+			Branch skip = new Branch(!when);
+			left.accept(skip);
+
+			right.accept(this);
+
+			patch(skip.link, length);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.benspowell.core_interpreter.vm;
+
+/**
+ * The instructions of the CORE virtual machine. An instruction is its
+ * opcode followed by its operands, all ints in the code array. Registers
+ * 0 .. variables-1 hold the program's variables, by Frame slot; the rest
+ * are temporaries.
+ * 
+ * @author Benjamin S. Powell
+ */
+public final class Opcodes {
+	
+	private Opcodes() {}
+	
+	/** Stop. */
+	public static final int HALT = 0;
+	
+	/** CONST dst value: dst = value */
+	public static final int CONST = 1;
+	
+	/** MOVE dst src: dst = src */
+	public static final int MOVE = 2;
+	
+	/** ADD dst a b: dst = a + b */
+	public static final int ADD = 3;
+	
+	/** SUB dst a b: dst = a - b */
+	public static final int SUB = 4;
+	
+	/** MUL dst a b: dst = a * b */
+	public static final int MUL = 5;
+	
+	/** CHECK r: fail unless variable r is defined. */
+	public static final int CHECK = 6;
+	
+	/** JUMP target */
+	public static final int JUMP = 7;
+	
+	/**
+	 * Jn a b target: jump if a n b, for n in NE, EQ, LT, GT, LE, GE. They
+	 * are in the order of RelationalOperator, starting at JNE.
+	 */
+	public static final int JNE = 8;
+	public static final int JEQ = 9;
+	public static final int JLT = 10;
+	public static final int JGT = 11;
+	public static final int JLE = 12;
+	public static final int JGE = 13;
+	
+	/** READ r: read the next int of input into variable r. */
+	public static final int READ = 14;
+	
+	/** WRITE r: write variable r, which must be defined. */
+	public static final int WRITE = 15;
+	
+	/*
+	 * Superinstructions, made by the Peephole optimizer. Each does the
+	 * work of a common sequence of the instructions above, with one
+	 * dispatch.
+	 */
+	
+	/** ADDI dst a value: dst = a + value */
+	public static final int ADDI = 16;
+	
+	/** SUBI dst a value: dst = a - value */
+	public static final int SUBI = 17;
+	
+	/** RSUBI dst value a: dst = value - a */
+	public static final int RSUBI = 18;
+	
+	/** MULI dst a value: dst = a * value */
+	public static final int MULI = 19;
+	
+	/** INC r value: fail unless variable r is defined, then r = r + value */
+	public static final int INC = 20;
+	
+	/**
+	 * JnI a value target: jump if a n value, in the same order as the
+	 * other conditional jumps, starting at JNEI.
+	 */
+	public static final int JNEI = 21;
+	public static final int JEQI = 22;
+	public static final int JLTI = 23;
+	public static final int JGTI = 24;
+	public static final int JLEI = 25;
+	public static final int JGEI = 26;
+	
+	/** How many opcodes there are. */
+	public static final int COUNT = 27;
+	
+	private static final String[] NAMES = {
+		"HALT", "CONST", "MOVE", "ADD", "SUB", "MUL", "CHECK", "JUMP",
+		"JNE", "JEQ", "JLT", "JGT", "JLE", "JGE", "READ", "WRITE",
+		"ADDI", "SUBI", "RSUBI", "MULI", "INC",
+		"JNEI", "JEQI", "JLTI", "JGTI", "JLEI", "JGEI",
+	};
+	
+	private static final int[] OPERANDS = {
+		0, 2, 2, 3, 3, 3, 1, 1,
+		3, 3, 3, 3, 3, 3, 1, 1,
+		3, 3, 3, 3, 2,
+		3, 3, 3, 3, 3, 3,
+	};
+	
+	/*
+	 * The name of an opcode.
+	 */
+	public static String name(int opcode) {
+		return NAMES[opcode];
+	}
+	
+	/*
+	 * Is an opcode a jump, with its target as its last operand?
+	 */
+	public static boolean isJump(int opcode) {
+		return opcode == JUMP || (opcode >= JNE && opcode <= JGE) || (opcode >= JNEI && opcode <= JGEI);
+	}
+	
+	/*
+	 * The number of operands an opcode takes.
+	 */
+	public static int operands(int opcode) {
+		return OPERANDS[opcode];
+	}
+}
@@ -0,0 +1,310 @@
+package com.benspowell.core_interpreter.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.benspowell.core_interpreter.vm.Opcodes.*;
+
+/**
+ * Peephole optimizer for Bytecode. It makes two passes over the basic
+ * blocks of the code (runs of instructions that are only entered at the
+ * top):
+ *
+ * 1. It drops each CHECK of a variable already known to be defined,
+ *    because every path to it has checked the variable, assigned it, or
+ *    read it into a register, in this block or the ones before.
+ * 2. It fuses the sequences the BytecodeCompiler makes most often into
+ *    superinstructions. A CONST into a temporary and the instruction that
+ *    uses it become one instruction with an immediate operand, such as
+ *    ADDI or JLTI. X = X + c with its CHECK becomes INC.
+ *
+ * The optimized code records how many of the original instructions each
+ * of its instructions stands for, so the VirtualMachine's profile can
+ * tell how many instructions were retired as well as dispatched.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class Peephole {
+
+	/*
+	 * One instruction, while the code is being optimized.
+	 */
+	private static final class Insn {
+		int[] op;
+		final int pc;
+		boolean leader;
+		int weight = 1;
+
+		Insn(int[] op, int pc, boolean leader) {
+			this.op = op;
+			this.pc = pc;
+			this.leader = leader;
+		}
+	}
+
+	private final Bytecode program;
+
+	private Peephole(Bytecode program) {
+		this.program = program;
+	}
+
+	/**
+	 * Optimize the code of a program.
+	 */
+	public static Bytecode optimize(Bytecode program) {
+		return new Peephole(program).optimize();
+	}
+
+	private Bytecode optimize() {
+		List<Insn> insns = decode();
+		insns = dropChecks(insns);
+		insns = fuse(insns);
+		return encode(insns);
+	}
+
+	/*
+	 * Split the code into instructions, marking the jump targets.
+	 */
+	private List<Insn> decode() {
+		int[] code = program.code();
+
+		boolean[] targets = new boolean[code.length + 1];
+		targets[0] = true;
+		for (int pc = 0; pc < code.length; pc += 1 + operands(code[pc])) {
+			if (isJump(code[pc])) targets[code[pc + operands(code[pc])]] = true;
+		}
+
+		List<Insn> insns = new ArrayList<Insn>();
+		for (int pc = 0; pc < code.length; pc += 1 + operands(code[pc])) {
+			insns.add(new Insn(Arrays.copyOfRange(code, pc, pc + 1 + operands(code[pc])), pc, targets[pc]));
+		}
+		return insns;
+	}
+
+	private boolean isVariable(int r) {
+		return r < program.variables();
+	}
+
+	private boolean isTemporary(int r) {
+		return r >= program.variables();
+	}
+
+	/*
+	 * Pass 1: drop CHECKs of variables known to be defined. A variable is
+	 * known to be defined where every path to it has checked, assigned or
+	 * read it, since nothing makes a variable undefined again. What's
+	 * known at the top of each block is worked out by going over the code
+	 * until nothing changes; within a block it only grows. A dropped
+	 * CHECK's weight goes to the instruction after it, which always runs
+	 * when it did, so a CHECK followed by a jump target is kept.
+	 */
+	private List<Insn> dropChecks(List<Insn> insns) {
+		BitSet[] entry = knownAtEntry(insns);
+
+		List<Insn> kept = new ArrayList<Insn>();
+		BitSet known = new BitSet();
+		int carried = 0;
+		boolean carriedLeader = false;
+
+		for (int i = 0; i < insns.size(); i++) {
+			Insn insn = insns.get(i);
+			if (insn.leader) known = (BitSet) entry[insn.pc].clone();
+
+			int opcode = insn.op[0];
+			boolean followedByLeader = i + 1 < insns.size() && insns.get(i + 1).leader;
+			if (opcode == CHECK && known.get(insn.op[1]) && !followedByLeader) {
+				carried += insn.weight;
+				carriedLeader |= insn.leader;
+				continue;
+			}
+			insn.weight += carried;
+			insn.leader |= carriedLeader;
+			carried = 0;
+			carriedLeader = false;
+			kept.add(insn);
+
+			define(insn, known);
+		}
+		return kept;
+	}
+
+	/*
+	 * The variables known to be defined at the top of each block, by the
+	 * pc of its first instruction. Nothing is known at the start; at any
+	 * other block, what's known on every way in, by a jump or by falling
+	 * through. Blocks that are never reached know everything.
+	 */
+	private BitSet[] knownAtEntry(List<Insn> insns) {
+		BitSet all = new BitSet();
+		all.set(0, program.variables());
+
+		BitSet[] entry = new BitSet[program.length() + 1];
+		for (Insn insn : insns) {
+			if (insn.leader) entry[insn.pc] = (BitSet) all.clone();
+		}
+		entry[0].clear();
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			BitSet known = null;
+			for (Insn insn : insns) {
+				if (insn.leader) {
+					// Falling through from the block before.
+					if (known != null) changed |= meet(entry[insn.pc], known);
+					known = (BitSet) entry[insn.pc].clone();
+				}
+				// Code after a JUMP or HALT that isn't jumped to never runs.
+				if (known == null) continue;
+
+				int opcode = insn.op[0];
+				if (isJump(opcode)) changed |= meet(entry[insn.op[insn.op.length - 1]], known);
+				define(insn, known);
+				if (opcode == HALT || opcode == JUMP) known = null;
+			}
+		}
+		return entry;
+	}
+
+	/*
+	 * Keep only what's known on both ways in. Returns whether that is
+	 * less than before.
+	 */
+	private static boolean meet(BitSet entry, BitSet known) {
+		int before = entry.cardinality();
+		entry.and(known);
+		return entry.cardinality() != before;
+	}
+
+	/*
+	 * Note the variable an instruction defines, or checks: everything but
+	 * the jumps and HALT does its first operand, if it's a variable.
+	 */
+	private void define(Insn insn, BitSet known) {
+		int opcode = insn.op[0];
+		if (opcode == HALT || isJump(opcode)) return;
+		if (isVariable(insn.op[1])) known.set(insn.op[1]);
+	}
+
+	/*
+	 * Pass 2: fuse instructions. Each instruction is added in turn, then
+	 * fused with the one before it for as long as that can be done. An
+	 * instruction that's jumped to is never fused into the one before.
+	 */
+	private List<Insn> fuse(List<Insn> insns) {
+		List<Insn> out = new ArrayList<Insn>();
+		for (Insn insn : insns) {
+			out.add(insn);
+			while (out.size() >= 2) {
+				Insn second = out.get(out.size() - 1);
+				Insn first = out.get(out.size() - 2);
+				if (second.leader) break;
+
+				// A CONST into a temporary can't fail, so it can go after a
+				// CHECK, next to the instruction that uses it.
+				if (first.op[0] == CONST && isTemporary(first.op[1]) && second.op[0] == CHECK && !first.leader) {
+					out.set(out.size() - 2, second);
+					out.set(out.size() - 1, first);
+					break;
+				}
+
+				int[] fused = fuse(first.op, second.op);
+				if (fused == null) break;
+				first.op = fused;
+				first.weight += second.weight;
+				out.remove(out.size() - 1);
+			}
+		}
+		return out;
+	}
+
+	/*
+	 * The superinstruction that does first then second, or null.
+	 */
+	private int[] fuse(int[] first, int[] second) {
+		int opcode = second[0];
+
+		if (first[0] == CONST && isTemporary(first[1])) {
+			int t = first[1];
+			int value = first[2];
+
+			if (opcode == ADD || opcode == MUL) {
+				int immediate = opcode == ADD ? ADDI : MULI;
+				if (second[3] == t && second[2] != t) return new int[] { immediate, second[1], second[2], value };
+				if (second[2] == t && second[3] != t) return new int[] { immediate, second[1], second[3], value };
+			}
+			if (opcode == SUB) {
+				if (second[3] == t && second[2] != t) return new int[] { SUBI, second[1], second[2], value };
+				if (second[2] == t && second[3] != t) return new int[] { RSUBI, second[1], value, second[3] };
+			}
+			if (opcode >= JNE && opcode <= JGE) {
+				int relation = opcode - JNE;
+				if (second[2] == t && second[1] != t) return new int[] { JNEI + relation, second[1], value, second[3] };
+				if (second[1] == t && second[2] != t) return new int[] { JNEI + mirror(relation), second[2], value, second[3] };
+			}
+		}
+
+		// X = X + c, with its CHECK.
+		if (first[0] == CHECK && (opcode == ADDI || opcode == SUBI)
+				&& second[1] == first[1] && second[2] == first[1]) {
+			return new int[] { INC, first[1], opcode == ADDI ? second[3] : -second[3] };
+		}
+		return null;
+	}
+
+	/*
+	 * The relation that holds for b and a when relation holds for a and
+	 * b, numbered as the conditional jumps are.
+	 */
+	private static int mirror(int relation) {
+		switch (relation + JNE) {
+		case JLT:
+			return JGT - JNE;
+		case JGT:
+			return JLT - JNE;
+		case JLE:
+			return JGE - JNE;
+		case JGE:
+			return JLE - JNE;
+		default:
+			return relation;
+		}
+	}
+
+	/*
+	 * Lay out the instructions again, pointing the jumps at the new places
+	 * of their targets.
+	 */
+	private Bytecode encode(List<Insn> insns) {
+		int[] newPc = new int[program.length() + 1];
+		Arrays.fill(newPc, -1);
+		int length = 0;
+		for (Insn insn : insns) {
+			newPc[insn.pc] = length;
+			length += insn.op.length;
+		}
+
+		// A jump to a dropped CHECK goes to the instruction after it.
+		newPc[program.length()] = length;
+		for (int pc = program.length() - 1; pc >= 0; pc--) {
+			if (newPc[pc] < 0) newPc[pc] = newPc[pc + 1];
+		}
+
+		int[] code = new int[length];
+		int[] weights = new int[length];
+		int pc = 0;
+		for (Insn insn : insns) {
+			System.arraycopy(insn.op, 0, code, pc, insn.op.length);
+			if (isJump(insn.op[0])) {
+				int last = pc + insn.op.length - 1;
+				code[last] = newPc[code[last]];
+			}
+			weights[pc] = insn.weight;
+			pc += insn.op.length;
+		}
+
+		return new Bytecode(code, program.registers(), program.variableNames(), weights);
+	}
+}
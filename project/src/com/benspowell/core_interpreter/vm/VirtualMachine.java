@@ -0,0 +1,225 @@
+package com.benspowell.core_interpreter.vm;
+
+import java.io.*;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.executor.ExecutionEngine;
+
+import static com.benspowell.core_interpreter.vm.Opcodes.*;
+
+/**
+ * Register-based virtual machine for compiled CORE programs. It runs the
+ * Bytecode with a single switch in a loop, keeping everything it touches
+ * in locals.
+ *
+ * @author Benjamin S. Powell
+ */
+public class VirtualMachine implements ExecutionEngine {
+
+	private Bytecode program;
+	private PrintStream out;
+	private Scanner inputFile;
+
+	// When profiling, how often each instruction, and each pair of
+	// opcodes one after the other, was dispatched.
+	private long[] dispatches;
+	private long[] pairs;
+
+	/**
+	 * Default constructor if no PrintStream is specified
+	 */
+	public VirtualMachine(Bytecode program, Scanner i) {
+		this(System.out, program, i);
+	}
+
+	/**
+	 * Constructor for the VirtualMachine class
+	 */
+	public VirtualMachine(PrintStream out, Bytecode program, Scanner inputFile) {
+		this.out = out;
+		this.program = program;
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * Count instructions as the program runs, for getProfile.
+	 */
+	public void setProfiling(boolean profiling) {
+		dispatches = profiling ? new long[program.length()] : null;
+		pairs = profiling ? new long[COUNT * COUNT] : null;
+	}
+
+	/**
+	 * A report of what the program did, if it was profiled: how many
+	 * instructions it dispatched, and how many the unoptimized code would
+	 * have, then the dispatches of each opcode, and the commonest pairs.
+	 */
+	public String getProfile() {
+		long dispatched = 0;
+		long retired = 0;
+		long[] byOpcode = new long[COUNT];
+		int[] code = program.code();
+		for (int pc = 0; pc < code.length; pc += 1 + operands(code[pc])) {
+			dispatched += dispatches[pc];
+			retired += dispatches[pc] * program.weight(pc);
+			byOpcode[code[pc]] += dispatches[pc];
+		}
+
+		StringBuilder s = new StringBuilder();
+		s.append("instructions dispatched: ").append(dispatched).append('\n');
+		s.append("instructions retired, unoptimized: ").append(retired).append('\n');
+		s.append("dispatches by opcode:");
+		for (int op = 0; op < COUNT; op++) {
+			if (byOpcode[op] > 0) s.append(' ').append(name(op)).append('=').append(byOpcode[op]);
+		}
+		s.append('\n');
+
+		s.append("commonest pairs:");
+		long[] left = pairs.clone();
+		for (int shown = 0; shown < 5; shown++) {
+			int top = 0;
+			for (int i = 1; i < left.length; i++) {
+				if (left[i] > left[top]) top = i;
+			}
+			if (left[top] == 0) break;
+			s.append(' ').append(name(top / COUNT)).append('>').append(name(top % COUNT)).append('=').append(left[top]);
+			left[top] = 0;
+		}
+		s.append('\n');
+		return s.toString();
+	}
+
+	/**
+	 * Run the program.
+	 * @throws ExecutorException
+	 */
+	public void executeCoreProgram() throws ExecutorException {
+		final int[] code = program.code();
+		final int[] r = new int[program.registers()];
+		final boolean[] defined = new boolean[program.registers()];
+		final long[] counts = dispatches;
+		final long[] pairCounts = pairs;
+
+		int pc = 0;
+		int last = -1;
+		while (true) {
+			if (counts != null) {
+				counts[pc]++;
+				if (last >= 0) pairCounts[last * COUNT + code[pc]]++;
+				last = code[pc];
+			}
+			switch (code[pc]) {
+			case HALT:
+				return;
+			case CONST:
+				r[code[pc + 1]] = code[pc + 2];
+				defined[code[pc + 1]] = true;
+				pc += 3;
+				break;
+			case MOVE:
+				r[code[pc + 1]] = r[code[pc + 2]];
+				defined[code[pc + 1]] = true;
+				pc += 3;
+				break;
+			case ADD:
+				r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case SUB:
+				r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case MUL:
+				r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case CHECK:
+				if (!defined[code[pc + 1]]) throw new ExecutorException(program.name(code[pc + 1])+" is undefined!");
+				pc += 2;
+				break;
+			case JUMP:
+				pc = code[pc + 1];
+				break;
+			case JNE:
+				pc = r[code[pc + 1]] != r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+				break;
+			case JEQ:
+				pc = r[code[pc + 1]] == r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+				break;
+			case JLT:
+				pc = r[code[pc + 1]] < r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+				break;
+			case JGT:
+				pc = r[code[pc + 1]] > r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+				break;
+			case JLE:
+				pc = r[code[pc + 1]] <= r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+				break;
+			case JGE:
+				pc = r[code[pc + 1]] >= r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+				break;
+			case READ:
+				if (!inputFile.hasNextInt()) throw new ExecutorException("input file is out of int's to read!");
+				r[code[pc + 1]] = inputFile.nextInt();
+				defined[code[pc + 1]] = true;
+				pc += 2;
+				break;
+			case WRITE:
+				int v = code[pc + 1];
+				if (!defined[v]) throw new ExecutorException("can't write value of " + program.name(v) + " - it's undefined!");
+				out.println(program.name(v)+" = "+r[v]);
+				pc += 2;
+				break;
+			case ADDI:
+				r[code[pc + 1]] = r[code[pc + 2]] + code[pc + 3];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case SUBI:
+				r[code[pc + 1]] = r[code[pc + 2]] - code[pc + 3];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case RSUBI:
+				r[code[pc + 1]] = code[pc + 2] - r[code[pc + 3]];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case MULI:
+				r[code[pc + 1]] = r[code[pc + 2]] * code[pc + 3];
+				defined[code[pc + 1]] = true;
+				pc += 4;
+				break;
+			case INC:
+				if (!defined[code[pc + 1]]) throw new ExecutorException(program.name(code[pc + 1])+" is undefined!");
+				r[code[pc + 1]] += code[pc + 2];
+				pc += 3;
+				break;
+			case JNEI:
+				pc = r[code[pc + 1]] != code[pc + 2] ? code[pc + 3] : pc + 4;
+				break;
+			case JEQI:
+				pc = r[code[pc + 1]] == code[pc + 2] ? code[pc + 3] : pc + 4;
+				break;
+			case JLTI:
+				pc = r[code[pc + 1]] < code[pc + 2] ? code[pc + 3] : pc + 4;
+				break;
+			case JGTI:
+				pc = r[code[pc + 1]] > code[pc + 2] ? code[pc + 3] : pc + 4;
+				break;
+			case JLEI:
+				pc = r[code[pc + 1]] <= code[pc + 2] ? code[pc + 3] : pc + 4;
+				break;
+			case JGEI:
+				pc = r[code[pc + 1]] >= code[pc + 2] ? code[pc + 3] : pc + 4;
+				break;
+			default:
+				throw new IllegalStateException("bad opcode " + code[pc] + " at " + pc);
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.benspowell.core_interpreter.vm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+
+import com.benspowell.core_interpreter.benchmark.SyntheticPrograms;
+import com.benspowell.core_interpreter.error.ExecutorException;
+import com.benspowell.core_interpreter.error.ParseException;
+import com.benspowell.core_interpreter.executor.Executor;
+import com.benspowell.core_interpreter.parser.ParseTree;
+
+import static com.benspowell.core_interpreter.testing.Checks.*;
+
+/**
+ * Tests for the BytecodeCompiler, the Peephole optimizer and the
+ * VirtualMachine. Checks the code compiled and optimized for small
+ * programs, and that it runs as the tree Executor does. Prints every
+ * failed check, and exits with status 1 if there were any.
+ *
+ * @author Benjamin S. Powell
+ */
+public final class VirtualMachineTest {
+
+	// Programs, and their input, that each engine must run alike.
+	private static final String[][] PROGRAMS = {
+		{ "program int X, Y; begin X = 2147483647; Y = X + 1; write Y; Y = X * X - 3; write X, Y; end", "" },
+		{ "program int X, Y, Z; begin read X, Y; Z = X * (Y - 4); write X, Y, Z; end", "7 -12" },
+		{ "program int X, Y; begin read X; write X; read Y; write Y; end", "5" },
+		{ "program int X, Y; begin X = 3; write X; Y = X + Y; write Y; end", "" },
+		{ "program int X, Y; begin X = 1; if [(X > 0) && (Y > 0)] then write X; end; end", "" },
+		{ "program int X, Y; begin X = 1; if [(X > 0) || (Y > 0)] then write X; end; end", "" },
+		{ "program int I, Y; begin I = 0; while (I < 300) loop"
+				+ " if (I == 299) then write Y; end; I = I + 1; end; end", "" },
+		{ SyntheticPrograms.generate(60, 1), "" },
+		{ SyntheticPrograms.generate(60, 2), "" },
+		{ SyntheticPrograms.loop(2000), "" },
+	};
+
+	/**
+	 * Private constructor so this utility class cannot be instantiated.
+	 */
+	private VirtualMachineTest() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		try {
+			compiledCode();
+			unoptimizedRuns();
+			optimizedCode();
+			optimizedRuns();
+		}
+		catch (ParseException | ExecutorException e) {
+			fail(e.getMessage());
+		}
+
+		finish("VirtualMachineTest");
+	}
+
+	/*
+	 * Variables are the first registers, then temporaries; reads of
+	 * variables are CHECKed, and a condition is a compare-and-branch past
+	 * what it guards.
+	 */
+	private static void compiledCode() throws ParseException, ExecutorException {
+		Bytecode code = compile("program int X, Y; begin X = 4; Y = X + 2;"
+				+ " if [(Y > 5) && !(X == 3)] then write Y; end; end");
+
+		checkEquals("variables", 2, code.variables());
+		checkEquals("registers", 3, code.registers());
+		checkEquals("a variable's register", "Y", code.name(1));
+		checkEquals("listing", "0: CONST 0 4\n3: CHECK 0\n5: CONST 2 2\n8: ADD 1 0 2\n"
+				+ "12: CHECK 1\n14: CHECK 0\n16: CONST 2 5\n19: JLE 1 2 32\n"
+				+ "23: CONST 2 3\n26: JEQ 0 2 32\n30: WRITE 1\n32: HALT\n", code.toString());
+		checkEquals("unoptimized code weighs 1", 1, code.weight(8));
+
+		String loop = compile("program int I; begin I = 0; while (I < 3) loop I = I + 1; end; end").toString();
+		check("a loop jumps to its condition", loop.contains("3: JUMP 14\n"));
+		check("a loop tests its condition at the bottom", loop.endsWith("19: JLT 0 1 5\n23: HALT\n"));
+	}
+
+	/*
+	 * The compiled code, unoptimized, writes what the tree Executor
+	 * writes, and fails with the same error after it.
+	 */
+	private static void unoptimizedRuns() throws ParseException, ExecutorException {
+		for (int i = 0; i < PROGRAMS.length; i++) {
+			String program = PROGRAMS[i][0], input = PROGRAMS[i][1];
+			ParseTree tree = parse(program);
+			Bytecode code = compile(program);
+			checkEquals("program " + i + " on the VirtualMachine", output(input, (out, in) -> new Executor(out, tree, in)),
+					output(input, (out, in) -> new VirtualMachine(out, code, in)));
+		}
+	}
+
+	/*
+	 * The Peephole fuses constants into the instructions that use them,
+	 * and X = X + c into INC, and drops every CHECK that each path to it
+	 * has already made, across blocks and round loops, but no others.
+	 */
+	private static void optimizedCode() throws ParseException, ExecutorException {
+		checkEquals("optimized listing", "0: CONST 0 4\n3: ADDI 1 0 2\n7: JLEI 1 5 17\n11: JEQI 0 3 17\n"
+				+ "15: WRITE 1\n17: HALT\n", optimize("program int X, Y; begin X = 4; Y = X + 2;"
+				+ " if [(Y > 5) && !(X == 3)] then write Y; end; end").toString());
+
+		String loop = optimize("program int X, I, S; begin X = 3; I = 0; S = 0; while (I < 10) loop"
+				+ " S = S + X * 2; if (S > 7) then S = S - 1; end; I = I + 1; end; write S; end").toString();
+		check("no CHECKs are left in a loop whose variables are all assigned first", !loop.contains("CHECK"));
+		check("constants are fused", loop.contains("MULI") && loop.contains("SUBI") && loop.contains("JLTI"));
+
+		checkEquals("X = X + 1 after a branch is INC", "0: READ 1\n2: JLEI 1 0 9\n6: CONST 0 1\n9: INC 0 1\n"
+				+ "12: WRITE 0\n14: HALT\n", optimize("program int X, Y; begin read Y;"
+				+ " if (Y > 0) then X = 1; end; X = X + 1; write X; end").toString());
+
+		String after = optimize("program int X, Y, I; begin read I; while (I > 0) loop X = I; I = I - 1; end;"
+				+ " Y = X * 2; write Y; Y = X * 3; write Y; end").toString();
+		check("a variable assigned only in a loop is CHECKed after it, once",
+				after.indexOf("CHECK 0") >= 0 && after.indexOf("CHECK 0") == after.lastIndexOf("CHECK 0"));
+	}
+
+	/*
+	 * The optimized code writes what the tree Executor writes, and fails
+	 * with the same error after it; and, profiled, it retires as many of
+	 * the compiler's instructions as the unoptimized code dispatches, in
+	 * fewer dispatches.
+	 */
+	private static void optimizedRuns() throws ParseException, ExecutorException {
+		for (int i = 0; i < PROGRAMS.length; i++) {
+			String program = PROGRAMS[i][0], input = PROGRAMS[i][1];
+			ParseTree tree = parse(program);
+			Bytecode code = optimize(program);
+			checkEquals("program " + i + " optimized", output(input, (out, in) -> new Executor(out, tree, in)),
+					output(input, (out, in) -> new VirtualMachine(out, code, in)));
+		}
+		String[] loopInputs = { "0", "2" };
+		for (String input : loopInputs) {
+			String program = "program int X, Y, I; begin read I; while (I > 0) loop X = I; I = I - 1; end;"
+					+ " Y = X * 2; write Y; end";
+			ParseTree tree = parse(program);
+			Bytecode code = optimize(program);
+			checkEquals("a CHECK kept after a loop, given " + input, output(input, (out, in) -> new Executor(out, tree, in)),
+					output(input, (out, in) -> new VirtualMachine(out, code, in)));
+		}
+
+		String program = SyntheticPrograms.loop(1000);
+		VirtualMachine unoptimized = profile(compile(program));
+		VirtualMachine optimized = profile(optimize(program));
+		long dispatched = count(unoptimized, "instructions dispatched: ");
+		check("unoptimized code retires what it dispatches",
+				dispatched > 0 && dispatched == count(unoptimized, "instructions retired, unoptimized: "));
+		checkEquals("optimized code retires what the unoptimized code dispatches", dispatched,
+				count(optimized, "instructions retired, unoptimized: "));
+		check("optimized code dispatches fewer", count(optimized, "instructions dispatched: ") < dispatched);
+	}
+
+	/*
+	 * A profiled run of some code.
+	 */
+	private static VirtualMachine profile(Bytecode code) throws ExecutorException {
+		VirtualMachine vm = new VirtualMachine(new PrintStream(new ByteArrayOutputStream()), code, new Scanner(""));
+		vm.setProfiling(true);
+		vm.executeCoreProgram();
+		return vm;
+	}
+
+	/*
+	 * The count on the line of a VirtualMachine's profile that starts with
+	 * the label.
+	 */
+	private static long count(VirtualMachine vm, String label) {
+		for (String line : vm.getProfile().split("\n")) {
+			if (line.startsWith(label)) return Long.parseLong(line.substring(label.length()));
+		}
+		fail("no \"" + label + "\" in the profile");
+		return -1;
+	}
+
+	private static Bytecode optimize(String program) throws ParseException, ExecutorException {
+		return Peephole.optimize(compile(program));
+	}
+
+	private static Bytecode compile(String program) throws ParseException, ExecutorException {
+		return BytecodeCompiler.compile(parseAst(program));
+	}
+}